@@ -45,6 +45,11 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
      * acids.
      */
     private HashMap<Integer, ArrayList<ModificationMatch>> targetModifications = null;
+    /**
+     * The pattern compiled for matching, null if not compiled or if the
+     * pattern was modified since compilation.
+     */
+    private transient volatile CompiledPattern compiledPattern = null;
 
     /**
      * Creates a blank pattern. All maps are null.
@@ -95,7 +100,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
      */
     public AminoAcidPattern(AminoAcidPattern aminoAcidPattern) {
         target = aminoAcidPattern.getTarget();
-        HashMap<Integer, ArrayList<Character>> otherTargets = aminoAcidPattern.getAaTargeted();
+        HashMap<Integer, ArrayList<Character>> otherTargets = aminoAcidPattern.residueTargeted;
         if (otherTargets != null) {
             residueTargeted = new HashMap<Integer, ArrayList<Character>>(otherTargets.size());
             for (int index : otherTargets.keySet()) {
@@ -112,12 +117,20 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
     }
 
     /**
-     * Returns the map of targeted amino acids. Null if not set.
+     * Returns a copy of the map of targeted amino acids. Null if not set. The
+     * pattern must be edited using the setters.
      *
-     * @return the map of targeted amino acids
+     * @return a copy of the map of targeted amino acids
      */
     public HashMap<Integer, ArrayList<Character>> getAaTargeted() {
-        return residueTargeted;
+        if (residueTargeted == null) {
+            return null;
+        }
+        HashMap<Integer, ArrayList<Character>> result = new HashMap<Integer, ArrayList<Character>>(residueTargeted.size());
+        for (Integer index : residueTargeted.keySet()) {
+            result.put(index, new ArrayList<Character>(residueTargeted.get(index)));
+        }
+        return result;
     }
 
     /**
@@ -154,6 +167,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
             throw new IllegalArgumentException("Illegal row index: " + toRow);
         }
 
+        compiledPattern = null;
         ArrayList<Character> toRowDataTarget = residueTargeted.get(toRow);
         residueTargeted.put(toRow, residueTargeted.get(fromRow));
         residueTargeted.put(fromRow, toRowDataTarget);
@@ -196,7 +210,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
 
     /**
      * Sets the amino acids targeted at a given index. The first amino acid is
-     * 0. Previous value will be silently overwritten.
+     * 0. Previous value will be silently overwritten. The list is copied.
      *
      * @param index the index in the pattern
      * @param targets the amino acids targeted
@@ -205,7 +219,8 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
         if (residueTargeted == null) {
             residueTargeted = new HashMap<Integer, ArrayList<Character>>(1);
         }
-        residueTargeted.put(index, targets);
+        residueTargeted.put(index, new ArrayList<Character>(targets));
+        compiledPattern = null;
         if (index + 1 > length) {
             length = index + 1;
         }
@@ -242,19 +257,34 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
             }
             residueTargeted.put(index, notExcluded);
         }
+        compiledPattern = null;
         if (index + 1 > length) {
             length = index + 1;
         }
     }
 
     /**
-     * Returns the targeted amino acids at a given index in the pattern. The
-     * first amino acid is 0.
+     * Returns a copy of the targeted amino acids at a given index in the
+     * pattern. The first amino acid is 0. The pattern must be edited using the
+     * setters.
      *
      * @param index the index in the pattern
      * @return the targeted amino acids
      */
     public ArrayList<Character> getTargetedAA(int index) {
+        return new ArrayList<Character>(getTargetedAAList(index));
+    }
+
+    /**
+     * Returns the list of targeted amino acids at a given index in the pattern
+     * as stored in the pattern, an empty list if none. The first amino acid is
+     * 0. The list must not be modified. Used by the classes of this package
+     * which only read the list, see getTargetedAA(int) for a copy.
+     *
+     * @param index the index in the pattern
+     * @return the targeted amino acids
+     */
+    ArrayList<Character> getTargetedAAList(int index) {
         if (residueTargeted != null) {
             ArrayList<Character> result = residueTargeted.get(index);
             if (result != null) {
@@ -276,7 +306,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
         if (residueTargeted == null) {
             return 0;
         }
-        ArrayList<Character> aas = getTargetedAA(index);
+        ArrayList<Character> aas = getTargetedAAList(index);
         return aas.size();
     }
 
@@ -314,6 +344,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
         }
 
         length = -1;
+        compiledPattern = null;
     }
 
     /**
@@ -414,7 +445,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
 
         for (int i = 0; i < length(); i++) {
 
-            ArrayList<Character> targetedAas = getTargetedAA(i);
+            ArrayList<Character> targetedAas = getTargetedAAList(i);
 
             if (targetedAas.isEmpty()) {
                 cpt++;
@@ -570,6 +601,17 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
      */
     public int firstIndex(String aminoAcidSequence, SequenceMatchingPreferences sequenceMatchingPreferences, int startIndex) {
 
+        if (!sequenceMatchingPreferences.hasMutationMatrix()) {
+            CompiledPattern compiled = getCompiledPattern(sequenceMatchingPreferences.getSequenceMatchingType());
+            if (compiled != null) {
+                int index = compiled.firstIndex(aminoAcidSequence, startIndex);
+                if (index == -1) {
+                    return -1;
+                }
+                return index + target;
+            }
+        }
+
         int patternLength = length();
         int aminoAcidPatternLength = aminoAcidSequence.length();
         int lastIndex = aminoAcidPatternLength - patternLength;
@@ -615,6 +657,17 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
      */
     public int firstIndex(AminoAcidPattern aminoAcidPattern, SequenceMatchingPreferences sequenceMatchingPreferences, int startIndex) {
 
+        if (!sequenceMatchingPreferences.hasMutationMatrix()) {
+            CompiledPattern compiled = getCompiledPattern(sequenceMatchingPreferences.getSequenceMatchingType());
+            if (compiled != null) {
+                int index = compiled.firstIndex(aminoAcidPattern, startIndex);
+                if (index == -1) {
+                    return -1;
+                }
+                return index + target;
+            }
+        }
+
         int patternLength = length();
         int aminoAcidPatternLength = aminoAcidPattern.length();
         int lastIndex = aminoAcidPatternLength - patternLength;
@@ -623,7 +676,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
         for (int i = startIndex; i <= lastIndex; i++) {
             boolean match = true;
             for (int j = 0; j < patternLength; j++) {
-                ArrayList<Character> aminoAcids = aminoAcidPattern.getTargetedAA(i + j);
+                ArrayList<Character> aminoAcids = aminoAcidPattern.getTargetedAAList(i + j);
                 if (!aminoAcids.isEmpty()) {
                     boolean aaMatched = false;
                     for (Character aa : aminoAcids) {
@@ -668,6 +721,13 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
      */
     public boolean isTargeted(Character aa, int index, SequenceMatchingPreferences sequenceMatchingPreferences) {
 
+        if (aa < CompiledPattern.N_CHARS && index >= 0) {
+            CompiledPattern compiled = getCompiledPattern(sequenceMatchingPreferences.getSequenceMatchingType());
+            if (compiled != null && index < compiled.length) {
+                return compiled.isTargeted(aa, index);
+            }
+        }
+
         if (residueTargeted != null) {
 
             MatchingType matchingType = sequenceMatchingPreferences.getSequenceMatchingType();
@@ -711,6 +771,64 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
         return false;
     }
 
+    /**
+     * Returns the pattern compiled for the given matching type. The compiled
+     * pattern is cached until the pattern is modified. Null if the pattern
+     * cannot be compiled, i.e. empty or longer than 64 amino acids.
+     *
+     * @param matchingType the sequence matching type
+     *
+     * @return the compiled pattern
+     */
+    private CompiledPattern getCompiledPattern(MatchingType matchingType) {
+
+        CompiledPattern compiled = compiledPattern;
+
+        if (compiled == null || compiled.matchingType != matchingType) {
+
+            int patternLength = length();
+            if (patternLength == 0 || patternLength > CompiledPattern.MAX_LENGTH) {
+                return null;
+            }
+
+            compiled = new CompiledPattern(matchingType, patternLength);
+
+            if (residueTargeted != null) {
+                for (int j = 0; j < patternLength; j++) {
+                    ArrayList<Character> aaList = residueTargeted.get(j);
+                    if (aaList != null) {
+                        if (aaList.isEmpty()) {
+                            compiled.setWildcard(j);
+                        } else {
+                            for (Character targetedAA : aaList) {
+                                compiled.setTargeted(targetedAA, j);
+                                if (matchingType == MatchingType.aminoAcid || matchingType == MatchingType.indistiguishableAminoAcids) {
+                                    AminoAcid targetedAminoAcid = AminoAcid.getAminoAcid(targetedAA);
+                                    for (char tempAA : targetedAminoAcid.getSubAminoAcids()) {
+                                        compiled.setTargeted(tempAA, j);
+                                    }
+                                    for (char tempAA : targetedAminoAcid.getCombinations()) {
+                                        compiled.setTargeted(tempAA, j);
+                                    }
+                                    if (matchingType == MatchingType.indistiguishableAminoAcids
+                                            && (targetedAminoAcid == AminoAcid.I || targetedAminoAcid == AminoAcid.J || targetedAminoAcid == AminoAcid.L)) {
+                                        compiled.setTargeted('I', j);
+                                        compiled.setTargeted('J', j);
+                                        compiled.setTargeted('L', j);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+
+            compiledPattern = compiled;
+        }
+
+        return compiled;
+    }
+
     /**
      * Indicates whether the given amino acid at the given index of the pattern
      * is targeted when accounting for mutations.
@@ -1096,11 +1214,12 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
      */
     public void merge(AminoAcidPattern otherPattern) {
 
-        HashMap<Integer, ArrayList<Character>> otherInclusionMap = otherPattern.getAaTargeted();
+        HashMap<Integer, ArrayList<Character>> otherInclusionMap = otherPattern.residueTargeted;
+        compiledPattern = null;
 
         if (otherInclusionMap != null) {
             for (int i : otherInclusionMap.keySet()) {
-                ArrayList<Character> otherAAs = otherPattern.getTargetedAA(i);
+                ArrayList<Character> otherAAs = otherPattern.getTargetedAAList(i);
                 if (residueTargeted == null) {
                     residueTargeted = new HashMap<Integer, ArrayList<Character>>(otherInclusionMap.size());
                 }
@@ -1140,7 +1259,8 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
      */
     public void append(AminoAcidPattern otherPattern) {
         int patternLength = length();
-        HashMap<Integer, ArrayList<Character>> otherTargetedMap = otherPattern.getAaTargeted();
+        HashMap<Integer, ArrayList<Character>> otherTargetedMap = otherPattern.residueTargeted;
+        compiledPattern = null;
         if (otherTargetedMap != null) {
             if (residueTargeted == null) {
                 residueTargeted = new HashMap<Integer, ArrayList<Character>>(otherTargetedMap.size());
@@ -1198,7 +1318,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
         StringBuilder result = new StringBuilder(length());
         for (int i = 0; i < length(); i++) {
             if (getNTargetedAA(i) == 1) {
-                result.append(getTargetedAA(i).get(0));
+                result.append(getTargetedAAList(i).get(0));
             } else {
                 int nTargetedAas = getNTargetedAA(i);
                 switch (nTargetedAas) {
@@ -1206,11 +1326,11 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
                         result.append("X");
                         break;
                     case 1:
-                        result.append(getTargetedAA(i).get(0));
+                        result.append(getTargetedAAList(i).get(0));
                         break;
                     default:
                         result.append("[");
-                        for (Character aa : getTargetedAA(i)) {
+                        for (Character aa : getTargetedAAList(i)) {
                             result.append(aa);
                         }
                         result.append("]");
@@ -1484,7 +1604,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
                     modifiedSequence += "X";
                 }
             }
-            for (Character aminoAcid : aminoAcidPattern.getTargetedAA(patternIndex)) {
+            for (Character aminoAcid : aminoAcidPattern.getTargetedAAList(patternIndex)) {
                 if (mainModificationSites.containsKey(aa) && !mainModificationSites.get(aa).isEmpty()) {
                     for (String ptmName : mainModificationSites.get(aa)) { //There should be only one
                         modifiedSequence += getTaggedResidue(aminoAcid, ptmName, modificationProfile, true, useHtmlColorCoding, useShortName);
@@ -1631,7 +1751,7 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
             if (residueTargeted != null) {
                 ArrayList<Character> aminoAcids = residueTargeted.get(i);
                 if (aminoAcids.size() == 1) {
-                    Character aa = getTargetedAA(i).get(0);
+                    Character aa = getTargetedAAList(i).get(0);
                     AminoAcid aminoAcid = AminoAcid.getAminoAcid(aa);
                     mass += aminoAcid.getMonoisotopicMass();
                 } else {
@@ -1776,4 +1896,156 @@ public class AminoAcidPattern extends ExperimentObject implements TagComponent {
             return isSameSequenceAndModificationStatusAs(aminoAcidPattern, sequenceMatchingPreferences);
         }
     }
+
+    /**
+     * Pattern compiled for a given matching type as one bit mask per amino
+     * acid, bit j being set when the amino acid is targeted at index j of the
+     * pattern. Sequences are scanned using the bit-parallel Shift-And
+     * algorithm.
+     */
+    private static class CompiledPattern {
+
+        /**
+         * The number of characters having a mask.
+         */
+        private static final int N_CHARS = 128;
+        /**
+         * The maximal length of a compiled pattern.
+         */
+        private static final int MAX_LENGTH = 64;
+        /**
+         * The matching type used to compile the pattern.
+         */
+        private final MatchingType matchingType;
+        /**
+         * The length of the pattern.
+         */
+        private final int length;
+        /**
+         * The mask of every character.
+         */
+        private final long[] masks = new long[N_CHARS];
+        /**
+         * The mask of the characters outside the masks array, i.e. the
+         * positions accepting any amino acid.
+         */
+        private long wildcardMask = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param matchingType the matching type used to compile the pattern
+         * @param length the length of the pattern
+         */
+        private CompiledPattern(MatchingType matchingType, int length) {
+            this.matchingType = matchingType;
+            this.length = length;
+        }
+
+        /**
+         * Sets the given amino acid as targeted at the given index.
+         *
+         * @param aa the amino acid
+         * @param index the index on the pattern
+         */
+        private void setTargeted(char aa, int index) {
+            if (aa < N_CHARS) {
+                masks[aa] |= 1L << index;
+            }
+        }
+
+        /**
+         * Sets all amino acids as targeted at the given index.
+         *
+         * @param index the index on the pattern
+         */
+        private void setWildcard(int index) {
+            long bit = 1L << index;
+            for (int i = 0; i < N_CHARS; i++) {
+                masks[i] |= bit;
+            }
+            wildcardMask |= bit;
+        }
+
+        /**
+         * Returns the mask of the given character.
+         *
+         * @param aa the character
+         *
+         * @return the mask of the given character
+         */
+        private long getMask(char aa) {
+            if (aa < N_CHARS) {
+                return masks[aa];
+            }
+            return wildcardMask;
+        }
+
+        /**
+         * Indicates whether the given amino acid is targeted at the given
+         * index.
+         *
+         * @param aa the amino acid
+         * @param index the index on the pattern
+         *
+         * @return a boolean indicating whether the given amino acid is
+         * targeted at the given index
+         */
+        private boolean isTargeted(char aa, int index) {
+            return ((getMask(aa) >>> index) & 1L) != 0;
+        }
+
+        /**
+         * Returns the first index where the pattern starts in the given
+         * sequence. -1 if not found.
+         *
+         * @param sequence the sequence
+         * @param startIndex the index where to start looking
+         *
+         * @return the first index where the pattern starts
+         */
+        private int firstIndex(String sequence, int startIndex) {
+            long matchBit = 1L << (length - 1);
+            long state = 0;
+            for (int i = startIndex; i < sequence.length(); i++) {
+                state = ((state << 1) | 1L) & getMask(sequence.charAt(i));
+                if ((state & matchBit) != 0) {
+                    return i - length + 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the first index where the pattern starts in the given
+         * pattern. Positions of the given pattern without targeted amino acid
+         * match any position. -1 if not found.
+         *
+         * @param aminoAcidPattern the pattern to look into
+         * @param startIndex the index where to start looking
+         *
+         * @return the first index where the pattern starts
+         */
+        private int firstIndex(AminoAcidPattern aminoAcidPattern, int startIndex) {
+            long matchBit = 1L << (length - 1);
+            long state = 0;
+            int otherLength = aminoAcidPattern.length();
+            HashMap<Integer, ArrayList<Character>> otherTargets = aminoAcidPattern.residueTargeted;
+            for (int i = startIndex; i < otherLength; i++) {
+                long mask = -1L;
+                ArrayList<Character> aminoAcids = otherTargets == null ? null : otherTargets.get(i);
+                if (aminoAcids != null && !aminoAcids.isEmpty()) {
+                    mask = 0;
+                    for (int j = 0; j < aminoAcids.size(); j++) {
+                        mask |= getMask(aminoAcids.get(j));
+                    }
+                }
+                state = ((state << 1) | 1L) & mask;
+                if ((state & matchBit) != 0) {
+                    return i - length + 1;
+                }
+            }
+            return -1;
+        }
+    }
 }
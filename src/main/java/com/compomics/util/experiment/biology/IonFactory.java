@@ -484,7 +484,7 @@ public class IonFactory {
                 ArrayList<Double> patternMasses = new ArrayList<Double>();
                 for (int i = 0; i < aminoAcidPattern.length(); i++) {
                     ArrayList<Double> aminoAcidMasses = new ArrayList<Double>();
-                    for (Character aa : aminoAcidPattern.getTargetedAA(i)) {
+                    for (Character aa : aminoAcidPattern.getTargetedAAList(i)) {
                         AminoAcid aminoAcid = AminoAcid.getAminoAcid(aa);
                         double mass = aminoAcid.getMonoisotopicMass();
                         for (ModificationMatch modificationMatch : aminoAcidPattern.getModificationsAt(i + 1)) {
@@ -884,7 +884,7 @@ public class IonFactory {
                 ArrayList<Double> patternMasses = new ArrayList<Double>();
                 for (int i = aminoAcidPattern.length() - 1; i >= 0; i--) {
                     ArrayList<Double> aminoAcidMasses = new ArrayList<Double>();
-                    for (Character aa : aminoAcidPattern.getTargetedAA(i)) {
+                    for (Character aa : aminoAcidPattern.getTargetedAAList(i)) {
                         AminoAcid aminoAcid = AminoAcid.getAminoAcid(aa);
                         double mass = aminoAcid.getMonoisotopicMass();
                         for (ModificationMatch modificationMatch : aminoAcidPattern.getModificationsAt(i + 1)) {
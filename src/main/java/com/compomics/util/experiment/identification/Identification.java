@@ -4,12 +4,14 @@ import com.compomics.util.Util;
 import com.compomics.util.db.ObjectsCache;
 import com.compomics.util.experiment.biology.Peptide;
 import com.compomics.util.experiment.identification.IdentificationMatch.MatchType;
+import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.identification.matches.PeptideMatch;
 import com.compomics.util.experiment.identification.matches.ProteinMatch;
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.identification.matches_iterators.PeptideMatchesIterator;
 import com.compomics.util.experiment.identification.matches_iterators.ProteinMatchesIterator;
 import com.compomics.util.experiment.identification.matches_iterators.PsmIterator;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
 import com.compomics.util.experiment.massspectrometry.Spectrum;
 import com.compomics.util.experiment.personalization.ExperimentObject;
 import com.compomics.util.experiment.personalization.UrParameter;
@@ -19,9 +21,15 @@ import java.io.*;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class contains identification results.
@@ -70,6 +78,27 @@ public abstract class Identification extends ExperimentObject {
      * The ordered list of spectrum file names.
      */
     private ArrayList<String> orderedSpectrumFileNames;
+    /**
+     * The number of spectrum matches per chunk when building the peptide and
+     * protein matches.
+     */
+    private static final int BUILD_CHUNK_SIZE = 1000;
+    /**
+     * Index of the spectrum match keys. The maps and the database remain
+     * indexed by key: the index only makes them share the same key
+     * instances. Not serialized, the index is rebuilt from the keys when
+     * needed and its ids are thus only valid until the identification is
+     * saved.
+     */
+    private transient KeyIndex spectrumKeyIndex = null;
+    /**
+     * Index of the peptide match keys. Not serialized, see spectrumKeyIndex.
+     */
+    private transient KeyIndex peptideKeyIndex = null;
+    /**
+     * Index of the protein match keys. Not serialized, see spectrumKeyIndex.
+     */
+    private transient KeyIndex proteinKeyIndex = null;
 
     /**
      * Returns the ordered list of spectrum file names.
@@ -532,6 +561,25 @@ public abstract class Identification extends ExperimentObject {
         identificationDB.addSpectrumMatchParameter(key, urParameter);
     }
 
+    /**
+     * Adds a batch of spectrum match parameters to the database.
+     *
+     * @param parameters the parameters to add in a map: PSM key &gt;
+     * parameter
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null)
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * adding the objects in the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the objects in the database
+     * @throws InterruptedException thrown whenever a threading issue occurred
+     * while interacting with the database
+     */
+    public void addSpectrumMatchParameters(HashMap<String, UrParameter> parameters, WaitingHandler waitingHandler) throws SQLException, IOException, InterruptedException {
+        identificationDB.addSpectrumMatchParameters(parameters, waitingHandler);
+    }
+
     /**
      * Returns the desired peptide match parameter.
      *
@@ -780,6 +828,7 @@ public abstract class Identification extends ExperimentObject {
         }
         removePeptideMatch(oldKey);
         peptideMatch.setKey(newKey);
+        newKey = getPeptideKeyIndex().intern(newKey);
         peptideIdentification.remove(oldKey);
         peptideIdentification.add(newKey);
         identificationDB.addPeptideMatch(peptideMatch);
@@ -876,6 +925,7 @@ public abstract class Identification extends ExperimentObject {
         if (spectrumKeys != null) {
             spectrumKeys.remove(matchKey);
         }
+        getSpectrumKeyIndex().unregister(matchKey);
         identificationDB.removeSpectrumMatch(matchKey);
     }
 
@@ -892,6 +942,7 @@ public abstract class Identification extends ExperimentObject {
     public void removePeptideMatch(String matchKey) throws SQLException, IOException {
 
         peptideIdentification.remove(matchKey);
+        getPeptideKeyIndex().unregister(matchKey);
         identificationDB.removePeptideMatch(matchKey);
     }
 
@@ -922,6 +973,7 @@ public abstract class Identification extends ExperimentObject {
         }
 
         proteinIdentification.remove(matchKey);
+        getProteinKeyIndex().unregister(matchKey);
         identificationDB.removeProteinMatch(matchKey);
     }
 
@@ -1303,7 +1355,11 @@ public abstract class Identification extends ExperimentObject {
                         currentAssumptionList = new ArrayList<SpectrumIdentificationAssumption>(newAssumptionList);
                         currentAdvocateMap.put(score, currentAssumptionList);
                     } else {
-                        currentAssumptionList.addAll(newAssumptionList);
+                        for (SpectrumIdentificationAssumption assumption : newAssumptionList) {
+                            if (!contains(currentAssumptionList, assumption)) {
+                                currentAssumptionList.add(assumption);
+                            }
+                        }
                     }
                 }
             }
@@ -1403,7 +1459,7 @@ public abstract class Identification extends ExperimentObject {
     public synchronized void addSpectrumMatch(SpectrumMatch newMatch)
             throws IOException, SQLException, ClassNotFoundException, InterruptedException {
 
-        String spectrumKey = newMatch.getKey();
+        String spectrumKey = getSpectrumKeyIndex().intern(newMatch.getKey());
         String spectrumFile = Spectrum.getSpectrumFile(spectrumKey);
         HashSet<String> spectrumKeys = spectrumIdentificationMap.get(spectrumFile);
 
@@ -1431,7 +1487,9 @@ public abstract class Identification extends ExperimentObject {
      * Creates the peptides and protein instances based on the spectrum matches.
      * Note that the attribute bestAssumption should be set for every spectrum
      * match at this point. This operation will be very slow if the cache is
-     * already full.
+     * already full. The spectrum matches are processed one by one, see
+     * buildPeptidesAndProteins(WaitingHandler, SequenceMatchingPreferences,
+     * int) to use multiple threads.
      *
      * @param waitingHandler the waiting handler displaying the progress. Can be
      * null. The progress will be displayed as secondary.
@@ -1447,6 +1505,176 @@ public abstract class Identification extends ExperimentObject {
      * while interacting with the database
      */
     public void buildPeptidesAndProteins(WaitingHandler waitingHandler, SequenceMatchingPreferences sequenceMatchingPreferences) throws SQLException, IOException, ClassNotFoundException, InterruptedException {
+        buildPeptidesAndProteins(waitingHandler, sequenceMatchingPreferences, 1);
+    }
+
+    /**
+     * Creates the peptides and protein instances based on the spectrum matches
+     * using the given number of threads. The spectrum matches are divided in
+     * chunks where the peptides are mapped to the proteins concurrently, the
+     * peptide and protein matches are then grouped in partitions of the keys
+     * and written in the database in batch. The spectrum matches are processed
+     * in the order of the files, the result is thus the same as when
+     * processing the spectrum matches one by one. Note that the attribute
+     * bestAssumption should be set for every spectrum match at this point.
+     *
+     * @param waitingHandler the waiting handler displaying the progress. Can be
+     * null. The progress will be displayed as secondary.
+     * @param sequenceMatchingPreferences the sequence matching preferences
+     * @param nThreads the number of threads to use
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * loading the object from the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the object in the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while casting the database input in the desired match class
+     * @throws InterruptedException thrown whenever a threading issue occurred
+     * while interacting with the database
+     */
+    public void buildPeptidesAndProteins(WaitingHandler waitingHandler, final SequenceMatchingPreferences sequenceMatchingPreferences, int nThreads)
+            throws SQLException, IOException, ClassNotFoundException, InterruptedException {
+
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be a positive number.");
+        }
+        if (nThreads == 1) {
+            buildPeptidesAndProteinsSerially(waitingHandler, sequenceMatchingPreferences);
+            return;
+        }
+        if (waitingHandler != null) {
+            waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+            waitingHandler.setMaxSecondaryProgressCounter(getSpectrumIdentificationSize());
+            waitingHandler.setSecondaryProgressCounter(0);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+
+        try {
+
+            // map the peptides of the best assumptions in chunks, in the order of the files
+            ArrayList<Future<ArrayList<PsmMapping>>> mappingTasks = new ArrayList<Future<ArrayList<PsmMapping>>>();
+            ArrayList<String> chunk = new ArrayList<String>(BUILD_CHUNK_SIZE);
+            for (String spectrumFile : spectrumIdentificationMap.keySet()) {
+                for (String spectrumMatchKey : spectrumIdentificationMap.get(spectrumFile)) {
+                    chunk.add(spectrumMatchKey);
+                    if (chunk.size() == BUILD_CHUNK_SIZE) {
+                        mappingTasks.add(pool.submit(new PsmMapper(chunk, sequenceMatchingPreferences)));
+                        chunk = new ArrayList<String>(BUILD_CHUNK_SIZE);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                mappingTasks.add(pool.submit(new PsmMapper(chunk, sequenceMatchingPreferences)));
+            }
+            ArrayList<PsmMapping> psmMappings = new ArrayList<PsmMapping>(getSpectrumIdentificationSize());
+            for (Future<ArrayList<PsmMapping>> mappingTask : mappingTasks) {
+                ArrayList<PsmMapping> chunkMappings = getTaskResult(mappingTask);
+                psmMappings.addAll(chunkMappings);
+                if (waitingHandler != null) {
+                    waitingHandler.increaseSecondaryProgressCounter(chunkMappings.size());
+                    if (waitingHandler.isRunCanceled()) {
+                        return;
+                    }
+                }
+            }
+
+            // group the peptide matches in partitions of the peptide keys
+            ArrayList<ArrayList<PsmMapping>> peptidePartitions = new ArrayList<ArrayList<PsmMapping>>(nThreads);
+            ArrayList<ArrayList<PsmMapping>> proteinPartitions = new ArrayList<ArrayList<PsmMapping>>(nThreads);
+            for (int i = 0; i < nThreads; i++) {
+                peptidePartitions.add(new ArrayList<PsmMapping>());
+                proteinPartitions.add(new ArrayList<PsmMapping>());
+            }
+            for (PsmMapping psmMapping : psmMappings) {
+                peptidePartitions.get(getPartition(psmMapping.peptideKey, nThreads)).add(psmMapping);
+                proteinPartitions.get(getPartition(psmMapping.proteinKey, nThreads)).add(psmMapping);
+            }
+            ArrayList<Future<HashMap<String, PeptideMatch>>> peptideTasks = new ArrayList<Future<HashMap<String, PeptideMatch>>>(nThreads);
+            for (ArrayList<PsmMapping> partition : peptidePartitions) {
+                peptideTasks.add(pool.submit(new PeptideGrouper(partition)));
+            }
+            final HashMap<String, PeptideMatch> peptideMatches = new HashMap<String, PeptideMatch>();
+            for (Future<HashMap<String, PeptideMatch>> peptideTask : peptideTasks) {
+                peptideMatches.putAll(getTaskResult(peptideTask));
+            }
+
+            // group the protein matches in partitions of the protein keys
+            ArrayList<Future<HashMap<String, ProteinMatch>>> proteinTasks = new ArrayList<Future<HashMap<String, ProteinMatch>>>(nThreads);
+            for (ArrayList<PsmMapping> partition : proteinPartitions) {
+                proteinTasks.add(pool.submit(new ProteinGrouper(partition, peptideMatches)));
+            }
+            HashMap<String, ProteinMatch> proteinMatches = new HashMap<String, ProteinMatch>();
+            for (Future<HashMap<String, ProteinMatch>> proteinTask : proteinTasks) {
+                proteinMatches.putAll(getTaskResult(proteinTask));
+            }
+            if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                return;
+            }
+
+            // write the matches, new matches in batch
+            HashMap<String, PeptideMatch> newPeptideMatches = new HashMap<String, PeptideMatch>(peptideMatches.size());
+            for (PeptideMatch peptideMatch : peptideMatches.values()) {
+                String peptideKey = peptideMatch.getKey();
+                if (peptideIdentification.contains(peptideKey)) {
+                    identificationDB.updatePeptideMatch(peptideMatch);
+                } else {
+                    newPeptideMatches.put(peptideKey, peptideMatch);
+                    peptideIdentification.add(peptideKey);
+                }
+            }
+            identificationDB.addPeptideMatches(newPeptideMatches, null);
+            HashMap<String, ProteinMatch> newProteinMatches = new HashMap<String, ProteinMatch>(proteinMatches.size());
+            for (ProteinMatch proteinMatch : proteinMatches.values()) {
+                String proteinKey = proteinMatch.getKey();
+                if (proteinIdentification.contains(proteinKey)) {
+                    identificationDB.updateProteinMatch(proteinMatch);
+                } else {
+                    newProteinMatches.put(proteinKey, proteinMatch);
+                    proteinIdentification.add(proteinKey);
+                }
+            }
+            identificationDB.addProteinMatches(newProteinMatches, null);
+
+            // map the new protein matches to the proteins of the first peptide found, as done serially
+            HashSet<String> mappedProteinKeys = new HashSet<String>(newProteinMatches.size());
+            for (PsmMapping psmMapping : psmMappings) {
+                String proteinKey = psmMapping.proteinKey;
+                if (newProteinMatches.containsKey(proteinKey) && mappedProteinKeys.add(proteinKey)) {
+                    for (String protein : psmMapping.peptide.getParentProteinsNoRemapping()) {
+                        HashSet<String> proteinKeys = proteinMap.get(protein);
+                        if (proteinKeys == null) {
+                            proteinKeys = new HashSet<String>();
+                            proteinMap.put(protein, proteinKeys);
+                        }
+                        proteinKeys.add(proteinKey);
+                    }
+                }
+            }
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Creates the peptides and protein instances based on the spectrum matches
+     * one spectrum match at a time.
+     *
+     * @param waitingHandler the waiting handler displaying the progress. Can be
+     * null. The progress will be displayed as secondary.
+     * @param sequenceMatchingPreferences the sequence matching preferences
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * loading the object from the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the object in the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while casting the database input in the desired match class
+     * @throws InterruptedException thrown whenever a threading issue occurred
+     * while interacting with the database
+     */
+    private void buildPeptidesAndProteinsSerially(WaitingHandler waitingHandler, SequenceMatchingPreferences sequenceMatchingPreferences) throws SQLException, IOException, ClassNotFoundException, InterruptedException {
         if (waitingHandler != null) {
             waitingHandler.setSecondaryProgressCounterIndeterminate(false);
             waitingHandler.setMaxSecondaryProgressCounter(getSpectrumIdentificationSize());
@@ -1487,6 +1715,7 @@ public abstract class Identification extends ExperimentObject {
      */
     public void buildPeptidesAndProteins(String spectrumMatchKey, SequenceMatchingPreferences sequenceMatchingPreferences) throws SQLException, IOException, ClassNotFoundException, InterruptedException {
 
+        spectrumMatchKey = getSpectrumKeyIndex().intern(spectrumMatchKey);
         SpectrumMatch spectrumMatch = getSpectrumMatch(spectrumMatchKey);
         if (spectrumMatch == null) {
             throw new IllegalArgumentException("Spectrum match " + spectrumMatchKey + " not found.");
@@ -1496,7 +1725,7 @@ public abstract class Identification extends ExperimentObject {
             if (peptide.getParentProteinsNoRemapping() == null) {
                 peptide.getParentProteins(sequenceMatchingPreferences);
             }
-            String peptideKey = peptide.getMatchingKey(sequenceMatchingPreferences);
+            String peptideKey = getPeptideKeyIndex().intern(peptide.getMatchingKey(sequenceMatchingPreferences));
             PeptideMatch peptideMatch;
 
             if (peptideIdentification.contains(peptideKey)) {
@@ -1521,7 +1750,7 @@ public abstract class Identification extends ExperimentObject {
                 }
             }
 
-            String proteinKey = ProteinMatch.getProteinMatchKey(peptide);
+            String proteinKey = getProteinKeyIndex().intern(ProteinMatch.getProteinMatchKey(peptide));
 
             if (proteinIdentification.contains(proteinKey)) {
                 ProteinMatch proteinMatch = getProteinMatch(proteinKey);
@@ -1560,6 +1789,250 @@ public abstract class Identification extends ExperimentObject {
         }
     }
 
+    /**
+     * Returns the partition of the given key.
+     *
+     * @param key the key
+     * @param nPartitions the number of partitions
+     *
+     * @return the partition of the given key
+     */
+    private static int getPartition(String key, int nPartitions) {
+        int partition = key.hashCode() % nPartitions;
+        return partition < 0 ? partition + nPartitions : partition;
+    }
+
+    /**
+     * Waits for the given task to complete and returns its result. The
+     * exceptions encountered by the task are thrown again.
+     *
+     * @param <T> the type of result
+     * @param task the task
+     *
+     * @return the result of the task
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * loading the object from the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the object in the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while casting the database input in the desired match class
+     * @throws InterruptedException thrown whenever a threading issue occurred
+     * while interacting with the database
+     */
+    private static <T> T getTaskResult(Future<T> task) throws SQLException, IOException, ClassNotFoundException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * The peptide and protein keys of the best peptide assumption of a
+     * spectrum match.
+     */
+    private static class PsmMapping {
+
+        /**
+         * The key of the spectrum match.
+         */
+        private final String spectrumMatchKey;
+        /**
+         * The peptide of the best peptide assumption.
+         */
+        private final Peptide peptide;
+        /**
+         * The key of the peptide match.
+         */
+        private final String peptideKey;
+        /**
+         * The key of the protein match.
+         */
+        private final String proteinKey;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrumMatchKey the key of the spectrum match
+         * @param peptide the peptide of the best peptide assumption
+         * @param peptideKey the key of the peptide match
+         * @param proteinKey the key of the protein match
+         */
+        public PsmMapping(String spectrumMatchKey, Peptide peptide, String peptideKey, String proteinKey) {
+            this.spectrumMatchKey = spectrumMatchKey;
+            this.peptide = peptide;
+            this.peptideKey = peptideKey;
+            this.proteinKey = proteinKey;
+        }
+    }
+
+    /**
+     * Maps the best peptide assumptions of a chunk of spectrum matches to the
+     * proteins.
+     */
+    private class PsmMapper implements Callable<ArrayList<PsmMapping>> {
+
+        /**
+         * The keys of the spectrum matches of the chunk.
+         */
+        private final ArrayList<String> spectrumMatchKeys;
+        /**
+         * The sequence matching preferences.
+         */
+        private final SequenceMatchingPreferences sequenceMatchingPreferences;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrumMatchKeys the keys of the spectrum matches of the
+         * chunk
+         * @param sequenceMatchingPreferences the sequence matching preferences
+         */
+        public PsmMapper(ArrayList<String> spectrumMatchKeys, SequenceMatchingPreferences sequenceMatchingPreferences) {
+            this.spectrumMatchKeys = spectrumMatchKeys;
+            this.sequenceMatchingPreferences = sequenceMatchingPreferences;
+        }
+
+        @Override
+        public ArrayList<PsmMapping> call() throws Exception {
+            ArrayList<PsmMapping> result = new ArrayList<PsmMapping>(spectrumMatchKeys.size());
+            KeyIndex peptideKeys = getPeptideKeyIndex();
+            KeyIndex proteinKeys = getProteinKeyIndex();
+            for (String spectrumMatchKey : spectrumMatchKeys) {
+                SpectrumMatch spectrumMatch = getSpectrumMatch(spectrumMatchKey);
+                if (spectrumMatch == null) {
+                    throw new IllegalArgumentException("Spectrum match " + spectrumMatchKey + " not found.");
+                }
+                if (spectrumMatch.getBestPeptideAssumption() != null) {
+                    Peptide peptide = spectrumMatch.getBestPeptideAssumption().getPeptide();
+                    if (peptide.getParentProteinsNoRemapping() == null) {
+                        peptide.getParentProteins(sequenceMatchingPreferences);
+                    }
+                    String peptideKey = peptideKeys.intern(peptide.getMatchingKey(sequenceMatchingPreferences));
+                    String proteinKey = proteinKeys.intern(ProteinMatch.getProteinMatchKey(peptide));
+                    result.add(new PsmMapping(spectrumMatchKey, peptide, peptideKey, proteinKey));
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Groups the spectrum matches of a partition of the peptide keys in
+     * peptide matches. Existing peptide matches are completed.
+     */
+    private class PeptideGrouper implements Callable<HashMap<String, PeptideMatch>> {
+
+        /**
+         * The mappings of the partition in the order of the files.
+         */
+        private final ArrayList<PsmMapping> psmMappings;
+
+        /**
+         * Constructor.
+         *
+         * @param psmMappings the mappings of the partition in the order of the
+         * files
+         */
+        public PeptideGrouper(ArrayList<PsmMapping> psmMappings) {
+            this.psmMappings = psmMappings;
+        }
+
+        @Override
+        public HashMap<String, PeptideMatch> call() throws Exception {
+            HashMap<String, PeptideMatch> result = new HashMap<String, PeptideMatch>();
+            for (PsmMapping psmMapping : psmMappings) {
+                String peptideKey = psmMapping.peptideKey;
+                PeptideMatch peptideMatch = result.get(peptideKey);
+                if (peptideMatch == null) {
+                    if (peptideIdentification.contains(peptideKey)) {
+                        peptideMatch = getPeptideMatch(peptideKey);
+                        if (peptideMatch == null) {
+                            throw new IllegalArgumentException("Peptide match " + peptideKey + " not found.");
+                        }
+                    } else {
+                        peptideMatch = new PeptideMatch(psmMapping.peptide, peptideKey);
+                    }
+                    result.put(peptideKey, peptideMatch);
+                }
+                peptideMatch.addSpectrumMatchKey(psmMapping.spectrumMatchKey);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Groups the peptide matches of a partition of the protein keys in protein
+     * matches. Existing protein matches are completed.
+     */
+    private class ProteinGrouper implements Callable<HashMap<String, ProteinMatch>> {
+
+        /**
+         * The mappings of the partition in the order of the files.
+         */
+        private final ArrayList<PsmMapping> psmMappings;
+        /**
+         * The peptide matches indexed by key.
+         */
+        private final HashMap<String, PeptideMatch> peptideMatches;
+
+        /**
+         * Constructor.
+         *
+         * @param psmMappings the mappings of the partition in the order of the
+         * files
+         * @param peptideMatches the peptide matches indexed by key
+         */
+        public ProteinGrouper(ArrayList<PsmMapping> psmMappings, HashMap<String, PeptideMatch> peptideMatches) {
+            this.psmMappings = psmMappings;
+            this.peptideMatches = peptideMatches;
+        }
+
+        @Override
+        public HashMap<String, ProteinMatch> call() throws Exception {
+            HashMap<String, ProteinMatch> result = new HashMap<String, ProteinMatch>();
+            for (PsmMapping psmMapping : psmMappings) {
+                String proteinKey = psmMapping.proteinKey;
+                String peptideKey = psmMapping.peptideKey;
+                ProteinMatch proteinMatch = result.get(proteinKey);
+                if (proteinMatch == null) {
+                    if (proteinIdentification.contains(proteinKey)) {
+                        proteinMatch = getProteinMatch(proteinKey);
+                        if (proteinMatch == null) {
+                            throw new IllegalArgumentException("Protein match " + proteinKey + " not found.");
+                        }
+                    } else {
+                        proteinMatch = new ProteinMatch(peptideMatches.get(peptideKey).getTheoreticPeptide(), peptideKey);
+                        if (!proteinMatch.getKey().equals(proteinKey)) {
+                            throw new IllegalArgumentException("Protein inference issue: the protein key " + proteinKey + " does not match the peptide proteins " + proteinMatch.getKey() + "."
+                                    + " Peptide: " + peptideKey + " found in spectrum " + psmMapping.spectrumMatchKey + ".");
+                        }
+                    }
+                    result.put(proteinKey, proteinMatch);
+                }
+                if (!proteinMatch.getPeptideMatchesKeys().contains(peptideKey)) {
+                    proteinMatch.addPeptideMatchKey(peptideKey);
+                }
+            }
+            return result;
+        }
+    }
+
     /**
      * Add a set of spectrumMatches to the model.
      *
@@ -1581,6 +2054,161 @@ public abstract class Identification extends ExperimentObject {
         }
     }
 
+    /**
+     * Adds a batch of spectrum matches to the model. The matches and
+     * assumptions of spectra not seen before are written in the database in
+     * batch, the hits of matches of the same spectrum within the batch are
+     * merged, skipping the duplicate assumptions. Matches of spectra already
+     * in the model are added one by one.
+     *
+     * @param spectrumMatches the spectrum matches
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The progress will be displayed on the secondary progress bar.
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * loading the object from the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the object in the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while casting the database input in the desired match class
+     * @throws InterruptedException thrown whenever a threading issue occurred
+     * while interacting with the database
+     */
+    public synchronized void addSpectrumMatches(Collection<SpectrumMatch> spectrumMatches, WaitingHandler waitingHandler)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+
+        HashMap<String, SpectrumMatch> newMatches = new HashMap<String, SpectrumMatch>(spectrumMatches.size());
+
+        for (SpectrumMatch spectrumMatch : spectrumMatches) {
+
+            String spectrumKey = spectrumMatch.getKey();
+            SpectrumMatch batchMatch = newMatches.get(spectrumKey);
+
+            if (batchMatch != null) {
+                HashMap<Integer, HashMap<Double, ArrayList<SpectrumIdentificationAssumption>>> assumptions = spectrumMatch.getAssumptionsMap();
+                if (assumptions != null) {
+                    for (Integer advocateId : assumptions.keySet()) {
+                        for (ArrayList<SpectrumIdentificationAssumption> assumptionList : assumptions.get(advocateId).values()) {
+                            for (SpectrumIdentificationAssumption assumption : assumptionList) {
+                                if (!hasAssumption(batchMatch, advocateId, assumption)) {
+                                    batchMatch.addHit(advocateId, assumption, false);
+                                }
+                            }
+                        }
+                    }
+                }
+            } else {
+                String spectrumFile = Spectrum.getSpectrumFile(spectrumKey);
+                HashSet<String> spectrumKeys = spectrumIdentificationMap.get(spectrumFile);
+                if (spectrumKeys != null && spectrumKeys.contains(spectrumKey)) {
+                    addSpectrumMatch(spectrumMatch);
+                } else {
+                    newMatches.put(spectrumKey, spectrumMatch);
+                }
+            }
+        }
+
+        HashMap<String, HashMap<Integer, HashMap<Double, ArrayList<SpectrumIdentificationAssumption>>>> newAssumptions
+                = new HashMap<String, HashMap<Integer, HashMap<Double, ArrayList<SpectrumIdentificationAssumption>>>>(newMatches.size());
+
+        for (SpectrumMatch spectrumMatch : newMatches.values()) {
+            String spectrumKey = spectrumMatch.getKey();
+            HashMap<Integer, HashMap<Double, ArrayList<SpectrumIdentificationAssumption>>> assumptions = spectrumMatch.getAssumptionsMap();
+            if (assumptions != null) {
+                newAssumptions.put(spectrumKey, assumptions);
+                spectrumMatch.removeAssumptions();
+            }
+            String spectrumFile = Spectrum.getSpectrumFile(spectrumKey);
+            HashSet<String> spectrumKeys = spectrumIdentificationMap.get(spectrumFile);
+            if (spectrumKeys == null) {
+                spectrumKeys = new HashSet<String>(1000);
+                spectrumIdentificationMap.put(spectrumFile, spectrumKeys);
+            }
+            spectrumKeys.add(getSpectrumKeyIndex().intern(spectrumKey));
+        }
+
+        if (!newAssumptions.isEmpty()) {
+            identificationDB.addAssumptions(newAssumptions, waitingHandler);
+        }
+        if (!newMatches.isEmpty()) {
+            identificationDB.addSpectrumMatches(newMatches, waitingHandler);
+        }
+    }
+
+    /**
+     * Indicates whether a spectrum match already contains the given
+     * assumption for the given advocate, see contains(ArrayList,
+     * SpectrumIdentificationAssumption).
+     *
+     * @param spectrumMatch the spectrum match
+     * @param advocateId the index of the advocate
+     * @param assumption the assumption
+     *
+     * @return a boolean indicating whether the spectrum match already
+     * contains the assumption
+     */
+    private static boolean hasAssumption(SpectrumMatch spectrumMatch, int advocateId, SpectrumIdentificationAssumption assumption) {
+        HashMap<Integer, HashMap<Double, ArrayList<SpectrumIdentificationAssumption>>> assumptions = spectrumMatch.getAssumptionsMap();
+        if (assumptions == null) {
+            return false;
+        }
+        HashMap<Double, ArrayList<SpectrumIdentificationAssumption>> advocateMap = assumptions.get(advocateId);
+        if (advocateMap == null) {
+            return false;
+        }
+        ArrayList<SpectrumIdentificationAssumption> assumptionList = advocateMap.get(assumption.getScore());
+        return assumptionList != null && contains(assumptionList, assumption);
+    }
+
+    /**
+     * Indicates whether a list of assumptions of the same advocate and score
+     * contains the given assumption: the same instance or, for peptide
+     * assumptions, an assumption of the same charge, sequence and
+     * modifications.
+     *
+     * @param assumptionList the list of assumptions
+     * @param assumption the assumption
+     *
+     * @return a boolean indicating whether the list contains the assumption
+     */
+    private static boolean contains(ArrayList<SpectrumIdentificationAssumption> assumptionList, SpectrumIdentificationAssumption assumption) {
+        for (SpectrumIdentificationAssumption otherAssumption : assumptionList) {
+            if (otherAssumption == assumption) {
+                return true;
+            }
+            if (assumption instanceof PeptideAssumption && otherAssumption instanceof PeptideAssumption
+                    && assumption.getIdentificationCharge().equals(otherAssumption.getIdentificationCharge())) {
+                Peptide peptide = ((PeptideAssumption) assumption).getPeptide();
+                Peptide otherPeptide = ((PeptideAssumption) otherAssumption).getPeptide();
+                if (peptide.getSequence().equals(otherPeptide.getSequence())
+                        && peptide.getNModifications() == otherPeptide.getNModifications()) {
+                    boolean sameModifications = true;
+                    if (peptide.isModified()) {
+                        ArrayList<ModificationMatch> otherModifications = new ArrayList<ModificationMatch>(otherPeptide.getModificationMatches());
+                        for (ModificationMatch modificationMatch : peptide.getModificationMatches()) {
+                            ModificationMatch found = null;
+                            for (ModificationMatch otherMatch : otherModifications) {
+                                if (modificationMatch.isSameAs(otherMatch) && modificationMatch.getModificationSite() == otherMatch.getModificationSite()) {
+                                    found = otherMatch;
+                                    break;
+                                }
+                            }
+                            if (found == null) {
+                                sameModifications = false;
+                                break;
+                            }
+                            otherModifications.remove(found);
+                        }
+                    }
+                    if (sameModifications) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Getter for the identification method used.
      *
@@ -1601,6 +2229,134 @@ public abstract class Identification extends ExperimentObject {
         return proteinMap;
     }
 
+    /**
+     * Returns the index of the spectrum match keys. The index is built from
+     * the imported spectrum matches if not set.
+     *
+     * @return the index of the spectrum match keys
+     */
+    private synchronized KeyIndex getSpectrumKeyIndex() {
+        if (spectrumKeyIndex == null) {
+            KeyIndex keyIndex = new KeyIndex(getSpectrumIdentificationSize());
+            for (HashSet<String> spectrumKeys : spectrumIdentificationMap.values()) {
+                for (String spectrumKey : spectrumKeys) {
+                    keyIndex.register(spectrumKey);
+                }
+            }
+            spectrumKeyIndex = keyIndex;
+        }
+        return spectrumKeyIndex;
+    }
+
+    /**
+     * Returns the index of the peptide match keys. The index is built from the
+     * peptide matches if not set.
+     *
+     * @return the index of the peptide match keys
+     */
+    private synchronized KeyIndex getPeptideKeyIndex() {
+        if (peptideKeyIndex == null) {
+            KeyIndex keyIndex = new KeyIndex(peptideIdentification.size());
+            for (String peptideKey : peptideIdentification) {
+                keyIndex.register(peptideKey);
+            }
+            peptideKeyIndex = keyIndex;
+        }
+        return peptideKeyIndex;
+    }
+
+    /**
+     * Returns the index of the protein match keys. The index is built from the
+     * protein matches if not set.
+     *
+     * @return the index of the protein match keys
+     */
+    private synchronized KeyIndex getProteinKeyIndex() {
+        if (proteinKeyIndex == null) {
+            KeyIndex keyIndex = new KeyIndex(proteinIdentification.size());
+            for (String proteinKey : proteinIdentification) {
+                keyIndex.register(proteinKey);
+            }
+            proteinKeyIndex = keyIndex;
+        }
+        return proteinKeyIndex;
+    }
+
+    /**
+     * Returns the id of the given spectrum match key, -1 if not found. Ids
+     * are integers attributed in the order of import and not reused after
+     * the removal of a match. They are not saved with the identification and
+     * are attributed anew after loading.
+     *
+     * @param spectrumKey the key of the spectrum match
+     *
+     * @return the id of the spectrum match key
+     */
+    public int getSpectrumMatchId(String spectrumKey) {
+        return getSpectrumKeyIndex().getId(spectrumKey);
+    }
+
+    /**
+     * Returns the spectrum match key of the given id, null if not found.
+     *
+     * @param id the id of the spectrum match key
+     *
+     * @return the spectrum match key
+     */
+    public String getSpectrumMatchKey(int id) {
+        return getSpectrumKeyIndex().getKey(id);
+    }
+
+    /**
+     * Returns the id of the given peptide match key, -1 if not found. Ids are
+     * integers attributed in the order of creation of the matches and not
+     * reused after the removal of a match. They are not saved with the
+     * identification and are attributed anew after loading.
+     *
+     * @param peptideKey the key of the peptide match
+     *
+     * @return the id of the peptide match key
+     */
+    public int getPeptideMatchId(String peptideKey) {
+        return getPeptideKeyIndex().getId(peptideKey);
+    }
+
+    /**
+     * Returns the peptide match key of the given id, null if not found.
+     *
+     * @param id the id of the peptide match key
+     *
+     * @return the peptide match key
+     */
+    public String getPeptideMatchKey(int id) {
+        return getPeptideKeyIndex().getKey(id);
+    }
+
+    /**
+     * Returns the id of the given protein match key, -1 if not found. Ids are
+     * integers attributed in the order of creation of the matches and not
+     * reused after the removal of a match. They are not saved with the
+     * identification and are attributed anew after loading.
+     *
+     * @param proteinKey the key of the protein match
+     *
+     * @return the id of the protein match key
+     */
+    public int getProteinMatchId(String proteinKey) {
+        return getProteinKeyIndex().getId(proteinKey);
+    }
+
+    /**
+     * Returns the protein match key of the given id, null if not found.
+     *
+     * @param id the id of the protein match key
+     *
+     * @return the protein match key
+     */
+    public String getProteinMatchKey(int id) {
+        return getProteinKeyIndex().getKey(id);
+    }
+
     /**
      * Closes the database connection.
      *
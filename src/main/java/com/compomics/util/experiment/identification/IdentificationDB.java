@@ -439,6 +439,43 @@ public class IdentificationDB implements Serializable {
         objectsDB.insertObject(tableName, spectrumKey, assumptions, true);
     }
 
+    /**
+     * Adds the assumptions of a batch of new spectra to the database. The
+     * assumptions are written directly in the database, one batch insertion
+     * per table.
+     *
+     * @param assumptions the assumptions to add in a map: PSM key &gt;
+     * advocate id &gt; score &gt; list of assumptions
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The progress will be displayed on the secondary progress bar.
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * adding the object in the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the object
+     * @throws java.lang.InterruptedException exception thrown whenever a
+     * threading issue occurred when interacting with the database
+     */
+    public void addAssumptions(HashMap<String, HashMap<Integer, HashMap<Double, ArrayList<SpectrumIdentificationAssumption>>>> assumptions, WaitingHandler waitingHandler) throws SQLException, IOException, InterruptedException {
+        HashMap<String, HashMap<String, Object>> assumptionsByTable = new HashMap<String, HashMap<String, Object>>();
+        for (String key : assumptions.keySet()) {
+            String tableName = getAssumptionTable(key);
+            HashMap<String, Object> tableAssumptions = assumptionsByTable.get(tableName);
+            if (tableAssumptions == null) {
+                tableAssumptions = new HashMap<String, Object>(assumptions.size());
+                assumptionsByTable.put(tableName, tableAssumptions);
+            }
+            tableAssumptions.put(key, assumptions.get(key));
+        }
+        for (String tableName : assumptionsByTable.keySet()) {
+            checkTable(assumptionsTables, tableName);
+            objectsDB.insertObjects(tableName, assumptionsByTable.get(tableName), waitingHandler, true);
+            if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                return;
+            }
+        }
+    }
+
     /**
      * Returns the raw assumptions of the given spectrum in a map: advocate id →
      * score → list of assumptions.
@@ -522,6 +559,42 @@ public class IdentificationDB implements Serializable {
         objectsDB.insertObject(tableName, key, spectrumMatch, true);
     }
 
+    /**
+     * Adds a batch of new spectrum matches to the database. The matches are
+     * written directly in the database, one batch insertion per table.
+     *
+     * @param spectrumMatches the spectrum matches to add in a map: PSM key
+     * &gt; spectrum match
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The progress will be displayed on the secondary progress bar.
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * adding the object in the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the object
+     * @throws java.lang.InterruptedException exception thrown whenever a
+     * threading issue occurred when interacting with the database
+     */
+    public void addSpectrumMatches(HashMap<String, SpectrumMatch> spectrumMatches, WaitingHandler waitingHandler) throws SQLException, IOException, InterruptedException {
+        HashMap<String, HashMap<String, Object>> matchesByTable = new HashMap<String, HashMap<String, Object>>();
+        for (String key : spectrumMatches.keySet()) {
+            String tableName = getSpectrumMatchTable(key);
+            HashMap<String, Object> tableMatches = matchesByTable.get(tableName);
+            if (tableMatches == null) {
+                tableMatches = new HashMap<String, Object>(spectrumMatches.size());
+                matchesByTable.put(tableName, tableMatches);
+            }
+            tableMatches.put(key, spectrumMatches.get(key));
+        }
+        for (String tableName : matchesByTable.keySet()) {
+            checkTable(psmTables, tableName);
+            objectsDB.insertObjects(tableName, matchesByTable.get(tableName), waitingHandler, true);
+            if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                return;
+            }
+        }
+    }
+
     /**
      * Indicates whether the table for the given spectrum match key has been
      * created.
@@ -571,6 +644,28 @@ public class IdentificationDB implements Serializable {
         objectsDB.insertObject(peptideTableName, peptideMatch.getKey(), peptideMatch, true);
     }
 
+    /**
+     * Adds a batch of new peptide matches to the database. The matches are
+     * written directly in the database in a single batch insertion.
+     *
+     * @param peptideMatches the peptide matches to add in a map: peptide key &gt;
+     * peptide match
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The progress will be displayed on the secondary progress bar.
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * adding the object in the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the object
+     * @throws java.lang.InterruptedException exception thrown whenever a
+     * threading issue occurred when interacting with the database
+     */
+    public void addPeptideMatches(HashMap<String, PeptideMatch> peptideMatches, WaitingHandler waitingHandler) throws SQLException, IOException, InterruptedException {
+        if (!peptideMatches.isEmpty()) {
+            objectsDB.insertObjects(peptideTableName, new HashMap<String, Object>(peptideMatches), waitingHandler, true);
+        }
+    }
+
     /**
      * Returns the desired protein match.
      *
@@ -606,6 +701,28 @@ public class IdentificationDB implements Serializable {
         objectsDB.insertObject(proteinTableName, proteinMatch.getKey(), proteinMatch, true);
     }
 
+    /**
+     * Adds a batch of new protein matches to the database. The matches are
+     * written directly in the database in a single batch insertion.
+     *
+     * @param proteinMatches the protein matches to add in a map: protein key &gt;
+     * protein match
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The progress will be displayed on the secondary progress bar.
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * adding the object in the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the object
+     * @throws java.lang.InterruptedException exception thrown whenever a
+     * threading issue occurred when interacting with the database
+     */
+    public void addProteinMatches(HashMap<String, ProteinMatch> proteinMatches, WaitingHandler waitingHandler) throws SQLException, IOException, InterruptedException {
+        if (!proteinMatches.isEmpty()) {
+            objectsDB.insertObjects(proteinTableName, new HashMap<String, Object>(proteinMatches), waitingHandler, true);
+        }
+    }
+
     /**
      * Adds an identification match to the database.
      *
@@ -1161,6 +1278,44 @@ public class IdentificationDB implements Serializable {
         objectsDB.insertObject(tableName, key, urParameter, true);
     }
 
+    /**
+     * Adds a batch of spectrum match parameters to the database. The
+     * parameters are written directly in the database, one batch insertion
+     * per spectrum file.
+     *
+     * @param parameters the parameters to add in a map: PSM key &gt;
+     * parameter
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The progress will be displayed on the secondary progress bar.
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * adding the object in the database
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the object
+     * @throws java.lang.InterruptedException exception thrown whenever a
+     * threading issue occurred when interacting with the database
+     */
+    public void addSpectrumMatchParameters(HashMap<String, UrParameter> parameters, WaitingHandler waitingHandler) throws SQLException, IOException, InterruptedException {
+        HashMap<String, HashMap<String, Object>> parametersByTable = new HashMap<String, HashMap<String, Object>>();
+        for (String key : parameters.keySet()) {
+            UrParameter urParameter = parameters.get(key);
+            String tableName = getSpectrumParameterTable(key, urParameter);
+            HashMap<String, Object> tableParameters = parametersByTable.get(tableName);
+            if (tableParameters == null) {
+                tableParameters = new HashMap<String, Object>(parameters.size());
+                parametersByTable.put(tableName, tableParameters);
+            }
+            tableParameters.put(key, urParameter);
+        }
+        for (String tableName : parametersByTable.keySet()) {
+            checkTable(psmParametersTables, tableName);
+            objectsDB.insertObjects(tableName, parametersByTable.get(tableName), waitingHandler, false);
+            if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                return;
+            }
+        }
+    }
+
     /**
      * Returns the desired peptide match parameter.
      *
@@ -0,0 +1,250 @@
+package com.compomics.util.experiment.identification;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Index interning match keys so that a key shared by different maps is stored
+ * once, and assigning them an integer id, the rank of the first registration
+ * of the key. Ids are not reused when a key is unregistered. Keys are found
+ * back using an open addressing table of ids, so that the index needs about
+ * two references per key.
+ *
+ * @author Marc Vaudel
+ */
+public class KeyIndex implements Serializable {
+
+    /**
+     * The version UID for Serialization/Deserialization compatibility.
+     */
+    static final long serialVersionUID = 4826103795734962201L;
+    /**
+     * The initial capacity of the index.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * The keys indexed by id.
+     */
+    private String[] keys;
+    /**
+     * The number of ids attributed.
+     */
+    private int size = 0;
+    /**
+     * The number of keys currently registered.
+     */
+    private int nKeys = 0;
+    /**
+     * The hash table of the ids: id + 1, 0 for an empty slot.
+     */
+    private transient int[] slots;
+
+    /**
+     * Constructor.
+     */
+    public KeyIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param expectedSize the expected number of keys
+     */
+    public KeyIndex(int expectedSize) {
+        keys = new String[Math.max(expectedSize, INITIAL_CAPACITY)];
+        slots = new int[getTableSize(keys.length)];
+    }
+
+    /**
+     * Returns the id of the given key and registers the key if not done
+     * already.
+     *
+     * @param key the key
+     *
+     * @return the id of the key
+     */
+    public synchronized int register(String key) {
+        int slot = getSlot(key);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * keys.length);
+        }
+        int id = size++;
+        keys[id] = key;
+        slots[slot] = id + 1;
+        nKeys++;
+        if (2 * size > slots.length) {
+            rebuildSlots(getTableSize(keys.length));
+        }
+        return id;
+    }
+
+    /**
+     * Unregisters the given key. The id of the key is not attributed again.
+     *
+     * @param key the key
+     *
+     * @return the id the key had, -1 if not registered
+     */
+    public synchronized int unregister(String key) {
+        int slot = getSlot(key);
+        if (slots[slot] == 0) {
+            return -1;
+        }
+        int id = slots[slot] - 1;
+        keys[id] = null;
+        slots[slot] = 0;
+        nKeys--;
+        // shift back the following ids of the cluster so that they remain reachable
+        int mask = slots.length - 1;
+        int next = (slot + 1) & mask;
+        while (slots[next] != 0) {
+            int home = getHomeSlot(keys[slots[next] - 1]);
+            boolean movable = slot <= next ? home <= slot || home > next : home <= slot && home > next;
+            if (movable) {
+                slots[slot] = slots[next];
+                slots[next] = 0;
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the interned instance of the given key, registering it if not
+     * done already. Storing the interned instance instead of the key avoids
+     * duplicating the key in the different maps.
+     *
+     * @param key the key
+     *
+     * @return the interned instance of the key
+     */
+    public synchronized String intern(String key) {
+        return keys[register(key)];
+    }
+
+    /**
+     * Returns the id of the given key, -1 if not registered.
+     *
+     * @param key the key
+     *
+     * @return the id of the key
+     */
+    public synchronized int getId(String key) {
+        return slots[getSlot(key)] - 1;
+    }
+
+    /**
+     * Returns the key of the given id, null if not registered.
+     *
+     * @param id the id
+     *
+     * @return the key of the given id
+     */
+    public synchronized String getKey(int id) {
+        if (id < 0 || id >= size) {
+            return null;
+        }
+        return keys[id];
+    }
+
+    /**
+     * Indicates whether the given key is registered.
+     *
+     * @param key the key
+     *
+     * @return a boolean indicating whether the given key is registered
+     */
+    public synchronized boolean contains(String key) {
+        return slots[getSlot(key)] != 0;
+    }
+
+    /**
+     * Returns the number of keys registered.
+     *
+     * @return the number of keys registered
+     */
+    public synchronized int size() {
+        return nKeys;
+    }
+
+    /**
+     * Returns the slot of the given key in the table: either the slot of the
+     * key or the empty slot where it should be inserted.
+     *
+     * @param key the key
+     *
+     * @return the slot of the key
+     */
+    private int getSlot(String key) {
+        int mask = slots.length - 1;
+        int slot = getHomeSlot(key);
+        while (slots[slot] != 0 && !keys[slots[slot] - 1].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the slot where the search for the given key starts.
+     *
+     * @param key the key
+     *
+     * @return the first slot of the key
+     */
+    private int getHomeSlot(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (slots.length - 1);
+    }
+
+    /**
+     * Rebuilds the table of ids.
+     *
+     * @param tableSize the size of the new table
+     */
+    private void rebuildSlots(int tableSize) {
+        slots = new int[tableSize];
+        for (int id = 0; id < size; id++) {
+            if (keys[id] != null) {
+                slots[getSlot(keys[id])] = id + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the table of ids for the given capacity, a power of
+     * two at least twice the capacity.
+     *
+     * @param capacity the capacity
+     *
+     * @return the size of the table of ids
+     */
+    private static int getTableSize(int capacity) {
+        int tableSize = INITIAL_CAPACITY;
+        while (tableSize < 2 * capacity) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    /**
+     * Rebuilds the table of ids after deserialization.
+     *
+     * @param in the object input stream
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the object
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while deserializing the object
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        rebuildSlots(getTableSize(keys.length));
+    }
+}
@@ -24,15 +24,33 @@ public class TagFactory {
         if (length == 0) {
             return new ArrayList<String>();
         }
-        ArrayList<String> tempList, result = new ArrayList<String> (AminoAcid.getAminoAcidsList());
-        for (int i = 1; i < length; i++) {
-            tempList = new ArrayList<String>();
-            for (String tag : result) {
-                for (char aa : AminoAcid.getAminoAcids()) {
-                    tempList.add(tag + aa);
-                }
+        char[] aminoAcids = AminoAcid.getAminoAcids();
+        int nAa = aminoAcids.length;
+        int nCombinations = 1;
+        for (int i = 0; i < length; i++) {
+            if (nCombinations > Integer.MAX_VALUE / nAa) {
+                throw new IllegalArgumentException("Too many combinations for tags of length " + length + ".");
+            }
+            nCombinations *= nAa;
+        }
+        ArrayList<String> result = new ArrayList<String>(nCombinations);
+        int[] indexes = new int[length];
+        char[] tag = new char[length];
+        for (int i = 0; i < length; i++) {
+            tag[i] = aminoAcids[0];
+        }
+        for (int combination = 0; combination < nCombinations; combination++) {
+            result.add(new String(tag));
+            // Increment the last position and carry over
+            int position = length - 1;
+            while (position >= 0 && ++indexes[position] == nAa) {
+                indexes[position] = 0;
+                tag[position] = aminoAcids[0];
+                position--;
+            }
+            if (position >= 0) {
+                tag[position] = aminoAcids[indexes[position]];
             }
-            result = tempList;
         }
         return result;
     }
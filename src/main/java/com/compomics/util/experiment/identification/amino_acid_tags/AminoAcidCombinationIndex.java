@@ -0,0 +1,516 @@
+package com.compomics.util.experiment.identification.amino_acid_tags;
+
+import com.compomics.util.experiment.biology.AminoAcid;
+import com.compomics.util.io.SerializationUtils;
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the amino acid compositions up to a given length sorted by mass.
+ * The compositions are built from the implemented amino acids carrying their
+ * fixed modifications and, as alternative residues, their variable
+ * modifications. The index is immutable once built and can thus be shared
+ * between threads. Indexes are kept in a registry and can be saved in a cache
+ * folder to be reused between runs.
+ *
+ * @author Marc Vaudel
+ */
+public class AminoAcidCombinationIndex implements Serializable {
+
+    /**
+     * Serial number for backward compatibility.
+     */
+    static final long serialVersionUID = 4725307934127785121L;
+    /**
+     * The default maximal length of the compositions.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 5;
+    /**
+     * The indexes already loaded indexed by configuration key.
+     */
+    private static final ConcurrentHashMap<String, AminoAcidCombinationIndex> registry = new ConcurrentHashMap<String, AminoAcidCombinationIndex>();
+    /**
+     * The folder where to save the indexes, null if the indexes should not be
+     * saved.
+     */
+    private static volatile File cacheFolder = null;
+    /**
+     * The key of the configuration used to build this index.
+     */
+    private final String key;
+    /**
+     * The maximal length of the compositions.
+     */
+    private final int maxLength;
+    /**
+     * The amino acid of every building block.
+     */
+    private final char[] blockAminoAcids;
+    /**
+     * The name of the variable modification carried by every building block,
+     * null if none.
+     */
+    private final String[] blockModifications;
+    /**
+     * The mass of every building block.
+     */
+    private final double[] blockMasses;
+    /**
+     * The smallest building block mass.
+     */
+    private final double minBlockMass;
+    /**
+     * The mass of the compositions sorted by length and by ascending mass.
+     */
+    private final double[] masses;
+    /**
+     * The index of the first composition of every length in the masses
+     * array, the last element is the number of compositions.
+     */
+    private final int[] lengthStart;
+    /**
+     * The building blocks of the compositions in the order of the masses,
+     * maxLength indexes per composition.
+     */
+    private final byte[] compositions;
+
+    /**
+     * Constructor.
+     *
+     * @param maxLength the maximal length of the compositions
+     * @param fixedAaModificationsMasses the mass of the fixed modifications
+     * on amino acids: amino acid &gt; mass
+     * @param variableAaModifications the variable modifications on amino
+     * acids: amino acid &gt; modification name &gt; mass
+     */
+    public AminoAcidCombinationIndex(int maxLength, HashMap<Character, Double> fixedAaModificationsMasses, HashMap<Character, HashMap<String, Double>> variableAaModifications) {
+
+        if (maxLength < 1 || maxLength > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Composition length must be between 1 and " + Byte.MAX_VALUE + ".");
+        }
+        this.maxLength = maxLength;
+        this.key = getKey(maxLength, fixedAaModificationsMasses, variableAaModifications);
+
+        ArrayList<Character> tempAminoAcids = new ArrayList<Character>();
+        ArrayList<String> tempModifications = new ArrayList<String>();
+        ArrayList<Double> tempMasses = new ArrayList<Double>();
+        for (char aa : AminoAcid.getAminoAcids()) {
+            double mass = AminoAcid.getAminoAcid(aa).getMonoisotopicMass();
+            Double fixedMass = fixedAaModificationsMasses.get(aa);
+            if (fixedMass != null) {
+                mass += fixedMass;
+            }
+            tempAminoAcids.add(aa);
+            tempModifications.add(null);
+            tempMasses.add(mass);
+            HashMap<String, Double> variableModifications = variableAaModifications.get(aa);
+            if (variableModifications != null) {
+                for (String modificationName : variableModifications.keySet()) {
+                    tempAminoAcids.add(aa);
+                    tempModifications.add(modificationName);
+                    tempMasses.add(mass + variableModifications.get(modificationName));
+                }
+            }
+        }
+        int nBlocks = tempMasses.size();
+        if (nBlocks > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many modified amino acids to index (" + nBlocks + ").");
+        }
+        blockAminoAcids = new char[nBlocks];
+        blockModifications = new String[nBlocks];
+        blockMasses = new double[nBlocks];
+        double tempMin = Double.MAX_VALUE;
+        for (int i = 0; i < nBlocks; i++) {
+            blockAminoAcids[i] = tempAminoAcids.get(i);
+            blockModifications[i] = tempModifications.get(i);
+            blockMasses[i] = tempMasses.get(i);
+            if (blockMasses[i] < tempMin) {
+                tempMin = blockMasses[i];
+            }
+        }
+        minBlockMass = tempMin;
+
+        // Number of multisets of size 1 to maxLength
+        long nCompositions = 0;
+        long multisets = 1;
+        for (int length = 1; length <= maxLength; length++) {
+            multisets = multisets * (nBlocks + length - 1) / length;
+            nCompositions += multisets;
+        }
+        if (nCompositions > Integer.MAX_VALUE / maxLength) {
+            throw new IllegalArgumentException("Too many compositions to index (" + nCompositions + "), reduce the composition length.");
+        }
+        int n = (int) nCompositions;
+        double[] unsortedMasses = new double[n];
+        byte[] unsortedLengths = new byte[n];
+        byte[] unsortedCompositions = new byte[n * maxLength];
+
+        // Enumerate the compositions as non decreasing block indexes
+        byte[] current = new byte[maxLength];
+        double[] currentMass = new double[maxLength];
+        int cpt = 0, depth = 0;
+        current[0] = 0;
+        while (depth >= 0) {
+            if (current[depth] < nBlocks) {
+                double mass = blockMasses[current[depth]];
+                if (depth > 0) {
+                    mass += currentMass[depth - 1];
+                }
+                currentMass[depth] = mass;
+                unsortedMasses[cpt] = mass;
+                unsortedLengths[cpt] = (byte) (depth + 1);
+                System.arraycopy(current, 0, unsortedCompositions, cpt * maxLength, depth + 1);
+                cpt++;
+                if (depth < maxLength - 1) {
+                    current[depth + 1] = current[depth];
+                    depth++;
+                } else {
+                    current[depth]++;
+                }
+            } else {
+                depth--;
+                if (depth >= 0) {
+                    current[depth]++;
+                }
+            }
+        }
+
+        // Sort by length and mass
+        Integer[] indexes = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        final double[] finalMasses = unsortedMasses;
+        final byte[] finalLengths = unsortedLengths;
+        Arrays.sort(indexes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int result = finalLengths[o1] - finalLengths[o2];
+                if (result == 0) {
+                    result = Double.compare(finalMasses[o1], finalMasses[o2]);
+                }
+                return result;
+            }
+        });
+        masses = new double[n];
+        compositions = new byte[n * maxLength];
+        lengthStart = new int[maxLength + 2];
+        for (int i = 0; i < n; i++) {
+            int index = indexes[i];
+            masses[i] = unsortedMasses[index];
+            System.arraycopy(unsortedCompositions, index * maxLength, compositions, i * maxLength, maxLength);
+            lengthStart[unsortedLengths[index] + 1] = i + 1;
+        }
+    }
+
+    /**
+     * Returns the index for the given configuration. The index is taken from
+     * the registry if loaded, from the cache folder if saved, and built
+     * otherwise.
+     *
+     * @param maxLength the maximal length of the compositions
+     * @param fixedAaModificationsMasses the mass of the fixed modifications
+     * on amino acids: amino acid &gt; mass
+     * @param variableAaModifications the variable modifications on amino
+     * acids: amino acid &gt; modification name &gt; mass
+     *
+     * @return the index for the given configuration
+     */
+    public static AminoAcidCombinationIndex getIndex(int maxLength, HashMap<Character, Double> fixedAaModificationsMasses, HashMap<Character, HashMap<String, Double>> variableAaModifications) {
+
+        String indexKey = getKey(maxLength, fixedAaModificationsMasses, variableAaModifications);
+        AminoAcidCombinationIndex index = registry.get(indexKey);
+        if (index != null) {
+            return index;
+        }
+
+        File indexFile = getIndexFile(indexKey);
+        if (indexFile != null && indexFile.exists()) {
+            try {
+                AminoAcidCombinationIndex savedIndex = (AminoAcidCombinationIndex) SerializationUtils.readObject(indexFile);
+                if (savedIndex.key.equals(indexKey)) {
+                    index = savedIndex;
+                }
+            } catch (Exception e) {
+                // Corrupted or outdated file, the index will be rebuilt
+            }
+        }
+
+        boolean save = false;
+        if (index == null) {
+            index = new AminoAcidCombinationIndex(maxLength, fixedAaModificationsMasses, variableAaModifications);
+            save = indexFile != null;
+        }
+
+        AminoAcidCombinationIndex otherIndex = registry.putIfAbsent(indexKey, index);
+        if (otherIndex != null) {
+            return otherIndex;
+        }
+
+        if (save) {
+            try {
+                SerializationUtils.writeObject(index, indexFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the key of the given configuration.
+     *
+     * @param maxLength the maximal length of the compositions
+     * @param fixedAaModificationsMasses the mass of the fixed modifications
+     * on amino acids
+     * @param variableAaModifications the variable modifications on amino
+     * acids
+     *
+     * @return the key of the given configuration
+     */
+    private static String getKey(int maxLength, HashMap<Character, Double> fixedAaModificationsMasses, HashMap<Character, HashMap<String, Double>> variableAaModifications) {
+        StringBuilder stringBuilder = new StringBuilder();
+        stringBuilder.append(maxLength);
+        for (char aa : AminoAcid.getAminoAcids()) {
+            Double fixedMass = fixedAaModificationsMasses.get(aa);
+            HashMap<String, Double> variableModifications = variableAaModifications.get(aa);
+            if (fixedMass != null || variableModifications != null) {
+                stringBuilder.append('_').append(aa);
+                if (fixedMass != null) {
+                    stringBuilder.append(fixedMass);
+                }
+                if (variableModifications != null) {
+                    ArrayList<String> modificationNames = new ArrayList<String>(variableModifications.keySet());
+                    Collections.sort(modificationNames);
+                    for (String modificationName : modificationNames) {
+                        stringBuilder.append('|').append(modificationName).append(':').append(variableModifications.get(modificationName));
+                    }
+                }
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Returns the file where the index of the given key should be saved, null
+     * if no cache folder is set.
+     *
+     * @param indexKey the key of the index
+     *
+     * @return the file where the index should be saved
+     */
+    private static File getIndexFile(String indexKey) {
+        if (cacheFolder == null) {
+            return null;
+        }
+        return new File(cacheFolder, "aa_combinations_" + Integer.toHexString(indexKey.hashCode()) + ".cui");
+    }
+
+    /**
+     * Sets the folder where the indexes should be saved. Null if the indexes
+     * should not be saved.
+     *
+     * @param folder the folder where the indexes should be saved
+     */
+    public static void setCacheFolder(File folder) {
+        cacheFolder = folder;
+    }
+
+    /**
+     * Returns the folder where the indexes are saved, null if not set.
+     *
+     * @return the folder where the indexes are saved
+     */
+    public static File getCacheFolder() {
+        return cacheFolder;
+    }
+
+    /**
+     * Clears the registry of loaded indexes.
+     */
+    public static void clearRegistry() {
+        registry.clear();
+    }
+
+    /**
+     * Returns the maximal length of the compositions.
+     *
+     * @return the maximal length of the compositions
+     */
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the number of compositions in the index.
+     *
+     * @return the number of compositions in the index
+     */
+    public int size() {
+        return masses.length;
+    }
+
+    /**
+     * Returns the smallest mass of a building block.
+     *
+     * @return the smallest mass of a building block
+     */
+    public double getMinBlockMass() {
+        return minBlockMass;
+    }
+
+    /**
+     * Indicates whether all compositions with a mass lower or equal to the
+     * given mass are in the index, i.e. no composition longer than the
+     * maximal length can be this light.
+     *
+     * @param mass the mass of interest
+     *
+     * @return a boolean indicating whether all compositions up to this mass
+     * are indexed
+     */
+    public boolean isComplete(double mass) {
+        return mass < (maxLength + 1) * minBlockMass;
+    }
+
+    /**
+     * Returns the index of the first composition with a mass higher or equal
+     * to the given mass among the compositions of the given length.
+     *
+     * @param length the length of the compositions
+     * @param mass the mass of interest
+     *
+     * @return the index of the first composition with a mass higher or equal
+     * to the given mass
+     */
+    private int getFirstIndex(int length, double mass) {
+        int low = lengthStart[length], high = lengthStart[length + 1];
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (masses[mid] < mass) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the number of indexed compositions of the given length with a
+     * mass in the given range.
+     *
+     * @param length the length of the compositions
+     * @param minMass the minimal mass
+     * @param maxMass the maximal mass
+     *
+     * @return the number of compositions with a mass in the given range
+     */
+    public int count(int length, double minMass, double maxMass) {
+        if (length < 1 || length > maxLength) {
+            return 0;
+        }
+        return getFirstIndex(length, Math.nextUp(maxMass)) - getFirstIndex(length, minMass);
+    }
+
+    /**
+     * Returns the number of indexed compositions with a mass in the given
+     * range.
+     *
+     * @param minMass the minimal mass
+     * @param maxMass the maximal mass
+     *
+     * @return the number of compositions with a mass in the given range
+     */
+    public int count(double minMass, double maxMass) {
+        int result = 0;
+        for (int length = 1; length <= maxLength; length++) {
+            result += count(length, minMass, maxMass);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the minimal and maximal length of the indexed compositions with
+     * a mass in the given range. Null if none.
+     *
+     * @param minMass the minimal mass
+     * @param maxMass the maximal mass
+     *
+     * @return the minimal and maximal length in an array
+     */
+    public int[] getLengthRange(double minMass, double maxMass) {
+        int minLength = 1;
+        while (minLength <= maxLength && count(minLength, minMass, maxMass) == 0) {
+            minLength++;
+        }
+        if (minLength > maxLength) {
+            return null;
+        }
+        int maxLengthFound = maxLength;
+        while (count(maxLengthFound, minMass, maxMass) == 0) {
+            maxLengthFound--;
+        }
+        return new int[]{minLength, maxLengthFound};
+    }
+
+    /**
+     * Returns the indexed compositions matching the given mass within the
+     * given tolerance, shortest first. Compositions are given as amino acid
+     * sequences in the order of the building blocks, the modifications are not
+     * indicated, see getModifications for this.
+     *
+     * @param mass the mass of interest
+     * @param massTolerance the mass tolerance
+     *
+     * @return the compositions matching the given mass
+     */
+    public ArrayList<String> getCombinations(double mass, double massTolerance) {
+        ArrayList<String> result = new ArrayList<String>();
+        char[] sequence = new char[maxLength];
+        for (int length = 1; length <= maxLength; length++) {
+            int end = getFirstIndex(length, Math.nextUp(mass + massTolerance));
+            for (int i = getFirstIndex(length, mass - massTolerance); i < end; i++) {
+                for (int j = 0; j < length; j++) {
+                    sequence[j] = blockAminoAcids[compositions[i * maxLength + j]];
+                }
+                result.add(new String(sequence, 0, length));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the variable modifications of the compositions matching the
+     * given mass within the given tolerance, in the same order as
+     * getCombinations: composition &gt; modification name at every position,
+     * null if not modified.
+     *
+     * @param mass the mass of interest
+     * @param massTolerance the mass tolerance
+     *
+     * @return the modifications of the compositions matching the given mass
+     */
+    public ArrayList<String[]> getModifications(double mass, double massTolerance) {
+        ArrayList<String[]> result = new ArrayList<String[]>();
+        for (int length = 1; length <= maxLength; length++) {
+            int end = getFirstIndex(length, Math.nextUp(mass + massTolerance));
+            for (int i = getFirstIndex(length, mass - massTolerance); i < end; i++) {
+                String[] modifications = new String[length];
+                for (int j = 0; j < length; j++) {
+                    modifications[j] = blockModifications[compositions[i * maxLength + j]];
+                }
+                result.add(modifications);
+            }
+        }
+        return result;
+    }
+}
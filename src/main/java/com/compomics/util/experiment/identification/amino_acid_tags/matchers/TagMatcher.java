@@ -7,6 +7,7 @@ import com.compomics.util.experiment.biology.mutations.MutationMatrix;
 import com.compomics.util.experiment.biology.PTM;
 import com.compomics.util.experiment.biology.PTMFactory;
 import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.amino_acid_tags.AminoAcidCombinationIndex;
 import com.compomics.util.experiment.identification.amino_acid_tags.SequenceSegment;
 import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.identification.amino_acid_tags.Tag;
@@ -16,9 +17,13 @@ import com.compomics.util.preferences.SequenceMatchingPreferences;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class matches tags to peptides.
@@ -138,25 +143,57 @@ public class TagMatcher {
      */
     private boolean useCache = true;
     /**
-     * If true the indexing of the sequence will be executed in a synchronized
-     * method. Use this in case different threads might attempt to sequence the
-     * same sequence at the same index at the same time.
+     * The sequence segments cache: protein accession &gt; segments cache of
+     * the protein.
+     */
+    private final ConcurrentHashMap<String, ProteinSegmentsCache> segmentsCache = new ConcurrentHashMap<String, ProteinSegmentsCache>();
+    /**
+     * The accessions of the proteins in the segments cache in loading order.
+     */
+    private final LinkedBlockingDeque<String> cachedProteins = new LinkedBlockingDeque<String>();
+    /**
+     * The default maximal number of proteins to keep in the segments cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    /**
+     * The maximal number of proteins to keep in the segments cache.
+     */
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    /**
+     * The number of segment lists found in the cache.
+     */
+    private final AtomicLong cacheHits = new AtomicLong();
+    /**
+     * The number of segment lists computed and added to the cache.
+     */
+    private final AtomicLong cacheMisses = new AtomicLong();
+    /**
+     * If true the segments of a given index are computed by a single thread,
+     * other threads waiting for the result. Otherwise, different threads might
+     * compute the same segments, only one result being kept in cache.
      */
     private boolean synchronizedIndexing = false;
     /**
-     * The sequence segments cache for N-term sequencing
-     *
-     * Protein accession &gt; Starting index on protein &gt; end index on
-     * protein &gt; Mass &gt; sequence segment.
+     * The index of the amino acid compositions used to bound the length of
+     * the segments filling a mass gap, built when first needed.
      */
-    private HashMap<String, HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>>> nTermCache = new HashMap<String, HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>>>();
+    private volatile AminoAcidCombinationIndex combinationIndex = null;
     /**
-     * The sequence segments cache for C-term sequencing.
-     *
-     * Protein accession &gt; Starting index on protein &gt; end index on
-     * protein &gt; Mass &gt; sequence segment.
+     * Boolean indicating whether the compositions index could not be built
+     * for the modifications of this matcher, the segment length is then not
+     * bounded.
+     */
+    private volatile boolean combinationIndexUnavailable = false;
+    /**
+     * The lowest mass which can be added to a segment by terminal
+     * modifications.
+     */
+    private double terminalMassMin = 0;
+    /**
+     * The highest mass which can be added to a segment by terminal
+     * modifications.
      */
-    private HashMap<String, HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>>> cTermCache = new HashMap<String, HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>>>();
+    private double terminalMassMax = 0;
     /**
      * The sequence matching preferences
      */
@@ -174,6 +211,99 @@ public class TagMatcher {
     public TagMatcher(ArrayList<String> fixedModifications, ArrayList<String> variableModifications, SequenceMatchingPreferences sequenceMatchingPreferences) {
         this.sequenceMatchingPreferences = sequenceMatchingPreferences;
         importModificationMapping(fixedModifications, variableModifications);
+        setTerminalMassRange();
+    }
+
+    /**
+     * Returns the index of the amino acid compositions for the modifications
+     * of this matcher, building it if needed. Null if the index cannot be
+     * built, for instance when too many variable modifications are used.
+     *
+     * @return the index of the amino acid compositions
+     */
+    private AminoAcidCombinationIndex getCombinationIndex() {
+        if (combinationIndex == null && !combinationIndexUnavailable) {
+            synchronized (this) {
+                if (combinationIndex == null && !combinationIndexUnavailable) {
+                    try {
+                        combinationIndex = AminoAcidCombinationIndex.getIndex(AminoAcidCombinationIndex.DEFAULT_MAX_LENGTH, fixedAaModificationsMasses, variableAaModifications);
+                    } catch (IllegalArgumentException e) {
+                        combinationIndexUnavailable = true;
+                    }
+                }
+            }
+        }
+        return combinationIndex;
+    }
+
+    /**
+     * Sets the range of masses which can be added to a segment by terminal
+     * modifications. The range is conservative, adding up the modifications
+     * of both termini.
+     */
+    private void setTerminalMassRange() {
+        double[] range = new double[2];
+        addToRange(range, fixedNTermProteinModificationsMass);
+        addToRange(range, fixedCTermProteinModificationsMass);
+        addToRange(range, fixedNTermPeptideModificationsMass);
+        addToRange(range, fixedCTermPeptideModificationsMass);
+        addToRange(range, fixedAaModificationsProteinNtermMasses.values());
+        addToRange(range, fixedAaModificationsPeptideNtermMasses.values());
+        addToRange(range, fixedAaModificationsProteinCtermMasses.values());
+        addToRange(range, fixedAaModificationsPeptideCtermMasses.values());
+        if (variableNTermPeptideModifications != null) {
+            addToRange(range, variableNTermPeptideModifications.values());
+        }
+        if (variableCTermPeptideModifications != null) {
+            addToRange(range, variableCTermPeptideModifications.values());
+        }
+        if (variableNTermProteinModifications != null) {
+            addToRange(range, variableNTermProteinModifications.values());
+        }
+        if (variableCTermProteinModifications != null) {
+            addToRange(range, variableCTermProteinModifications.values());
+        }
+        for (HashMap<String, Double> modifications : variableAaModificationsAtPeptideNterm.values()) {
+            addToRange(range, modifications.values());
+        }
+        for (HashMap<String, Double> modifications : variableAaModificationsAtProteinNterm.values()) {
+            addToRange(range, modifications.values());
+        }
+        for (HashMap<String, Double> modifications : variableAaModificationsAtPeptideCterm.values()) {
+            addToRange(range, modifications.values());
+        }
+        for (HashMap<String, Double> modifications : variableAaModificationsAtProteinCterm.values()) {
+            addToRange(range, modifications.values());
+        }
+        terminalMassMin = range[0];
+        terminalMassMax = range[1];
+    }
+
+    /**
+     * Extends the given range with the given masses.
+     *
+     * @param range the range as array: min, max
+     * @param masses the masses to add
+     */
+    private void addToRange(double[] range, Collection<Double> masses) {
+        double min = 0, max = 0;
+        for (double mass : masses) {
+            min = Math.min(min, mass);
+            max = Math.max(max, mass);
+        }
+        range[0] += min;
+        range[1] += max;
+    }
+
+    /**
+     * Extends the given range with the given mass.
+     *
+     * @param range the range as array: min, max
+     * @param mass the mass to add
+     */
+    private void addToRange(double[] range, double mass) {
+        range[0] += Math.min(0, mass);
+        range[1] += Math.max(0, mass);
     }
 
     /**
@@ -625,6 +755,22 @@ public class TagMatcher {
 
             ArrayList<SequenceSegment> newSequences = new ArrayList<SequenceSegment>(1);
 
+            // Bound the segment length using the compositions index when all compositions of this mass are indexed
+            int minLength = 1, maxLength = Integer.MAX_VALUE;
+            AminoAcidCombinationIndex combinationIndex = sequenceMatchingPreferences.hasMutationMatrix() ? null : getCombinationIndex();
+            if (combinationIndex != null) {
+                double minMass = massGap - massTolerance - terminalMassMax;
+                double maxMass = massGap + massTolerance - terminalMassMin;
+                if (combinationIndex.isComplete(maxMass)) {
+                    int[] lengthRange = combinationIndex.getLengthRange(minMass, maxMass);
+                    if (lengthRange == null) {
+                        return newSequences;
+                    }
+                    minLength = lengthRange[0];
+                    maxLength = lengthRange[1];
+                }
+            }
+
             for (int i = 0; i < terminalPreviousSequences.size(); i++) {
 
                 SequenceSegment terminalSequence = terminalPreviousSequences.get(i);
@@ -633,7 +779,7 @@ public class TagMatcher {
                 ArrayList<SequenceSegment> possibleSequences = null;
                 ArrayList<SequenceSegment> validSequences = new ArrayList<SequenceSegment>(1);
 
-                HashMap<Integer, ArrayList<SequenceSegment>> indexCache = getIndexCache(accession, currentIndex, nTerminus);
+                ConcurrentHashMap<Integer, ArrayList<SequenceSegment>> indexCache = useCache ? getSegmentsIndexCache(accession, currentIndex, nTerminus) : null;
 
                 if (nTerminus) {
                     aaIndex--;
@@ -642,9 +788,12 @@ public class TagMatcher {
                 }
                 while (aaIndex >= 0 && aaIndex < sequence.length()) {
 
+                    int segmentLength = Math.abs(aaIndex - currentIndex);
+                    if (segmentLength > maxLength) {
+                        break;
+                    }
                     char sequenceAa = sequence.charAt(aaIndex);
                     AminoAcid sequenceAminoAcid = AminoAcid.getAminoAcid(sequenceAa);
-                    int segmentLength = Math.abs(aaIndex - currentIndex);
                     if (useCache && segmentLength <= 12) {
                         possibleSequences = indexCache.get(aaIndex);
                         if (possibleSequences == null) {
@@ -653,12 +802,14 @@ public class TagMatcher {
                             } else {
                                 possibleSequences = addSequenceSegmentsToCache(indexCache, sequence, sequenceAminoAcid, currentIndex, aaIndex, nTerminus);
                             }
+                        } else {
+                            cacheHits.incrementAndGet();
                         }
                     } else {
                         possibleSequences = getCombinationsForAminoAcid(sequence, possibleSequences, sequenceAminoAcid, currentIndex, aaIndex, nTerminus);
                     }
 
-                    if (validateSegments(possibleSequences, validSequences, massGap, massTolerance, sequence, sequenceAa, nTerminus)) {
+                    if (segmentLength >= minLength && validateSegments(possibleSequences, validSequences, massGap, massTolerance, sequence, sequenceAa, nTerminus)) {
                         if (debugbw != null) {
                         try {
                             debugbw.write(segmentLength + "\n");
@@ -693,8 +844,27 @@ public class TagMatcher {
         }
     }
 
+    /**
+     * Returns a copy of the index cache for the given segment seed, accession
+     * and index. Segments added to the copy are not stored in the cache.
+     *
+     * @deprecated the segments cache is now concurrent, use
+     * getSegmentsIndexCache
+     *
+     * @param accession the accession of the protein
+     * @param currentIndex the index on the protein
+     * @param nTerminus boolean indicating whether the N or C terminus cache
+     * should be used
+     *
+     * @return a copy of the index cache
+     */
+    public HashMap<Integer, ArrayList<SequenceSegment>> getIndexCache(String accession, Integer currentIndex, boolean nTerminus) {
+        return new HashMap<Integer, ArrayList<SequenceSegment>>(getSegmentsIndexCache(accession, currentIndex, nTerminus));
+    }
+
     /**
      * Returns the index cache for the given segment seed, accession and index.
+     * The index cache can be shared between threads.
      *
      * @param accession the accession of the protein
      * @param currentIndex the index on the protein
@@ -703,109 +873,118 @@ public class TagMatcher {
      *
      * @return the index cache
      */
-    public HashMap<Integer, ArrayList<SequenceSegment>> getIndexCache(String accession, Integer currentIndex, boolean nTerminus) {
+    public ConcurrentHashMap<Integer, ArrayList<SequenceSegment>> getSegmentsIndexCache(String accession, Integer currentIndex, boolean nTerminus) {
 
-        HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>> proteinCache;
-        if (nTerminus) {
-            proteinCache = nTermCache.get(accession);
-        } else {
-            proteinCache = cTermCache.get(accession);
-        }
+        ProteinSegmentsCache proteinCache = segmentsCache.get(accession);
         if (proteinCache == null) {
-            if (synchronizedIndexing) {
-                proteinCache = addProteinCacheSynchronized(accession, currentIndex, nTerminus);
-            } else {
-                proteinCache = addProteinCache(accession, currentIndex, nTerminus);
-            }
+            proteinCache = addProteinCache(accession);
         }
-        HashMap<Integer, ArrayList<SequenceSegment>> indexCache = proteinCache.get(currentIndex);
+        ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, ArrayList<SequenceSegment>>> terminalCache = nTerminus ? proteinCache.nTermCache : proteinCache.cTermCache;
+        ConcurrentHashMap<Integer, ArrayList<SequenceSegment>> indexCache = terminalCache.get(currentIndex);
         if (indexCache == null) {
-            if (synchronizedIndexing) {
-                indexCache = addIndexCacheSynchronized(proteinCache, currentIndex);
-            } else {
-                indexCache = addIndexCache(proteinCache, currentIndex);
+            indexCache = new ConcurrentHashMap<Integer, ArrayList<SequenceSegment>>(12);
+            ConcurrentHashMap<Integer, ArrayList<SequenceSegment>> previousCache = terminalCache.putIfAbsent(currentIndex, indexCache);
+            if (previousCache != null) {
+                indexCache = previousCache;
             }
         }
         return indexCache;
     }
 
     /**
-     * Adds a cache for the given segment seed and returns it.
+     * Adds a cache for the given protein and returns it. If the cache contains
+     * more proteins than allowed, the oldest proteins are removed.
      *
-     * @param seed the segment seed
-     * @param nTerminus indicates whether the sequencing goes toward the N
-     * (true) or the C (false) terminus
+     * @param accession the accession of the protein
      *
      * @return a cache for the given protein
      */
-    private synchronized HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>> addProteinCacheSynchronized(String accession, Integer currentIndex, boolean nTerminus) {
-        HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>> proteinCache;
-        if (nTerminus) {
-            proteinCache = nTermCache.get(accession);
-        } else {
-            proteinCache = cTermCache.get(accession);
+    private ProteinSegmentsCache addProteinCache(String accession) {
+        ProteinSegmentsCache proteinCache = new ProteinSegmentsCache();
+        ProteinSegmentsCache previousCache = segmentsCache.putIfAbsent(accession, proteinCache);
+        if (previousCache != null) {
+            return previousCache;
         }
-        if (proteinCache == null) {
-            proteinCache = addProteinCache(accession, currentIndex, nTerminus);
+        cachedProteins.add(accession);
+        while (cachedProteins.size() > cacheSize) {
+            String oldAccession = cachedProteins.pollFirst();
+            if (oldAccession != null) {
+                segmentsCache.remove(oldAccession);
+            }
         }
         return proteinCache;
     }
 
     /**
-     * Adds a cache for the given segment seed and returns it.
+     * Adds the possible new sequence segments generated when appending the
+     * given amino acid to the given cache and returns the list of possible
+     * segments. The segments are computed by a single thread, other threads
+     * wait for the result.
      *
-     * @param seed the segment seed
+     * @param indexCache the cache for this index on the sequence
+     * @param sequence the protein sequence
+     * @param aminoAcid the amino acid object
+     * @param currentIndex the current indexing level on the protein sequence
+     * @param aaIndex the amino acid index
      * @param nTerminus indicates whether the sequencing goes toward the N
      * (true) or the C (false) terminus
      *
-     * @return a cache for the given protein
+     * @return the new possible sequences
      */
-    private HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>> addProteinCache(String accession, Integer currentIndex, boolean nTerminus) {
-        HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>> proteinCache = new HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>>();
-        if (nTerminus) {
-            nTermCache.put(accession, proteinCache);
-        } else {
-            cTermCache.put(accession, proteinCache);
+    public ArrayList<SequenceSegment> addSequenceSegmentsToCacheSynchronized(ConcurrentHashMap<Integer, ArrayList<SequenceSegment>> indexCache, String sequence, AminoAcid aminoAcid, Integer currentIndex, Integer aaIndex, boolean nTerminus) {
+        synchronized (indexCache) {
+            // check whether another thread already did the job
+            ArrayList<SequenceSegment> result = indexCache.get(aaIndex);
+            if (result == null) {
+                result = addSequenceSegmentsToCache(indexCache, sequence, aminoAcid, currentIndex, aaIndex, nTerminus);
+            } else {
+                cacheHits.incrementAndGet();
+            }
+            return result;
         }
-        HashMap<Integer, ArrayList<SequenceSegment>> indexCache = new HashMap<Integer, ArrayList<SequenceSegment>>(1);
-        proteinCache.put(currentIndex, indexCache);
-        return proteinCache;
     }
 
     /**
-     * Adds a cache for the given index and returns it.
+     * Adds the possible new sequence segments generated when appending the
+     * given amino acid to the given cache and returns the list of possible
+     * segments. If another thread added the segments in the meantime, these
+     * will be returned.
      *
-     * @param proteinCache the protein cache
-     * @param currentIndex the index of interest
+     * @param indexCache the cache for this index on the sequence
+     * @param sequence the protein sequence
+     * @param aminoAcid the amino acid object
+     * @param currentIndex the current indexing level on the protein sequence
+     * @param aaIndex the amino acid index
+     * @param nTerminus indicates whether the sequencing goes toward the N
+     * (true) or the C (false) terminus
      *
-     * @return a cache for the given index
+     * @return the new possible sequences
      */
-    private HashMap<Integer, ArrayList<SequenceSegment>> addIndexCacheSynchronized(HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>> proteinCache, Integer currentIndex) {
-        HashMap<Integer, ArrayList<SequenceSegment>> indexCache = proteinCache.get(currentIndex);
-        if (indexCache == null) {
-            addIndexCache(proteinCache, currentIndex);
+    public ArrayList<SequenceSegment> addSequenceSegmentsToCache(ConcurrentHashMap<Integer, ArrayList<SequenceSegment>> indexCache, String sequence, AminoAcid aminoAcid, Integer currentIndex, Integer aaIndex, boolean nTerminus) {
+        ArrayList<SequenceSegment> previousSequences;
+        if (nTerminus) {
+            previousSequences = indexCache.get(aaIndex + 1);
+        } else {
+            previousSequences = indexCache.get(aaIndex - 1);
         }
-        return indexCache;
-    }
-
-    /**
-     * Adds a cache for the given index and returns it.
-     *
-     * @param proteinCache the protein cache
-     * @param currentIndex the index of Integererest
-     *
-     * @return a cache for the given index
-     */
-    private HashMap<Integer, ArrayList<SequenceSegment>> addIndexCache(HashMap<Integer, HashMap<Integer, ArrayList<SequenceSegment>>> proteinCache, Integer currentIndex) {
-        HashMap<Integer, ArrayList<SequenceSegment>> indexCache = new HashMap<Integer, ArrayList<SequenceSegment>>(1);
-        proteinCache.put(currentIndex, indexCache);
-        return indexCache;
+        ArrayList<SequenceSegment> result = getCombinationsForAminoAcid(sequence, previousSequences, aminoAcid, currentIndex, aaIndex, nTerminus);
+        result.trimToSize();
+        ArrayList<SequenceSegment> otherResult = indexCache.putIfAbsent(aaIndex, result);
+        if (otherResult != null) {
+            cacheHits.incrementAndGet();
+            return otherResult;
+        }
+        cacheMisses.incrementAndGet();
+        return result;
     }
 
     /**
      * Adds the possible new sequence segments generated when appending the
-     * given amino acid to the given cache and returns the list of possible
-     * segments.
+     * given amino acid to the given cache in a synchronized method and returns
+     * the list of possible segments.
+     *
+     * @deprecated the segments cache is now concurrent, use the
+     * ConcurrentHashMap version of this method
      *
      * @param indexCache the cache for this index on the sequence
      * @param sequence the protein sequence
@@ -831,6 +1010,9 @@ public class TagMatcher {
      * given amino acid to the given cache and returns the list of possible
      * segments.
      *
+     * @deprecated the segments cache is now concurrent, use the
+     * ConcurrentHashMap version of this method
+     *
      * @param indexCache the cache for this index on the sequence
      * @param sequence the protein sequence
      * @param aminoAcid the amino acid object
@@ -1244,8 +1426,54 @@ public class TagMatcher {
      * Clears the cache.
      */
     public void clearCache() {
-        nTermCache.clear();
-        cTermCache.clear();
+        segmentsCache.clear();
+        cachedProteins.clear();
+    }
+
+    /**
+     * Sets the maximal number of proteins to keep in the segments cache.
+     *
+     * @param cacheSize the maximal number of proteins to keep in the segments
+     * cache
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Returns the maximal number of proteins to keep in the segments cache.
+     *
+     * @return the maximal number of proteins to keep in the segments cache
+     */
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Returns the number of proteins currently in the segments cache.
+     *
+     * @return the number of proteins currently in the segments cache
+     */
+    public int getnProteinsInCache() {
+        return segmentsCache.size();
+    }
+
+    /**
+     * Returns the number of segment lists retrieved from the cache.
+     *
+     * @return the number of segment lists retrieved from the cache
+     */
+    public long getnCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Returns the number of segment lists computed and stored in the cache.
+     *
+     * @return the number of segment lists computed and stored in the cache
+     */
+    public long getnCacheMisses() {
+        return cacheMisses.get();
     }
 
     /**
@@ -1259,8 +1487,12 @@ public class TagMatcher {
 
     /**
      * Sets whether the indexing of the sequence should be executed in a
-     * synchronized method. Use this in case different threads might attempt to
-     * sequence the same sequence at the same index at the same time.
+     * synchronized method. The segments cache is thread safe, if true the
+     * segments of a given index will be computed by a single thread while the
+     * other threads wait for the result, otherwise different threads
+     * attempting to index the same sequence at the same index at the same time
+     * will compute the segments concurrently and only one result will be
+     * cached.
      *
      * @param synchronizedIndexing true if the indexing of the sequence should
      * be executed in a synchronized method
@@ -1269,4 +1501,20 @@ public class TagMatcher {
         this.synchronizedIndexing = synchronizedIndexing;
     }
 
+    /**
+     * The sequence segments cache of a protein.
+     */
+    private static class ProteinSegmentsCache {
+
+        /**
+         * The sequence segments cache for N-term sequencing: Starting index on
+         * protein &gt; end index on protein &gt; sequence segments.
+         */
+        private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, ArrayList<SequenceSegment>>> nTermCache = new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, ArrayList<SequenceSegment>>>(4);
+        /**
+         * The sequence segments cache for C-term sequencing: Starting index on
+         * protein &gt; end index on protein &gt; sequence segments.
+         */
+        private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, ArrayList<SequenceSegment>>> cTermCache = new ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, ArrayList<SequenceSegment>>>(4);
+    }
 }
@@ -32,8 +32,12 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class sorts the proteins into groups.
@@ -1228,6 +1232,100 @@ public class ProteinTree {
         return results;
     }
 
+    /**
+     * Returns the protein mapping of the given tags in parallel. The tag
+     * matcher and its segments cache are shared between the threads. The
+     * results are returned in a list in the same order as the tags. The first
+     * exception encountered by a thread stops the mapping and is thrown again.
+     * If the process is canceled before all tags are mapped, an empty list is
+     * returned.
+     *
+     * @param tags the tags to map
+     * @param tagMatcher the tag matcher to use
+     * @param sequenceMatchingPreferences the sequence matching preferences
+     * @param massTolerance the MS2 m/z tolerance
+     * @param nThreads the number of threads to use
+     * @param waitingHandler waiting handler providing feedback on the process
+     * and allowing canceling the process, can be null
+     *
+     * @return the protein mapping of every tag in a list, empty if the
+     * process was canceled
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading or writing a file.
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while deserializing an object.
+     * @throws InterruptedException exception thrown whenever a threading issue
+     * occurred while interacting with the tree.
+     * @throws SQLException if an SQLException exception thrown whenever a
+     * problem occurred while interacting with the tree database.
+     */
+    public ArrayList<HashMap<Peptide, HashMap<String, ArrayList<Integer>>>> getProteinMapping(ArrayList<Tag> tags, TagMatcher tagMatcher, SequenceMatchingPreferences sequenceMatchingPreferences,
+            Double massTolerance, int nThreads, WaitingHandler waitingHandler) throws IOException, InterruptedException, ClassNotFoundException, SQLException {
+
+        long start = System.currentTimeMillis();
+        long cacheHitsStart = tagMatcher.getnCacheHits();
+        long cacheMissesStart = tagMatcher.getnCacheMisses();
+
+        @SuppressWarnings("unchecked")
+        HashMap<Peptide, HashMap<String, ArrayList<Integer>>>[] mappings = new HashMap[tags.size()];
+        AtomicInteger tagIndex = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            ExecutorCompletionService<Object> completionService = new ExecutorCompletionService<Object>(pool);
+            for (int i = 0; i < nThreads; i++) {
+                TagMapper tagMapper = new TagMapper(tags, tagIndex, mappings, tagMatcher, sequenceMatchingPreferences, massTolerance, waitingHandler);
+                completionService.submit(tagMapper);
+            }
+            for (int i = 0; i < nThreads; i++) {
+                try {
+                    completionService.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (cause instanceof SQLException) {
+                        throw (SQLException) cause;
+                    } else if (cause instanceof ClassNotFoundException) {
+                        throw (ClassNotFoundException) cause;
+                    } else if (cause instanceof InterruptedException) {
+                        throw (InterruptedException) cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IOException(cause);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        ArrayList<HashMap<Peptide, HashMap<String, ArrayList<Integer>>>> result = new ArrayList<HashMap<Peptide, HashMap<String, ArrayList<Integer>>>>(tags.size());
+        for (HashMap<Peptide, HashMap<String, ArrayList<Integer>>> mapping : mappings) {
+            if (mapping == null) {
+                // the mapping was canceled before this tag was mapped
+                return new ArrayList<HashMap<Peptide, HashMap<String, ArrayList<Integer>>>>(0);
+            }
+            result.add(mapping);
+        }
+
+        if (waitingHandler != null && !waitingHandler.isRunCanceled()) {
+            long duration = System.currentTimeMillis() - start;
+            double tagsPerSecond = duration > 0 ? 1000.0 * tags.size() / duration : tags.size();
+            long cacheHits = tagMatcher.getnCacheHits() - cacheHitsStart;
+            long cacheMisses = tagMatcher.getnCacheMisses() - cacheMissesStart;
+            Runtime runtime = Runtime.getRuntime();
+            long usedMemory = (runtime.totalMemory() - runtime.freeMemory()) / 1048576;
+            waitingHandler.appendReport(tags.size() + " tags mapped in " + duration + " ms (" + Util.roundDouble(tagsPerSecond, 1) + " tags/s, " + nThreads + " threads).", true, true);
+            waitingHandler.appendReport("Segments cache: " + tagMatcher.getnProteinsInCache() + " proteins, " + cacheHits + " hits, " + cacheMisses + " misses. Memory used: " + usedMemory + " MB.", true, true);
+        }
+
+        return result;
+    }
+
     /**
      * Returns a list of possible initial tags.
      *
@@ -2275,4 +2373,75 @@ public class ProteinTree {
             return node;
         }
     }
+
+    /**
+     * Callable mapping tags to the proteins. Tags are taken from a shared list
+     * until all tags are processed or the thread is interrupted.
+     */
+    private class TagMapper implements Callable<Object> {
+
+        /**
+         * The tags to map.
+         */
+        private final ArrayList<Tag> tags;
+        /**
+         * The index of the next tag to map, shared between the mappers.
+         */
+        private final AtomicInteger tagIndex;
+        /**
+         * The array where to store the mappings.
+         */
+        private final HashMap<Peptide, HashMap<String, ArrayList<Integer>>>[] mappings;
+        /**
+         * The tag matcher.
+         */
+        private final TagMatcher tagMatcher;
+        /**
+         * The sequence matching preferences.
+         */
+        private final SequenceMatchingPreferences sequenceMatchingPreferences;
+        /**
+         * The MS2 m/z tolerance.
+         */
+        private final Double massTolerance;
+        /**
+         * The waiting handler.
+         */
+        private final WaitingHandler waitingHandler;
+
+        /**
+         * Constructor.
+         *
+         * @param tags the tags to map
+         * @param tagIndex the index of the next tag to map
+         * @param mappings the array where to store the mappings
+         * @param tagMatcher the tag matcher
+         * @param sequenceMatchingPreferences the sequence matching preferences
+         * @param massTolerance the MS2 m/z tolerance
+         * @param waitingHandler waiting handler providing feedback on the
+         * process and allowing canceling the process
+         */
+        public TagMapper(ArrayList<Tag> tags, AtomicInteger tagIndex, HashMap<Peptide, HashMap<String, ArrayList<Integer>>>[] mappings, TagMatcher tagMatcher,
+                SequenceMatchingPreferences sequenceMatchingPreferences, Double massTolerance, WaitingHandler waitingHandler) {
+            this.tags = tags;
+            this.tagIndex = tagIndex;
+            this.mappings = mappings;
+            this.tagMatcher = tagMatcher;
+            this.sequenceMatchingPreferences = sequenceMatchingPreferences;
+            this.massTolerance = massTolerance;
+            this.waitingHandler = waitingHandler;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            int i;
+            while ((i = tagIndex.getAndIncrement()) < tags.size()) {
+                if (Thread.currentThread().isInterrupted() || waitingHandler != null && waitingHandler.isRunCanceled()) {
+                    return null;
+                }
+                mappings[i] = getProteinMapping(tags.get(i), tagMatcher, sequenceMatchingPreferences, massTolerance);
+            }
+            return null;
+        }
+    }
 }
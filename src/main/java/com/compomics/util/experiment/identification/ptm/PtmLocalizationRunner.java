@@ -0,0 +1,513 @@
+package com.compomics.util.experiment.identification.ptm;
+
+import com.compomics.util.experiment.biology.PTM;
+import com.compomics.util.experiment.biology.PTMFactory;
+import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.Identification;
+import com.compomics.util.experiment.identification.SpectrumIdentificationAssumption;
+import com.compomics.util.experiment.identification.matches.ModificationMatch;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.matches_iterators.PsmIterator;
+import com.compomics.util.experiment.identification.ptm.ptmscores.AScore;
+import com.compomics.util.experiment.identification.ptm.ptmscores.MDScore;
+import com.compomics.util.experiment.identification.ptm.ptmscores.PhosphoRS;
+import com.compomics.util.experiment.identification.spectrum_annotation.AnnotationSettings;
+import com.compomics.util.experiment.identification.spectrum_annotation.SpecificAnnotationSettings;
+import com.compomics.util.experiment.identification.spectrum_annotation.spectrum_annotators.PeptideSpectrumAnnotator;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
+import com.compomics.util.experiment.personalization.UrParameter;
+import com.compomics.util.experiment.refinementparameters.PtmLocalizationScores;
+import com.compomics.util.preferences.SequenceMatchingPreferences;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.math.MathException;
+import uk.ac.ebi.jmzml.xml.io.MzMLUnmarshallerException;
+
+/**
+ * This class scores the localization of the variable PTMs of the best peptide
+ * assumption of all spectrum matches of an identification. Spectrum matches
+ * are iterated using a PsmIterator, spectra are retrieved from the spectrum
+ * factory, and the results are stored as PtmLocalizationScores parameters in
+ * batches. Note that the spectrum files must be loaded in the spectrum factory
+ * and the PTMs in the PTM factory.
+ *
+ * @author Marc Vaudel
+ */
+public class PtmLocalizationRunner {
+
+    /**
+     * The identification containing the spectrum matches to score.
+     */
+    private final Identification identification;
+    /**
+     * The scores to compute.
+     */
+    private final ArrayList<PtmScore> ptmScores;
+    /**
+     * Boolean indicating whether the MD score should be computed.
+     */
+    private final boolean mdScore;
+    /**
+     * The global annotation settings.
+     */
+    private final AnnotationSettings annotationSettings;
+    /**
+     * Boolean indicating whether neutral losses should be accounted for.
+     */
+    private final boolean accountNeutralLosses;
+    /**
+     * The sequence matching preferences for peptide to protein mapping.
+     */
+    private final SequenceMatchingPreferences sequenceMatchingPreferences;
+    /**
+     * The sequence matching preferences for PTM to peptide mapping.
+     */
+    private final SequenceMatchingPreferences ptmSequenceMatchingPreferences;
+    /**
+     * The spectrum factory.
+     */
+    private final SpectrumFactory spectrumFactory = SpectrumFactory.getInstance();
+    /**
+     * The PTM factory.
+     */
+    private final PTMFactory ptmFactory = PTMFactory.getInstance();
+    /**
+     * The default number of parameters to store in the database at once.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /**
+     * The number of parameters to store in the database at once.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /**
+     * The time spent loading spectrum matches and spectra in nanoseconds.
+     */
+    private final AtomicLong loadingTime = new AtomicLong();
+    /**
+     * The time spent setting up the annotation in nanoseconds.
+     */
+    private final AtomicLong annotationTime = new AtomicLong();
+    /**
+     * The time spent computing the scores in nanoseconds, indexed by score.
+     */
+    private final HashMap<PtmScore, AtomicLong> scoringTimes = new HashMap<PtmScore, AtomicLong>();
+    /**
+     * The time spent computing the MD score in nanoseconds.
+     */
+    private final AtomicLong mdScoreTime = new AtomicLong();
+    /**
+     * The time spent storing the results in nanoseconds.
+     */
+    private final AtomicLong storageTime = new AtomicLong();
+    /**
+     * The number of spectrum matches processed.
+     */
+    private final AtomicLong nProcessed = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param identification the identification containing the spectrum
+     * matches to score
+     * @param ptmScores the scores to compute
+     * @param mdScore boolean indicating whether the MD score should be
+     * computed from the Mascot assumptions
+     * @param annotationSettings the global annotation settings
+     * @param accountNeutralLosses if false, neutral losses will be ignored
+     * @param sequenceMatchingPreferences the sequence matching preferences for
+     * peptide to protein mapping
+     * @param ptmSequenceMatchingPreferences the sequence matching preferences
+     * for PTM to peptide mapping
+     */
+    public PtmLocalizationRunner(Identification identification, ArrayList<PtmScore> ptmScores, boolean mdScore, AnnotationSettings annotationSettings,
+            boolean accountNeutralLosses, SequenceMatchingPreferences sequenceMatchingPreferences, SequenceMatchingPreferences ptmSequenceMatchingPreferences) {
+        this.identification = identification;
+        this.ptmScores = ptmScores;
+        this.mdScore = mdScore;
+        this.annotationSettings = annotationSettings;
+        this.accountNeutralLosses = accountNeutralLosses;
+        this.sequenceMatchingPreferences = sequenceMatchingPreferences;
+        this.ptmSequenceMatchingPreferences = ptmSequenceMatchingPreferences;
+        for (PtmScore ptmScore : ptmScores) {
+            scoringTimes.put(ptmScore, new AtomicLong());
+        }
+    }
+
+    /**
+     * Sets the number of parameters to store in the database at once.
+     *
+     * @param batchSize the number of parameters to store in the database at
+     * once
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Scores the PTM localization for all spectrum matches of the
+     * identification. The first exception encountered by a scoring thread
+     * stops the scoring and is thrown again.
+     *
+     * @param nThreads the number of threads to use
+     * @param waitingHandler waiting handler providing feedback on the process
+     * and allowing canceling the process
+     *
+     * @throws InterruptedException exception thrown whenever a threading issue
+     * occurred while waiting for the scoring to finish
+     * @throws ExecutionException exception thrown whenever an error occurred
+     * while scoring a spectrum match, the error is given as cause
+     */
+    public void scorePtmLocalization(int nThreads, WaitingHandler waitingHandler) throws InterruptedException, ExecutionException {
+        scorePtmLocalization(null, nThreads, waitingHandler);
+    }
+
+    /**
+     * Scores the PTM localization for the given spectrum matches. The first
+     * exception encountered by a scoring thread stops the scoring and is
+     * thrown again.
+     *
+     * @param spectrumKeys the keys of the spectrum matches to score, all
+     * spectrum matches of the identification if null
+     * @param nThreads the number of threads to use
+     * @param waitingHandler waiting handler providing feedback on the process
+     * and allowing canceling the process
+     *
+     * @throws InterruptedException exception thrown whenever a threading issue
+     * occurred while waiting for the scoring to finish
+     * @throws ExecutionException exception thrown whenever an error occurred
+     * while scoring a spectrum match, the error is given as cause
+     */
+    public void scorePtmLocalization(ArrayList<String> spectrumKeys, int nThreads, WaitingHandler waitingHandler) throws InterruptedException, ExecutionException {
+
+        long start = System.nanoTime();
+
+        PsmIterator psmIterator = identification.getPsmIterator(spectrumKeys, null, mdScore, waitingHandler);
+
+        if (waitingHandler != null) {
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(spectrumKeys != null ? spectrumKeys.size() : identification.getSpectrumIdentificationSize());
+        }
+
+        AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        for (int i = 0; i < nThreads; i++) {
+            PsmLocalizer psmLocalizer = new PsmLocalizer(psmIterator, waitingHandler, failure);
+            pool.submit(psmLocalizer);
+        }
+        pool.shutdown();
+
+        while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+            if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                pool.shutdownNow();
+                return;
+            }
+        }
+
+        Exception exception = failure.get();
+        if (exception != null) {
+            throw new ExecutionException("An error occurred while scoring the PTM localization.", exception);
+        }
+
+        if (waitingHandler != null && !waitingHandler.isRunCanceled()) {
+            waitingHandler.appendReport(getTimingReport(System.nanoTime() - start), true, true);
+        }
+    }
+
+    /**
+     * Returns a report on the time spent in the different stages of the
+     * scoring. Note that except for the total time, the times are summed over
+     * all threads.
+     *
+     * @param totalTime the total time in nanoseconds
+     *
+     * @return a report on the time spent in the different stages of the
+     * scoring
+     */
+    private String getTimingReport(long totalTime) {
+        StringBuilder report = new StringBuilder();
+        report.append("PTM localization of ").append(nProcessed.get()).append(" spectrum matches completed in ").append(toMs(totalTime)).append(" ms (");
+        report.append("loading: ").append(toMs(loadingTime.get())).append(" ms");
+        report.append(", annotation settings: ").append(toMs(annotationTime.get())).append(" ms");
+        for (PtmScore ptmScore : ptmScores) {
+            report.append(", ").append(ptmScore.getName()).append(": ").append(toMs(scoringTimes.get(ptmScore).get())).append(" ms");
+        }
+        if (mdScore) {
+            report.append(", MD score: ").append(toMs(mdScoreTime.get())).append(" ms");
+        }
+        report.append(", storage: ").append(toMs(storageTime.get())).append(" ms).");
+        return report.toString();
+    }
+
+    /**
+     * Converts a time in nanoseconds into milliseconds.
+     *
+     * @param nanoTime the time in nanoseconds
+     *
+     * @return the time in milliseconds
+     */
+    private static long toMs(long nanoTime) {
+        return nanoTime / 1000000;
+    }
+
+    /**
+     * Returns the time spent in the given stage in milliseconds summed over
+     * all threads. The stages are "loading", "annotation", "storage", "MD
+     * score" and the names of the PTM scores.
+     *
+     * @param stage the name of the stage
+     *
+     * @return the time spent in the given stage in milliseconds
+     */
+    public long getStageTime(String stage) {
+        if (stage.equals("loading")) {
+            return toMs(loadingTime.get());
+        } else if (stage.equals("annotation")) {
+            return toMs(annotationTime.get());
+        } else if (stage.equals("storage")) {
+            return toMs(storageTime.get());
+        } else if (stage.equals("MD score")) {
+            return toMs(mdScoreTime.get());
+        }
+        PtmScore ptmScore = PtmScore.getScore(stage);
+        AtomicLong time = scoringTimes.get(ptmScore);
+        if (time == null) {
+            return 0;
+        }
+        return toMs(time.get());
+    }
+
+    /**
+     * Scores the PTM localization of the best peptide assumption of the given
+     * spectrum match.
+     *
+     * @param spectrumMatch the spectrum match of interest
+     * @param spectrumAnnotator the spectrum annotator to use
+     *
+     * @return the localization scores, null if the best peptide assumption
+     * does not carry variable PTMs
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading or writing a file
+     * @throws InterruptedException exception thrown whenever a threading issue
+     * occurred while scoring the PTMs
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while deserializing an object
+     * @throws SQLException exception thrown whenever an error occurred while
+     * interacting with a database
+     * @throws MathException exception thrown whenever a math error occurred
+     * while computing the scores
+     * @throws MzMLUnmarshallerException exception thrown whenever an error
+     * occurred while reading an mzML file
+     */
+    private PtmLocalizationScores scorePsm(SpectrumMatch spectrumMatch, PeptideSpectrumAnnotator spectrumAnnotator)
+            throws IOException, InterruptedException, ClassNotFoundException, SQLException, MathException, MzMLUnmarshallerException {
+
+        PeptideAssumption peptideAssumption = spectrumMatch.getBestPeptideAssumption();
+        if (peptideAssumption == null) {
+            return null;
+        }
+        Peptide peptide = peptideAssumption.getPeptide();
+        if (!peptide.isModified()) {
+            return null;
+        }
+
+        // group the PTMs by mass, PTMs of same mass are scored together
+        HashMap<Double, ArrayList<PTM>> ptmsByMass = new HashMap<Double, ArrayList<PTM>>(2);
+        HashMap<Double, ArrayList<String>> ptmNamesByMass = new HashMap<Double, ArrayList<String>>(2);
+        for (ModificationMatch modificationMatch : peptide.getModificationMatches()) {
+            if (modificationMatch.isVariable()) {
+                String ptmName = modificationMatch.getTheoreticPtm();
+                PTM ptm = ptmFactory.getPTM(ptmName);
+                ArrayList<String> ptmNames = ptmNamesByMass.get(ptm.getMass());
+                if (ptmNames == null) {
+                    ptmNames = new ArrayList<String>(1);
+                    ptmNamesByMass.put(ptm.getMass(), ptmNames);
+                    ptmsByMass.put(ptm.getMass(), new ArrayList<PTM>(1));
+                }
+                if (!ptmNames.contains(ptmName)) {
+                    ptmNames.add(ptmName);
+                    ptmsByMass.get(ptm.getMass()).add(ptm);
+                }
+            }
+        }
+        if (ptmsByMass.isEmpty()) {
+            return null;
+        }
+
+        String spectrumKey = spectrumMatch.getKey();
+        PtmLocalizationScores ptmLocalizationScores = new PtmLocalizationScores();
+
+        MSnSpectrum spectrum = null;
+        SpecificAnnotationSettings specificAnnotationSettings = null;
+        if (!ptmScores.isEmpty()) {
+            long start = System.nanoTime();
+            spectrum = (MSnSpectrum) spectrumFactory.getSpectrum(spectrumKey);
+            long end = System.nanoTime();
+            loadingTime.addAndGet(end - start);
+            specificAnnotationSettings = annotationSettings.getSpecificAnnotationPreferences(spectrumKey, peptideAssumption, sequenceMatchingPreferences, ptmSequenceMatchingPreferences);
+            annotationTime.addAndGet(System.nanoTime() - end);
+        }
+
+        ArrayList<SpectrumIdentificationAssumption> mascotAssumptions = null;
+        if (mdScore) {
+            long start = System.nanoTime();
+            HashMap<Integer, HashMap<Double, ArrayList<SpectrumIdentificationAssumption>>> assumptionsMap = identification.getAssumptions(spectrumKey);
+            if (assumptionsMap != null) {
+                HashMap<Double, ArrayList<SpectrumIdentificationAssumption>> mascotMap = assumptionsMap.get(Advocate.mascot.getIndex());
+                if (mascotMap != null) {
+                    mascotAssumptions = new ArrayList<SpectrumIdentificationAssumption>();
+                    for (ArrayList<SpectrumIdentificationAssumption> assumptions : mascotMap.values()) {
+                        mascotAssumptions.addAll(assumptions);
+                    }
+                }
+            }
+            loadingTime.addAndGet(System.nanoTime() - start);
+        }
+
+        for (Double ptmMass : ptmsByMass.keySet()) {
+
+            ArrayList<PTM> ptms = ptmsByMass.get(ptmMass);
+            ArrayList<String> ptmNames = ptmNamesByMass.get(ptmMass);
+
+            for (PtmScore ptmScore : ptmScores) {
+                long start = System.nanoTime();
+                HashMap<Integer, Double> scores = null;
+                if (ptmScore == PtmScore.AScore) {
+                    scores = AScore.getAScore(peptide, ptms, spectrum, annotationSettings, specificAnnotationSettings, accountNeutralLosses,
+                            sequenceMatchingPreferences, ptmSequenceMatchingPreferences, spectrumAnnotator);
+                } else if (ptmScore == PtmScore.PhosphoRS) {
+                    scores = PhosphoRS.getSequenceProbabilities(peptide, ptms, spectrum, annotationSettings, specificAnnotationSettings, accountNeutralLosses,
+                            sequenceMatchingPreferences, ptmSequenceMatchingPreferences, spectrumAnnotator);
+                }
+                scoringTimes.get(ptmScore).addAndGet(System.nanoTime() - start);
+                if (scores != null) {
+                    for (String ptmName : ptmNames) {
+                        ptmLocalizationScores.addSiteScores(ptmName, ptmScore, scores);
+                    }
+                }
+            }
+
+            if (mdScore) {
+                long start = System.nanoTime();
+                Double score = MDScore.getMDScore(mascotAssumptions, peptide, ptmNames, sequenceMatchingPreferences, null);
+                mdScoreTime.addAndGet(System.nanoTime() - start);
+                for (String ptmName : ptmNames) {
+                    ptmLocalizationScores.setMDScore(ptmName, score);
+                }
+            }
+        }
+
+        return ptmLocalizationScores;
+    }
+
+    /**
+     * Stores a batch of results in the identification.
+     *
+     * @param batch the batch to store
+     *
+     * @throws SQLException exception thrown whenever an error occurred while
+     * storing the parameters
+     * @throws IOException exception thrown whenever an error occurred while
+     * storing the parameters
+     * @throws InterruptedException exception thrown whenever a threading issue
+     * occurred while storing the parameters
+     */
+    private void storeBatch(HashMap<String, UrParameter> batch) throws SQLException, IOException, InterruptedException {
+        long start = System.nanoTime();
+        identification.addSpectrumMatchParameters(batch, null);
+        storageTime.addAndGet(System.nanoTime() - start);
+        batch.clear();
+    }
+
+    /**
+     * Runnable scoring the spectrum matches provided by an iterator.
+     */
+    private class PsmLocalizer implements Runnable {
+
+        /**
+         * The iterator providing the spectrum matches.
+         */
+        private final PsmIterator psmIterator;
+        /**
+         * The spectrum annotator of this thread.
+         */
+        private final PeptideSpectrumAnnotator spectrumAnnotator = new PeptideSpectrumAnnotator();
+        /**
+         * The waiting handler.
+         */
+        private final WaitingHandler waitingHandler;
+        /**
+         * The first exception encountered by the scoring threads.
+         */
+        private final AtomicReference<Exception> failure;
+
+        /**
+         * Constructor.
+         *
+         * @param psmIterator the iterator providing the spectrum matches
+         * @param waitingHandler waiting handler providing feedback on the
+         * process and allowing canceling the process
+         * @param failure the first exception encountered by the scoring
+         * threads, the scoring stops as soon as it is set
+         */
+        public PsmLocalizer(PsmIterator psmIterator, WaitingHandler waitingHandler, AtomicReference<Exception> failure) {
+            this.psmIterator = psmIterator;
+            this.waitingHandler = waitingHandler;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+
+            HashMap<String, UrParameter> batch = new HashMap<String, UrParameter>(batchSize);
+
+            try {
+                while (true) {
+
+                    long start = System.nanoTime();
+                    SpectrumMatch spectrumMatch = psmIterator.next();
+                    loadingTime.addAndGet(System.nanoTime() - start);
+
+                    if (spectrumMatch == null) {
+                        break;
+                    }
+                    if (failure.get() != null || waitingHandler != null && waitingHandler.isRunCanceled()) {
+                        return;
+                    }
+
+                    PtmLocalizationScores ptmLocalizationScores = scorePsm(spectrumMatch, spectrumAnnotator);
+                    if (ptmLocalizationScores != null) {
+                        batch.put(spectrumMatch.getKey(), ptmLocalizationScores);
+                        if (batch.size() >= batchSize) {
+                            storeBatch(batch);
+                        }
+                    }
+
+                    nProcessed.incrementAndGet();
+                    if (waitingHandler != null) {
+                        waitingHandler.increaseSecondaryProgressCounter();
+                    }
+                }
+
+                if (!batch.isEmpty()) {
+                    storeBatch(batch);
+                }
+
+            } catch (Exception ex) {
+                failure.compareAndSet(null, ex);
+            }
+        }
+    }
+}
@@ -10,7 +10,6 @@ import com.compomics.util.experiment.identification.matches.IonMatch;
 import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.identification.spectrum_annotation.spectrum_annotators.PeptideSpectrumAnnotator;
 import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
-import com.compomics.util.experiment.massspectrometry.Peak;
 import com.compomics.util.math.statistics.distributions.BinomialDistribution;
 import com.compomics.util.experiment.identification.spectrum_annotation.AnnotationSettings;
 import com.compomics.util.preferences.SequenceMatchingPreferences;
@@ -142,10 +141,10 @@ public class AScore {
         if (possibleSites.size() > nPTM) {
             Collections.sort(possibleSites);
             Peptide noModPeptide = Peptide.getNoModPeptide(peptide, ptms);
-            HashMap<Integer, MSnSpectrum> spectrumMap = getReducedSpectra(spectrum, specificAnnotationPreferences.getFragmentIonAccuracyInDa(spectrum.getMaxMz()), 10);
+            ReducedSpectra reducedSpectra = ReducedSpectra.getReducedSpectra(spectrum, specificAnnotationPreferences.getFragmentIonAccuracyInDa(spectrum.getMaxMz()), 10);
 
             HashMap<Integer, HashMap<Integer, Double>> positionToScoreMap = getPositionToScoreMap(peptide, noModPeptide, possibleSites,
-                    spectrum, spectrumMap, annotationPreferences, specificAnnotationPreferences, spectrumAnnotator, refPTM);
+                    reducedSpectra, annotationPreferences, specificAnnotationPreferences, spectrumAnnotator, refPTM);
 
             HashMap<Double, ArrayList<Integer>> peptideScoreToPostitionMap = getPeptideScoreToPositionMap(positionToScoreMap);
             ArrayList<Double> scores = new ArrayList<Double>(peptideScoreToPostitionMap.keySet());
@@ -165,7 +164,7 @@ public class AScore {
                 Double lowestScore = null;
                 for (int secondPosition : secondScoringSites) {
                     int bestDepth = getBestDepth(positionToScoreMap, bestPosition, secondPosition);
-                    tempMap = getScoreForPositions(peptide, noModPeptide, refPTM, bestPosition, secondPosition, annotationPreferences, specificAnnotationPreferences, spectrumAnnotator, bestDepth, spectrumMap.get(bestDepth));
+                    tempMap = getScoreForPositions(peptide, noModPeptide, refPTM, bestPosition, secondPosition, annotationPreferences, specificAnnotationPreferences, spectrumAnnotator, bestDepth, reducedSpectra.getSpectrum(bestDepth));
                     Double tempMapLowestScore = null;
                     for (int tempPos : tempMap.keySet()) {
                         double tempScore = tempMap.get(tempPos);
@@ -199,7 +198,7 @@ public class AScore {
                     for (int secondPosition : bestScoringSites) {
                         if (bestPosition != secondPosition) {
                             int bestDepth = getBestDepth(positionToScoreMap, bestPosition, secondPosition);
-                            tempMap = getScoreForPositions(peptide, noModPeptide, refPTM, bestPosition, secondPosition, annotationPreferences, specificAnnotationPreferences, spectrumAnnotator, bestDepth, spectrumMap.get(bestDepth));
+                            tempMap = getScoreForPositions(peptide, noModPeptide, refPTM, bestPosition, secondPosition, annotationPreferences, specificAnnotationPreferences, spectrumAnnotator, bestDepth, reducedSpectra.getSpectrum(bestDepth));
                             Double tempMapLowestScore = null;
                             for (int tempPos : tempMap.keySet()) {
                                 double tempScore = tempMap.get(tempPos);
@@ -352,7 +351,7 @@ public class AScore {
             }
         }
 
-        BinomialDistribution distribution = new BinomialDistribution(N, p);
+        BinomialDistribution distribution = BinomialDistribution.getBinomialDistribution(N, p);
 
         Double p1 = distribution.getDescendingCumulativeProbabilityAt((double) n);
 
@@ -512,48 +511,118 @@ public class AScore {
             MSnSpectrum spectrum, HashMap<Integer, MSnSpectrum> spectrumMap, AnnotationSettings annotationPreferences, SpecificAnnotationSettings specificAnnotationPreferences, PeptideSpectrumAnnotator spectrumAnnotator, PTM refPTM) throws MathException {
 
         HashMap<Integer, HashMap<Integer, Double>> positionToScoreMap = new HashMap<Integer, HashMap<Integer, Double>>();
+        int N = getNExpectedIons(peptide, specificAnnotationPreferences, spectrumAnnotator);
 
-        int N = 0;
-
-        for (ArrayList<Ion> fragmentIons : spectrumAnnotator.getExpectedIons(specificAnnotationPreferences, peptide).values()) {
-            N += fragmentIons.size();
+        for (int i = 0; i < spectrumMap.size(); i++) {
+            addPositionScores(positionToScoreMap, noModPeptide, possibleSites, spectrumMap.get(i), i, N, annotationPreferences, specificAnnotationPreferences, spectrumAnnotator, refPTM);
         }
+        return positionToScoreMap;
+    }
 
-        String sequence = noModPeptide.getSequence();
-        int sequenceLength = sequence.length();
+    /**
+     * Returns a map PTM localization &gt; score.
+     *
+     * @param peptide the peptide of interest
+     * @param noModPeptide the peptide without the variable modification of
+     * interest
+     * @param refPTM the PTM of interest
+     * @param annotationPreferences the global annotation preferences
+     * @param specificAnnotationPreferences the annotation preferences specific
+     * to this peptide and spectrum
+     * @param spectrumAnnotator the spectrum annotator which should be used to
+     * annotate the spectrum
+     * @param reducedSpectra the spectra extracted at the different depths
+     * @param possibleSites the possible modification sites
+     *
+     * @return a map PTM localization &gt; score
+     *
+     * @throws org.apache.commons.math.MathException exception thrown whenever a
+     * math error occurred while computing the score.
+     */
+    public static HashMap<Integer, HashMap<Integer, Double>> getPositionToScoreMap(Peptide peptide, Peptide noModPeptide, ArrayList<Integer> possibleSites,
+            ReducedSpectra reducedSpectra, AnnotationSettings annotationPreferences, SpecificAnnotationSettings specificAnnotationPreferences, PeptideSpectrumAnnotator spectrumAnnotator, PTM refPTM) throws MathException {
 
-        for (int i = 0; i < spectrumMap.size(); i++) {
+        HashMap<Integer, HashMap<Integer, Double>> positionToScoreMap = new HashMap<Integer, HashMap<Integer, Double>>();
+        int N = getNExpectedIons(peptide, specificAnnotationPreferences, spectrumAnnotator);
 
-            double p = ((double) i + 1) / 100;
+        for (int i = 0; i < reducedSpectra.getNDepths(); i++) {
+            addPositionScores(positionToScoreMap, noModPeptide, possibleSites, reducedSpectra.getSpectrum(i), i, N, annotationPreferences, specificAnnotationPreferences, spectrumAnnotator, refPTM);
+        }
+        return positionToScoreMap;
+    }
 
-            for (int pos : possibleSites) {
-                Peptide tempPeptide = new Peptide(noModPeptide.getSequence(), noModPeptide.getModificationMatches());
-                int position;
-                if (pos == 0) {
-                    position = 1;
-                } else if (pos == sequenceLength + 1) {
-                    position = sequenceLength;
-                } else {
-                    position = pos;
-                }
-                tempPeptide.addModificationMatch(new ModificationMatch(refPTM.getName(), true, position));
-
-                ArrayList<IonMatch> matches = spectrumAnnotator.getSpectrumAnnotation(annotationPreferences, specificAnnotationPreferences,
-                        spectrumMap.get(i), tempPeptide);
-                int n = matches.size();
-
-                BinomialDistribution distribution = new BinomialDistribution(N, p);
-                Double bigP = distribution.getDescendingCumulativeProbabilityAt((double) n);
-                Double score = -10 * MathUtils.log(10, bigP);
-                HashMap<Integer, Double> scoresAtPosition = positionToScoreMap.get(pos);
-                if (scoresAtPosition == null) {
-                    scoresAtPosition = new HashMap<Integer, Double>(2);
-                    positionToScoreMap.put(pos, scoresAtPosition);
-                }
-                scoresAtPosition.put(i + 1, score);
+    /**
+     * Returns the number of ions expected for the given peptide.
+     *
+     * @param peptide the peptide of interest
+     * @param specificAnnotationPreferences the annotation preferences specific
+     * to this peptide and spectrum
+     * @param spectrumAnnotator the spectrum annotator
+     *
+     * @return the number of ions expected for the given peptide
+     */
+    private static int getNExpectedIons(Peptide peptide, SpecificAnnotationSettings specificAnnotationPreferences, PeptideSpectrumAnnotator spectrumAnnotator) {
+        int N = 0;
+        for (ArrayList<Ion> fragmentIons : spectrumAnnotator.getExpectedIons(specificAnnotationPreferences, peptide).values()) {
+            N += fragmentIons.size();
+        }
+        return N;
+    }
+
+    /**
+     * Scores the possible sites in the spectrum extracted at the given depth
+     * and adds the scores to the position to score map.
+     *
+     * @param positionToScoreMap the position to score map to fill
+     * @param noModPeptide the peptide without the variable modification of
+     * interest
+     * @param possibleSites the possible modification sites
+     * @param spectrumAtDepth the spectrum extracted at the given depth
+     * @param depth the depth
+     * @param N the number of expected ions
+     * @param annotationPreferences the global annotation preferences
+     * @param specificAnnotationPreferences the annotation preferences specific
+     * to this peptide and spectrum
+     * @param spectrumAnnotator the spectrum annotator which should be used to
+     * annotate the spectrum
+     * @param refPTM the PTM of interest
+     *
+     * @throws org.apache.commons.math.MathException exception thrown whenever a
+     * math error occurred while computing the score.
+     */
+    private static void addPositionScores(HashMap<Integer, HashMap<Integer, Double>> positionToScoreMap, Peptide noModPeptide, ArrayList<Integer> possibleSites,
+            MSnSpectrum spectrumAtDepth, int depth, int N, AnnotationSettings annotationPreferences, SpecificAnnotationSettings specificAnnotationPreferences,
+            PeptideSpectrumAnnotator spectrumAnnotator, PTM refPTM) throws MathException {
+
+        int sequenceLength = noModPeptide.getSequence().length();
+        double p = ((double) depth + 1) / 100;
+        BinomialDistribution distribution = BinomialDistribution.getBinomialDistribution(N, p);
+
+        for (int pos : possibleSites) {
+            Peptide tempPeptide = new Peptide(noModPeptide.getSequence(), noModPeptide.getModificationMatches());
+            int position;
+            if (pos == 0) {
+                position = 1;
+            } else if (pos == sequenceLength + 1) {
+                position = sequenceLength;
+            } else {
+                position = pos;
+            }
+            tempPeptide.addModificationMatch(new ModificationMatch(refPTM.getName(), true, position));
+
+            ArrayList<IonMatch> matches = spectrumAnnotator.getSpectrumAnnotation(annotationPreferences, specificAnnotationPreferences,
+                    spectrumAtDepth, tempPeptide);
+            int n = matches.size();
+
+            Double bigP = distribution.getDescendingCumulativeProbabilityAt((double) n);
+            Double score = -10 * MathUtils.log(10, bigP);
+            HashMap<Integer, Double> scoresAtPosition = positionToScoreMap.get(pos);
+            if (scoresAtPosition == null) {
+                scoresAtPosition = new HashMap<Integer, Double>(2);
+                positionToScoreMap.put(pos, scoresAtPosition);
             }
+            scoresAtPosition.put(depth + 1, score);
         }
-        return positionToScoreMap;
     }
 
     /**
@@ -582,58 +651,6 @@ public class AScore {
      * @return a map containing the spectra filtered indexed by peak depth.
      */
     public static HashMap<Integer, MSnSpectrum> getReducedSpectra(MSnSpectrum baseSpectrum, double mzTolerance, int depthMax) {
-
-        HashMap<Integer, MSnSpectrum> result = new HashMap<Integer, MSnSpectrum>();
-        HashMap<Double, Peak> tempMap, peakMap = baseSpectrum.getPeakMap();
-        ArrayList<Double> intensities, mz = new ArrayList<Double>(peakMap.keySet());
-        Collections.sort(mz);
-        double mzMax = mz.get(mz.size() - 1);
-        int cpt = 0;
-        double currentmzMin = 0;
-
-        while (currentmzMin < mzMax) {
-            int cptTemp = 0;
-            while (cpt < mz.size()
-                    && mz.get(cpt) < currentmzMin + 20 * mzTolerance) {
-                cptTemp++;
-                cpt++;
-            }
-            if (depthMax == -1
-                    && cptTemp > depthMax) {
-                depthMax = cptTemp;
-            }
-            currentmzMin += 200 * mzTolerance;
-        }
-
-        for (int i = 0; i < depthMax; i++) {
-            result.put(i, new MSnSpectrum(2, baseSpectrum.getPrecursor(), baseSpectrum.getSpectrumTitle() + "_" + i, new HashMap<Double, Peak>(), "a score"));
-        }
-
-        cpt = 0;
-        currentmzMin = 0;
-
-        while (currentmzMin < mzMax) {
-            intensities = new ArrayList<Double>();
-            tempMap = new HashMap<Double, Peak>();
-
-            while (cpt < mz.size()
-                    && mz.get(cpt) < currentmzMin + 20 * mzTolerance) {
-                Peak tempPeak = peakMap.get(mz.get(cpt));
-                intensities.add(-tempPeak.intensity);
-                tempMap.put(-tempPeak.intensity, tempPeak);
-                cpt++;
-            }
-
-            Collections.sort(intensities);
-
-            for (int i = 0; i < intensities.size(); i++) {
-                for (int j = i; j < depthMax; j++) {
-                    result.get(j).addPeak(tempMap.get(intensities.get(i)));
-                }
-            }
-
-            currentmzMin += 200 * mzTolerance;
-        }
-        return result;
+        return ReducedSpectra.getReducedSpectra(baseSpectrum, mzTolerance, depthMax).getSpectra();
     }
 }
@@ -46,14 +46,6 @@ public class PhosphoRS {
      * The minimal depth to use per window.
      */
     public static final int MIN_DEPTH = 2;
-    /**
-     * The number of binomial distributions kept in cache.
-     */
-    private static int distributionCacheSize = 1000;
-    /**
-     * The binomial distributions cache.
-     */
-    private static HashMap<Double, HashMap<Integer, BinomialDistribution>> distributionCache = new HashMap<Double, HashMap<Integer, BinomialDistribution>>();
 
     /**
      * Returns the PhosphoRS sequence probabilities for the PTM possible
@@ -463,16 +455,7 @@ public class PhosphoRS {
     private static Double getPhosphoRsScoreP(Peptide peptide, HashMap<Integer, HashMap<Integer, ArrayList<Ion>>> possiblePeptideFragments, MSnSpectrum spectrum, double p, int n, PeptideSpectrumAnnotator spectrumAnnotator,
             AnnotationSettings annotationSettings, SpecificAnnotationSettings scoringAnnotationSettings) throws MathException {
 
-        BinomialDistribution distribution = null;
-        HashMap<Integer, BinomialDistribution> distributionsAtP = distributionCache.get(p);
-        boolean inCache = true;
-        if (distributionsAtP != null) {
-            distribution = distributionsAtP.get(n);
-        }
-        if (distribution == null) {
-            distribution = new BinomialDistribution(n, p);
-            inCache = false;
-        }
+        BinomialDistribution distribution = BinomialDistribution.getBinomialDistribution(n, p);
 
         ArrayList<IonMatch> matches = spectrumAnnotator.getSpectrumAnnotation(annotationSettings, scoringAnnotationSettings, spectrum, peptide, possiblePeptideFragments);
         int k = 0;
@@ -486,36 +469,9 @@ public class PhosphoRS {
         }
 
         Double result = distribution.getDescendingCumulativeProbabilityAt((double) k);
-        if (!inCache && !distribution.isCacheEmpty()) {
-            addDistributionToCache(p, n, distribution);
-        }
         return result;
     }
 
-    /**
-     * Adds a distribution to the cache and manages the cache size.
-     *
-     * @param p the distribution p
-     * @param n the distribution n
-     */
-    private static synchronized void addDistributionToCache(double p, int n, BinomialDistribution binomialDistribution) {
-        if (distributionCache.size() >= distributionCacheSize) {
-            HashSet<Double> keys = new HashSet<Double>(distributionCache.keySet());
-            for (Double key : keys) {
-                distributionCache.remove(key);
-                if (distributionCache.size() < distributionCacheSize) {
-                    break;
-                }
-            }
-        }
-        HashMap<Integer, BinomialDistribution> distributionsAtP = distributionCache.get(p);
-        if (distributionsAtP == null) {
-            distributionsAtP = new HashMap<Integer, BinomialDistribution>(2);
-            distributionCache.put(p, distributionsAtP);
-        }
-        distributionsAtP.put(n, binomialDistribution);
-    }
-
     /**
      * The probability p for a calculated fragment matching one of the
      * experimental masses by chance as estimated in the PhosphoRS algorithm. If
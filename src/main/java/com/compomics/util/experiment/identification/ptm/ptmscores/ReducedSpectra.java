@@ -0,0 +1,261 @@
+package com.compomics.util.experiment.identification.ptm.ptmscores;
+
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import com.compomics.util.experiment.massspectrometry.Peak;
+import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Compact representation of the spectra filtered on intensity used by the
+ * A-score. The peaks of the base spectrum are sorted by m/z and every peak is
+ * given its intensity rank in its m/z window, the spectrum at a given depth
+ * thus contains all peaks of rank lower or equal to this depth and is built
+ * from the base spectrum peaks without copy. Reduced spectra are cached by
+ * spectrum key and tolerance, the cache has the size of the spectrum factory
+ * cache and entries are invalidated when the spectrum factory reloads the base
+ * spectrum.
+ *
+ * @author Marc Vaudel
+ */
+public class ReducedSpectra {
+
+    /**
+     * The cache of reduced spectra indexed by spectrum key and tolerance.
+     */
+    private static final ConcurrentHashMap<String, ReducedSpectra> cache = new ConcurrentHashMap<String, ReducedSpectra>();
+    /**
+     * The keys of the cached reduced spectra in loading order.
+     */
+    private static final LinkedBlockingDeque<String> cachedKeys = new LinkedBlockingDeque<String>();
+    /**
+     * The base spectrum.
+     */
+    private final MSnSpectrum baseSpectrum;
+    /**
+     * The m/z tolerance used to build the windows.
+     */
+    private final double mzTolerance;
+    /**
+     * The peaks of the base spectrum sorted by m/z.
+     */
+    private final Peak[] peaks;
+    /**
+     * The intensity rank of every peak in its window, 0 being the most
+     * intense, Integer.MAX_VALUE for the peaks after the last window.
+     */
+    private final int[] ranks;
+    /**
+     * The number of depths available.
+     */
+    private final int nDepths;
+    /**
+     * The number of peaks at every depth.
+     */
+    private final int[] nPeaks;
+    /**
+     * The spectra at the different depths, built on demand.
+     */
+    private final MSnSpectrum[] spectra;
+
+    /**
+     * Constructor.
+     *
+     * @param baseSpectrum the base spectrum
+     * @param mzTolerance the m/z tolerance
+     * @param depthMax the depth to look into (10 for A-score). If -1 the
+     * maximal depth will be used
+     */
+    public ReducedSpectra(MSnSpectrum baseSpectrum, double mzTolerance, int depthMax) {
+
+        this.baseSpectrum = baseSpectrum;
+        this.mzTolerance = mzTolerance;
+
+        Collection<Peak> peakList = baseSpectrum.getPeakList();
+        peaks = peakList.toArray(new Peak[peakList.size()]);
+        Arrays.sort(peaks, new Comparator<Peak>() {
+            @Override
+            public int compare(Peak o1, Peak o2) {
+                return Double.compare(o1.mz, o2.mz);
+            }
+        });
+        ranks = new int[peaks.length];
+        Arrays.fill(ranks, Integer.MAX_VALUE);
+
+        Integer[] windowIndexes = new Integer[peaks.length];
+        Comparator<Integer> intensityComparator = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                int result = Double.compare(peaks[o2].intensity, peaks[o1].intensity);
+                if (result == 0) {
+                    result = o1 - o2;
+                }
+                return result;
+            }
+        };
+
+        int maxRank = 0;
+        int cpt = 0;
+        double currentmzMin = 0;
+        double mzMax = peaks.length > 0 ? peaks[peaks.length - 1].mz : 0;
+
+        while (currentmzMin < mzMax) {
+            int windowStart = cpt;
+            while (cpt < peaks.length
+                    && peaks[cpt].mz < currentmzMin + 20 * mzTolerance) {
+                windowIndexes[cpt - windowStart] = cpt;
+                cpt++;
+            }
+            int windowSize = cpt - windowStart;
+            if (windowSize > 0) {
+                Arrays.sort(windowIndexes, 0, windowSize, intensityComparator);
+                for (int i = 0; i < windowSize; i++) {
+                    ranks[windowIndexes[i]] = i;
+                }
+                if (windowSize > maxRank) {
+                    maxRank = windowSize;
+                }
+            }
+            currentmzMin += 200 * mzTolerance;
+        }
+
+        if (depthMax == -1) {
+            depthMax = maxRank;
+        }
+        nDepths = depthMax;
+        nPeaks = new int[nDepths];
+        for (int i = 0; i < peaks.length; i++) {
+            for (int depth = ranks[i]; depth < nDepths; depth++) {
+                nPeaks[depth]++;
+            }
+        }
+        spectra = new MSnSpectrum[nDepths];
+    }
+
+    /**
+     * Returns the reduced spectra of the given spectrum, from the cache if
+     * available.
+     *
+     * @param baseSpectrum the base spectrum
+     * @param mzTolerance the m/z tolerance
+     * @param depthMax the depth to look into (10 for A-score). If -1 the
+     * maximal depth will be used
+     *
+     * @return the reduced spectra
+     */
+    public static ReducedSpectra getReducedSpectra(MSnSpectrum baseSpectrum, double mzTolerance, int depthMax) {
+
+        String cacheKey = baseSpectrum.getSpectrumKey() + "_" + mzTolerance + "_" + depthMax;
+        ReducedSpectra reducedSpectra = cache.get(cacheKey);
+
+        if (reducedSpectra != null && reducedSpectra.baseSpectrum == baseSpectrum) {
+            return reducedSpectra;
+        }
+
+        reducedSpectra = new ReducedSpectra(baseSpectrum, mzTolerance, depthMax);
+
+        if (cache.put(cacheKey, reducedSpectra) == null) {
+            cachedKeys.add(cacheKey);
+            int cacheSize = SpectrumFactory.getInstance().getCacheSize();
+            while (cachedKeys.size() > cacheSize) {
+                String tempKey = cachedKeys.pollFirst();
+                if (tempKey != null) {
+                    cache.remove(tempKey);
+                }
+            }
+        }
+
+        return reducedSpectra;
+    }
+
+    /**
+     * Empties the cache.
+     */
+    public static void emptyCache() {
+        cache.clear();
+        cachedKeys.clear();
+    }
+
+    /**
+     * Returns the number of depths available.
+     *
+     * @return the number of depths available
+     */
+    public int getNDepths() {
+        return nDepths;
+    }
+
+    /**
+     * Returns the number of peaks retained at the given depth.
+     *
+     * @param depth the depth, 0 for the most intense peak of every window
+     *
+     * @return the number of peaks retained at the given depth
+     */
+    public int getNPeaks(int depth) {
+        return nPeaks[depth];
+    }
+
+    /**
+     * Returns the intensity rank of the peak at the given index in the m/z
+     * ordered peak array.
+     *
+     * @param index the index of the peak
+     *
+     * @return the intensity rank of the peak in its window,
+     * Integer.MAX_VALUE if the peak is after the last window
+     */
+    public int getRank(int index) {
+        return ranks[index];
+    }
+
+    /**
+     * Returns the m/z tolerance used to build the windows.
+     *
+     * @return the m/z tolerance used to build the windows
+     */
+    public double getMzTolerance() {
+        return mzTolerance;
+    }
+
+    /**
+     * Returns the spectrum at the given depth, i.e. containing the peaks of
+     * every window with an intensity rank lower or equal to the depth. The
+     * spectrum shares its peaks with the base spectrum and is built only once.
+     *
+     * @param depth the depth, 0 for the most intense peak of every window
+     *
+     * @return the spectrum at the given depth
+     */
+    public synchronized MSnSpectrum getSpectrum(int depth) {
+        MSnSpectrum spectrum = spectra[depth];
+        if (spectrum == null) {
+            HashMap<Double, Peak> peakMap = new HashMap<Double, Peak>(nPeaks[depth]);
+            for (int i = 0; i < peaks.length; i++) {
+                if (ranks[i] <= depth) {
+                    peakMap.put(peaks[i].mz, peaks[i]);
+                }
+            }
+            spectrum = new MSnSpectrum(2, baseSpectrum.getPrecursor(), baseSpectrum.getSpectrumTitle() + "_" + mzTolerance + "_" + depth, peakMap, "a score");
+            spectra[depth] = spectrum;
+        }
+        return spectrum;
+    }
+
+    /**
+     * Returns the spectra at all depths in a map: depth &gt; spectrum.
+     *
+     * @return the spectra at all depths
+     */
+    public HashMap<Integer, MSnSpectrum> getSpectra() {
+        HashMap<Integer, MSnSpectrum> result = new HashMap<Integer, MSnSpectrum>(nDepths);
+        for (int depth = 0; depth < nDepths; depth++) {
+            result.put(depth, getSpectrum(depth));
+        }
+        return result;
+    }
+}
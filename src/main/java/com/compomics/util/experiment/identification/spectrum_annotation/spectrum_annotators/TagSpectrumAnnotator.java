@@ -96,11 +96,12 @@ public class TagSpectrumAnnotator extends SpectrumAnnotator {
         for (TagComponent component : tag.getContent()) {
             if (component instanceof AminoAcidPattern) {
                 AminoAcidPattern aminoAcidPattern = (AminoAcidPattern) component;
+                ArrayList<Character> aminoAcidsAtTarget = aminoAcidPattern.getAminoAcidsAtTarget();
                 for (int i = 0; i < aminoAcidPattern.length(); i++) {
-                    if (aminoAcidPattern.getAminoAcidsAtTarget().contains(AminoAcid.D.getSingleLetterCodeAsChar())
-                            || aminoAcidPattern.getAminoAcidsAtTarget().contains(AminoAcid.E.getSingleLetterCodeAsChar())
-                            || aminoAcidPattern.getAminoAcidsAtTarget().contains(AminoAcid.S.getSingleLetterCodeAsChar())
-                            || aminoAcidPattern.getAminoAcidsAtTarget().contains(AminoAcid.T.getSingleLetterCodeAsChar())) {
+                    if (aminoAcidsAtTarget.contains(AminoAcid.D.getSingleLetterCodeAsChar())
+                            || aminoAcidsAtTarget.contains(AminoAcid.E.getSingleLetterCodeAsChar())
+                            || aminoAcidsAtTarget.contains(AminoAcid.S.getSingleLetterCodeAsChar())
+                            || aminoAcidsAtTarget.contains(AminoAcid.T.getSingleLetterCodeAsChar())) {
                         int index = i + offset;
                         aaMin = Math.min(index, aaMin);
                         aaMax = Math.max(index, aaMax);
@@ -137,11 +138,12 @@ public class TagSpectrumAnnotator extends SpectrumAnnotator {
         for (TagComponent component : tag.getContent()) {
             if (component instanceof AminoAcidPattern) {
                 AminoAcidPattern aminoAcidPattern = (AminoAcidPattern) component;
+                ArrayList<Character> aminoAcidsAtTarget = aminoAcidPattern.getAminoAcidsAtTarget();
                 for (int i = 0; i < aminoAcidPattern.length(); i++) {
-                    if (aminoAcidPattern.getAminoAcidsAtTarget().contains(AminoAcid.K.getSingleLetterCodeAsChar())
-                            || aminoAcidPattern.getAminoAcidsAtTarget().contains(AminoAcid.N.getSingleLetterCodeAsChar())
-                            || aminoAcidPattern.getAminoAcidsAtTarget().contains(AminoAcid.Q.getSingleLetterCodeAsChar())
-                            || aminoAcidPattern.getAminoAcidsAtTarget().contains(AminoAcid.R.getSingleLetterCodeAsChar())) {
+                    if (aminoAcidsAtTarget.contains(AminoAcid.K.getSingleLetterCodeAsChar())
+                            || aminoAcidsAtTarget.contains(AminoAcid.N.getSingleLetterCodeAsChar())
+                            || aminoAcidsAtTarget.contains(AminoAcid.Q.getSingleLetterCodeAsChar())
+                            || aminoAcidsAtTarget.contains(AminoAcid.R.getSingleLetterCodeAsChar())) {
                         int index = i + offset;
                         aaMin = Math.min(index, aaMin);
                         aaMax = Math.max(index, aaMax);
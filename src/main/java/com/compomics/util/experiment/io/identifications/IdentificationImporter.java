@@ -0,0 +1,583 @@
+package com.compomics.util.experiment.io.identifications;
+
+import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.Identification;
+import com.compomics.util.experiment.identification.SpectrumIdentificationAssumption;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.preferences.SequenceMatchingPreferences;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Imports the spectrum matches of identification files in an Identification.
+ * The import is a pipeline of three stages connected by bounded queues of
+ * batches of spectrum matches, each stage running on its own thread pool:
+ * (1) the readers stream the spectrum matches of the files, (2) the peptides
+ * are mapped to the proteins, and (3) the matches are written in the
+ * database in batch. The last task of a stage closes the queue of the next
+ * stage, and the first error encountered by a task stops the import.
+ *
+ * @author Marc Vaudel
+ */
+public class IdentificationImporter {
+
+    /**
+     * The default number of batches which can be queued between two stages.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 16;
+    /**
+     * Empty batch signaling the end of a queue.
+     */
+    private static final ArrayList<SpectrumMatch> END_OF_QUEUE = new ArrayList<SpectrumMatch>(0);
+    /**
+     * The identification where to import the spectrum matches.
+     */
+    private final Identification identification;
+    /**
+     * The sequence matching preferences used to map the peptides to the
+     * proteins. If null the peptides are not mapped.
+     */
+    private SequenceMatchingPreferences sequenceMatchingPreferences = null;
+    /**
+     * The number of threads used to read the files.
+     */
+    private int nReadingThreads = 1;
+    /**
+     * The number of threads used to map the peptides to the proteins.
+     */
+    private int nMappingThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The number of spectrum matches per batch.
+     */
+    private int batchSize = SpectrumMatchBuffer.DEFAULT_BATCH_SIZE;
+    /**
+     * The number of batches which can be queued between two stages.
+     */
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+    /**
+     * The number of spectrum matches read.
+     */
+    private final AtomicLong nRead = new AtomicLong();
+    /**
+     * The number of spectrum matches mapped.
+     */
+    private final AtomicLong nMapped = new AtomicLong();
+    /**
+     * The number of spectrum matches written.
+     */
+    private final AtomicLong nWritten = new AtomicLong();
+    /**
+     * The time spent reading in nanoseconds, summed over the threads.
+     */
+    private final AtomicLong readingTime = new AtomicLong();
+    /**
+     * The time spent mapping in nanoseconds, summed over the threads.
+     */
+    private final AtomicLong mappingTime = new AtomicLong();
+    /**
+     * The time spent writing in nanoseconds.
+     */
+    private final AtomicLong writingTime = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param identification the identification where to import the spectrum
+     * matches
+     */
+    public IdentificationImporter(Identification identification) {
+        this.identification = identification;
+    }
+
+    /**
+     * Imports the spectrum matches of the given readers. The progress is
+     * displayed on the secondary progress bar of the waiting handler, one
+     * step per file, and the stage counters in the secondary progress text.
+     *
+     * @param idfileReaders the readers of the files to import
+     * @param searchParameters the search parameters
+     * @param expandAaCombinations if true, any combination of amino acids
+     * will be expanded
+     * @param waitingHandler a waiting handler displaying the progress and
+     * allowing canceling the import (can be null)
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading a file
+     * @throws SQLException exception thrown whenever an error occurred while
+     * interacting with the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while deserializing an object
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    public void importSpectrumMatches(ArrayList<IdfileReader> idfileReaders, final SearchParameters searchParameters, final boolean expandAaCombinations,
+            final WaitingHandler waitingHandler) throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+
+        if (waitingHandler != null) {
+            waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(idfileReaders.size());
+        }
+
+        final BlockingQueue<ArrayList<SpectrumMatch>> readQueue = new ArrayBlockingQueue<ArrayList<SpectrumMatch>>(queueSize);
+        final BlockingQueue<ArrayList<SpectrumMatch>> mappedQueue = new ArrayBlockingQueue<ArrayList<SpectrumMatch>>(queueSize);
+
+        ExecutorService readingPool = Executors.newFixedThreadPool(nReadingThreads);
+        ExecutorService mappingPool = Executors.newFixedThreadPool(nMappingThreads);
+        ExecutorService writingPool = Executors.newSingleThreadExecutor();
+
+        // the tasks of all stages are collected in the order of completion
+        BlockingQueue<Future<Object>> completedTasks = new LinkedBlockingQueue<Future<Object>>();
+        CompletionService<Object> readingService = new ExecutorCompletionService<Object>(readingPool, completedTasks);
+        CompletionService<Object> mappingService = new ExecutorCompletionService<Object>(mappingPool, completedTasks);
+        CompletionService<Object> writingService = new ExecutorCompletionService<Object>(writingPool, completedTasks);
+
+        try {
+
+            // start the downstream stages
+            final AtomicInteger nMappingTasks = new AtomicInteger(nMappingThreads);
+            for (int i = 0; i < nMappingThreads; i++) {
+                mappingService.submit(new MappingStage(readQueue, mappedQueue, nMappingTasks));
+            }
+            writingService.submit(new WritingStage(mappedQueue, waitingHandler));
+
+            // read the files, the last reader closes the queue of the mapping stage
+            final AtomicInteger nReadingTasks = new AtomicInteger(idfileReaders.size());
+            for (final IdfileReader idfileReader : idfileReaders) {
+                readingService.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        idfileReader.streamSpectrumMatches(null, searchParameters, sequenceMatchingPreferences, expandAaCombinations,
+                                new ReadingStage(readQueue, waitingHandler), batchSize);
+                        if (waitingHandler != null) {
+                            waitingHandler.increaseSecondaryProgressCounter();
+                        }
+                        if (nReadingTasks.decrementAndGet() == 0) {
+                            closeQueue(readQueue, nMappingThreads);
+                        }
+                        return null;
+                    }
+                });
+            }
+            if (idfileReaders.isEmpty()) {
+                closeQueue(readQueue, nMappingThreads);
+            }
+
+            // wait for all tasks, the first failure cancels the others
+            int nTasks = idfileReaders.size() + nMappingThreads + 1;
+            for (int i = 0; i < nTasks; i++) {
+                getResult(completedTasks.take());
+            }
+
+        } catch (InterruptedException e) {
+            if (waitingHandler == null || !waitingHandler.isRunCanceled()) {
+                throw e;
+            }
+        } finally {
+            readingPool.shutdownNow();
+            mappingPool.shutdownNow();
+            writingPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Signals the end of the given queue to the tasks taking its batches.
+     *
+     * @param queue the queue
+     * @param nTasks the number of tasks taking the batches of the queue
+     *
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    private static void closeQueue(BlockingQueue<ArrayList<SpectrumMatch>> queue, int nTasks) throws InterruptedException {
+        for (int i = 0; i < nTasks; i++) {
+            queue.put(END_OF_QUEUE);
+        }
+    }
+
+    /**
+     * Waits for the given stage task to complete. The exceptions encountered
+     * by the stage are thrown again.
+     *
+     * @param task the task
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading a file
+     * @throws SQLException exception thrown whenever an error occurred while
+     * interacting with the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while deserializing an object
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    private void getResult(Future<Object> task) throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+        try {
+            task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Updates the secondary progress text of the waiting handler with the
+     * stage counters.
+     *
+     * @param waitingHandler the waiting handler (can be null)
+     */
+    private void updateProgressText(WaitingHandler waitingHandler) {
+        if (waitingHandler != null) {
+            waitingHandler.setSecondaryProgressText("Read: " + nRead.get() + ", mapped: " + nMapped.get() + ", written: " + nWritten.get() + " spectrum matches.");
+        }
+    }
+
+    /**
+     * Returns the sequence matching preferences used to map the peptides to
+     * the proteins, null if the peptides are not mapped.
+     *
+     * @return the sequence matching preferences
+     */
+    public SequenceMatchingPreferences getSequenceMatchingPreferences() {
+        return sequenceMatchingPreferences;
+    }
+
+    /**
+     * Sets the sequence matching preferences used to map the peptides to the
+     * proteins. The peptides without parent proteins are then mapped using
+     * the default protein tree. If null the peptides are not mapped.
+     *
+     * @param sequenceMatchingPreferences the sequence matching preferences
+     */
+    public void setSequenceMatchingPreferences(SequenceMatchingPreferences sequenceMatchingPreferences) {
+        this.sequenceMatchingPreferences = sequenceMatchingPreferences;
+    }
+
+    /**
+     * Returns the number of threads used to read the files.
+     *
+     * @return the number of threads used to read the files
+     */
+    public int getnReadingThreads() {
+        return nReadingThreads;
+    }
+
+    /**
+     * Sets the number of threads used to read the files.
+     *
+     * @param nReadingThreads the number of threads used to read the files
+     */
+    public void setnReadingThreads(int nReadingThreads) {
+        if (nReadingThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be a positive number.");
+        }
+        this.nReadingThreads = nReadingThreads;
+    }
+
+    /**
+     * Returns the number of threads used to map the peptides to the proteins.
+     *
+     * @return the number of threads used to map the peptides to the proteins
+     */
+    public int getnMappingThreads() {
+        return nMappingThreads;
+    }
+
+    /**
+     * Sets the number of threads used to map the peptides to the proteins.
+     *
+     * @param nMappingThreads the number of threads used to map the peptides
+     * to the proteins
+     */
+    public void setnMappingThreads(int nMappingThreads) {
+        if (nMappingThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be a positive number.");
+        }
+        this.nMappingThreads = nMappingThreads;
+    }
+
+    /**
+     * Returns the number of spectrum matches per batch.
+     *
+     * @return the number of spectrum matches per batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of spectrum matches per batch.
+     *
+     * @param batchSize the number of spectrum matches per batch
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be a positive number.");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of batches which can be queued between two stages.
+     *
+     * @return the number of batches which can be queued between two stages
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * Sets the number of batches which can be queued between two stages.
+     *
+     * @param queueSize the number of batches which can be queued between two
+     * stages
+     */
+    public void setQueueSize(int queueSize) {
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("Queue size must be a positive number.");
+        }
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Returns the number of spectrum matches read.
+     *
+     * @return the number of spectrum matches read
+     */
+    public long getnRead() {
+        return nRead.get();
+    }
+
+    /**
+     * Returns the number of spectrum matches mapped.
+     *
+     * @return the number of spectrum matches mapped
+     */
+    public long getnMapped() {
+        return nMapped.get();
+    }
+
+    /**
+     * Returns the number of spectrum matches written.
+     *
+     * @return the number of spectrum matches written
+     */
+    public long getnWritten() {
+        return nWritten.get();
+    }
+
+    /**
+     * Returns the time spent reading in milliseconds, summed over the reading
+     * threads. Note that this includes the time spent waiting for the
+     * downstream stages.
+     *
+     * @return the time spent reading in milliseconds
+     */
+    public long getReadingTime() {
+        return readingTime.get() / 1000000;
+    }
+
+    /**
+     * Returns the time spent mapping in milliseconds, summed over the mapping
+     * threads.
+     *
+     * @return the time spent mapping in milliseconds
+     */
+    public long getMappingTime() {
+        return mappingTime.get() / 1000000;
+    }
+
+    /**
+     * Returns the time spent writing in milliseconds.
+     *
+     * @return the time spent writing in milliseconds
+     */
+    public long getWritingTime() {
+        return writingTime.get() / 1000000;
+    }
+
+    /**
+     * Returns the throughput of a stage in spectrum matches per second.
+     *
+     * @param nMatches the number of spectrum matches processed by the stage
+     * @param time the time spent by the stage in milliseconds
+     *
+     * @return the throughput of the stage in spectrum matches per second
+     */
+    public static double getThroughput(long nMatches, long time) {
+        if (time == 0) {
+            return 0;
+        }
+        return 1000.0 * nMatches / time;
+    }
+
+    /**
+     * Reading stage: sends the batches of the reader to the queue.
+     */
+    private class ReadingStage implements SpectrumMatchConsumer {
+
+        /**
+         * The queue where to send the batches.
+         */
+        private final BlockingQueue<ArrayList<SpectrumMatch>> queue;
+        /**
+         * The waiting handler (can be null).
+         */
+        private final WaitingHandler waitingHandler;
+        /**
+         * The time when the last batch was sent.
+         */
+        private long lastBatchTime = System.nanoTime();
+
+        /**
+         * Constructor.
+         *
+         * @param queue the queue where to send the batches
+         * @param waitingHandler the waiting handler (can be null)
+         */
+        public ReadingStage(BlockingQueue<ArrayList<SpectrumMatch>> queue, WaitingHandler waitingHandler) {
+            this.queue = queue;
+            this.waitingHandler = waitingHandler;
+        }
+
+        @Override
+        public void processSpectrumMatches(ArrayList<SpectrumMatch> spectrumMatches) throws InterruptedException {
+            if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                throw new InterruptedException("Import canceled.");
+            }
+            long time = System.nanoTime();
+            readingTime.addAndGet(time - lastBatchTime);
+            nRead.addAndGet(spectrumMatches.size());
+            queue.put(spectrumMatches);
+            lastBatchTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Mapping stage: maps the peptides of the batches to the proteins. The
+     * last mapping task closes the queue of the writing stage.
+     */
+    private class MappingStage implements Callable<Object> {
+
+        /**
+         * The queue where to take the batches.
+         */
+        private final BlockingQueue<ArrayList<SpectrumMatch>> inputQueue;
+        /**
+         * The queue where to send the batches.
+         */
+        private final BlockingQueue<ArrayList<SpectrumMatch>> outputQueue;
+        /**
+         * The number of mapping tasks still running.
+         */
+        private final AtomicInteger nMappingTasks;
+
+        /**
+         * Constructor.
+         *
+         * @param inputQueue the queue where to take the batches
+         * @param outputQueue the queue where to send the batches
+         * @param nMappingTasks the number of mapping tasks still running
+         */
+        public MappingStage(BlockingQueue<ArrayList<SpectrumMatch>> inputQueue, BlockingQueue<ArrayList<SpectrumMatch>> outputQueue,
+                AtomicInteger nMappingTasks) {
+            this.inputQueue = inputQueue;
+            this.outputQueue = outputQueue;
+            this.nMappingTasks = nMappingTasks;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            ArrayList<SpectrumMatch> batch;
+            while ((batch = inputQueue.take()) != END_OF_QUEUE) {
+                long start = System.nanoTime();
+                if (sequenceMatchingPreferences != null) {
+                    for (SpectrumMatch spectrumMatch : batch) {
+                        for (SpectrumIdentificationAssumption assumption : spectrumMatch.getAllAssumptions()) {
+                            if (assumption instanceof PeptideAssumption) {
+                                Peptide peptide = ((PeptideAssumption) assumption).getPeptide();
+                                if (peptide.getParentProteinsNoRemapping() == null) {
+                                    peptide.getParentProteins(sequenceMatchingPreferences);
+                                }
+                            }
+                        }
+                    }
+                }
+                mappingTime.addAndGet(System.nanoTime() - start);
+                nMapped.addAndGet(batch.size());
+                outputQueue.put(batch);
+            }
+            if (nMappingTasks.decrementAndGet() == 0) {
+                closeQueue(outputQueue, 1);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writing stage: adds the batches to the identification.
+     */
+    private class WritingStage implements Callable<Object> {
+
+        /**
+         * The queue where to take the batches.
+         */
+        private final BlockingQueue<ArrayList<SpectrumMatch>> inputQueue;
+        /**
+         * The waiting handler (can be null).
+         */
+        private final WaitingHandler waitingHandler;
+
+        /**
+         * Constructor.
+         *
+         * @param inputQueue the queue where to take the batches
+         * @param waitingHandler the waiting handler (can be null)
+         */
+        public WritingStage(BlockingQueue<ArrayList<SpectrumMatch>> inputQueue, WaitingHandler waitingHandler) {
+            this.inputQueue = inputQueue;
+            this.waitingHandler = waitingHandler;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            ArrayList<SpectrumMatch> batch;
+            while ((batch = inputQueue.take()) != END_OF_QUEUE) {
+                long start = System.nanoTime();
+                identification.addSpectrumMatches(batch, null);
+                writingTime.addAndGet(System.nanoTime() - start);
+                nWritten.addAndGet(batch.size());
+                updateProgressText(waitingHandler);
+            }
+            return null;
+        }
+    }
+}
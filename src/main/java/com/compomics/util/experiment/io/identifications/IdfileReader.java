@@ -97,6 +97,40 @@ public interface IdfileReader {
     public LinkedList<SpectrumMatch> getAllSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences, boolean expandAaCombinations)
             throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException, XmlPullParserException, XmlPullParserException;
 
+    /**
+     * Streams all the identifications from an identification file to the given
+     * consumer in batches of bounded size. The parsing waits for the consumer
+     * to process every batch, the spectrum matches are thus not all kept in
+     * memory. The hits of a spectrum can be handed over in different spectrum
+     * matches with the same key which should be merged by the consumer. It is
+     * very important to close the file reader after creation. Secondary
+     * peptide and tag maps are filled according to the file content and the
+     * sequence matching preferences. If the sequence matching preferences are
+     * null, the maps are not filled.
+     *
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The secondary progress methods will be called.
+     * @param searchParameters the search parameters
+     * @param sequenceMatchingPreferences the sequence matching preferences to
+     * use for the creation of the secondary maps
+     * @param expandAaCombinations if true, a peptide assumption (not
+     * implemented for tag assumptions) will be created for all possible amino
+     * acid combination for peptide sequences containing an ambiguity like an X
+     * @param spectrumMatchConsumer the consumer of the spectrum matches
+     * @param batchSize the maximal number of spectrum matches per batch
+     *
+     * @throws IOException if an IOException occurs
+     * @throws IllegalArgumentException if an IllegalArgumentException occurs
+     * @throws SQLException if an SQLException occurs
+     * @throws ClassNotFoundException if an\ ClassNotFoundException occurs
+     * @throws InterruptedException if an InterruptedException occurs
+     * @throws JAXBException if a JAXBException occurs
+     * @throws XmlPullParserException if an XmlPullParserException occurs
+     */
+    public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+            boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize)
+            throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException, XmlPullParserException;
+
     /**
      * Returns a boolean indicating whether the file contains de novo results as tags.
      * 
@@ -0,0 +1,103 @@
+package com.compomics.util.experiment.io.identifications;
+
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * Buffer used by the IdfileReaders to hand over the spectrum matches to a
+ * consumer in batches of bounded size.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumMatchBuffer {
+
+    /**
+     * The default number of spectrum matches per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    /**
+     * The consumer of the spectrum matches.
+     */
+    private final SpectrumMatchConsumer spectrumMatchConsumer;
+    /**
+     * The number of spectrum matches per batch.
+     */
+    private final int batchSize;
+    /**
+     * The current batch.
+     */
+    private ArrayList<SpectrumMatch> batch;
+    /**
+     * The number of spectrum matches handed over to the consumer.
+     */
+    private long nSpectrumMatches = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param spectrumMatchConsumer the consumer of the spectrum matches
+     * @param batchSize the number of spectrum matches per batch
+     */
+    public SpectrumMatchBuffer(SpectrumMatchConsumer spectrumMatchConsumer, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be a positive number.");
+        }
+        this.spectrumMatchConsumer = spectrumMatchConsumer;
+        this.batchSize = batchSize;
+        batch = new ArrayList<SpectrumMatch>(batchSize);
+    }
+
+    /**
+     * Adds a spectrum match to the buffer, the batch is handed over to the
+     * consumer when full.
+     *
+     * @param spectrumMatch the spectrum match
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * processing the matches
+     * @throws SQLException exception thrown whenever an error occurred while
+     * processing the matches
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while processing the matches
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred while processing the matches
+     */
+    public void add(SpectrumMatch spectrumMatch) throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+        batch.add(spectrumMatch);
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Hands over the spectrum matches in the buffer to the consumer.
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * processing the matches
+     * @throws SQLException exception thrown whenever an error occurred while
+     * processing the matches
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while processing the matches
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred while processing the matches
+     */
+    public void flush() throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+        if (!batch.isEmpty()) {
+            ArrayList<SpectrumMatch> fullBatch = batch;
+            batch = new ArrayList<SpectrumMatch>(batchSize);
+            nSpectrumMatches += fullBatch.size();
+            spectrumMatchConsumer.processSpectrumMatches(fullBatch);
+        }
+    }
+
+    /**
+     * Returns the number of spectrum matches handed over to the consumer.
+     *
+     * @return the number of spectrum matches handed over to the consumer
+     */
+    public long getnSpectrumMatches() {
+        return nSpectrumMatches;
+    }
+}
@@ -0,0 +1,119 @@
+package com.compomics.util.experiment.io.identifications;
+
+import com.compomics.util.experiment.identification.SpectrumIdentificationAssumption;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Spectrum match consumer collecting all spectrum matches in a list. Like the
+ * readers used to do line by line, the hits of consecutive spectrum matches
+ * with the same key are merged, spectrum matches of the same spectrum found
+ * at different places of the file are collected separately unless all
+ * matches of a spectrum are to be merged.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumMatchCollector implements SpectrumMatchConsumer {
+
+    /**
+     * The spectrum matches collected.
+     */
+    private final LinkedList<SpectrumMatch> spectrumMatches = new LinkedList<SpectrumMatch>();
+    /**
+     * The last spectrum match collected.
+     */
+    private SpectrumMatch lastMatch = null;
+    /**
+     * The spectrum matches collected indexed by key, null if only consecutive
+     * matches are merged.
+     */
+    private final HashMap<String, SpectrumMatch> spectrumMatchesMap;
+
+    /**
+     * Constructor. Only consecutive matches of a spectrum are merged.
+     */
+    public SpectrumMatchCollector() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param mergeAllMatches if true all matches of a spectrum are merged in
+     * the first one, otherwise only consecutive matches are merged
+     */
+    public SpectrumMatchCollector(boolean mergeAllMatches) {
+        if (mergeAllMatches) {
+            spectrumMatchesMap = new HashMap<String, SpectrumMatch>();
+        } else {
+            spectrumMatchesMap = null;
+        }
+    }
+
+    @Override
+    public void processSpectrumMatches(ArrayList<SpectrumMatch> newMatches) {
+        for (SpectrumMatch spectrumMatch : newMatches) {
+            String key = spectrumMatch.getKey();
+            SpectrumMatch previousMatch;
+            if (spectrumMatchesMap != null) {
+                previousMatch = spectrumMatchesMap.get(key);
+            } else if (lastMatch != null && lastMatch.getKey().equals(key)) {
+                previousMatch = lastMatch;
+            } else {
+                previousMatch = null;
+            }
+            if (previousMatch != null) {
+                merge(previousMatch, spectrumMatch);
+            } else {
+                spectrumMatches.add(spectrumMatch);
+                if (spectrumMatchesMap != null) {
+                    spectrumMatchesMap.put(key, spectrumMatch);
+                }
+                lastMatch = spectrumMatch;
+            }
+        }
+    }
+
+    /**
+     * Adds the hits of a spectrum match to the match previously collected for
+     * the same spectrum. Readers can override this method to filter the hits
+     * merged.
+     *
+     * @param spectrumMatch the spectrum match collected
+     * @param otherMatch the spectrum match containing the hits to add
+     */
+    protected void merge(SpectrumMatch spectrumMatch, SpectrumMatch otherMatch) {
+        mergeHits(spectrumMatch, otherMatch);
+    }
+
+    /**
+     * Adds the hits of a spectrum match to another spectrum match.
+     *
+     * @param spectrumMatch the spectrum match where to add the hits
+     * @param otherMatch the spectrum match containing the hits to add
+     */
+    public static void mergeHits(SpectrumMatch spectrumMatch, SpectrumMatch otherMatch) {
+        HashMap<Integer, HashMap<Double, ArrayList<SpectrumIdentificationAssumption>>> assumptionsMap = otherMatch.getAssumptionsMap();
+        if (assumptionsMap != null) {
+            for (Integer advocateId : assumptionsMap.keySet()) {
+                HashMap<Double, ArrayList<SpectrumIdentificationAssumption>> advocateMap = assumptionsMap.get(advocateId);
+                for (ArrayList<SpectrumIdentificationAssumption> assumptions : advocateMap.values()) {
+                    for (SpectrumIdentificationAssumption assumption : assumptions) {
+                        spectrumMatch.addHit(advocateId, assumption, false);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the spectrum matches collected in the order of reception.
+     *
+     * @return the spectrum matches collected
+     */
+    public LinkedList<SpectrumMatch> getSpectrumMatches() {
+        return spectrumMatches;
+    }
+}
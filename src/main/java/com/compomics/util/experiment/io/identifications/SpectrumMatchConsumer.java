@@ -0,0 +1,37 @@
+package com.compomics.util.experiment.io.identifications;
+
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * Interface for the processing of the spectrum matches streamed by an
+ * IdfileReader. The reader waits for every batch to be processed before
+ * parsing further, the pace of the parsing is thus set by the consumer.
+ *
+ * @author Marc Vaudel
+ */
+public interface SpectrumMatchConsumer {
+
+    /**
+     * Processes a batch of spectrum matches. The reader does not reuse the
+     * batch after this call. Note that the hits of a spectrum can be split in
+     * different spectrum matches with the same key, in the same batch or in
+     * different batches, these should be merged by the consumer as done by
+     * Identification.addSpectrumMatch.
+     *
+     * @param spectrumMatches the spectrum matches
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * processing the matches
+     * @throws SQLException exception thrown whenever an error occurred while
+     * processing the matches
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while processing the matches
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred while processing the matches
+     */
+    public void processSpectrumMatches(ArrayList<SpectrumMatch> spectrumMatches)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException;
+}
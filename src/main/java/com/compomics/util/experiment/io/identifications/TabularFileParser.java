@@ -0,0 +1,358 @@
+package com.compomics.util.experiment.io.identifications;
+
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import uk.ac.ebi.pride.tools.braf.BufferedRandomAccessFile;
+
+/**
+ * Parser for tabular identification files. The file is divided into chunks of
+ * complete lines which are parsed concurrently. The spectrum matches of the
+ * chunks are merged in the order of the file: the hits of consecutive lines
+ * of the same spectrum are grouped in a single match, the result is thus
+ * independent of the number of threads. Like when the files were read line
+ * by line, spectrum keys are compared ignoring case and the match keeps the
+ * key of its first line.
+ *
+ * @author Marc Vaudel
+ */
+public class TabularFileParser {
+
+    /**
+     * The default size of a chunk in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+    /**
+     * The file to parse.
+     */
+    private final File file;
+    /**
+     * The separator between the fields.
+     */
+    private final String separator;
+    /**
+     * The number of threads to use.
+     */
+    private final int nThreads;
+    /**
+     * The size of a chunk in bytes.
+     */
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    /**
+     * The prefix of the lines starting a record spanning multiple lines, null
+     * if every line is a record.
+     */
+    private String recordPrefix = null;
+
+    /**
+     * Constructor.
+     *
+     * @param file the file to parse
+     * @param separator the separator between the fields
+     * @param nThreads the number of threads to use
+     */
+    public TabularFileParser(File file, String separator, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be a positive number.");
+        }
+        this.file = file;
+        this.separator = separator;
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Sets the size of a chunk in bytes. Chunks are extended to the end of
+     * the last line, or record if a record prefix is set.
+     *
+     * @param chunkSize the size of a chunk in bytes
+     */
+    public void setChunkSize(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be a positive number.");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns the size of a chunk in bytes.
+     *
+     * @return the size of a chunk in bytes
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the prefix of the lines starting a record spanning multiple lines,
+     * for example '&gt;' for the spectrum title lines of Andromeda files.
+     * Chunks will then only start at such lines. Null if every line is a
+     * record.
+     *
+     * @param recordPrefix the prefix of the lines starting a record
+     */
+    public void setRecordPrefix(String recordPrefix) {
+        this.recordPrefix = recordPrefix;
+    }
+
+    /**
+     * Returns the prefix of the lines starting a record spanning multiple
+     * lines, null if every line is a record.
+     *
+     * @return the prefix of the lines starting a record
+     */
+    public String getRecordPrefix() {
+        return recordPrefix;
+    }
+
+    /**
+     * Returns the bounds of the chunks of the file in bytes. Chunk i starts at
+     * bounds[i] and ends before bounds[i+1], every bound but the last is the
+     * start of a line.
+     *
+     * @param dataStart the index of the first line to parse
+     *
+     * @return the bounds of the chunks of the file
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     */
+    public long[] getChunkBounds(long dataStart) throws IOException {
+
+        ArrayList<Long> bounds = new ArrayList<Long>();
+        BufferedRandomAccessFile bufferedRandomAccessFile = new BufferedRandomAccessFile(file, "r", 1024 * 100);
+
+        try {
+            long length = bufferedRandomAccessFile.length();
+            long position = dataStart;
+            bounds.add(position);
+
+            while (position + chunkSize < length) {
+
+                // go to the start of the next line
+                bufferedRandomAccessFile.seek(position + chunkSize - 1);
+                bufferedRandomAccessFile.getNextLine();
+                long next = bufferedRandomAccessFile.getFilePointer();
+
+                // go to the start of the next record
+                if (recordPrefix != null) {
+                    String line = bufferedRandomAccessFile.getNextLine();
+                    while (line != null && !line.startsWith(recordPrefix)) {
+                        next = bufferedRandomAccessFile.getFilePointer();
+                        line = bufferedRandomAccessFile.getNextLine();
+                    }
+                    if (line == null) {
+                        next = length;
+                    }
+                }
+
+                if (next >= length) {
+                    break;
+                }
+                bounds.add(next);
+                position = next;
+            }
+
+            bounds.add(length);
+
+        } finally {
+            bufferedRandomAccessFile.close();
+        }
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Parses the file from the given index and sends the spectrum matches to
+     * the given buffer in the order of the file. The buffer is flushed at the
+     * end of the parsing.
+     *
+     * @param dataStart the index of the first line to parse
+     * @param tabularLineParser the line parser
+     * @param spectrumMatchBuffer the buffer where to send the spectrum matches
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The secondary progress methods will be called.
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     * @throws SQLException exception thrown whenever an error occurred while
+     * processing the spectrum matches
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while processing the spectrum matches
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    public void parse(long dataStart, TabularLineParser tabularLineParser, SpectrumMatchBuffer spectrumMatchBuffer, WaitingHandler waitingHandler)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+
+        long[] bounds = getChunkBounds(dataStart);
+        int nChunks = bounds.length - 1;
+
+        if (waitingHandler != null) {
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(nChunks);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        LinkedList<Future<ArrayList<SpectrumMatch>>> pendingChunks = new LinkedList<Future<ArrayList<SpectrumMatch>>>();
+        SpectrumMatch currentMatch = null;
+        int nextChunk = 0;
+
+        try {
+            while (nextChunk < nChunks || !pendingChunks.isEmpty()) {
+
+                // keep a bounded number of chunks in memory
+                while (nextChunk < nChunks && pendingChunks.size() < 2 * nThreads) {
+                    ChunkParser chunkParser = new ChunkParser(bounds[nextChunk], bounds[nextChunk + 1], tabularLineParser.getChunkParser());
+                    pendingChunks.add(pool.submit(chunkParser));
+                    nextChunk++;
+                }
+
+                // merge the chunks in the order of the file
+                for (SpectrumMatch spectrumMatch : getChunkResult(pendingChunks.removeFirst())) {
+                    if (currentMatch != null && currentMatch.getKey().equalsIgnoreCase(spectrumMatch.getKey())) {
+                        SpectrumMatchCollector.mergeHits(currentMatch, spectrumMatch);
+                    } else {
+                        if (currentMatch != null) {
+                            spectrumMatchBuffer.add(currentMatch);
+                        }
+                        currentMatch = spectrumMatch;
+                    }
+                }
+
+                if (waitingHandler != null) {
+                    waitingHandler.increaseSecondaryProgressCounter();
+                    if (waitingHandler.isRunCanceled()) {
+                        break;
+                    }
+                }
+            }
+
+            // add the last match, if any
+            if (currentMatch != null) {
+                spectrumMatchBuffer.add(currentMatch);
+            }
+
+        } finally {
+            pool.shutdownNow();
+        }
+
+        spectrumMatchBuffer.flush();
+    }
+
+    /**
+     * Waits for the given chunk to be parsed and returns its spectrum matches.
+     * The exceptions encountered while parsing are thrown again.
+     *
+     * @param chunk the future result of the chunk parsing
+     *
+     * @return the spectrum matches of the chunk
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * parsing the chunk
+     * @throws SQLException exception thrown whenever an error occurred while
+     * parsing the chunk
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while parsing the chunk
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    private ArrayList<SpectrumMatch> getChunkResult(Future<ArrayList<SpectrumMatch>> chunk)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+        try {
+            return chunk.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Parses the lines of a chunk of the file.
+     */
+    private class ChunkParser implements Callable<ArrayList<SpectrumMatch>> {
+
+        /**
+         * The start of the chunk.
+         */
+        private final long start;
+        /**
+         * The end of the chunk.
+         */
+        private final long end;
+        /**
+         * The line parser of this chunk.
+         */
+        private final TabularLineParser tabularLineParser;
+
+        /**
+         * Constructor.
+         *
+         * @param start the start of the chunk
+         * @param end the end of the chunk
+         * @param tabularLineParser the line parser of this chunk
+         */
+        public ChunkParser(long start, long end, TabularLineParser tabularLineParser) {
+            this.start = start;
+            this.end = end;
+            this.tabularLineParser = tabularLineParser;
+        }
+
+        @Override
+        public ArrayList<SpectrumMatch> call() throws Exception {
+
+            ArrayList<SpectrumMatch> result = new ArrayList<SpectrumMatch>();
+            TabularLine tabularLine = new TabularLine(separator);
+            SpectrumMatch currentMatch = null;
+
+            BufferedRandomAccessFile bufferedRandomAccessFile = new BufferedRandomAccessFile(file, "r", 1024 * 100);
+
+            try {
+                bufferedRandomAccessFile.seek(start);
+                String line;
+                while (bufferedRandomAccessFile.getFilePointer() < end
+                        && (line = bufferedRandomAccessFile.getNextLine()) != null) {
+                    tabularLine.setLine(line);
+                    SpectrumMatch spectrumMatch = tabularLineParser.parseLine(tabularLine);
+                    if (spectrumMatch != null) {
+                        if (currentMatch != null && currentMatch.getKey().equalsIgnoreCase(spectrumMatch.getKey())) {
+                            SpectrumMatchCollector.mergeHits(currentMatch, spectrumMatch);
+                        } else {
+                            result.add(spectrumMatch);
+                            currentMatch = spectrumMatch;
+                        }
+                    }
+                }
+            } finally {
+                bufferedRandomAccessFile.close();
+            }
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.compomics.util.experiment.io.identifications;
+
+import com.compomics.util.Util;
+
+/**
+ * A line of a tabular file split in fields. Only the positions of the
+ * separators are stored when setting the line, the fields are extracted on
+ * demand. An instance can be reused for successive lines but is not thread
+ * safe.
+ *
+ * @author Marc Vaudel
+ */
+public class TabularLine {
+
+    /**
+     * The separator between the fields.
+     */
+    private final String separator;
+    /**
+     * The line.
+     */
+    private String line;
+    /**
+     * The start index of every field in the line.
+     */
+    private int[] fieldStarts = new int[32];
+    /**
+     * The end index of every field in the line.
+     */
+    private int[] fieldEnds = new int[32];
+    /**
+     * The number of fields in the line.
+     */
+    private int nFields = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param separator the separator between the fields
+     */
+    public TabularLine(String separator) {
+        if (separator == null || separator.length() == 0) {
+            throw new IllegalArgumentException("No separator provided.");
+        }
+        this.separator = separator;
+    }
+
+    /**
+     * Sets the line and locates its fields.
+     *
+     * @param line the line
+     */
+    public void setLine(String line) {
+        this.line = line;
+        nFields = 0;
+        int lineLength = line.length();
+        int start = 0;
+        while (true) {
+            int end = line.indexOf(separator, start);
+            if (end == -1) {
+                end = lineLength;
+            }
+            if (nFields == fieldStarts.length) {
+                int[] newStarts = new int[2 * nFields];
+                int[] newEnds = new int[2 * nFields];
+                System.arraycopy(fieldStarts, 0, newStarts, 0, nFields);
+                System.arraycopy(fieldEnds, 0, newEnds, 0, nFields);
+                fieldStarts = newStarts;
+                fieldEnds = newEnds;
+            }
+            fieldStarts[nFields] = start;
+            fieldEnds[nFields] = end;
+            nFields++;
+            if (end == lineLength) {
+                break;
+            }
+            start = end + separator.length();
+        }
+    }
+
+    /**
+     * Returns the line.
+     *
+     * @return the line
+     */
+    public String getLine() {
+        return line;
+    }
+
+    /**
+     * Returns the number of fields in the line.
+     *
+     * @return the number of fields in the line
+     */
+    public int getNFields() {
+        return nFields;
+    }
+
+    /**
+     * Indicates whether the line only contains white spaces.
+     *
+     * @return a boolean indicating whether the line only contains white spaces
+     */
+    public boolean isBlank() {
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Indicates whether the line starts with the given prefix.
+     *
+     * @param prefix the prefix
+     *
+     * @return a boolean indicating whether the line starts with the given
+     * prefix
+     */
+    public boolean startsWith(String prefix) {
+        return line.startsWith(prefix);
+    }
+
+    /**
+     * Returns the field at the given index.
+     *
+     * @param index the index of the field
+     *
+     * @return the field at the given index
+     */
+    public String getField(int index) {
+        checkIndex(index);
+        return line.substring(fieldStarts[index], fieldEnds[index]);
+    }
+
+    /**
+     * Parses the field at the given index as an integer.
+     *
+     * @param index the index of the field
+     *
+     * @return the field at the given index as an integer
+     */
+    public int getInt(int index) {
+        checkIndex(index);
+        int start = fieldStarts[index], end = fieldEnds[index];
+        boolean negative = start < end && line.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(getField(index));
+        }
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(getField(index));
+            }
+            result = 10 * result + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses the field at the given index as a double using
+     * Util.readDoubleAsString.
+     *
+     * @param index the index of the field
+     *
+     * @return the field at the given index as a double
+     */
+    public double getDouble(int index) {
+        return Util.readDoubleAsString(getField(index));
+    }
+
+    /**
+     * Throws an IllegalArgumentException if no field is found at the given
+     * index.
+     *
+     * @param index the index of the field
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= nFields) {
+            throw new IllegalArgumentException("Field " + index + " not found in line \"" + line + "\".");
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.compomics.util.experiment.io.identifications;
+
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Interface for the parsing of the lines of a tabular identification file by
+ * the TabularFileParser.
+ *
+ * @author Marc Vaudel
+ */
+public interface TabularLineParser {
+
+    /**
+     * Returns a parser for a new chunk of the file. The lines of a chunk are
+     * parsed in the order of the file by a single thread, different chunks
+     * are parsed concurrently. Parsers without state can return themselves.
+     *
+     * @return a parser for a new chunk of the file
+     */
+    public TabularLineParser getChunkParser();
+
+    /**
+     * Parses a line and returns a spectrum match containing the hits found in
+     * this line, null if none.
+     *
+     * @param tabularLine the line to parse
+     *
+     * @return a spectrum match containing the hits found in this line
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * parsing the line
+     * @throws SQLException exception thrown whenever an error occurred while
+     * parsing the line
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while parsing the line
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred while parsing the line
+     */
+    public SpectrumMatch parseLine(TabularLine tabularLine)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException;
+}
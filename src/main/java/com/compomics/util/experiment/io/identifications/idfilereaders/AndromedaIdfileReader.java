@@ -9,6 +9,12 @@ import com.compomics.util.experiment.identification.identification_parameters.Se
 import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.io.identifications.IdfileReader;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchConsumer;
+import com.compomics.util.experiment.io.identifications.TabularFileParser;
+import com.compomics.util.experiment.io.identifications.TabularLine;
+import com.compomics.util.experiment.io.identifications.TabularLineParser;
 import com.compomics.util.experiment.massspectrometry.Charge;
 import com.compomics.util.experiment.massspectrometry.Spectrum;
 import com.compomics.util.experiment.personalization.ExperimentObject;
@@ -24,7 +30,6 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import javax.xml.bind.JAXBException;
 import org.apache.commons.math3.util.FastMath;
-import uk.ac.ebi.pride.tools.braf.BufferedRandomAccessFile;
 
 /**
  * This IdfileReader reads identifications from an Andromeda result file.
@@ -41,6 +46,14 @@ public class AndromedaIdfileReader extends ExperimentObject implements IdfileRea
      * The name of the Andromeda result file.
      */
     private String fileName;
+    /**
+     * The number of threads to use for the parsing.
+     */
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The size in bytes of the chunks of the file parsed concurrently.
+     */
+    private int chunkSize = TabularFileParser.DEFAULT_CHUNK_SIZE;
 
     /**
      * Default constructor for the purpose of instantiation.
@@ -75,85 +88,78 @@ public class AndromedaIdfileReader extends ExperimentObject implements IdfileRea
     public LinkedList<SpectrumMatch> getAllSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters,
             SequenceMatchingPreferences sequenceMatchingPreferences, boolean expandAaCombinations)
             throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
+        // the hits of a spectrum can be listed in different blocks
+        SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector(true);
+        streamSpectrumMatches(waitingHandler, searchParameters, sequenceMatchingPreferences, expandAaCombinations, spectrumMatchCollector, SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+        return spectrumMatchCollector.getSpectrumMatches();
+    }
+
+    @Override
+    public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+            boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize)
+            throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
 
         String mgfFile = Util.removeExtension(fileName) + ".mgf"; //@TODO: make this generic?
 
-        LinkedList<SpectrumMatch> result = new LinkedList<SpectrumMatch>();
-        HashMap<String, SpectrumMatch> spectrumMatchesMap = new HashMap<String, SpectrumMatch>();
-        BufferedRandomAccessFile bufferedRandomAccessFile = new BufferedRandomAccessFile(resultsFile, "r", 1024 * 100);
-        if (waitingHandler != null) {
-            waitingHandler.setMaxSecondaryProgressCounter(100);
-        }
-        long progressUnit = bufferedRandomAccessFile.length() / 100;
-        String line, title = null;
-        SpectrumMatch spectrumMatch = null;
-        int rank = 0;
-        boolean firstSpectrum = false;
-        while ((line = bufferedRandomAccessFile.readLine()) != null) {
-            if (line.startsWith(">")) {
-                if (!firstSpectrum) {
-                    firstSpectrum = true;
-                }
-                title = line.substring(1);
-                // remove any html from the title
-                title = URLDecoder.decode(title, "utf-8");
-                spectrumMatch = null;
-                long currentIndex = bufferedRandomAccessFile.getFilePointer();
-                if (waitingHandler != null) {
-                    waitingHandler.setSecondaryProgressCounter((int) (currentIndex / progressUnit));
-                }
-            } else if (firstSpectrum) {
-                if (spectrumMatch == null) {
-                    String spectrumKey = Spectrum.getSpectrumKey(mgfFile, title);
-                    spectrumMatch = spectrumMatchesMap.get(spectrumKey);
-                    rank = 0; // the rank is here per charge
-                    if (spectrumMatch == null) {
-                        spectrumMatch = new SpectrumMatch(Spectrum.getSpectrumKey(mgfFile, title));
-                        result.add(spectrumMatch);
-                        spectrumMatchesMap.put(spectrumKey, spectrumMatch);
-                    }
-                }
-                rank++;
-                PeptideAssumption peptideAssumption = getAssumptionFromLine(line, rank);
-                if (expandAaCombinations && AminoAcidSequence.hasCombination(peptideAssumption.getPeptide().getSequence())) {
-                    Peptide peptide = peptideAssumption.getPeptide();
-                    ArrayList<ModificationMatch> previousModificationMatches = peptide.getModificationMatches(),
-                            newModificationMatches = null;
-                    if (previousModificationMatches != null) {
-                        newModificationMatches = new ArrayList<ModificationMatch>(previousModificationMatches.size());
-                    }
-                    for (StringBuilder expandedSequence : AminoAcidSequence.getCombinations(peptide.getSequence())) {
-                        Peptide newPeptide = new Peptide(expandedSequence.toString(), newModificationMatches);
-                        if (previousModificationMatches != null) {
-                            for (ModificationMatch modificationMatch : previousModificationMatches) {
-                                newPeptide.addModificationMatch(new ModificationMatch(modificationMatch.getTheoreticPtm(), modificationMatch.isVariable(), modificationMatch.getModificationSite()));
-                            }
-                        }
-                        PeptideAssumption newAssumption = new PeptideAssumption(newPeptide, peptideAssumption.getRank(), peptideAssumption.getAdvocate(), peptideAssumption.getIdentificationCharge(), peptideAssumption.getScore(), peptideAssumption.getIdentificationFile());
-                        spectrumMatch.addHit(Advocate.andromeda.getIndex(), newAssumption, true);
-                    }
-                } else {
-                    spectrumMatch.addHit(Advocate.andromeda.getIndex(), peptideAssumption, true);
-                }
-            }
-        }
+        SpectrumMatchBuffer spectrumMatchBuffer = new SpectrumMatchBuffer(spectrumMatchConsumer, batchSize);
 
-        return result;
+        // the hits of a spectrum are listed under the spectrum title line
+        TabularFileParser tabularFileParser = new TabularFileParser(resultsFile, "\t", nThreads);
+        tabularFileParser.setChunkSize(chunkSize);
+        tabularFileParser.setRecordPrefix(">");
+        tabularFileParser.parse(0, new AndromedaLineParser(mgfFile, expandAaCombinations), spectrumMatchBuffer, waitingHandler);
+    }
+
+    /**
+     * Returns the number of threads used for the parsing.
+     *
+     * @return the number of threads used for the parsing
+     */
+    public int getnThreads() {
+        return nThreads;
+    }
+
+    /**
+     * Sets the number of threads to use for the parsing.
+     *
+     * @param nThreads the number of threads to use for the parsing
+     */
+    public void setnThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Returns the size in bytes of the chunks of the file parsed
+     * concurrently.
+     *
+     * @return the size in bytes of the chunks of the file parsed
+     * concurrently
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the size in bytes of the chunks of the file parsed concurrently.
+     *
+     * @param chunkSize the size in bytes of the chunks of the file parsed
+     * concurrently
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
     }
 
     /**
      * Returns a Peptide Assumption from an Andromeda line.
      *
-     * @param line the line to parse
+     * @param tabularLine the line to parse
      * @param rank the rank of the assumption
      *
      * @return the corresponding assumption
      */
-    private PeptideAssumption getAssumptionFromLine(String line, int rank) {
+    private PeptideAssumption getAssumptionFromLine(TabularLine tabularLine, int rank) {
 
-        String[] temp = line.trim().split("\t");
-
-        String[] temp1 = temp[4].split(",");
+        String[] temp1 = tabularLine.getField(4).split(",");
         ArrayList<ModificationMatch> modMatches = new ArrayList<ModificationMatch>();
 
         for (int aa = 0; aa < temp1.length; aa++) {
@@ -163,11 +169,11 @@ public class AndromedaIdfileReader extends ExperimentObject implements IdfileRea
             }
         }
 
-        String sequence = temp[0];
+        String sequence = tabularLine.getField(0);
         Peptide peptide = new Peptide(sequence, modMatches);
 
-        Charge charge = new Charge(Charge.PLUS, new Integer(temp[6]));
-        Double score = new Double(temp[1]);
+        Charge charge = new Charge(Charge.PLUS, tabularLine.getInt(6));
+        Double score = new Double(tabularLine.getField(1));
         Double p = FastMath.pow(10, -(score / 10));
         PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, rank, Advocate.andromeda.getIndex(), charge, p, fileName);
         peptideAssumption.setRawScore(score);
@@ -201,4 +207,96 @@ public class AndromedaIdfileReader extends ExperimentObject implements IdfileRea
     public boolean hasDeNovoTags() {
         return false;
     }
+
+    /**
+     * Parser for the lines of an Andromeda result file. The parser keeps
+     * track of the spectrum title line preceding the hits and can thus not be
+     * shared between chunks.
+     */
+    private class AndromedaLineParser implements TabularLineParser {
+
+        /**
+         * The name of the spectrum file.
+         */
+        private final String mgfFile;
+        /**
+         * Indicates whether the amino acid combinations should be expanded.
+         */
+        private final boolean expandAaCombinations;
+        /**
+         * The key of the spectrum of the current block, null if no title was
+         * found yet.
+         */
+        private String spectrumKey = null;
+        /**
+         * The rank of the last hit in the current block.
+         */
+        private int rank = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param mgfFile the name of the spectrum file
+         * @param expandAaCombinations indicates whether the amino acid
+         * combinations should be expanded
+         */
+        public AndromedaLineParser(String mgfFile, boolean expandAaCombinations) {
+            this.mgfFile = mgfFile;
+            this.expandAaCombinations = expandAaCombinations;
+        }
+
+        @Override
+        public TabularLineParser getChunkParser() {
+            return new AndromedaLineParser(mgfFile, expandAaCombinations);
+        }
+
+        @Override
+        public SpectrumMatch parseLine(TabularLine tabularLine) throws IOException {
+
+            String line = tabularLine.getLine();
+
+            if (line.startsWith(">")) {
+                // remove any html from the title
+                String title = URLDecoder.decode(line.substring(1), "utf-8");
+                spectrumKey = Spectrum.getSpectrumKey(mgfFile, title);
+                rank = 0; // the rank is here per charge
+                return null;
+            }
+
+            if (spectrumKey == null || tabularLine.isBlank()) {
+                return null;
+            }
+
+            String trimmedLine = line.trim();
+            if (trimmedLine.length() != line.length()) {
+                tabularLine.setLine(trimmedLine);
+            }
+
+            SpectrumMatch spectrumMatch = new SpectrumMatch(spectrumKey);
+            rank++;
+            PeptideAssumption peptideAssumption = getAssumptionFromLine(tabularLine, rank);
+            if (expandAaCombinations && AminoAcidSequence.hasCombination(peptideAssumption.getPeptide().getSequence())) {
+                Peptide peptide = peptideAssumption.getPeptide();
+                ArrayList<ModificationMatch> previousModificationMatches = peptide.getModificationMatches(),
+                        newModificationMatches = null;
+                if (previousModificationMatches != null) {
+                    newModificationMatches = new ArrayList<ModificationMatch>(previousModificationMatches.size());
+                }
+                for (StringBuilder expandedSequence : AminoAcidSequence.getCombinations(peptide.getSequence())) {
+                    Peptide newPeptide = new Peptide(expandedSequence.toString(), newModificationMatches);
+                    if (previousModificationMatches != null) {
+                        for (ModificationMatch modificationMatch : previousModificationMatches) {
+                            newPeptide.addModificationMatch(new ModificationMatch(modificationMatch.getTheoreticPtm(), modificationMatch.isVariable(), modificationMatch.getModificationSite()));
+                        }
+                    }
+                    PeptideAssumption newAssumption = new PeptideAssumption(newPeptide, peptideAssumption.getRank(), peptideAssumption.getAdvocate(), peptideAssumption.getIdentificationCharge(), peptideAssumption.getScore(), peptideAssumption.getIdentificationFile());
+                    spectrumMatch.addHit(Advocate.andromeda.getIndex(), newAssumption, true);
+                }
+            } else {
+                spectrumMatch.addHit(Advocate.andromeda.getIndex(), peptideAssumption, true);
+            }
+
+            return spectrumMatch;
+        }
+    }
 }
@@ -12,6 +12,9 @@ import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.identification.amino_acid_tags.Tag;
 import com.compomics.util.experiment.identification.identification_parameters.tool_specific.DirecTagParameters;
 import com.compomics.util.experiment.io.identifications.IdfileReader;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchConsumer;
 import com.compomics.util.experiment.massspectrometry.Charge;
 import com.compomics.util.experiment.massspectrometry.Spectrum;
 import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
@@ -456,6 +459,15 @@ public class DirecTagIdfileReader extends ExperimentObject implements IdfileRead
     public LinkedList<SpectrumMatch> getAllSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters,
             SequenceMatchingPreferences sequenceMatchingPreferences, boolean expandAaCombinations)
             throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
+        SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+        streamSpectrumMatches(waitingHandler, searchParameters, sequenceMatchingPreferences, expandAaCombinations, spectrumMatchCollector, SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+        return spectrumMatchCollector.getSpectrumMatches();
+    }
+
+    @Override
+    public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+            boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize)
+            throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
 
         direcTagParameters = (DirecTagParameters) searchParameters.getAlgorithmSpecificParameters().get(Advocate.direcTag.getIndex());
 
@@ -485,7 +497,7 @@ public class DirecTagIdfileReader extends ExperimentObject implements IdfileRead
             waitingHandler.setSecondaryProgressCounter(0);
         }
 
-        LinkedList<SpectrumMatch> result = new LinkedList<SpectrumMatch>();
+        SpectrumMatchBuffer spectrumMatchBuffer = new SpectrumMatchBuffer(spectrumMatchConsumer, batchSize);
         int sCpt = 0;
         Integer sIdColumnIndex = spectrumLineContent.get("ID");
         Integer chargeColumnIndex = spectrumLineContent.get("Charge");
@@ -500,11 +512,14 @@ public class DirecTagIdfileReader extends ExperimentObject implements IdfileRead
             while ((line = reader.readLine()) != null) {
                 if (line.startsWith("S")) {
                     Integer sId = ++sCpt;
+                    boolean scanNumberId = false;
                     rank = 0;
                     if (sIdColumnIndex != null) {
                         line = line.substring(1).trim();
                         String[] components = line.split("\t");
                         String id = components[sIdColumnIndex];
+                        // index=n is the position of the spectrum in the file, scan=n its scan number
+                        scanNumberId = id.startsWith("scan=");
                         sId = new Integer(id.substring(id.indexOf("=") + 1));
                         String chargeString = components[chargeColumnIndex];
                         lastCharge = new Integer(chargeString);
@@ -526,12 +541,17 @@ public class DirecTagIdfileReader extends ExperimentObject implements IdfileRead
                                 }
                             }
 
-                            result.add(currentMatch);
+                            spectrumMatchBuffer.add(currentMatch);
                         }
                         int utilitiesId = sId + 1; // first spectrum is 1 in utilities
                         String spectrumTitle = utilitiesId + "";
                         if (spectrumFactory.fileLoaded(spectrumFileName)) {
-                            spectrumTitle = spectrumFactory.getSpectrumTitle(spectrumFileName, utilitiesId);
+                            // null if the number is out of the range of an mzML file
+                            String loadedTitle = scanNumberId ? spectrumFactory.getSpectrumTitleOfScan(spectrumFileName, sId)
+                                    : spectrumFactory.getSpectrumTitle(spectrumFileName, utilitiesId);
+                            if (loadedTitle != null) {
+                                spectrumTitle = loadedTitle;
+                            }
                         }
                         currentMatch = new SpectrumMatch(Spectrum.getSpectrumKey(spectrumFileName, spectrumTitle));
                         currentMatch.setSpectrumNumber(utilitiesId);
@@ -565,12 +585,12 @@ public class DirecTagIdfileReader extends ExperimentObject implements IdfileRead
                     }
                 }
 
-                result.add(currentMatch);
+                spectrumMatchBuffer.add(currentMatch);
             }
         } finally {
             reader.close();
         }
-        return result;
+        spectrumMatchBuffer.flush();
     }
 
     /**
@@ -9,6 +9,12 @@ import com.compomics.util.experiment.identification.identification_parameters.Se
 import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.io.identifications.IdfileReader;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchConsumer;
+import com.compomics.util.experiment.io.identifications.TabularFileParser;
+import com.compomics.util.experiment.io.identifications.TabularLine;
+import com.compomics.util.experiment.io.identifications.TabularLineParser;
 import com.compomics.util.experiment.massspectrometry.Charge;
 import com.compomics.util.experiment.massspectrometry.Spectrum;
 import com.compomics.util.experiment.personalization.ExperimentObject;
@@ -44,6 +50,14 @@ public class MsAmandaIdfileReader extends ExperimentObject implements IdfileRead
      * The MS Amanda csv file.
      */
     private File msAmandaCsvFile;
+    /**
+     * The number of threads to use for the parsing.
+     */
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The size in bytes of the chunks of the file parsed concurrently.
+     */
+    private int chunkSize = TabularFileParser.DEFAULT_CHUNK_SIZE;
 
     /**
      * Default constructor for the purpose of instantiation.
@@ -109,17 +123,19 @@ public class MsAmandaIdfileReader extends ExperimentObject implements IdfileRead
     public LinkedList<SpectrumMatch> getAllSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters,
             SequenceMatchingPreferences sequenceMatchingPreferences, boolean expandAaCombinations)
             throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
+        SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+        streamSpectrumMatches(waitingHandler, searchParameters, sequenceMatchingPreferences, expandAaCombinations, spectrumMatchCollector, SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+        return spectrumMatchCollector.getSpectrumMatches();
+    }
 
-        LinkedList<SpectrumMatch> result = new LinkedList<SpectrumMatch>();
-
-        BufferedRandomAccessFile bufferedRandomAccessFile = new BufferedRandomAccessFile(msAmandaCsvFile, "r", 1024 * 100);
+    @Override
+    public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+            boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize)
+            throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
 
-        if (waitingHandler != null) {
-            waitingHandler.resetSecondaryProgressCounter();
-            waitingHandler.setMaxSecondaryProgressCounter(100);
-        }
+        SpectrumMatchBuffer spectrumMatchBuffer = new SpectrumMatchBuffer(spectrumMatchConsumer, batchSize);
 
-        long progressUnit = bufferedRandomAccessFile.length() / 100;
+        BufferedRandomAccessFile bufferedRandomAccessFile = new BufferedRandomAccessFile(msAmandaCsvFile, "r", 1024 * 100);
 
         // check if the version number is included, ms amanda version 1.0.0.3196 or newer
         String versionNumberString = bufferedRandomAccessFile.readLine();
@@ -176,149 +192,54 @@ public class MsAmandaIdfileReader extends ExperimentObject implements IdfileRead
             throw new IllegalArgumentException("Mandatory columns are missing in the MS Amanda csv file. Please check the file!");
         }
 
-        String line;
-        String currentSpectrumTitle = null;
-        SpectrumMatch currentMatch = null;
+        long dataStart = bufferedRandomAccessFile.getFilePointer();
+        bufferedRandomAccessFile.close();
 
         // get the psms
-        while ((line = bufferedRandomAccessFile.readLine()) != null) {
-
-            String[] elements = line.split("\t");
-
-            if (!line.trim().isEmpty()) { // @TODO: make this more robust?
-                //String scanNumber = elements[scanNumberIndex]; // not currently used
-                String spectrumTitle = elements[titleIndex];
-                String peptideSequence = elements[sequenceIndex].toUpperCase();
-                String modifications = elements[modificationsIndex].trim();
-                //String proteinAccessions = elements[proteinAccessionsIndex]; // not currently used
-
-                // get the ms amanda score
-                String scoreAsText = elements[amandaScoreIndex];
-                double msAmandaRawScore = Util.readDoubleAsString(scoreAsText);
-                double msAmandaTransformedScore;
-
-                // get the ms amanda e-value
-                if (amandaWeightedProbabilityIndex != -1) {
-                    String eVaulueAsText = elements[amandaWeightedProbabilityIndex];
-                    msAmandaTransformedScore = Util.readDoubleAsString(eVaulueAsText);
-                } else {
-                    msAmandaTransformedScore = Math.pow(10, -msAmandaRawScore); // convert ms amanda score to e-value like
-                }
-
-                int rank = Integer.valueOf(elements[rankIndex]);
-                //String mzAsText = elements[mzIndex]; // not currently used
-                //double mz = Util.readDoubleAsString(mzAsText);
-                int charge = Integer.valueOf(elements[chargeIndex]);
-                //String rtAsText = elements[rtIndex]; // not currently used, and not mandatory, as old csv files didn't have this one...
-                //double rt = Util.readDoubleAsString(rtAsText); // @TODO: should escape retention times such as PT2700.460000S
-                String fileName = elements[filenameIndex];
-                
-                // remove any html from the title
-                spectrumTitle = URLDecoder.decode(spectrumTitle, "utf-8");
-
-                // set up the yet empty spectrum match, or add to the current match
-                if (currentMatch == null || (currentSpectrumTitle != null && !currentSpectrumTitle.equalsIgnoreCase(spectrumTitle))) {
-
-                    // add the previous match, if any
-                    if (currentMatch != null) {
-                        result.add(currentMatch);
-                    }
-
-                    currentMatch = new SpectrumMatch(Spectrum.getSpectrumKey(fileName, spectrumTitle));
-                    currentSpectrumTitle = spectrumTitle;
-                }
-
-                // get the modifications
-                ArrayList<ModificationMatch> utilitiesModifications = new ArrayList<ModificationMatch>();
-
-                if (!modifications.isEmpty()) {
-                    String[] ptms = modifications.split(";");
-
-                    for (String ptm : ptms) {
-
-                        try {
-                            // we expect something like this:
-                            // N-Term(acetylation of protein n-term|42.010565|variable) or
-                            // C4(carbamidomethyl c|57.021464|fixed)
-
-                            String location = ptm.substring(0, ptm.indexOf("("));
-                            int modSite;
-
-                            if (location.equalsIgnoreCase("N-Term")) {
-                                modSite = 1;
-                            } else if (location.equalsIgnoreCase("C-Term")) {
-                                modSite = peptideSequence.length() + 1;
-                            } else {
-                                // amino acid type and index expected, e.g., C4 or M3
-                                modSite = Integer.parseInt(ptm.substring(1, ptm.indexOf("(")));
-                            }
-
-                            String rest = ptm.substring(ptm.indexOf("(") + 1, ptm.length() - 1).toLowerCase();
-
-                            String[] details = rest.split("\\|");
-                            String ptmName = details[0]; // not currently used
-                            String ptmMassAsString = details[1];
-                            double ptmMass = Util.readDoubleAsString(ptmMassAsString);
-                            String ptmFixedStatus = details[2];
-
-                            if (ptmFixedStatus.equalsIgnoreCase("variable")) {
-                                utilitiesModifications.add(new ModificationMatch(ptmMass + "@" + peptideSequence.charAt(modSite - 1), true, modSite));
-                            }
-                        } catch (Exception e) {
-                            throw new IllegalArgumentException("Error parsing ptm: " + ptm + "!");
-                        }
-                    }
-                }
-
-                // create the peptide
-                Peptide peptide = new Peptide(peptideSequence, utilitiesModifications);
-
-                // set up the charge
-                Charge peptideCharge = new Charge(Charge.PLUS, charge);
-
-                // create the peptide assumption
-                PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, rank, Advocate.msAmanda.getIndex(), peptideCharge, msAmandaTransformedScore, Util.getFileName(msAmandaCsvFile));
-                peptideAssumption.setRawScore(msAmandaRawScore);
-
-                if (expandAaCombinations && AminoAcidSequence.hasCombination(peptideSequence)) {
-                    ArrayList<ModificationMatch> previousModificationMatches = peptide.getModificationMatches(),
-                            newModificationMatches = null;
-                    if (previousModificationMatches != null) {
-                        newModificationMatches = new ArrayList<ModificationMatch>(previousModificationMatches.size());
-                    }
-                    for (StringBuilder expandedSequence : AminoAcidSequence.getCombinations(peptide.getSequence())) {
-                        Peptide newPeptide = new Peptide(expandedSequence.toString(), newModificationMatches);
-                        if (previousModificationMatches != null) {
-                            for (ModificationMatch modificationMatch : previousModificationMatches) {
-                                newPeptide.addModificationMatch(new ModificationMatch(modificationMatch.getTheoreticPtm(), modificationMatch.isVariable(), modificationMatch.getModificationSite()));
-                            }
-                        }
-                        PeptideAssumption newAssumption = new PeptideAssumption(newPeptide, peptideAssumption.getRank(), peptideAssumption.getAdvocate(), peptideAssumption.getIdentificationCharge(), peptideAssumption.getScore(), peptideAssumption.getIdentificationFile());
-                        newAssumption.setRawScore(msAmandaRawScore);
-                        currentMatch.addHit(Advocate.msAmanda.getIndex(), newAssumption, false);
-                    }
-                } else {
-                    currentMatch.addHit(Advocate.msAmanda.getIndex(), peptideAssumption, false);
-                }
+        MsAmandaLineParser msAmandaLineParser = new MsAmandaLineParser(titleIndex, sequenceIndex, modificationsIndex, amandaScoreIndex,
+                amandaWeightedProbabilityIndex, rankIndex, chargeIndex, filenameIndex, expandAaCombinations);
+        TabularFileParser tabularFileParser = new TabularFileParser(msAmandaCsvFile, "\t", nThreads);
+        tabularFileParser.setChunkSize(chunkSize);
+        tabularFileParser.parse(dataStart, msAmandaLineParser, spectrumMatchBuffer, waitingHandler);
+    }
 
-                if (waitingHandler != null && progressUnit != 0) {
-                    waitingHandler.setSecondaryProgressCounter((int) (bufferedRandomAccessFile.getFilePointer() / progressUnit));
-                    if (waitingHandler.isRunCanceled()) {
-                        bufferedRandomAccessFile.close();
-                        break;
-                    }
-                }
-            }
-        }
+    /**
+     * Returns the number of threads used for the parsing.
+     *
+     * @return the number of threads used for the parsing
+     */
+    public int getnThreads() {
+        return nThreads;
+    }
 
-        // add the last match, if any
-        if (currentMatch != null) {
-            result.add(currentMatch);
-        }
+    /**
+     * Sets the number of threads to use for the parsing.
+     *
+     * @param nThreads the number of threads to use for the parsing
+     */
+    public void setnThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
 
-        bufferedRandomAccessFile.close();
+    /**
+     * Returns the size in bytes of the chunks of the file parsed
+     * concurrently.
+     *
+     * @return the size in bytes of the chunks of the file parsed
+     * concurrently
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
 
-        return result;
+    /**
+     * Sets the size in bytes of the chunks of the file parsed concurrently.
+     *
+     * @param chunkSize the size in bytes of the chunks of the file parsed
+     * concurrently
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
     }
 
     @Override
@@ -349,4 +270,186 @@ public class MsAmandaIdfileReader extends ExperimentObject implements IdfileRead
     public boolean hasDeNovoTags() {
         return false;
     }
+
+    /**
+     * Parser for the lines of an MS Amanda csv file.
+     */
+    private class MsAmandaLineParser implements TabularLineParser {
+
+        /**
+         * The index of the title column.
+         */
+        private final int titleIndex;
+        /**
+         * The index of the sequence column.
+         */
+        private final int sequenceIndex;
+        /**
+         * The index of the modifications column.
+         */
+        private final int modificationsIndex;
+        /**
+         * The index of the Amanda score column.
+         */
+        private final int amandaScoreIndex;
+        /**
+         * The index of the weighted probability column, -1 if not present.
+         */
+        private final int amandaWeightedProbabilityIndex;
+        /**
+         * The index of the rank column.
+         */
+        private final int rankIndex;
+        /**
+         * The index of the charge column.
+         */
+        private final int chargeIndex;
+        /**
+         * The index of the file name column.
+         */
+        private final int filenameIndex;
+        /**
+         * Indicates whether the amino acid combinations should be expanded.
+         */
+        private final boolean expandAaCombinations;
+
+        /**
+         * Constructor.
+         *
+         * @param titleIndex the index of the title column
+         * @param sequenceIndex the index of the sequence column
+         * @param modificationsIndex the index of the modifications column
+         * @param amandaScoreIndex the index of the Amanda score column
+         * @param amandaWeightedProbabilityIndex the index of the weighted
+         * probability column, -1 if not present
+         * @param rankIndex the index of the rank column
+         * @param chargeIndex the index of the charge column
+         * @param filenameIndex the index of the file name column
+         * @param expandAaCombinations indicates whether the amino acid
+         * combinations should be expanded
+         */
+        public MsAmandaLineParser(int titleIndex, int sequenceIndex, int modificationsIndex, int amandaScoreIndex, int amandaWeightedProbabilityIndex,
+                int rankIndex, int chargeIndex, int filenameIndex, boolean expandAaCombinations) {
+            this.titleIndex = titleIndex;
+            this.sequenceIndex = sequenceIndex;
+            this.modificationsIndex = modificationsIndex;
+            this.amandaScoreIndex = amandaScoreIndex;
+            this.amandaWeightedProbabilityIndex = amandaWeightedProbabilityIndex;
+            this.rankIndex = rankIndex;
+            this.chargeIndex = chargeIndex;
+            this.filenameIndex = filenameIndex;
+            this.expandAaCombinations = expandAaCombinations;
+        }
+
+        @Override
+        public TabularLineParser getChunkParser() {
+            return this;
+        }
+
+        @Override
+        public SpectrumMatch parseLine(TabularLine tabularLine) throws IOException {
+
+            if (tabularLine.isBlank()) { // @TODO: make this more robust?
+                return null;
+            }
+
+            String spectrumTitle = tabularLine.getField(titleIndex);
+            String peptideSequence = tabularLine.getField(sequenceIndex).toUpperCase();
+            String modifications = tabularLine.getField(modificationsIndex).trim();
+
+            // get the ms amanda score
+            double msAmandaRawScore = tabularLine.getDouble(amandaScoreIndex);
+            double msAmandaTransformedScore;
+
+            // get the ms amanda e-value
+            if (amandaWeightedProbabilityIndex != -1) {
+                msAmandaTransformedScore = tabularLine.getDouble(amandaWeightedProbabilityIndex);
+            } else {
+                msAmandaTransformedScore = Math.pow(10, -msAmandaRawScore); // convert ms amanda score to e-value like
+            }
+
+            int rank = tabularLine.getInt(rankIndex);
+            int charge = tabularLine.getInt(chargeIndex);
+            String fileName = tabularLine.getField(filenameIndex);
+
+            // remove any html from the title
+            spectrumTitle = URLDecoder.decode(spectrumTitle, "utf-8");
+
+            SpectrumMatch spectrumMatch = new SpectrumMatch(Spectrum.getSpectrumKey(fileName, spectrumTitle));
+
+            // get the modifications
+            ArrayList<ModificationMatch> utilitiesModifications = new ArrayList<ModificationMatch>();
+
+            if (!modifications.isEmpty()) {
+                String[] ptms = modifications.split(";");
+
+                for (String ptm : ptms) {
+
+                    try {
+                        // we expect something like this:
+                        // N-Term(acetylation of protein n-term|42.010565|variable) or
+                        // C4(carbamidomethyl c|57.021464|fixed)
+
+                        String location = ptm.substring(0, ptm.indexOf("("));
+                        int modSite;
+
+                        if (location.equalsIgnoreCase("N-Term")) {
+                            modSite = 1;
+                        } else if (location.equalsIgnoreCase("C-Term")) {
+                            modSite = peptideSequence.length() + 1;
+                        } else {
+                            // amino acid type and index expected, e.g., C4 or M3
+                            modSite = Integer.parseInt(ptm.substring(1, ptm.indexOf("(")));
+                        }
+
+                        String rest = ptm.substring(ptm.indexOf("(") + 1, ptm.length() - 1).toLowerCase();
+
+                        String[] details = rest.split("\\|");
+                        String ptmMassAsString = details[1];
+                        double ptmMass = Util.readDoubleAsString(ptmMassAsString);
+                        String ptmFixedStatus = details[2];
+
+                        if (ptmFixedStatus.equalsIgnoreCase("variable")) {
+                            utilitiesModifications.add(new ModificationMatch(ptmMass + "@" + peptideSequence.charAt(modSite - 1), true, modSite));
+                        }
+                    } catch (Exception e) {
+                        throw new IllegalArgumentException("Error parsing ptm: " + ptm + "!");
+                    }
+                }
+            }
+
+            // create the peptide
+            Peptide peptide = new Peptide(peptideSequence, utilitiesModifications);
+
+            // set up the charge
+            Charge peptideCharge = new Charge(Charge.PLUS, charge);
+
+            // create the peptide assumption
+            PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, rank, Advocate.msAmanda.getIndex(), peptideCharge, msAmandaTransformedScore, Util.getFileName(msAmandaCsvFile));
+            peptideAssumption.setRawScore(msAmandaRawScore);
+
+            if (expandAaCombinations && AminoAcidSequence.hasCombination(peptideSequence)) {
+                ArrayList<ModificationMatch> previousModificationMatches = peptide.getModificationMatches(),
+                        newModificationMatches = null;
+                if (previousModificationMatches != null) {
+                    newModificationMatches = new ArrayList<ModificationMatch>(previousModificationMatches.size());
+                }
+                for (StringBuilder expandedSequence : AminoAcidSequence.getCombinations(peptide.getSequence())) {
+                    Peptide newPeptide = new Peptide(expandedSequence.toString(), newModificationMatches);
+                    if (previousModificationMatches != null) {
+                        for (ModificationMatch modificationMatch : previousModificationMatches) {
+                            newPeptide.addModificationMatch(new ModificationMatch(modificationMatch.getTheoreticPtm(), modificationMatch.isVariable(), modificationMatch.getModificationSite()));
+                        }
+                    }
+                    PeptideAssumption newAssumption = new PeptideAssumption(newPeptide, peptideAssumption.getRank(), peptideAssumption.getAdvocate(), peptideAssumption.getIdentificationCharge(), peptideAssumption.getScore(), peptideAssumption.getIdentificationFile());
+                    newAssumption.setRawScore(msAmandaRawScore);
+                    spectrumMatch.addHit(Advocate.msAmanda.getIndex(), newAssumption, false);
+                }
+            } else {
+                spectrumMatch.addHit(Advocate.msAmanda.getIndex(), peptideAssumption, false);
+            }
+
+            return spectrumMatch;
+        }
+    }
 }
@@ -9,22 +9,35 @@ import com.compomics.util.experiment.identification.identification_parameters.Se
 import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.io.identifications.IdfileReader;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchConsumer;
+import com.compomics.util.experiment.io.identifications.TabularFileParser;
 import com.compomics.util.experiment.massspectrometry.Charge;
 import com.compomics.util.experiment.massspectrometry.Spectrum;
 import com.compomics.util.experiment.personalization.ExperimentObject;
 import com.compomics.util.preferences.SequenceMatchingPreferences;
 import com.compomics.util.waiting.WaitingHandler;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
 import java.net.URLDecoder;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.xml.bind.JAXBException;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -104,6 +117,18 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
      * is used.
      */
     private boolean useCustomParser = true;
+    /**
+     * The number of threads to use for the parsing of the custom parser. If
+     * more than one, the definitions preceding the results are parsed first,
+     * and the SpectrumIdentificationResult blocks are then parsed in parallel
+     * by chunks of the file.
+     */
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The size in bytes of the chunks of SpectrumIdentificationResult blocks
+     * parsed in parallel.
+     */
+    private int chunkSize = TabularFileParser.DEFAULT_CHUNK_SIZE;
     /**
      * Boolean indicating whether the mzId file contains de novo tags.
      */
@@ -203,13 +228,26 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
     public LinkedList<SpectrumMatch> getAllSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters,
             SequenceMatchingPreferences sequenceMatchingPreferences, boolean expandAaCombinations)
             throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
+        SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+        streamSpectrumMatches(waitingHandler, searchParameters, sequenceMatchingPreferences, expandAaCombinations, spectrumMatchCollector, SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+        return spectrumMatchCollector.getSpectrumMatches();
+    }
+
+    @Override
+    public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+            boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize)
+            throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
 
         this.sequenceMatchingPreferences = sequenceMatchingPreferences;
         this.expandAaCombinations = expandAaCombinations;
 
-        LinkedList<SpectrumMatch> result = new LinkedList<SpectrumMatch>();
+        SpectrumMatchBuffer spectrumMatchBuffer = new SpectrumMatchBuffer(spectrumMatchConsumer, batchSize);
+
+        if (useCustomParser && nThreads > 1) {
+
+            parseFileParallel(waitingHandler, spectrumMatchBuffer);
 
-        if (useCustomParser) {
+        } else if (useCustomParser) {
 
             // set the waiting handler max value
             if (waitingHandler != null) {
@@ -232,7 +270,7 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
                 waitingHandler.setMaxSecondaryProgressCounter(lineCounter);
             }
 
-            return parseFile(waitingHandler);
+            parseFile(waitingHandler, spectrumMatchBuffer, false);
         } else {
 
             DataCollection dataCollection = unmarshaller.unmarshal(DataCollection.class);
@@ -437,7 +475,7 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
                         waitingHandler.increaseSecondaryProgressCounter();
                     }
 
-                    result.add(currentMatch);
+                    spectrumMatchBuffer.add(currentMatch);
                 }
 
                 if (waitingHandler != null) {
@@ -448,7 +486,7 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
             }
         }
 
-        return result;
+        spectrumMatchBuffer.flush();
     }
 
     /**
@@ -524,20 +562,74 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
      * Main method for testing purposes only.
      *
      * @param args the command line arguments
+     *
+     * @throws Exception thrown if an error occurred while parsing the file
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
         MzIdentMLIdfileReader temp = new MzIdentMLIdfileReader();
-        temp.parseFile(null);
+        temp.parseFile(null, new SpectrumMatchBuffer(new SpectrumMatchCollector(), SpectrumMatchBuffer.DEFAULT_BATCH_SIZE), false);
+    }
+
+    /**
+     * Returns the number of threads used for the parsing.
+     *
+     * @return the number of threads used for the parsing
+     */
+    public int getnThreads() {
+        return nThreads;
+    }
+
+    /**
+     * Sets the number of threads to use for the parsing. With a single thread
+     * the file is parsed sequentially.
+     *
+     * @param nThreads the number of threads to use for the parsing
+     */
+    public void setnThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Returns the size in bytes of the chunks of results parsed in parallel.
+     *
+     * @return the size in bytes of the chunks of results parsed in parallel
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the size in bytes of the chunks of results parsed in parallel.
+     *
+     * @param chunkSize the size in bytes of the chunks of results parsed in
+     * parallel
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
     }
 
     /**
      * Parse the mzid file.
      *
-     * @return the list of spectrum matches
+     * @param waitingHandler the waiting handler
+     * @param spectrumMatchBuffer the buffer where to send the spectrum matches
+     * @param headerOnly if true the parsing stops at the first
+     * SpectrumIdentificationResult
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading or parsing the file
+     * @throws SQLException exception thrown whenever an error occurred while
+     * processing the spectrum matches
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while processing the spectrum matches
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
      */
-    private LinkedList<SpectrumMatch> parseFile(WaitingHandler waitingHandler) {
+    private void parseFile(WaitingHandler waitingHandler, SpectrumMatchBuffer spectrumMatchBuffer, boolean headerOnly)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException {
 
-        LinkedList<SpectrumMatch> result = new LinkedList<SpectrumMatch>();
+        // create a reader for the input file
+        BufferedReader br = new BufferedReader(new FileReader(mzIdentMLFile));
 
         try {
             // create the pull parser
@@ -545,9 +637,6 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
             factory.setNamespaceAware(true);
             XmlPullParser parser = factory.newPullParser();
 
-            // create a reader for the input file
-            BufferedReader br = new BufferedReader(new FileReader(mzIdentMLFile));
-
             // set the XML Pull Parser to read from this reader
             parser.setInput(br);
 
@@ -573,7 +662,10 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
                 } else if (type == XmlPullParser.START_TAG && parser.getName().equals("ModificationParams")) {
                     parseFixedPtms(parser);
                 } else if (type == XmlPullParser.START_TAG && parser.getName().equals("SpectrumIdentificationResult")) {
-                    parsePsm(parser, result);
+                    if (headerOnly) {
+                        break;
+                    }
+                    parsePsm(parser, spectrumMatchBuffer);
                 }
 
                 type = parser.next();
@@ -583,15 +675,215 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
                 }
             }
 
+        } catch (IOException e) {
+            throw e;
+        } catch (SQLException e) {
+            throw e;
+        } catch (ClassNotFoundException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Error while parsing the mzIdentML file " + mzIdentMLFile.getName() + ".", e);
+        } finally {
             br.close();
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Parses the mzid file in two passes. The definitions preceding the
+     * results, i.e. the software, peptides, spectra data and modification
+     * parameters, are parsed first. The file is then scanned for the offsets
+     * of the SpectrumIdentificationResult blocks, which are parsed in
+     * parallel by chunks and sent to the buffer in the order of the file.
+     *
+     * @param waitingHandler the waiting handler
+     * @param spectrumMatchBuffer the buffer where to send the spectrum matches
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     * @throws SQLException exception thrown whenever an error occurred while
+     * processing the spectrum matches
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while processing the spectrum matches
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    private void parseFileParallel(WaitingHandler waitingHandler, SpectrumMatchBuffer spectrumMatchBuffer)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+
+        if (waitingHandler != null) {
+            waitingHandler.setSecondaryProgressCounterIndeterminate(true);
+        }
+
+        // first pass: the definitions and the offsets of the results
+        parseFile(null, null, true);
+        long[] resultBounds = getResultBounds();
+        int nResults = resultBounds.length / 2;
+
+        if (waitingHandler != null) {
+            waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(nResults);
+        }
+
+        // second pass: the results
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        LinkedList<Future<LinkedList<SpectrumMatch>>> pendingChunks = new LinkedList<Future<LinkedList<SpectrumMatch>>>();
+        LinkedList<Integer> pendingChunkSizes = new LinkedList<Integer>();
+        int nextResult = 0;
+
+        try {
+            while (nextResult < nResults || !pendingChunks.isEmpty()) {
+
+                // keep a bounded number of chunks in memory
+                while (nextResult < nResults && pendingChunks.size() < 2 * nThreads) {
+                    int chunkStart = nextResult;
+                    long chunkStartOffset = resultBounds[2 * chunkStart];
+                    nextResult++;
+                    while (nextResult < nResults && resultBounds[2 * nextResult + 1] - chunkStartOffset <= chunkSize) {
+                        nextResult++;
+                    }
+                    pendingChunks.add(pool.submit(new ResultChunkParser(resultBounds, chunkStart, nextResult)));
+                    pendingChunkSizes.add(nextResult - chunkStart);
+                }
+
+                // send the matches in the order of the file
+                for (SpectrumMatch spectrumMatch : getChunkResult(pendingChunks.removeFirst())) {
+                    spectrumMatchBuffer.add(spectrumMatch);
+                }
+
+                int chunkLength = pendingChunkSizes.removeFirst();
+
+                if (waitingHandler != null) {
+                    waitingHandler.increaseSecondaryProgressCounter(chunkLength);
+                    if (waitingHandler.isRunCanceled()) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Scans the file for the SpectrumIdentificationResult blocks and returns
+     * their bounds: the block i starts at bounds[2i] and ends before
+     * bounds[2i+1].
+     *
+     * @return the bounds of the SpectrumIdentificationResult blocks
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     */
+    private long[] getResultBounds() throws IOException {
+
+        String startTag = "<SpectrumIdentificationResult";
+        String endTag = "</SpectrumIdentificationResult>";
+
+        long[] bounds = new long[1024];
+        int nBounds = 0;
+        long position = 0;
+        int startMatched = 0, endMatched = 0;
+
+        InputStream inputStream = new FileInputStream(mzIdentMLFile);
+
+        try {
+            byte[] buffer = new byte[1024 * 64];
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+
+                for (int i = 0; i < read; i++, position++) {
+
+                    byte b = buffer[i];
+
+                    // note that '<' is only found at the start of the tags
+                    if (startMatched == startTag.length()) {
+                        if ((b == '>' || b == ' ' || b == '\t' || b == '\n' || b == '\r') && nBounds % 2 == 0) {
+                            if (nBounds == bounds.length) {
+                                long[] newBounds = new long[2 * nBounds];
+                                System.arraycopy(bounds, 0, newBounds, 0, nBounds);
+                                bounds = newBounds;
+                            }
+                            bounds[nBounds++] = position - startTag.length();
+                        }
+                        startMatched = 0;
+                    } else if (b == startTag.charAt(startMatched)) {
+                        startMatched++;
+                    } else {
+                        startMatched = b == '<' ? 1 : 0;
+                    }
+
+                    if (b == endTag.charAt(endMatched)) {
+                        endMatched++;
+                        if (endMatched == endTag.length()) {
+                            if (nBounds % 2 == 1) {
+                                bounds[nBounds++] = position + 1;
+                            }
+                            endMatched = 0;
+                        }
+                    } else {
+                        endMatched = b == '<' ? 1 : 0;
+                    }
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        if (nBounds % 2 == 1) {
+            throw new IOException("SpectrumIdentificationResult not closed in file " + mzIdentMLFile.getName() + ".");
         }
 
+        long[] result = new long[nBounds];
+        System.arraycopy(bounds, 0, result, 0, nBounds);
         return result;
     }
 
+    /**
+     * Waits for the given chunk to be parsed and returns its spectrum matches.
+     * The exceptions encountered while parsing are thrown again.
+     *
+     * @param chunk the future result of the chunk parsing
+     *
+     * @return the spectrum matches of the chunk
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * parsing the chunk
+     * @throws SQLException exception thrown whenever an error occurred while
+     * parsing the chunk
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while parsing the chunk
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    private LinkedList<SpectrumMatch> getChunkResult(Future<LinkedList<SpectrumMatch>> chunk)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+        try {
+            return chunk.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     /**
      * Parse a peptide object.
      *
@@ -956,10 +1248,10 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
      * Parse a PSM object.
      *
      * @param parser the XML parser
-     * @param result the list to add the extracted PSM to
+     * @param spectrumMatchBuffer the buffer where to send the extracted PSM
      * @throws Exception thrown if an exception occurs
      */
-    private void parsePsm(XmlPullParser parser, LinkedList<SpectrumMatch> result) throws Exception {
+    private void parsePsm(XmlPullParser parser, SpectrumMatchBuffer spectrumMatchBuffer) throws Exception {
 
         String spectraDataRef = null;
         String spectrumId = null;
@@ -1091,19 +1383,7 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
             PeptideCustom tempPeptide = tempPeptideMap.get(peptideRef);
             
             // create a new peptide
-            ArrayList<ModificationMatch> modMatches = new ArrayList<ModificationMatch>();
-            for (SearchModificationCustom tempMod : tempPeptide.getModifications()) {
-                if (isVariableModification(tempMod, tempPeptide.getPeptideSequence())) {
-                    // correct for terminal modifications
-                    int location = tempMod.getLocation();
-                    if (location == 0) {
-                        location = 1; // n-term ptm
-                    } else if (location == tempPeptide.getPeptideSequence().length() + 1) {
-                        location -= 1; // c-term ptm
-                    }
-                    modMatches.add(new ModificationMatch(tempMod.getMassDelta() + "@" + tempPeptide.getPeptideSequence().charAt(location - 1), true, location));
-                }
-            }
+            ArrayList<ModificationMatch> modMatches = tempPeptide.getVariableModificationMatches();
             Peptide peptide = new Peptide(tempPeptide.getPeptideSequence(), modMatches);
 
             // get the charge
@@ -1178,7 +1458,7 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
             currentMatch.setKey(Spectrum.getSpectrumKey(spectrumFileName, spectrumTitle));
         }
 
-        result.add(currentMatch);
+        spectrumMatchBuffer.add(currentMatch);
     }
 
     /**
@@ -1189,7 +1469,7 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
      * e-value is found
      * @return the extracted e-value details
      */
-    private EValueObject getEValue(HashMap<String, Double> scoreMap, String spectrumIdItemId) {
+    private synchronized EValueObject getEValue(HashMap<String, Double> scoreMap, String spectrumIdItemId) {
 
         //TODO: select the "best" algorithm or include all?
         // Any way of doing that more elegantly?
@@ -2192,6 +2472,78 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
         }
     }
 
+    /**
+     * Parses a chunk of SpectrumIdentificationResult blocks.
+     */
+    private class ResultChunkParser implements Callable<LinkedList<SpectrumMatch>> {
+
+        /**
+         * The bounds of all SpectrumIdentificationResult blocks.
+         */
+        private final long[] resultBounds;
+        /**
+         * The index of the first result of the chunk.
+         */
+        private final int firstResult;
+        /**
+         * The index of the result after the last result of the chunk.
+         */
+        private final int lastResult;
+
+        /**
+         * Constructor.
+         *
+         * @param resultBounds the bounds of all SpectrumIdentificationResult
+         * blocks
+         * @param firstResult the index of the first result of the chunk
+         * @param lastResult the index of the result after the last result of
+         * the chunk
+         */
+        public ResultChunkParser(long[] resultBounds, int firstResult, int lastResult) {
+            this.resultBounds = resultBounds;
+            this.firstResult = firstResult;
+            this.lastResult = lastResult;
+        }
+
+        @Override
+        public LinkedList<SpectrumMatch> call() throws Exception {
+
+            // read the chunk
+            long chunkStart = resultBounds[2 * firstResult];
+            byte[] chunk = new byte[(int) (resultBounds[2 * lastResult - 1] - chunkStart)];
+            RandomAccessFile randomAccessFile = new RandomAccessFile(mzIdentMLFile, "r");
+            try {
+                randomAccessFile.seek(chunkStart);
+                randomAccessFile.readFully(chunk);
+            } finally {
+                randomAccessFile.close();
+            }
+
+            // parse the results one by one
+            XmlPullParserFactory factory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+            factory.setNamespaceAware(true);
+            XmlPullParser parser = factory.newPullParser();
+            final LinkedList<SpectrumMatch> result = new LinkedList<SpectrumMatch>();
+            SpectrumMatchBuffer chunkBuffer = new SpectrumMatchBuffer(new SpectrumMatchConsumer() {
+                @Override
+                public void processSpectrumMatches(ArrayList<SpectrumMatch> spectrumMatches) {
+                    result.addAll(spectrumMatches);
+                }
+            }, SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+
+            for (int i = firstResult; i < lastResult; i++) {
+                int offset = (int) (resultBounds[2 * i] - chunkStart);
+                int length = (int) (resultBounds[2 * i + 1] - resultBounds[2 * i]);
+                parser.setInput(new ByteArrayInputStream(chunk, offset, length), "UTF-8");
+                parser.next();
+                parsePsm(parser, chunkBuffer);
+            }
+
+            chunkBuffer.flush();
+            return result;
+        }
+    }
+
     /**
      * A peptide created by the custom parser.
      */
@@ -2205,6 +2557,14 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
          * The modifications.
          */
         private ArrayList<SearchModificationCustom> modifications;
+        /**
+         * The names of the variable modifications, null until resolved.
+         */
+        private String[] variablePtmNames = null;
+        /**
+         * The sites of the variable modifications on the sequence.
+         */
+        private int[] variablePtmSites;
 
         /**
          * Create a new PeptideCustom object.
@@ -2234,5 +2594,45 @@ public class MzIdentMLIdfileReader extends ExperimentObject implements IdfileRea
         public ArrayList<SearchModificationCustom> getModifications() {
             return modifications;
         }
+
+        /**
+         * Returns new matches for the variable modifications of this peptide.
+         * The variable modifications are resolved against the fixed
+         * modifications upon first call, and shared by all spectrum matches
+         * referencing this peptide.
+         *
+         * @return new matches for the variable modifications of this peptide
+         */
+        public synchronized ArrayList<ModificationMatch> getVariableModificationMatches() {
+
+            if (variablePtmNames == null) {
+                ArrayList<String> ptmNames = new ArrayList<String>(modifications.size());
+                ArrayList<Integer> ptmSites = new ArrayList<Integer>(modifications.size());
+                for (SearchModificationCustom tempMod : modifications) {
+                    if (isVariableModification(tempMod, peptideSequence)) {
+                        // correct for terminal modifications
+                        int location = tempMod.getLocation();
+                        if (location == 0) {
+                            location = 1; // n-term ptm
+                        } else if (location == peptideSequence.length() + 1) {
+                            location -= 1; // c-term ptm
+                        }
+                        ptmNames.add(tempMod.getMassDelta() + "@" + peptideSequence.charAt(location - 1));
+                        ptmSites.add(location);
+                    }
+                }
+                variablePtmSites = new int[ptmSites.size()];
+                for (int i = 0; i < variablePtmSites.length; i++) {
+                    variablePtmSites[i] = ptmSites.get(i);
+                }
+                variablePtmNames = ptmNames.toArray(new String[ptmNames.size()]);
+            }
+
+            ArrayList<ModificationMatch> modMatches = new ArrayList<ModificationMatch>(variablePtmNames.length);
+            for (int i = 0; i < variablePtmNames.length; i++) {
+                modMatches.add(new ModificationMatch(variablePtmNames[i], true, variablePtmSites[i]));
+            }
+            return modMatches;
+        }
     }
 }
@@ -10,6 +10,12 @@ import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
 import com.compomics.util.experiment.io.identifications.IdfileReader;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchConsumer;
+import com.compomics.util.experiment.io.identifications.TabularFileParser;
+import com.compomics.util.experiment.io.identifications.TabularLine;
+import com.compomics.util.experiment.io.identifications.TabularLineParser;
 import com.compomics.util.experiment.massspectrometry.Charge;
 import com.compomics.util.experiment.massspectrometry.Spectrum;
 import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
@@ -53,6 +59,14 @@ public class NovorIdfileReader extends ExperimentObject implements IdfileReader
      * The spectrum factory used to retrieve spectrum titles.
      */
     private SpectrumFactory spectrumFactory = SpectrumFactory.getInstance();
+    /**
+     * The number of threads to use for the parsing.
+     */
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The size in bytes of the chunks of the file parsed concurrently.
+     */
+    private int chunkSize = TabularFileParser.DEFAULT_CHUNK_SIZE;
 
     /**
      * Default constructor for the purpose of instantiation.
@@ -129,6 +143,15 @@ public class NovorIdfileReader extends ExperimentObject implements IdfileReader
     public LinkedList<SpectrumMatch> getAllSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters,
             SequenceMatchingPreferences sequenceMatchingPreferences, boolean expandAaCombinations)
             throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
+        SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+        streamSpectrumMatches(waitingHandler, searchParameters, sequenceMatchingPreferences, expandAaCombinations, spectrumMatchCollector, SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+        return spectrumMatchCollector.getSpectrumMatches();
+    }
+
+    @Override
+    public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+            boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize)
+            throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
 
 //        int tagMapKeyLength = 0;
 //        if (sequenceMatchingPreferences != null) {
@@ -138,17 +161,10 @@ public class NovorIdfileReader extends ExperimentObject implements IdfileReader
 //        }
         NovorParameters novorParameters = (NovorParameters) searchParameters.getIdentificationAlgorithmParameter(Advocate.novor.getIndex());
 
-        LinkedList<SpectrumMatch> result = new LinkedList<SpectrumMatch>();
+        SpectrumMatchBuffer spectrumMatchBuffer = new SpectrumMatchBuffer(spectrumMatchConsumer, batchSize);
 
         BufferedRandomAccessFile bufferedRandomAccessFile = new BufferedRandomAccessFile(novorCsvFile, "r", 1024 * 100);
 
-        if (waitingHandler != null) {
-            waitingHandler.resetSecondaryProgressCounter();
-            waitingHandler.setMaxSecondaryProgressCounter(100);
-        }
-
-        long progressUnit = bufferedRandomAccessFile.length() / 100;
-
         String inputFile = null;
         String fixedModificationsLine = null;
         String variableModificationsLine = null;
@@ -240,118 +256,273 @@ public class NovorIdfileReader extends ExperimentObject implements IdfileReader
             throw new IllegalArgumentException("Mandatory columns are missing in the Novor csv file. Please check the file!");
         }
 
-        String currentSpectrumTitle = null;
-        SpectrumMatch currentMatch = null;
+        long dataStart = bufferedRandomAccessFile.getFilePointer();
+        bufferedRandomAccessFile.close();
 
         // get the psms
-        while ((line = bufferedRandomAccessFile.readLine()) != null) {
+        NovorLineParser novorLineParser = new NovorLineParser(spectrumFileName, idIndex, chargeIndex, peptideIndex, scoreIndex, aaScoreIndex,
+                variableModificationsMap, fixedModificationsMap, novorParameters, expandAaCombinations);
+        TabularFileParser tabularFileParser = new TabularFileParser(novorCsvFile, ", ", nThreads);
+        tabularFileParser.setChunkSize(chunkSize);
+        tabularFileParser.parse(dataStart, novorLineParser, spectrumMatchBuffer, waitingHandler);
+    }
 
-            String[] elements = line.split(", ");
+    /**
+     * Returns the number of threads used for the parsing.
+     *
+     * @return the number of threads used for the parsing
+     */
+    public int getnThreads() {
+        return nThreads;
+    }
 
-            if (!line.trim().isEmpty()) { // @TODO: make this more robust?
+    /**
+     * Sets the number of threads to use for the parsing.
+     *
+     * @param nThreads the number of threads to use for the parsing
+     */
+    public void setnThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
 
-                int id = Integer.valueOf(elements[idIndex]);
-                int charge = Integer.valueOf(elements[chargeIndex]);
-                String peptideSequenceWithMods = elements[peptideIndex];
+    /**
+     * Returns the size in bytes of the chunks of the file parsed
+     * concurrently.
+     *
+     * @return the size in bytes of the chunks of the file parsed
+     * concurrently
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
 
-                // get the novor score
-                String scoreAsText = elements[scoreIndex];
-                double novorScore = Util.readDoubleAsString(scoreAsText);
+    /**
+     * Sets the size in bytes of the chunks of the file parsed concurrently.
+     *
+     * @param chunkSize the size in bytes of the chunks of the file parsed
+     * concurrently
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
 
-                // get the novor e-value
-                //double novorEValue = Math.pow(10, -novorScore); // convert novor score to e-value // @TODO: is this correct?
-                // amino acids scores
-                String aminoAcidScoresAsString = elements[aaScoreIndex];
-                String[] tempAminoAcidScores = aminoAcidScoresAsString.split("-");
-                double[] aminoAcidScoresAsList = new double[tempAminoAcidScores.length];
-                for (int i = 0; i < tempAminoAcidScores.length; i++) {
-                    aminoAcidScoresAsList[i] = Double.valueOf(tempAminoAcidScores[i]);
-                }
-                ArrayList<double[]> aminoAcidScores = new ArrayList<double[]>(1);
-                aminoAcidScores.add(aminoAcidScoresAsList);
+    @Override
+    public void close() throws IOException {
+        novorCsvFile = null;
+    }
 
-                // get the name of the spectrum file
-                String spectrumTitle = id + "";
-                if (spectrumFactory.fileLoaded(spectrumFileName)) {
-                    spectrumTitle = spectrumFactory.getSpectrumTitle(spectrumFileName, id);
-                }
+    @Override
+    public HashMap<String, ArrayList<String>> getSoftwareVersions() {
+        HashMap<String, ArrayList<String>> result = new HashMap<String, ArrayList<String>>();
+        ArrayList<String> versions = new ArrayList<String>();
+        versions.add(softwareVersion);
+        result.put(softwareName, versions);
+        return result;
+    }
 
-                // set up the yet empty spectrum match, or add to the current match
-                if (currentMatch == null || (currentSpectrumTitle != null && !currentSpectrumTitle.equalsIgnoreCase(spectrumTitle))) {
+    @Override
+    public HashMap<String, LinkedList<SpectrumMatch>> getTagsMap() {
+        if (tagsMap == null) {
+            return new HashMap<String, LinkedList<SpectrumMatch>>(0);
+        }
+        return tagsMap;
+    }
 
-                    // add the previous match, if any
-                    if (currentMatch != null) {
-                        result.add(currentMatch);
-                    }
+    @Override
+    public void clearTagsMap() {
+        if (tagsMap != null) {
+            tagsMap.clear();
+        }
+    }
+
+    @Override
+    public boolean hasDeNovoTags() {
+        return false;
+    }
+
+    /**
+     * Parser for the lines of a Novor csv file.
+     */
+    private class NovorLineParser implements TabularLineParser {
+
+        /**
+         * The name of the spectrum file.
+         */
+        private final String spectrumFileName;
+        /**
+         * The index of the id column.
+         */
+        private final int idIndex;
+        /**
+         * The index of the charge column.
+         */
+        private final int chargeIndex;
+        /**
+         * The index of the peptide column.
+         */
+        private final int peptideIndex;
+        /**
+         * The index of the score column.
+         */
+        private final int scoreIndex;
+        /**
+         * The index of the amino acid score column.
+         */
+        private final int aaScoreIndex;
+        /**
+         * The variable modifications indexed by Novor index.
+         */
+        private final HashMap<Integer, String> variableModificationsMap;
+        /**
+         * The fixed modifications indexed by Novor index.
+         */
+        private final HashMap<Integer, String> fixedModificationsMap;
+        /**
+         * The Novor parameters.
+         */
+        private final NovorParameters novorParameters;
+        /**
+         * Indicates whether the amino acid combinations should be expanded.
+         */
+        private final boolean expandAaCombinations;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrumFileName the name of the spectrum file
+         * @param idIndex the index of the id column
+         * @param chargeIndex the index of the charge column
+         * @param peptideIndex the index of the peptide column
+         * @param scoreIndex the index of the score column
+         * @param aaScoreIndex the index of the amino acid score column
+         * @param variableModificationsMap the variable modifications indexed
+         * by Novor index
+         * @param fixedModificationsMap the fixed modifications indexed by
+         * Novor index
+         * @param novorParameters the Novor parameters
+         * @param expandAaCombinations indicates whether the amino acid
+         * combinations should be expanded
+         */
+        public NovorLineParser(String spectrumFileName, int idIndex, int chargeIndex, int peptideIndex, int scoreIndex, int aaScoreIndex,
+                HashMap<Integer, String> variableModificationsMap, HashMap<Integer, String> fixedModificationsMap,
+                NovorParameters novorParameters, boolean expandAaCombinations) {
+            this.spectrumFileName = spectrumFileName;
+            this.idIndex = idIndex;
+            this.chargeIndex = chargeIndex;
+            this.peptideIndex = peptideIndex;
+            this.scoreIndex = scoreIndex;
+            this.aaScoreIndex = aaScoreIndex;
+            this.variableModificationsMap = variableModificationsMap;
+            this.fixedModificationsMap = fixedModificationsMap;
+            this.novorParameters = novorParameters;
+            this.expandAaCombinations = expandAaCombinations;
+        }
 
-                    currentMatch = new SpectrumMatch(Spectrum.getSpectrumKey(spectrumFileName, spectrumTitle));
-                    currentMatch.setSpectrumNumber(id);
-                    currentSpectrumTitle = spectrumTitle;
+        @Override
+        public TabularLineParser getChunkParser() {
+            return this;
+        }
+
+        @Override
+        public SpectrumMatch parseLine(TabularLine tabularLine) {
+
+            if (tabularLine.isBlank()) { // @TODO: make this more robust?
+                return null;
+            }
+
+            int id = tabularLine.getInt(idIndex);
+            int charge = tabularLine.getInt(chargeIndex);
+            String peptideSequenceWithMods = tabularLine.getField(peptideIndex);
+
+            // get the novor score
+            double novorScore = tabularLine.getDouble(scoreIndex);
+
+            // amino acids scores
+            String aminoAcidScoresAsString = tabularLine.getField(aaScoreIndex);
+            String[] tempAminoAcidScores = aminoAcidScoresAsString.split("-");
+            double[] aminoAcidScoresAsList = new double[tempAminoAcidScores.length];
+            for (int i = 0; i < tempAminoAcidScores.length; i++) {
+                aminoAcidScoresAsList[i] = Double.valueOf(tempAminoAcidScores[i]);
+            }
+            ArrayList<double[]> aminoAcidScores = new ArrayList<double[]>(1);
+            aminoAcidScores.add(aminoAcidScoresAsList);
+
+            // get the name of the spectrum file
+            String spectrumTitle = id + "";
+            if (spectrumFactory.fileLoaded(spectrumFileName)) {
+                // null if the number is out of the range of an mzML file
+                String loadedTitle = spectrumFactory.getSpectrumTitle(spectrumFileName, id);
+                if (loadedTitle != null) {
+                    spectrumTitle = loadedTitle;
                 }
+            }
 
-                // get the modifications
-                ArrayList<ModificationMatch> utilitiesModifications = new ArrayList<ModificationMatch>();
-
-                String peptideSequence;
-
-                // extract the modifications
-                if (peptideSequenceWithMods.contains("(") || peptideSequenceWithMods.contains("[")) {
-
-                    // example: (N-term|Acetyl)S(Phospho)EQUENCES(Phospho)(C-term|Amidated)
-                    peptideSequence = "";
-
-                    for (int i = 0; i < peptideSequenceWithMods.length(); i++) {
-
-                        char currentChar = peptideSequenceWithMods.charAt(i);
-
-                        if (currentChar == '(') {
-                            int modStart = i + 1;
-                            int modEnd = peptideSequenceWithMods.indexOf(")", i + 1);
-                            String currentMod = peptideSequenceWithMods.substring(modStart, modEnd);
-
-                            if (currentMod.toLowerCase().startsWith("n-term|")) {
-                                int currentModAsInt = new Integer(currentMod.substring("n-term|".length()));
-                                if (variableModificationsMap.containsKey(currentModAsInt)) {
-                                    utilitiesModifications.add(new ModificationMatch(variableModificationsMap.get(currentModAsInt), true, 1));
-                                } else if (fixedModificationsMap.containsKey(currentModAsInt)) {
-                                    utilitiesModifications.add(new ModificationMatch(fixedModificationsMap.get(currentModAsInt), false, 1));
-                                } else if (novorParameters.getNovorPtmMap() == null) {
-                                    throw new IllegalArgumentException("Unknown PTM! Please check the Novor results file.");
-                                }
-                            } else if (currentMod.toLowerCase().startsWith("c-term|")) {
-                                int currentModAsInt = new Integer(currentMod.substring("c-term|".length()));
-                                if (variableModificationsMap.containsKey(currentModAsInt)) {
-                                    utilitiesModifications.add(new ModificationMatch(variableModificationsMap.get(currentModAsInt), true, peptideSequence.length()));
-                                } else if (fixedModificationsMap.containsKey(currentModAsInt)) {
-                                    utilitiesModifications.add(new ModificationMatch(fixedModificationsMap.get(currentModAsInt), false, peptideSequence.length()));
-                                } else if (novorParameters.getNovorPtmMap() == null) {
-                                    throw new IllegalArgumentException("Unknown PTM! Please check the Novor results file.");
-                                }
-                            } else {
-                                int currentModAsInt = new Integer(currentMod);
-                                if (variableModificationsMap.containsKey(currentModAsInt)) {
-                                    utilitiesModifications.add(new ModificationMatch(variableModificationsMap.get(currentModAsInt), true, peptideSequence.length()));
-                                } else if (fixedModificationsMap.containsKey(currentModAsInt)) {
-                                    utilitiesModifications.add(new ModificationMatch(fixedModificationsMap.get(currentModAsInt), false, peptideSequence.length()));
-                                } else if (novorParameters.getNovorPtmMap() == null) {
-                                    throw new IllegalArgumentException("Unknown PTM! Please check the Novor results file.");
-                                }
-                            }
+            SpectrumMatch spectrumMatch = new SpectrumMatch(Spectrum.getSpectrumKey(spectrumFileName, spectrumTitle));
+            spectrumMatch.setSpectrumNumber(id);
 
-                            i = modEnd;
+            // get the modifications
+            ArrayList<ModificationMatch> utilitiesModifications = new ArrayList<ModificationMatch>();
+
+            String peptideSequence;
+
+            // extract the modifications
+            if (peptideSequenceWithMods.contains("(") || peptideSequenceWithMods.contains("[")) {
+
+                // example: (N-term|Acetyl)S(Phospho)EQUENCES(Phospho)(C-term|Amidated)
+                peptideSequence = "";
+
+                for (int i = 0; i < peptideSequenceWithMods.length(); i++) {
+
+                    char currentChar = peptideSequenceWithMods.charAt(i);
+
+                    if (currentChar == '(') {
+                        int modStart = i + 1;
+                        int modEnd = peptideSequenceWithMods.indexOf(")", i + 1);
+                        String currentMod = peptideSequenceWithMods.substring(modStart, modEnd);
+
+                        if (currentMod.toLowerCase().startsWith("n-term|")) {
+                            int currentModAsInt = new Integer(currentMod.substring("n-term|".length()));
+                            if (variableModificationsMap.containsKey(currentModAsInt)) {
+                                utilitiesModifications.add(new ModificationMatch(variableModificationsMap.get(currentModAsInt), true, 1));
+                            } else if (fixedModificationsMap.containsKey(currentModAsInt)) {
+                                utilitiesModifications.add(new ModificationMatch(fixedModificationsMap.get(currentModAsInt), false, 1));
+                            } else if (novorParameters.getNovorPtmMap() == null) {
+                                throw new IllegalArgumentException("Unknown PTM! Please check the Novor results file.");
+                            }
+                        } else if (currentMod.toLowerCase().startsWith("c-term|")) {
+                            int currentModAsInt = new Integer(currentMod.substring("c-term|".length()));
+                            if (variableModificationsMap.containsKey(currentModAsInt)) {
+                                utilitiesModifications.add(new ModificationMatch(variableModificationsMap.get(currentModAsInt), true, peptideSequence.length()));
+                            } else if (fixedModificationsMap.containsKey(currentModAsInt)) {
+                                utilitiesModifications.add(new ModificationMatch(fixedModificationsMap.get(currentModAsInt), false, peptideSequence.length()));
+                            } else if (novorParameters.getNovorPtmMap() == null) {
+                                throw new IllegalArgumentException("Unknown PTM! Please check the Novor results file.");
+                            }
                         } else {
-                            peptideSequence += currentChar;
+                            int currentModAsInt = new Integer(currentMod);
+                            if (variableModificationsMap.containsKey(currentModAsInt)) {
+                                utilitiesModifications.add(new ModificationMatch(variableModificationsMap.get(currentModAsInt), true, peptideSequence.length()));
+                            } else if (fixedModificationsMap.containsKey(currentModAsInt)) {
+                                utilitiesModifications.add(new ModificationMatch(fixedModificationsMap.get(currentModAsInt), false, peptideSequence.length()));
+                            } else if (novorParameters.getNovorPtmMap() == null) {
+                                throw new IllegalArgumentException("Unknown PTM! Please check the Novor results file.");
+                            }
                         }
+
+                        i = modEnd;
+                    } else {
+                        peptideSequence += currentChar;
                     }
-                } else {
-                    peptideSequence = peptideSequenceWithMods;
                 }
+            } else {
+                peptideSequence = peptideSequenceWithMods;
+            }
 
-                // set up the charge
-                Charge peptideCharge = new Charge(Charge.PLUS, charge);
+            // set up the charge
+            Charge peptideCharge = new Charge(Charge.PLUS, charge);
 
-                //@TODO: do we want to leave the option of using tags?
-                // create the tag assumption
+            //@TODO: do we want to leave the option of using tags?
+            // create the tag assumption
 //                AminoAcidSequence aminoAcidSequence = new AminoAcidSequence(peptideSequence);
 //                for (ModificationMatch modificationMatch : utilitiesModifications) {
 //                    aminoAcidSequence.addModificationMatch(modificationMatch.getModificationSite(), modificationMatch);
@@ -361,7 +532,7 @@ public class NovorIdfileReader extends ExperimentObject implements IdfileReader
 //                tagAssumption.setAminoAcidScores(aminoAcidScores);
 ////                //tagAssumption.setRawScore(novorScore);
 //
-//                currentMatch.addHit(Advocate.novor.getIndex(), tagAssumption, true);
+//                spectrumMatch.addHit(Advocate.novor.getIndex(), tagAssumption, true);
 //
 //                if (sequenceMatchingPreferences != null) {
 //                    HashMap<Integer, HashMap<String, ArrayList<TagAssumption>>> matchTagMap = currentMatch.getTagAssumptionsMap(tagMapKeyLength, sequenceMatchingPreferences);
@@ -376,82 +547,32 @@ public class NovorIdfileReader extends ExperimentObject implements IdfileReader
 //                        }
 //                    }
 //                }
-                // Create the peptide assumption
-                Peptide peptide = new Peptide(peptideSequence, utilitiesModifications);
-                PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, 1, Advocate.novor.getIndex(), peptideCharge, novorScore, novorCsvFile.getName());
-                peptideAssumption.setAminoAcidScores(aminoAcidScores);
-                //peptideAssumption.setRawScore(novorScore);
-                if (expandAaCombinations && AminoAcidSequence.hasCombination(peptideAssumption.getPeptide().getSequence())) {
-                    ArrayList<ModificationMatch> previousModificationMatches = peptide.getModificationMatches(),
-                            newModificationMatches = null;
+            // Create the peptide assumption
+            Peptide peptide = new Peptide(peptideSequence, utilitiesModifications);
+            PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, 1, Advocate.novor.getIndex(), peptideCharge, novorScore, novorCsvFile.getName());
+            peptideAssumption.setAminoAcidScores(aminoAcidScores);
+            //peptideAssumption.setRawScore(novorScore);
+            if (expandAaCombinations && AminoAcidSequence.hasCombination(peptideAssumption.getPeptide().getSequence())) {
+                ArrayList<ModificationMatch> previousModificationMatches = peptide.getModificationMatches(),
+                        newModificationMatches = null;
+                if (previousModificationMatches != null) {
+                    newModificationMatches = new ArrayList<ModificationMatch>(previousModificationMatches.size());
+                }
+                for (StringBuilder expandedSequence : AminoAcidSequence.getCombinations(peptide.getSequence())) {
+                    Peptide newPeptide = new Peptide(expandedSequence.toString(), newModificationMatches);
                     if (previousModificationMatches != null) {
-                        newModificationMatches = new ArrayList<ModificationMatch>(previousModificationMatches.size());
-                    }
-                    for (StringBuilder expandedSequence : AminoAcidSequence.getCombinations(peptide.getSequence())) {
-                        Peptide newPeptide = new Peptide(expandedSequence.toString(), newModificationMatches);
-                        if (previousModificationMatches != null) {
-                            for (ModificationMatch modificationMatch : previousModificationMatches) {
-                                newPeptide.addModificationMatch(new ModificationMatch(modificationMatch.getTheoreticPtm(), modificationMatch.isVariable(), modificationMatch.getModificationSite()));
-                            }
+                        for (ModificationMatch modificationMatch : previousModificationMatches) {
+                            newPeptide.addModificationMatch(new ModificationMatch(modificationMatch.getTheoreticPtm(), modificationMatch.isVariable(), modificationMatch.getModificationSite()));
                         }
-                        PeptideAssumption newAssumption = new PeptideAssumption(newPeptide, peptideAssumption.getRank(), peptideAssumption.getAdvocate(), peptideAssumption.getIdentificationCharge(), peptideAssumption.getScore(), peptideAssumption.getIdentificationFile());
-                        currentMatch.addHit(Advocate.novor.getIndex(), newAssumption, true);
-                    }
-                } else {
-                    currentMatch.addHit(Advocate.novor.getIndex(), peptideAssumption, true);
-                }
-
-                if (waitingHandler != null && progressUnit != 0) {
-                    waitingHandler.setSecondaryProgressCounter((int) (bufferedRandomAccessFile.getFilePointer() / progressUnit));
-                    if (waitingHandler.isRunCanceled()) {
-                        bufferedRandomAccessFile.close();
-                        break;
                     }
+                    PeptideAssumption newAssumption = new PeptideAssumption(newPeptide, peptideAssumption.getRank(), peptideAssumption.getAdvocate(), peptideAssumption.getIdentificationCharge(), peptideAssumption.getScore(), peptideAssumption.getIdentificationFile());
+                    spectrumMatch.addHit(Advocate.novor.getIndex(), newAssumption, true);
                 }
+            } else {
+                spectrumMatch.addHit(Advocate.novor.getIndex(), peptideAssumption, true);
             }
-        }
-
-        // add the last match, if any
-        if (currentMatch != null) {
-            result.add(currentMatch);
-        }
-
-        bufferedRandomAccessFile.close();
-
-        return result;
-    }
 
-    @Override
-    public void close() throws IOException {
-        novorCsvFile = null;
-    }
-
-    @Override
-    public HashMap<String, ArrayList<String>> getSoftwareVersions() {
-        HashMap<String, ArrayList<String>> result = new HashMap<String, ArrayList<String>>();
-        ArrayList<String> versions = new ArrayList<String>();
-        versions.add(softwareVersion);
-        result.put(softwareName, versions);
-        return result;
-    }
-
-    @Override
-    public HashMap<String, LinkedList<SpectrumMatch>> getTagsMap() {
-        if (tagsMap == null) {
-            return new HashMap<String, LinkedList<SpectrumMatch>>(0);
-        }
-        return tagsMap;
-    }
-
-    @Override
-    public void clearTagsMap() {
-        if (tagsMap != null) {
-            tagsMap.clear();
+            return spectrumMatch;
         }
     }
-
-    @Override
-    public boolean hasDeNovoTags() {
-        return false;
-    }
 }
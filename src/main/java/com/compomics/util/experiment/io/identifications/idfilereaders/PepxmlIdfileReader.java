@@ -13,27 +13,34 @@ import com.compomics.util.experiment.identification.SpectrumIdentificationAssump
 import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.io.identifications.IdfileReader;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchConsumer;
 import com.compomics.util.experiment.massspectrometry.Charge;
 import com.compomics.util.experiment.massspectrometry.Spectrum;
 import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
 import com.compomics.util.preferences.SequenceMatchingPreferences;
 import com.compomics.util.waiting.WaitingHandler;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.zip.GZIPInputStream;
 import javax.xml.bind.JAXBException;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
 /**
- * Simple IdfileReader for Pepxml files.
+ * Simple IdfileReader for Pepxml files. The spectrum matches are sent to the
+ * consumer as soon as their spectrum_query elements are closed. Gzipped files
+ * are decompressed on the fly.
  *
  * @author Marc Vaudel
  */
@@ -81,6 +88,19 @@ public class PepxmlIdfileReader implements IdfileReader {
      * Stores the masses of the fixed c-terminal modifications.
      */
     private ArrayList<Double> fixedCTerminalModifications = new ArrayList<Double>();
+    /**
+     * The maximal number of strings kept in the interning table.
+     */
+    private static final int MAX_INTERNED_STRINGS = 100000;
+    /**
+     * Table used to share the instances of the peptide sequences and
+     * modification names repeated throughout the file.
+     */
+    private HashMap<String, String> internedStrings = new HashMap<String, String>();
+    /**
+     * The name of the file to parse.
+     */
+    private String idFileName;
 
     /**
      * Blank constructor for instantiation purposes.
@@ -96,6 +116,47 @@ public class PepxmlIdfileReader implements IdfileReader {
      */
     public PepxmlIdfileReader(File idFile) {
         this.idFile = idFile;
+        idFileName = idFile.getName();
+    }
+
+    /**
+     * Returns a stream on the file to parse. Gzipped files are recognized by
+     * their header and decompressed on the fly.
+     *
+     * @return a stream on the file to parse
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * opening the file
+     */
+    private InputStream getInputStream() throws IOException {
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(idFile), 1024 * 64);
+        inputStream.mark(2);
+        int magic = inputStream.read() | (inputStream.read() << 8);
+        inputStream.reset();
+        if (magic == GZIPInputStream.GZIP_MAGIC) {
+            return new GZIPInputStream(inputStream, 1024 * 64);
+        }
+        return inputStream;
+    }
+
+    /**
+     * Returns the shared instance of the given string. The interning table is
+     * emptied when reaching MAX_INTERNED_STRINGS to keep the memory bounded.
+     *
+     * @param string the string
+     *
+     * @return the shared instance of the given string
+     */
+    private String intern(String string) {
+        String result = internedStrings.get(string);
+        if (result == null) {
+            if (internedStrings.size() >= MAX_INTERNED_STRINGS) {
+                internedStrings.clear();
+            }
+            internedStrings.put(string, string);
+            result = string;
+        }
+        return result;
     }
 
     /**
@@ -107,6 +168,7 @@ public class PepxmlIdfileReader implements IdfileReader {
      * be expanded
      * @param overwriteExtension if true, the extension of the input file will
      * be overwritten to mgf
+     * @param spectrumMatchBuffer the buffer where to send the spectrum matches
      *
      * @throws XmlPullParserException
      * @throws FileNotFoundException
@@ -115,7 +177,7 @@ public class PepxmlIdfileReader implements IdfileReader {
      * @throws ClassNotFoundException
      * @throws InterruptedException
      */
-    private void parseFile(WaitingHandler waitingHandler, boolean expandAaCombinations, boolean overwriteExtension)
+    private void parseFile(WaitingHandler waitingHandler, boolean expandAaCombinations, boolean overwriteExtension, SpectrumMatchBuffer spectrumMatchBuffer)
             throws XmlPullParserException, FileNotFoundException, IOException, SQLException, ClassNotFoundException, InterruptedException {
 
         int minimalPeptideSize;
@@ -130,18 +192,18 @@ public class PepxmlIdfileReader implements IdfileReader {
         factory.setNamespaceAware(true);
         XmlPullParser parser = factory.newPullParser();
 
-        // Create a reader for the input file.
-        BufferedReader br = new BufferedReader(new FileReader(idFile));
+        // Create a stream on the input file.
+        InputStream inputStream = getInputStream();
 
         try {
-            // Set the XML Pull Parser to read from this reader.
-            parser.setInput(br);
+            // Set the XML Pull Parser to read from this stream, the encoding is detected by the parser.
+            parser.setInput(inputStream, null);
             // Start the parsing.
             int type;
             boolean hasMatch = false;
 
-            HashMap<String, SpectrumMatch> spectrumMatchesMap = new HashMap<String, SpectrumMatch>();
-            spectrumMatches = new LinkedList<SpectrumMatch>();
+            // the last spectrum match parsed, kept until a query of another spectrum is found
+            SpectrumMatch previousMatch = null;
             SpectrumMatch currentMatch = null;
             Integer currentCharge = null;
 
@@ -160,9 +222,13 @@ public class PepxmlIdfileReader implements IdfileReader {
                 }
                 if (type == XmlPullParser.START_TAG && tagName.equals("spectrum_query")) {
                     currentMatch = parseSpectrumQuery(parser);
-                    SpectrumMatch previousMatch = spectrumMatchesMap.get(currentMatch.getKey());
                     if (previousMatch != null) {
-                        currentMatch = previousMatch;
+                        if (previousMatch.getKey().equals(currentMatch.getKey())) {
+                            currentMatch = previousMatch;
+                        } else {
+                            spectrumMatchBuffer.add(previousMatch);
+                            previousMatch = null;
+                        }
                     }
                     for (int i = 0; i < parser.getAttributeCount(); i++) {
                         String attributeName = parser.getAttributeName(i);
@@ -188,36 +254,7 @@ public class PepxmlIdfileReader implements IdfileReader {
                     String peptideSequence = peptide.getSequence();
                     if (peptideSequence.length() >= minimalPeptideSize) {
                         hasMatch = true;
-                        boolean found = false;
-                        if (currentMatch.getAllAssumptions() != null) {
-                            for (SpectrumIdentificationAssumption tempAssumption : currentMatch.getAllAssumptions()) {
-                                PeptideAssumption tempPeptideAssumption = (PeptideAssumption) tempAssumption;
-                                Peptide tempPeptide = tempPeptideAssumption.getPeptide();
-                                if (peptide.getSequence().equals(tempPeptide.getSequence())) {
-                                    boolean sameModifications = peptide.getNModifications() == tempPeptide.getNModifications();
-                                    if (sameModifications && peptide.isModified()) {
-                                        for (ModificationMatch originalMatch : peptide.getModificationMatches()) {
-                                            boolean ptmFound = false;
-                                            for (ModificationMatch otherMatch : tempPeptide.getModificationMatches()) {
-                                                if (originalMatch.getTheoreticPtm().equals(otherMatch.getTheoreticPtm()) && originalMatch.getModificationSite() == otherMatch.getModificationSite()) {
-                                                    ptmFound = true;
-                                                    break;
-                                                }
-                                            }
-                                            if (!ptmFound) {
-                                                sameModifications = false;
-                                                break;
-                                            }
-                                        }
-                                    }
-                                    if (sameModifications) {
-                                        found = true;
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                        if (!found) {
+                        if (!hasPeptide(currentMatch, peptide)) {
 
                             Advocate advocate = Advocate.getAdvocate(searchEngine);
                             if (expandAaCombinations && AminoAcidSequence.hasCombination(peptideSequence)) {
@@ -247,11 +284,7 @@ public class PepxmlIdfileReader implements IdfileReader {
                 }
                 if (type == XmlPullParser.END_TAG && tagName.equals("spectrum_query")) {
                     if (hasMatch) {
-                        String key = currentMatch.getKey();
-                        if (!spectrumMatchesMap.containsKey(key)) {
-                            spectrumMatchesMap.put(key, currentMatch);
-                            spectrumMatches.add(currentMatch);
-                        }
+                        previousMatch = currentMatch;
                         hasMatch = false;
                         currentMatch = null;
                         currentCharge = null;
@@ -262,13 +295,57 @@ public class PepxmlIdfileReader implements IdfileReader {
                 }
             }
 
-            spectrumMatchesMap.clear();
+            if (previousMatch != null) {
+                spectrumMatchBuffer.add(previousMatch);
+            }
+            spectrumMatchBuffer.flush();
 
         } finally {
-            br.close();
+            inputStream.close();
+            internedStrings.clear();
         }
     }
 
+    /**
+     * Indicates whether a spectrum match already has an assumption with the
+     * same sequence and modifications as the given peptide.
+     *
+     * @param spectrumMatch the spectrum match
+     * @param peptide the peptide
+     *
+     * @return true if the spectrum match already has the peptide
+     */
+    private static boolean hasPeptide(SpectrumMatch spectrumMatch, Peptide peptide) {
+        if (spectrumMatch.getAllAssumptions() != null) {
+            for (SpectrumIdentificationAssumption tempAssumption : spectrumMatch.getAllAssumptions()) {
+                PeptideAssumption tempPeptideAssumption = (PeptideAssumption) tempAssumption;
+                Peptide tempPeptide = tempPeptideAssumption.getPeptide();
+                if (peptide.getSequence().equals(tempPeptide.getSequence())) {
+                    boolean sameModifications = peptide.getNModifications() == tempPeptide.getNModifications();
+                    if (sameModifications && peptide.isModified()) {
+                        for (ModificationMatch originalMatch : peptide.getModificationMatches()) {
+                            boolean ptmFound = false;
+                            for (ModificationMatch otherMatch : tempPeptide.getModificationMatches()) {
+                                if (originalMatch.getTheoreticPtm().equals(otherMatch.getTheoreticPtm()) && originalMatch.getModificationSite() == otherMatch.getModificationSite()) {
+                                    ptmFound = true;
+                                    break;
+                                }
+                            }
+                            if (!ptmFound) {
+                                sameModifications = false;
+                                break;
+                            }
+                        }
+                    }
+                    if (sameModifications) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Parses a search hit.
      *
@@ -297,7 +374,7 @@ public class PepxmlIdfileReader implements IdfileReader {
                     throw new IllegalArgumentException("An error occurred while parsing rank " + value + ". Integer expected.");
                 }
             } else if (name.equals("peptide")) {
-                sequence = parser.getAttributeValue(i).trim();
+                sequence = intern(parser.getAttributeValue(i).trim());
             }
         }
 
@@ -347,7 +424,7 @@ public class PepxmlIdfileReader implements IdfileReader {
 
                     char aa = sequence.charAt(site - 1);
                     terminalMass = Util.roundDouble(terminalMass, 2);
-                    String tempModificationName = terminalMass + "@" + aa;
+                    String tempModificationName = intern(terminalMass + "@" + aa);
                     ModificationMatch modificationMatch = new ModificationMatch(tempModificationName, variableModification, site);
                     modificationMatches.add(modificationMatch);
                 }
@@ -413,7 +490,7 @@ public class PepxmlIdfileReader implements IdfileReader {
                                 if (variableModification) {
                                     double modificationMass = modifiedAaMass - fixedModificationMass - aminoAcid.getMonoisotopicMass();
                                     modificationMass = Util.roundDouble(modificationMass, 2);
-                                    String tempModificationName = modificationMass + "@" + aa;
+                                    String tempModificationName = intern(modificationMass + "@" + aa);
                                     ModificationMatch modificationMatch = new ModificationMatch(tempModificationName, true, site);
                                     modificationMatches.add(modificationMatch);
                                 }
@@ -458,7 +535,7 @@ public class PepxmlIdfileReader implements IdfileReader {
 
         Peptide peptide = new Peptide(sequence, modificationMatches);
         Advocate advocate = Advocate.getAdvocate(searchEngine);
-        return new PeptideAssumption(peptide, rank, advocate.getIndex(), new Charge(Charge.PLUS, charge), score, idFile.getName());
+        return new PeptideAssumption(peptide, rank, advocate.getIndex(), new Charge(Charge.PLUS, charge), score, idFileName);
     }
 
     /**
@@ -496,7 +573,11 @@ public class PepxmlIdfileReader implements IdfileReader {
 
         String spectrumTitle = scanNumber + "";
         if (spectrumFactory.fileLoaded(inputFileName)) {
-            spectrumTitle = spectrumFactory.getSpectrumTitle(inputFileName, scanNumber);
+            // null if the scan is not found in an mzML file
+            String loadedTitle = spectrumFactory.getSpectrumTitleOfScan(inputFileName, scanNumber);
+            if (loadedTitle != null) {
+                spectrumTitle = loadedTitle;
+            }
         }
 //        String spectrumTitle = scanNumber + "";
 //        if (spectrumFactory.fileLoaded(inputFileName)) {
@@ -695,11 +776,30 @@ public class PepxmlIdfileReader implements IdfileReader {
             SequenceMatchingPreferences sequenceMatchingPreferences, boolean expandAaCombinations) throws IOException, IllegalArgumentException,
             SQLException, ClassNotFoundException, InterruptedException, JAXBException, XmlPullParserException {
         if (spectrumMatches == null) {
-            parseFile(waitingHandler, expandAaCombinations, true);
+            // the queries of a spectrum can be found at different places of the file, a peptide is kept only once per spectrum
+            SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector(true) {
+                @Override
+                protected void merge(SpectrumMatch spectrumMatch, SpectrumMatch otherMatch) {
+                    for (SpectrumIdentificationAssumption assumption : otherMatch.getAllAssumptions()) {
+                        if (!hasPeptide(spectrumMatch, ((PeptideAssumption) assumption).getPeptide())) {
+                            spectrumMatch.addHit(assumption.getAdvocate(), assumption, false);
+                        }
+                    }
+                }
+            };
+            streamSpectrumMatches(waitingHandler, searchParameters, sequenceMatchingPreferences, expandAaCombinations, spectrumMatchCollector, SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+            spectrumMatches = spectrumMatchCollector.getSpectrumMatches();
         }
         return spectrumMatches;
     }
 
+    @Override
+    public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+            boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize) throws IOException, IllegalArgumentException,
+            SQLException, ClassNotFoundException, InterruptedException, JAXBException, XmlPullParserException {
+        parseFile(waitingHandler, expandAaCombinations, true, new SpectrumMatchBuffer(spectrumMatchConsumer, batchSize));
+    }
+
     @Override
     public HashMap<String, LinkedList<SpectrumMatch>> getTagsMap() {
         return new HashMap<String, LinkedList<SpectrumMatch>>(0);
@@ -9,6 +9,12 @@ import com.compomics.util.experiment.identification.identification_parameters.Se
 import com.compomics.util.experiment.identification.matches.ModificationMatch;
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.io.identifications.IdfileReader;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchConsumer;
+import com.compomics.util.experiment.io.identifications.TabularFileParser;
+import com.compomics.util.experiment.io.identifications.TabularLine;
+import com.compomics.util.experiment.io.identifications.TabularLineParser;
 import com.compomics.util.experiment.massspectrometry.Charge;
 import com.compomics.util.experiment.massspectrometry.Spectrum;
 import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
@@ -48,6 +54,14 @@ public class TideIdfileReader extends ExperimentObject implements IdfileReader {
      * The spectrum factory used to retrieve spectrum titles.
      */
     private SpectrumFactory spectrumFactory = SpectrumFactory.getInstance();
+    /**
+     * The number of threads to use for the parsing.
+     */
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The size in bytes of the chunks of the file parsed concurrently.
+     */
+    private int chunkSize = TabularFileParser.DEFAULT_CHUNK_SIZE;
 
     /**
      * Default constructor for the purpose of instantiation.
@@ -112,17 +126,19 @@ public class TideIdfileReader extends ExperimentObject implements IdfileReader {
     public LinkedList<SpectrumMatch> getAllSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters,
             SequenceMatchingPreferences sequenceMatchingPreferences, boolean expandAaCombinations)
             throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
+        SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+        streamSpectrumMatches(waitingHandler, searchParameters, sequenceMatchingPreferences, expandAaCombinations, spectrumMatchCollector, SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+        return spectrumMatchCollector.getSpectrumMatches();
+    }
 
-        LinkedList<SpectrumMatch> result = new LinkedList<SpectrumMatch>();
-
-        BufferedRandomAccessFile bufferedRandomAccessFile = new BufferedRandomAccessFile(tideTsvFile, "r", 1024 * 100);
+    @Override
+    public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+            boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize)
+            throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
 
-        if (waitingHandler != null) {
-            waitingHandler.resetSecondaryProgressCounter();
-            waitingHandler.setMaxSecondaryProgressCounter(100);
-        }
+        SpectrumMatchBuffer spectrumMatchBuffer = new SpectrumMatchBuffer(spectrumMatchConsumer, batchSize);
 
-        long progressUnit = bufferedRandomAccessFile.length() / 100;
+        BufferedRandomAccessFile bufferedRandomAccessFile = new BufferedRandomAccessFile(tideTsvFile, "r", 1024 * 100);
 
         // check if the version number is included, ms amanda version 1.0.0.3196 or newer
         //String versionNumberString = bufferedRandomAccessFile.readLine(); // @TODO: how to get the tide version number?
@@ -192,138 +208,57 @@ public class TideIdfileReader extends ExperimentObject implements IdfileReader {
             throw new IllegalArgumentException("Mandatory columns are missing in the Tide tsv file. Please check the file!");
         }
 
-        String line;
-        String currentSpectrumTitle = null;
-        SpectrumMatch currentMatch = null;
-
         // get the name of the mgf file
         String spectrumFileName = Util.getFileName(tideTsvFile);
         spectrumFileName = spectrumFileName.substring(0, spectrumFileName.length() - ".tide-search.target.txt".length()) + ".mgf"; // @TODO: will only work for files from searchgui...
 
-        // get the psms
-        while ((line = bufferedRandomAccessFile.readLine()) != null) {
-
-            String[] elements = line.split("\t");
-
-            if (!line.trim().isEmpty()) { // @TODO: make this more robust?
-
-                int scanNumber = Integer.valueOf(elements[scanNumberIndex]);
-                String modifiedPeptideSequence = elements[sequenceIndex].toUpperCase();
-                int charge = Integer.valueOf(elements[chargeIndex]);
-
-                int rank;
-                if (exactPValueIndex != -1) {
-                    rank = Integer.valueOf(elements[xcorrRank]);
-                } else {
-                    rank = Integer.valueOf(elements[xcorrRank]);
-                }
-
-                double tideEValue, rawScore;
-                if (exactPValueIndex != -1) {
-                    String scoreAsText = elements[exactPValueIndex];
-                    tideEValue = Util.readDoubleAsString(scoreAsText);
-                    rawScore = tideEValue;
-                } else {
-                    String scoreAsText = elements[xcorrScoreIndex];
-                    rawScore = Util.readDoubleAsString(scoreAsText);
-                    if (rawScore < 0) {
-                        tideEValue = 100;
-                    } else {
-                        tideEValue = Math.pow(10, -rawScore); // convert xcorr score to a kind of e-value
-                    }
-                }
-
-                String spectrumTitle = scanNumber + "";
-                if (spectrumFactory.fileLoaded(spectrumFileName)) {
-                    spectrumTitle = spectrumFactory.getSpectrumTitle(spectrumFileName, scanNumber);
-                }
-
-                // set up the yet empty spectrum match, or add to the current match
-                if (currentMatch == null || (currentSpectrumTitle != null && !currentSpectrumTitle.equalsIgnoreCase(spectrumTitle))) {
-
-                    // add the previous match, if any
-                    if (currentMatch != null) {
-                        result.add(currentMatch);
-                    }
-
-                    currentMatch = new SpectrumMatch(Spectrum.getSpectrumKey(spectrumFileName, spectrumTitle));
-                    currentMatch.setSpectrumNumber(scanNumber);
-                    currentSpectrumTitle = spectrumTitle;
-                }
-
-                // get the modifications
-                ArrayList<ModificationMatch> utilitiesModifications = new ArrayList<ModificationMatch>();
-                String unmodifiedPeptideSequence = "";
-
-                // check if the peptide is modified
-                if (modifiedPeptideSequence.contains("[")) {
-
-                    // we expect something like this: TAM[15.9949]AGK
-                    for (int i = 0; i < modifiedPeptideSequence.length(); i++) {
-                        if (modifiedPeptideSequence.charAt(i) != '[') {
-                            unmodifiedPeptideSequence += modifiedPeptideSequence.charAt(i);
-                        } else {
-                            // we've arrived at a modification, for example: [15.9949]
-                            char modifiedResidue = modifiedPeptideSequence.charAt(i - 1); // @TODO: test for terminal ptms!
-                            double ptmMass = Double.parseDouble(modifiedPeptideSequence.substring(i + 1, modifiedPeptideSequence.indexOf("]", i + 1)));
-                            utilitiesModifications.add(new ModificationMatch(ptmMass + "@" + modifiedResidue, true, i));
-                            i = modifiedPeptideSequence.indexOf("]", i + 1);
-                        }
-                    }
-                } else {
-                    unmodifiedPeptideSequence = modifiedPeptideSequence;
-                }
-
-                // create the peptide
-                Peptide peptide = new Peptide(unmodifiedPeptideSequence, utilitiesModifications);
-
-                // set up the charge
-                Charge peptideCharge = new Charge(Charge.PLUS, charge);
-
-                // create the peptide assumption
-                PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, rank, Advocate.tide.getIndex(), peptideCharge, tideEValue, Util.getFileName(tideTsvFile));
-                peptideAssumption.setRawScore(rawScore);
+        long dataStart = bufferedRandomAccessFile.getFilePointer();
+        bufferedRandomAccessFile.close();
 
-                if (expandAaCombinations && AminoAcidSequence.hasCombination(unmodifiedPeptideSequence)) {
-                    ArrayList<ModificationMatch> previousModificationMatches = peptide.getModificationMatches(),
-                            newModificationMatches = null;
-                    if (previousModificationMatches != null) {
-                        newModificationMatches = new ArrayList<ModificationMatch>(previousModificationMatches.size());
-                    }
-                    for (StringBuilder expandedSequence : AminoAcidSequence.getCombinations(peptide.getSequence())) {
-                        Peptide newPeptide = new Peptide(expandedSequence.toString(), newModificationMatches);
-                        if (previousModificationMatches != null) {
-                            for (ModificationMatch modificationMatch : previousModificationMatches) {
-                                newPeptide.addModificationMatch(new ModificationMatch(modificationMatch.getTheoreticPtm(), modificationMatch.isVariable(), modificationMatch.getModificationSite()));
-                            }
-                        }
-                        PeptideAssumption newAssumption = new PeptideAssumption(newPeptide, peptideAssumption.getRank(), peptideAssumption.getAdvocate(), peptideAssumption.getIdentificationCharge(), peptideAssumption.getScore(), peptideAssumption.getIdentificationFile());
-                        newAssumption.setRawScore(rawScore);
-                        currentMatch.addHit(Advocate.tide.getIndex(), newAssumption, false);
-                    }
-                } else {
-                    //peptideAssumption.addUrParam(scoreParam);
-                    currentMatch.addHit(Advocate.tide.getIndex(), peptideAssumption, false);
-                }
+        // get the psms
+        TideLineParser tideLineParser = new TideLineParser(spectrumFileName, scanNumberIndex, chargeIndex, sequenceIndex, xcorrRank, exactPValueIndex, xcorrScoreIndex, expandAaCombinations);
+        TabularFileParser tabularFileParser = new TabularFileParser(tideTsvFile, "\t", nThreads);
+        tabularFileParser.setChunkSize(chunkSize);
+        tabularFileParser.parse(dataStart, tideLineParser, spectrumMatchBuffer, waitingHandler);
+    }
 
-                if (waitingHandler != null && progressUnit != 0) {
-                    waitingHandler.setSecondaryProgressCounter((int) (bufferedRandomAccessFile.getFilePointer() / progressUnit));
-                    if (waitingHandler.isRunCanceled()) {
-                        bufferedRandomAccessFile.close();
-                        break;
-                    }
-                }
-            }
-        }
+    /**
+     * Returns the number of threads used for the parsing.
+     *
+     * @return the number of threads used for the parsing
+     */
+    public int getnThreads() {
+        return nThreads;
+    }
 
-        // add the last match, if any
-        if (currentMatch != null) {
-            result.add(currentMatch);
-        }
+    /**
+     * Sets the number of threads to use for the parsing.
+     *
+     * @param nThreads the number of threads to use for the parsing
+     */
+    public void setnThreads(int nThreads) {
+        this.nThreads = nThreads;
+    }
 
-        bufferedRandomAccessFile.close();
+    /**
+     * Returns the size in bytes of the chunks of the file parsed
+     * concurrently.
+     *
+     * @return the size in bytes of the chunks of the file parsed
+     * concurrently
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
 
-        return result;
+    /**
+     * Sets the size in bytes of the chunks of the file parsed concurrently.
+     *
+     * @param chunkSize the size in bytes of the chunks of the file parsed
+     * concurrently
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
     }
 
     @Override
@@ -354,4 +289,170 @@ public class TideIdfileReader extends ExperimentObject implements IdfileReader {
     public boolean hasDeNovoTags() {
         return false;
     }
+
+    /**
+     * Parser for the lines of a Tide tsv file.
+     */
+    private class TideLineParser implements TabularLineParser {
+
+        /**
+         * The name of the spectrum file.
+         */
+        private final String spectrumFileName;
+        /**
+         * The index of the scan number column.
+         */
+        private final int scanNumberIndex;
+        /**
+         * The index of the charge column.
+         */
+        private final int chargeIndex;
+        /**
+         * The index of the sequence column.
+         */
+        private final int sequenceIndex;
+        /**
+         * The index of the xcorr rank column.
+         */
+        private final int xcorrRankIndex;
+        /**
+         * The index of the exact p-value column, -1 if not present.
+         */
+        private final int exactPValueIndex;
+        /**
+         * The index of the xcorr score column.
+         */
+        private final int xcorrScoreIndex;
+        /**
+         * Indicates whether the amino acid combinations should be expanded.
+         */
+        private final boolean expandAaCombinations;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrumFileName the name of the spectrum file
+         * @param scanNumberIndex the index of the scan number column
+         * @param chargeIndex the index of the charge column
+         * @param sequenceIndex the index of the sequence column
+         * @param xcorrRankIndex the index of the xcorr rank column
+         * @param exactPValueIndex the index of the exact p-value column, -1 if
+         * not present
+         * @param xcorrScoreIndex the index of the xcorr score column
+         * @param expandAaCombinations indicates whether the amino acid
+         * combinations should be expanded
+         */
+        public TideLineParser(String spectrumFileName, int scanNumberIndex, int chargeIndex, int sequenceIndex, int xcorrRankIndex,
+                int exactPValueIndex, int xcorrScoreIndex, boolean expandAaCombinations) {
+            this.spectrumFileName = spectrumFileName;
+            this.scanNumberIndex = scanNumberIndex;
+            this.chargeIndex = chargeIndex;
+            this.sequenceIndex = sequenceIndex;
+            this.xcorrRankIndex = xcorrRankIndex;
+            this.exactPValueIndex = exactPValueIndex;
+            this.xcorrScoreIndex = xcorrScoreIndex;
+            this.expandAaCombinations = expandAaCombinations;
+        }
+
+        @Override
+        public TabularLineParser getChunkParser() {
+            return this;
+        }
+
+        @Override
+        public SpectrumMatch parseLine(TabularLine tabularLine) {
+
+            if (tabularLine.isBlank()) { // @TODO: make this more robust?
+                return null;
+            }
+
+            int scanNumber = tabularLine.getInt(scanNumberIndex);
+            String modifiedPeptideSequence = tabularLine.getField(sequenceIndex).toUpperCase();
+            int charge = tabularLine.getInt(chargeIndex);
+            int rank = tabularLine.getInt(xcorrRankIndex);
+
+            double tideEValue, rawScore;
+            if (exactPValueIndex != -1) {
+                tideEValue = tabularLine.getDouble(exactPValueIndex);
+                rawScore = tideEValue;
+            } else {
+                rawScore = tabularLine.getDouble(xcorrScoreIndex);
+                if (rawScore < 0) {
+                    tideEValue = 100;
+                } else {
+                    tideEValue = Math.pow(10, -rawScore); // convert xcorr score to a kind of e-value
+                }
+            }
+
+            String spectrumTitle = scanNumber + "";
+            if (spectrumFactory.fileLoaded(spectrumFileName)) {
+                // null if the number is out of the range of an mzML file
+                String loadedTitle = spectrumFactory.getSpectrumTitle(spectrumFileName, scanNumber);
+                if (loadedTitle != null) {
+                    spectrumTitle = loadedTitle;
+                }
+            }
+
+            SpectrumMatch spectrumMatch = new SpectrumMatch(Spectrum.getSpectrumKey(spectrumFileName, spectrumTitle));
+            spectrumMatch.setSpectrumNumber(scanNumber);
+
+            // get the modifications
+            ArrayList<ModificationMatch> utilitiesModifications = new ArrayList<ModificationMatch>();
+            String unmodifiedPeptideSequence;
+
+            // check if the peptide is modified
+            if (modifiedPeptideSequence.contains("[")) {
+
+                // we expect something like this: TAM[15.9949]AGK
+                StringBuilder sequenceBuilder = new StringBuilder(modifiedPeptideSequence.length());
+                for (int i = 0; i < modifiedPeptideSequence.length(); i++) {
+                    if (modifiedPeptideSequence.charAt(i) != '[') {
+                        sequenceBuilder.append(modifiedPeptideSequence.charAt(i));
+                    } else {
+                        // we've arrived at a modification, for example: [15.9949]
+                        char modifiedResidue = modifiedPeptideSequence.charAt(i - 1); // @TODO: test for terminal ptms!
+                        double ptmMass = Double.parseDouble(modifiedPeptideSequence.substring(i + 1, modifiedPeptideSequence.indexOf("]", i + 1)));
+                        utilitiesModifications.add(new ModificationMatch(ptmMass + "@" + modifiedResidue, true, i));
+                        i = modifiedPeptideSequence.indexOf("]", i + 1);
+                    }
+                }
+                unmodifiedPeptideSequence = sequenceBuilder.toString();
+            } else {
+                unmodifiedPeptideSequence = modifiedPeptideSequence;
+            }
+
+            // create the peptide
+            Peptide peptide = new Peptide(unmodifiedPeptideSequence, utilitiesModifications);
+
+            // set up the charge
+            Charge peptideCharge = new Charge(Charge.PLUS, charge);
+
+            // create the peptide assumption
+            PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, rank, Advocate.tide.getIndex(), peptideCharge, tideEValue, Util.getFileName(tideTsvFile));
+            peptideAssumption.setRawScore(rawScore);
+
+            if (expandAaCombinations && AminoAcidSequence.hasCombination(unmodifiedPeptideSequence)) {
+                ArrayList<ModificationMatch> previousModificationMatches = peptide.getModificationMatches(),
+                        newModificationMatches = null;
+                if (previousModificationMatches != null) {
+                    newModificationMatches = new ArrayList<ModificationMatch>(previousModificationMatches.size());
+                }
+                for (StringBuilder expandedSequence : AminoAcidSequence.getCombinations(peptide.getSequence())) {
+                    Peptide newPeptide = new Peptide(expandedSequence.toString(), newModificationMatches);
+                    if (previousModificationMatches != null) {
+                        for (ModificationMatch modificationMatch : previousModificationMatches) {
+                            newPeptide.addModificationMatch(new ModificationMatch(modificationMatch.getTheoreticPtm(), modificationMatch.isVariable(), modificationMatch.getModificationSite()));
+                        }
+                    }
+                    PeptideAssumption newAssumption = new PeptideAssumption(newPeptide, peptideAssumption.getRank(), peptideAssumption.getAdvocate(), peptideAssumption.getIdentificationCharge(), peptideAssumption.getScore(), peptideAssumption.getIdentificationFile());
+                    newAssumption.setRawScore(rawScore);
+                    spectrumMatch.addHit(Advocate.tide.getIndex(), newAssumption, false);
+                }
+            } else {
+                spectrumMatch.addHit(Advocate.tide.getIndex(), peptideAssumption, false);
+            }
+
+            return spectrumMatch;
+        }
+    }
 }
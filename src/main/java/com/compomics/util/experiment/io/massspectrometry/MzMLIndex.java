@@ -0,0 +1,234 @@
+package com.compomics.util.experiment.io.massspectrometry;
+
+import com.compomics.util.experiment.personalization.ExperimentObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class contains the offsets of the spectra of an mzML file mapped with
+ * the id of the spectrum.
+ *
+ * @author Marc Vaudel
+ */
+public class MzMLIndex extends ExperimentObject {
+
+    /**
+     * The map of all offsets: spectrum id &gt; offset of the spectrum element
+     * in the file.
+     */
+    private HashMap<String, Long> indexMap;
+    /**
+     * A map of all the spectrum ids and which rank they have in the file, i.e.,
+     * the first spectrum has rank 0, the second rank 1, etc.
+     */
+    private HashMap<String, Integer> spectrumNumberIndexMap;
+    /**
+     * List of spectrum ids in the order of the file.
+     */
+    private ArrayList<String> spectrumTitles;
+    /**
+     * The name of the indexed file.
+     */
+    private String fileName;
+    /**
+     * The last time the indexed file was modified.
+     */
+    private Long lastModified;
+    /**
+     * Indicates whether the offsets were taken from the index of an indexedmzML
+     * file.
+     */
+    private boolean indexedMzML;
+    /**
+     * The spectrum ids indexed by the scan number found in the ids, built on
+     * demand.
+     */
+    private transient HashMap<Integer, String> scanNumberMap = null;
+
+    /**
+     * Constructor.
+     *
+     * @param spectrumTitles an ordered list of all spectrum ids
+     * @param indexMap map of all offsets: spectrum id &gt; offset in the file
+     * @param fileName the mzML file name
+     * @param indexedMzML indicates whether the offsets were taken from the
+     * index of an indexedmzML file
+     * @param lastModified a long indicating the last time the indexed file was
+     * modified
+     */
+    public MzMLIndex(ArrayList<String> spectrumTitles, HashMap<String, Long> indexMap, String fileName, boolean indexedMzML, long lastModified) {
+        this.spectrumTitles = spectrumTitles;
+        this.indexMap = indexMap;
+        this.fileName = fileName;
+        this.indexedMzML = indexedMzML;
+        this.lastModified = lastModified;
+        spectrumNumberIndexMap = new HashMap<String, Integer>(spectrumTitles.size());
+        for (int i = 0; i < spectrumTitles.size(); i++) {
+            spectrumNumberIndexMap.put(spectrumTitles.get(i), i);
+        }
+    }
+
+    /**
+     * Returns the offset of the desired spectrum in the file, null if not
+     * found.
+     *
+     * @param spectrumTitle the id of the spectrum
+     *
+     * @return the offset of the spectrum element in the file
+     */
+    public Long getIndex(String spectrumTitle) {
+        return indexMap.get(spectrumTitle);
+    }
+
+    /**
+     * Returns the rank of the desired spectrum in the file, null if not found.
+     *
+     * @param spectrumTitle the id of the spectrum
+     *
+     * @return the rank of the spectrum in the file
+     */
+    public Integer getSpectrumIndex(String spectrumTitle) {
+        return spectrumNumberIndexMap.get(spectrumTitle);
+    }
+
+    /**
+     * Returns the id of the spectrum of the given rank, null if not found.
+     *
+     * @param number the rank of the spectrum, 0 for the first spectrum
+     *
+     * @return the id of the spectrum
+     */
+    public String getSpectrumTitle(int number) {
+        if (number < 0 || number >= spectrumTitles.size()) {
+            return null;
+        }
+        return spectrumTitles.get(number);
+    }
+
+    /**
+     * Returns the id of the spectrum of the given scan number, i.e. the
+     * spectrum whose id contains the term scan=scanNumber. Null if not found.
+     *
+     * @param scanNumber the scan number
+     *
+     * @return the id of the spectrum
+     */
+    public String getSpectrumTitleOfScan(int scanNumber) {
+        return getScanNumberMap().get(scanNumber);
+    }
+
+    /**
+     * Indicates whether the ids of the spectra contain scan numbers.
+     *
+     * @return a boolean indicating whether the ids of the spectra contain scan
+     * numbers
+     */
+    public boolean hasScanNumbers() {
+        return !getScanNumberMap().isEmpty();
+    }
+
+    /**
+     * Returns the spectrum ids indexed by the scan number found in the ids,
+     * building the map if needed.
+     *
+     * @return the spectrum ids indexed by scan number
+     */
+    private synchronized HashMap<Integer, String> getScanNumberMap() {
+        if (scanNumberMap == null) {
+            HashMap<Integer, String> map = new HashMap<Integer, String>();
+            for (String spectrumTitle : spectrumTitles) {
+                Integer scanNumber = getScanNumber(spectrumTitle);
+                if (scanNumber != null && !map.containsKey(scanNumber)) {
+                    map.put(scanNumber, spectrumTitle);
+                }
+            }
+            scanNumberMap = map;
+        }
+        return scanNumberMap;
+    }
+
+    /**
+     * Returns the scan number in a native spectrum id like
+     * "controllerType=0 controllerNumber=1 scan=42", null if none.
+     *
+     * @param spectrumId the spectrum id
+     *
+     * @return the scan number
+     */
+    public static Integer getScanNumber(String spectrumId) {
+        int index = spectrumId.indexOf("scan=");
+        while (index > 0 && spectrumId.charAt(index - 1) != ' ') {
+            index = spectrumId.indexOf("scan=", index + 1);
+        }
+        if (index == -1) {
+            return null;
+        }
+        int start = index + 5;
+        int end = start;
+        while (end < spectrumId.length() && Character.isDigit(spectrumId.charAt(end))) {
+            end++;
+        }
+        if (end == start || end - start > 9) {
+            return null;
+        }
+        return new Integer(spectrumId.substring(start, end));
+    }
+
+    /**
+     * Indicates whether the given spectrum is in the file.
+     *
+     * @param spectrumTitle the id of the spectrum
+     *
+     * @return a boolean indicating whether the given spectrum is in the file
+     */
+    public boolean containsSpectrum(String spectrumTitle) {
+        return indexMap.containsKey(spectrumTitle);
+    }
+
+    /**
+     * Returns the ids of the spectra in the order of the file.
+     *
+     * @return the ids of the spectra
+     */
+    public ArrayList<String> getSpectrumTitles() {
+        return spectrumTitles;
+    }
+
+    /**
+     * Returns the number of spectra in the file.
+     *
+     * @return the number of spectra in the file
+     */
+    public int getNSpectra() {
+        return spectrumTitles.size();
+    }
+
+    /**
+     * Returns the name of the indexed file.
+     *
+     * @return the name of the indexed file
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Returns the last time the indexed file was modified.
+     *
+     * @return the last time the indexed file was modified
+     */
+    public Long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Indicates whether the offsets were taken from the index of an
+     * indexedmzML file.
+     *
+     * @return a boolean indicating whether the offsets were taken from the
+     * index of an indexedmzML file
+     */
+    public boolean isIndexedMzML() {
+        return indexedMzML;
+    }
+}
@@ -0,0 +1,954 @@
+package com.compomics.util.experiment.io.massspectrometry;
+
+import com.compomics.util.experiment.massspectrometry.Charge;
+import com.compomics.util.experiment.massspectrometry.MS1Spectrum;
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import com.compomics.util.experiment.massspectrometry.Peak;
+import com.compomics.util.experiment.massspectrometry.Precursor;
+import com.compomics.util.experiment.massspectrometry.Spectrum;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+/**
+ * Reader for mzML files. The spectra are indexed by offset in the file, using
+ * the index of indexedmzML files when available, and every spectrum element
+ * is parsed on its own with an XML pull parser. The binary data arrays are
+ * decoded from base64, and inflated if zlib compressed, directly into
+ * primitive arrays.
+ *
+ * @author Marc Vaudel
+ */
+public class MzMLReader {
+
+    /**
+     * The opening of a spectrum element.
+     */
+    private static final String SPECTRUM_START = "<spectrum";
+    /**
+     * The closing of a spectrum element.
+     */
+    private static final byte[] SPECTRUM_END = getBytes("</spectrum>");
+    /**
+     * The opening of the index list offset element of indexedmzML files.
+     */
+    private static final String INDEX_LIST_OFFSET_START = "<indexListOffset>";
+    /**
+     * The closing of the index list offset element of indexedmzML files.
+     */
+    private static final String INDEX_LIST_OFFSET_END = "</indexListOffset>";
+    /**
+     * The size of the buffers used to read the file.
+     */
+    private static final int BUFFER_SIZE = 1024 * 64;
+    /**
+     * The base64 value of every character, -1 for characters outside the
+     * base64 alphabet.
+     */
+    private static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < BASE64_VALUES.length; i++) {
+            BASE64_VALUES[i] = -1;
+        }
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+    /**
+     * The factory used to create the XML parsers.
+     */
+    private static XmlPullParserFactory xmlPullParserFactory = null;
+
+    /**
+     * Empty default constructor.
+     */
+    public MzMLReader() {
+    }
+
+    /**
+     * Returns the index of the given mzML file. The index of indexedmzML files
+     * is used when present and consistent, otherwise the file is scanned for
+     * spectrum elements.
+     *
+     * @param mzMLFile the mzML file
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The secondary progress methods will be called.
+     *
+     * @return the index of the file
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     */
+    public static MzMLIndex getIndexMap(File mzMLFile, WaitingHandler waitingHandler) throws IOException {
+
+        MzMLIndex mzMLIndex = null;
+
+        try {
+            mzMLIndex = readIndexList(mzMLFile);
+        } catch (XmlPullParserException e) {
+            System.err.println("Indexing: " + mzMLFile.getName() + ". (Reason: " + e.getLocalizedMessage() + ")");
+        } catch (NumberFormatException e) {
+            System.err.println("Indexing: " + mzMLFile.getName() + ". (Reason: " + e.getLocalizedMessage() + ")");
+        }
+
+        if (mzMLIndex == null) {
+            mzMLIndex = scanFile(mzMLFile, waitingHandler);
+        }
+
+        return mzMLIndex;
+    }
+
+    /**
+     * Reads the spectrum index of an indexedmzML file. Returns null if the
+     * file has no index or if the offsets do not point to spectrum elements.
+     *
+     * @param mzMLFile the mzML file
+     *
+     * @return the index of the file
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     * @throws XmlPullParserException exception thrown whenever an error
+     * occurred while parsing the index
+     */
+    private static MzMLIndex readIndexList(File mzMLFile) throws IOException, XmlPullParserException {
+
+        long indexListOffset;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mzMLFile, "r");
+
+        try {
+            long length = randomAccessFile.length();
+            int tailLength = (int) Math.min(length, 4096);
+            byte[] tail = new byte[tailLength];
+            randomAccessFile.seek(length - tailLength);
+            randomAccessFile.readFully(tail);
+            String tailString = new String(tail, "ISO-8859-1");
+            int start = tailString.lastIndexOf(INDEX_LIST_OFFSET_START);
+            if (start == -1) {
+                return null;
+            }
+            int end = tailString.indexOf(INDEX_LIST_OFFSET_END, start);
+            if (end == -1) {
+                return null;
+            }
+            indexListOffset = Long.parseLong(tailString.substring(start + INDEX_LIST_OFFSET_START.length(), end).trim());
+            if (indexListOffset <= 0 || indexListOffset >= length) {
+                return null;
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+
+        ArrayList<String> spectrumTitles = new ArrayList<String>();
+        HashMap<String, Long> indexMap = new HashMap<String, Long>();
+
+        InputStream inputStream = new FileInputStream(mzMLFile);
+
+        try {
+            long skipped = 0;
+            while (skipped < indexListOffset) {
+                long tempSkipped = inputStream.skip(indexListOffset - skipped);
+                if (tempSkipped <= 0) {
+                    return null;
+                }
+                skipped += tempSkipped;
+            }
+
+            XmlPullParser parser = getParser();
+            parser.setInput(new InputStreamReader(inputStream, "UTF-8"));
+            boolean spectrumIndex = false;
+            int type;
+
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type == XmlPullParser.START_TAG) {
+                    String tagName = parser.getName();
+                    if (tagName.equals("index")) {
+                        spectrumIndex = "spectrum".equals(parser.getAttributeValue(null, "name"));
+                    } else if (spectrumIndex && tagName.equals("offset")) {
+                        String id = parser.getAttributeValue(null, "idRef");
+                        long offset = Long.parseLong(parser.nextText().trim());
+                        if (id != null && indexMap.put(id, offset) == null) {
+                            spectrumTitles.add(id);
+                        }
+                    }
+                } else if (type == XmlPullParser.END_TAG) {
+                    String tagName = parser.getName();
+                    if (tagName.equals("index")) {
+                        spectrumIndex = false;
+                    } else if (tagName.equals("indexList")) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        if (spectrumTitles.isEmpty()) {
+            return null;
+        }
+
+        // check that the index is consistent with the file
+        randomAccessFile = new RandomAccessFile(mzMLFile, "r");
+        try {
+            if (!isSpectrumStart(randomAccessFile, indexMap.get(spectrumTitles.get(0)))
+                    || !isSpectrumStart(randomAccessFile, indexMap.get(spectrumTitles.get(spectrumTitles.size() - 1)))) {
+                return null;
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+
+        return new MzMLIndex(spectrumTitles, indexMap, mzMLFile.getName(), true, mzMLFile.lastModified());
+    }
+
+    /**
+     * Indicates whether a spectrum element starts at the given offset.
+     *
+     * @param randomAccessFile the file
+     * @param offset the offset
+     *
+     * @return a boolean indicating whether a spectrum element starts at the
+     * given offset
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     */
+    private static boolean isSpectrumStart(RandomAccessFile randomAccessFile, long offset) throws IOException {
+        if (offset < 0 || offset + SPECTRUM_START.length() + 1 > randomAccessFile.length()) {
+            return false;
+        }
+        byte[] bytes = new byte[SPECTRUM_START.length() + 1];
+        randomAccessFile.seek(offset);
+        randomAccessFile.readFully(bytes);
+        String start = new String(bytes, "ISO-8859-1");
+        return start.startsWith(SPECTRUM_START) && Character.isWhitespace(start.charAt(SPECTRUM_START.length()));
+    }
+
+    /**
+     * Indexes an mzML file by scanning it for spectrum elements.
+     *
+     * @param mzMLFile the mzML file
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The secondary progress methods will be called.
+     *
+     * @return the index of the file
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     */
+    private static MzMLIndex scanFile(File mzMLFile, WaitingHandler waitingHandler) throws IOException {
+
+        ArrayList<String> spectrumTitles = new ArrayList<String>();
+        HashMap<String, Long> indexMap = new HashMap<String, Long>();
+
+        long progressUnit = mzMLFile.length() / 100;
+        if (waitingHandler != null) {
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(100);
+        }
+
+        InputStream inputStream = new FileInputStream(mzMLFile);
+
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+            long position = 0;
+            long tagStart = -1;
+            int matched = 0;
+            boolean inTag = false;
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+
+                for (int i = 0; i < read; i++, position++) {
+
+                    byte b = buffer[i];
+
+                    if (inTag) {
+                        if (b == '>') {
+                            String id = getIdAttribute(new String(attributes.toByteArray(), "UTF-8"));
+                            if (id != null && indexMap.put(id, tagStart) == null) {
+                                spectrumTitles.add(id);
+                            }
+                            attributes.reset();
+                            inTag = false;
+                        } else {
+                            attributes.write(b);
+                        }
+                    } else if (matched == SPECTRUM_START.length()) {
+                        if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                            inTag = true;
+                            tagStart = position - SPECTRUM_START.length();
+                            attributes.write(' ');
+                        }
+                        matched = b == '<' ? 1 : 0;
+                    } else if (b == SPECTRUM_START.charAt(matched)) {
+                        matched++;
+                    } else {
+                        matched = b == '<' ? 1 : 0;
+                    }
+                }
+
+                if (waitingHandler != null && progressUnit != 0) {
+                    waitingHandler.setSecondaryProgressCounter((int) (position / progressUnit));
+                    if (waitingHandler.isRunCanceled()) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            inputStream.close();
+        }
+
+        return new MzMLIndex(spectrumTitles, indexMap, mzMLFile.getName(), false, mzMLFile.lastModified());
+    }
+
+    /**
+     * Returns the value of the id attribute in the given attributes of an XML
+     * element, null if not found.
+     *
+     * @param attributes the attributes of the element
+     *
+     * @return the value of the id attribute
+     */
+    private static String getIdAttribute(String attributes) {
+        int index = 0;
+        while ((index = attributes.indexOf("id", index)) != -1) {
+            int valueStart = index + 2;
+            if (index > 0 && Character.isWhitespace(attributes.charAt(index - 1))) {
+                while (valueStart < attributes.length() && Character.isWhitespace(attributes.charAt(valueStart))) {
+                    valueStart++;
+                }
+                if (valueStart < attributes.length() && attributes.charAt(valueStart) == '=') {
+                    valueStart++;
+                    while (valueStart < attributes.length() && Character.isWhitespace(attributes.charAt(valueStart))) {
+                        valueStart++;
+                    }
+                    if (valueStart < attributes.length()) {
+                        char quote = attributes.charAt(valueStart);
+                        int valueEnd = attributes.indexOf(quote, valueStart + 1);
+                        if ((quote == '"' || quote == '\'') && valueEnd != -1) {
+                            return unescapeXml(attributes.substring(valueStart + 1, valueEnd));
+                        }
+                    }
+                }
+            }
+            index = valueStart;
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the predefined XML entities and character references in the
+     * given attribute value.
+     *
+     * @param value the attribute value
+     *
+     * @return the unescaped value
+     */
+    private static String unescapeXml(String value) {
+        if (value.indexOf('&') == -1) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            int end = c == '&' ? value.indexOf(';', i) : -1;
+            if (end == -1) {
+                result.append(c);
+                i++;
+                continue;
+            }
+            String entity = value.substring(i + 1, end);
+            if (entity.equals("amp")) {
+                result.append('&');
+            } else if (entity.equals("lt")) {
+                result.append('<');
+            } else if (entity.equals("gt")) {
+                result.append('>');
+            } else if (entity.equals("quot")) {
+                result.append('"');
+            } else if (entity.equals("apos")) {
+                result.append('\'');
+            } else if (entity.startsWith("#x")) {
+                result.append((char) Integer.parseInt(entity.substring(2), 16));
+            } else if (entity.startsWith("#")) {
+                result.append((char) Integer.parseInt(entity.substring(1)));
+            } else {
+                result.append(value, i, end + 1);
+            }
+            i = end + 1;
+        }
+        return result.toString();
+    }
+
+    /**
+     * Reads the bytes of the spectrum element starting at the given offset.
+     *
+     * @param randomAccessFile the mzML file
+     * @param offset the offset of the spectrum element
+     *
+     * @return the bytes of the spectrum element
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file or if the element is not closed
+     */
+    public static byte[] readSpectrumBytes(RandomAccessFile randomAccessFile, long offset) throws IOException {
+
+        randomAccessFile.seek(offset);
+        byte[] bytes = new byte[BUFFER_SIZE];
+        int length = 0;
+
+        while (true) {
+            if (length == bytes.length) {
+                byte[] newBytes = new byte[2 * bytes.length];
+                System.arraycopy(bytes, 0, newBytes, 0, length);
+                bytes = newBytes;
+            }
+            int read = randomAccessFile.read(bytes, length, bytes.length - length);
+            if (read == -1) {
+                throw new IOException("Spectrum element starting at " + offset + " is not closed.");
+            }
+            int searchStart = Math.max(0, length - SPECTRUM_END.length + 1);
+            length += read;
+            int end = indexOf(bytes, SPECTRUM_END, searchStart, length);
+            if (end != -1) {
+                byte[] result = new byte[end + SPECTRUM_END.length];
+                System.arraycopy(bytes, 0, result, 0, result.length);
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the first occurrence of a pattern in an array, -1
+     * if not found.
+     *
+     * @param bytes the array to search
+     * @param pattern the pattern
+     * @param start the index where to start the search
+     * @param end the index where to end the search
+     *
+     * @return the index of the first occurrence of the pattern
+     */
+    private static int indexOf(byte[] bytes, byte[] pattern, int start, int end) {
+        int last = end - pattern.length;
+        for (int i = start; i <= last; i++) {
+            if (bytes[i] == pattern[0]) {
+                int j = 1;
+                while (j < pattern.length && bytes[i + j] == pattern[j]) {
+                    j++;
+                }
+                if (j == pattern.length) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the spectrum starting at the given offset of the file.
+     *
+     * @param randomAccessFile the mzML file
+     * @param offset the offset of the spectrum element
+     * @param fileName the name of the file
+     * @param decodePeaks if false the binary arrays are not decoded and the
+     * spectrum has no peaks
+     *
+     * @return the spectrum
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     */
+    public static Spectrum getSpectrum(RandomAccessFile randomAccessFile, long offset, String fileName, boolean decodePeaks) throws IOException {
+        return parseSpectrum(readSpectrumBytes(randomAccessFile, offset), fileName, decodePeaks);
+    }
+
+    /**
+     * Returns the given spectra of an mzML file in the given order. The
+     * spectrum elements are read from the file sequentially and parsed in
+     * parallel.
+     *
+     * @param mzMLFile the mzML file
+     * @param mzMLIndex the index of the file
+     * @param spectrumTitles the ids of the spectra to load
+     * @param nThreads the number of threads to use
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The secondary progress methods will be called.
+     *
+     * @return the spectra in the order of the ids
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    public static ArrayList<Spectrum> getSpectra(File mzMLFile, MzMLIndex mzMLIndex, Collection<String> spectrumTitles, int nThreads, WaitingHandler waitingHandler)
+            throws IOException, InterruptedException {
+
+        if (waitingHandler != null) {
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(spectrumTitles.size());
+        }
+
+        ArrayList<Spectrum> result = new ArrayList<Spectrum>(spectrumTitles.size());
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        LinkedList<Future<Spectrum>> pendingSpectra = new LinkedList<Future<Spectrum>>();
+        RandomAccessFile randomAccessFile = new RandomAccessFile(mzMLFile, "r");
+        String fileName = mzMLFile.getName();
+
+        try {
+            for (String spectrumTitle : spectrumTitles) {
+                Long offset = mzMLIndex.getIndex(spectrumTitle);
+                if (offset == null) {
+                    throw new IOException("Spectrum \'" + spectrumTitle + "\' in mzML file \'" + fileName + "\' not found!");
+                }
+                byte[] spectrumBytes = readSpectrumBytes(randomAccessFile, offset);
+                pendingSpectra.add(pool.submit(new SpectrumParser(spectrumBytes, fileName)));
+                while (pendingSpectra.size() > 4 * nThreads) {
+                    result.add(getParsedSpectrum(pendingSpectra.removeFirst()));
+                    if (waitingHandler != null) {
+                        waitingHandler.increaseSecondaryProgressCounter();
+                    }
+                }
+                if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                    return result;
+                }
+            }
+            while (!pendingSpectra.isEmpty()) {
+                result.add(getParsedSpectrum(pendingSpectra.removeFirst()));
+                if (waitingHandler != null) {
+                    waitingHandler.increaseSecondaryProgressCounter();
+                }
+            }
+        } finally {
+            randomAccessFile.close();
+            pool.shutdownNow();
+        }
+
+        return result;
+    }
+
+    /**
+     * Waits for a spectrum to be parsed and returns it. The exceptions
+     * encountered while parsing are thrown again.
+     *
+     * @param future the future result of the parsing
+     *
+     * @return the parsed spectrum
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * parsing the spectrum
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    private static Spectrum getParsedSpectrum(Future<Spectrum> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Returns a new XML pull parser.
+     *
+     * @return a new XML pull parser
+     *
+     * @throws XmlPullParserException exception thrown whenever an error
+     * occurred while creating the parser
+     */
+    private static synchronized XmlPullParser getParser() throws XmlPullParserException {
+        if (xmlPullParserFactory == null) {
+            xmlPullParserFactory = XmlPullParserFactory.newInstance(System.getProperty(XmlPullParserFactory.PROPERTY_NAME), null);
+            xmlPullParserFactory.setNamespaceAware(false);
+        }
+        return xmlPullParserFactory.newPullParser();
+    }
+
+    /**
+     * Parses a spectrum element.
+     *
+     * @param spectrumBytes the bytes of the spectrum element
+     * @param fileName the name of the file
+     * @param decodePeaks if false the binary arrays are not decoded and the
+     * spectrum has no peaks
+     *
+     * @return the spectrum
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * parsing the spectrum
+     */
+    public static Spectrum parseSpectrum(byte[] spectrumBytes, String fileName, boolean decodePeaks) throws IOException {
+
+        String spectrumTitle = null;
+        int level = 2, defaultArrayLength = -1, precursorCount = -1, nPrecursors = 0, nSelectedIons = 0;
+        double scanTime = -1.0, mzPrec = 0.0;
+        int chargePrec = 0;
+        boolean inScan = false, inSelectedIon = false, inBinaryDataArray = false;
+
+        // binary data array state
+        int arrayIndex = 0, arrayLength = -1, arrayType = -1, bytesPerValue = 8;
+        boolean integerValues = false, zlib = false;
+        double[] mzArray = null, intensityArray = null;
+
+        try {
+            XmlPullParser parser = getParser();
+            parser.setInput(new ByteArrayInputStream(spectrumBytes), "UTF-8");
+            int type;
+
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+
+                if (type == XmlPullParser.START_TAG) {
+
+                    String tagName = parser.getName();
+
+                    if (tagName.equals("cvParam")) {
+
+                        String accession = parser.getAttributeValue(null, "accession");
+
+                        if (accession == null) {
+                            continue;
+                        }
+
+                        if (inBinaryDataArray) {
+                            if (accession.equals("MS:1000514")) {
+                                arrayType = 0;
+                            } else if (accession.equals("MS:1000515")) {
+                                arrayType = 1;
+                            } else if (accession.equals("MS:1000521")) {
+                                bytesPerValue = 4;
+                                integerValues = false;
+                            } else if (accession.equals("MS:1000523")) {
+                                bytesPerValue = 8;
+                                integerValues = false;
+                            } else if (accession.equals("MS:1000519")) {
+                                bytesPerValue = 4;
+                                integerValues = true;
+                            } else if (accession.equals("MS:1000522")) {
+                                bytesPerValue = 8;
+                                integerValues = true;
+                            } else if (accession.equals("MS:1000574")) {
+                                zlib = true;
+                            } else if (accession.equals("MS:1000576")) {
+                                zlib = false;
+                            } else if (accession.equals("MS:1002312") || accession.equals("MS:1002313") || accession.equals("MS:1002314")) {
+                                throw new IllegalArgumentException("MS-Numpress compression is not supported (spectrum " + spectrumTitle + " of file " + fileName + ").");
+                            }
+                        } else if (accession.equals("MS:1000511")) {
+                            level = Integer.parseInt(parser.getAttributeValue(null, "value").trim());
+                        } else if (inScan && accession.equals("MS:1000016")) {
+                            scanTime = Double.parseDouble(parser.getAttributeValue(null, "value").trim());
+                        } else if (inSelectedIon && nPrecursors == 1 && nSelectedIons == 1) {
+                            if (accession.equals("MS:1000744") || accession.equals("MS:1000040")) {
+                                mzPrec = Double.parseDouble(parser.getAttributeValue(null, "value").trim());
+                            } else if (accession.equals("MS:1000041")) {
+                                chargePrec = Integer.parseInt(parser.getAttributeValue(null, "value").trim());
+                            }
+                        }
+
+                    } else if (tagName.equals("spectrum")) {
+                        spectrumTitle = parser.getAttributeValue(null, "id");
+                        String value = parser.getAttributeValue(null, "defaultArrayLength");
+                        if (value != null) {
+                            defaultArrayLength = Integer.parseInt(value.trim());
+                        }
+                    } else if (tagName.equals("scan")) {
+                        inScan = true;
+                    } else if (tagName.equals("precursorList")) {
+                        String value = parser.getAttributeValue(null, "count");
+                        if (value != null) {
+                            precursorCount = Integer.parseInt(value.trim());
+                        }
+                    } else if (tagName.equals("precursor")) {
+                        nPrecursors++;
+                        nSelectedIons = 0;
+                    } else if (tagName.equals("selectedIon")) {
+                        inSelectedIon = true;
+                        nSelectedIons++;
+                    } else if (tagName.equals("binaryDataArray")) {
+                        inBinaryDataArray = true;
+                        arrayType = -1;
+                        bytesPerValue = 8;
+                        integerValues = false;
+                        zlib = false;
+                        String value = parser.getAttributeValue(null, "arrayLength");
+                        arrayLength = value != null ? Integer.parseInt(value.trim()) : defaultArrayLength;
+                    } else if (tagName.equals("binary") && inBinaryDataArray) {
+                        String encodedData = parser.nextText();
+                        if (decodePeaks) {
+                            double[] values = decodeBinaryArray(encodedData, bytesPerValue, integerValues, zlib, arrayLength);
+                            if (arrayType == -1) {
+                                arrayType = arrayIndex; // assume that the m/z array comes first
+                            }
+                            if (arrayType == 0) {
+                                mzArray = values;
+                            } else if (arrayType == 1) {
+                                intensityArray = values;
+                            }
+                        }
+                    }
+
+                } else if (type == XmlPullParser.END_TAG) {
+
+                    String tagName = parser.getName();
+
+                    if (tagName.equals("scan")) {
+                        inScan = false;
+                    } else if (tagName.equals("selectedIon")) {
+                        inSelectedIon = false;
+                    } else if (tagName.equals("binaryDataArray")) {
+                        inBinaryDataArray = false;
+                        arrayIndex++;
+                    } else if (tagName.equals("spectrum")) {
+                        break;
+                    }
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Error while parsing spectrum " + spectrumTitle + " of file " + fileName + ".", e);
+        }
+
+        if (spectrumTitle == null) {
+            throw new IOException("No spectrum id found in file " + fileName + ".");
+        }
+
+        HashMap<Double, Peak> peakList = new HashMap<Double, Peak>();
+        if (mzArray != null && intensityArray != null) {
+            int nPeaks = Math.min(mzArray.length, intensityArray.length);
+            peakList = new HashMap<Double, Peak>(nPeaks);
+            for (int i = 0; i < nPeaks; i++) {
+                peakList.put(mzArray[i], new Peak(mzArray[i], intensityArray[i], scanTime));
+            }
+        }
+
+        if (level == 1) {
+            return new MS1Spectrum(fileName, spectrumTitle, scanTime, peakList);
+        } else {
+            if (precursorCount != 1) {
+                mzPrec = 0.0;
+                chargePrec = 0;
+            }
+            ArrayList<Charge> charges = new ArrayList<Charge>();
+            charges.add(new Charge(Charge.PLUS, chargePrec));
+            Precursor precursor = new Precursor(scanTime, mzPrec, charges);
+            return new MSnSpectrum(level, precursor, spectrumTitle, peakList, fileName, scanTime);
+        }
+    }
+
+    /**
+     * Decodes a binary data array.
+     *
+     * @param encodedData the base64 encoded data
+     * @param bytesPerValue the number of bytes per value, 4 or 8
+     * @param integerValues indicates whether the values are integers
+     * @param zlib indicates whether the data is zlib compressed
+     * @param arrayLength the number of values, -1 if not known
+     *
+     * @return the values
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * decoding the data
+     */
+    public static double[] decodeBinaryArray(String encodedData, int bytesPerValue, boolean integerValues, boolean zlib, int arrayLength) throws IOException {
+
+        byte[] bytes = decodeBase64(encodedData);
+
+        if (zlib) {
+            bytes = inflate(bytes, arrayLength > 0 ? arrayLength * bytesPerValue : 4 * bytes.length);
+        }
+
+        int nValues = bytes.length / bytesPerValue;
+        double[] values = new double[nValues];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (bytesPerValue == 8) {
+            if (integerValues) {
+                for (int i = 0; i < nValues; i++) {
+                    values[i] = byteBuffer.getLong(8 * i);
+                }
+            } else {
+                for (int i = 0; i < nValues; i++) {
+                    values[i] = byteBuffer.getDouble(8 * i);
+                }
+            }
+        } else {
+            if (integerValues) {
+                for (int i = 0; i < nValues; i++) {
+                    values[i] = byteBuffer.getInt(4 * i);
+                }
+            } else {
+                for (int i = 0; i < nValues; i++) {
+                    values[i] = byteBuffer.getFloat(4 * i);
+                }
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Decodes base64 encoded data. Characters outside the base64 alphabet
+     * like white spaces are ignored, decoding stops at the first padding
+     * character.
+     *
+     * @param encodedData the base64 encoded data
+     *
+     * @return the decoded bytes
+     */
+    public static byte[] decodeBase64(String encodedData) {
+
+        int length = encodedData.length();
+        byte[] result = new byte[3 * (length / 4) + 3];
+        int nBytes = 0, nBits = 0, buffer = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = encodedData.charAt(i);
+            if (c == '=') {
+                break;
+            }
+            int value = c < 128 ? BASE64_VALUES[c] : -1;
+            if (value == -1) {
+                continue;
+            }
+            buffer = (buffer << 6) | value;
+            nBits += 6;
+            if (nBits >= 8) {
+                nBits -= 8;
+                result[nBytes++] = (byte) (buffer >> nBits);
+            }
+        }
+
+        if (nBytes == result.length) {
+            return result;
+        }
+        byte[] trimmedResult = new byte[nBytes];
+        System.arraycopy(result, 0, trimmedResult, 0, nBytes);
+        return trimmedResult;
+    }
+
+    /**
+     * Inflates zlib compressed data.
+     *
+     * @param compressedData the compressed data
+     * @param expectedLength the expected length of the inflated data
+     *
+     * @return the inflated data
+     *
+     * @throws IOException exception thrown whenever the data could not be
+     * inflated, notably when the compressed stream is truncated
+     */
+    private static byte[] inflate(byte[] compressedData, int expectedLength) throws IOException {
+
+        Inflater inflater = new Inflater();
+
+        try {
+            inflater.setInput(compressedData);
+            byte[] result = new byte[Math.max(expectedLength, 16)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == result.length) {
+                    byte[] newResult = new byte[2 * result.length];
+                    System.arraycopy(result, 0, newResult, 0, length);
+                    result = newResult;
+                }
+                int inflated = inflater.inflate(result, length, result.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated or incomplete zlib compressed binary data.");
+                }
+                length += inflated;
+            }
+            if (length == result.length) {
+                return result;
+            }
+            byte[] trimmedResult = new byte[length];
+            System.arraycopy(result, 0, trimmedResult, 0, length);
+            return trimmedResult;
+        } catch (DataFormatException e) {
+            throw new IOException("Error while inflating binary data.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Returns the ISO-8859-1 bytes of a string.
+     *
+     * @param string the string
+     *
+     * @return the bytes of the string
+     */
+    private static byte[] getBytes(String string) {
+        byte[] result = new byte[string.length()];
+        for (int i = 0; i < string.length(); i++) {
+            result[i] = (byte) string.charAt(i);
+        }
+        return result;
+    }
+
+    /**
+     * Parses a spectrum element.
+     */
+    private static class SpectrumParser implements Callable<Spectrum> {
+
+        /**
+         * The bytes of the spectrum element.
+         */
+        private final byte[] spectrumBytes;
+        /**
+         * The name of the file.
+         */
+        private final String fileName;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrumBytes the bytes of the spectrum element
+         * @param fileName the name of the file
+         */
+        public SpectrumParser(byte[] spectrumBytes, String fileName) {
+            this.spectrumBytes = spectrumBytes;
+            this.fileName = fileName;
+        }
+
+        @Override
+        public Spectrum call() throws Exception {
+            return parseSpectrum(spectrumBytes, fileName, true);
+        }
+    }
+}
@@ -2,20 +2,16 @@ package com.compomics.util.experiment.massspectrometry;
 
 import com.compomics.util.experiment.io.massspectrometry.MgfIndex;
 import com.compomics.util.experiment.io.massspectrometry.MgfReader;
+import com.compomics.util.experiment.io.massspectrometry.MzMLIndex;
+import com.compomics.util.experiment.io.massspectrometry.MzMLReader;
 import com.compomics.util.waiting.WaitingHandler;
 import com.compomics.util.io.SerializationUtils;
 import java.io.*;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.List;
 import java.util.concurrent.LinkedBlockingDeque;
-import uk.ac.ebi.jmzml.model.mzml.BinaryDataArray;
-import uk.ac.ebi.jmzml.model.mzml.CVParam;
-import uk.ac.ebi.jmzml.model.mzml.PrecursorList;
-import uk.ac.ebi.jmzml.model.mzml.ScanList;
-import uk.ac.ebi.jmzml.model.mzml.SelectedIonList;
-import uk.ac.ebi.jmzml.xml.io.MzMLUnmarshaller;
 import uk.ac.ebi.jmzml.xml.io.MzMLUnmarshallerException;
 import uk.ac.ebi.pride.tools.braf.BufferedRandomAccessFile;
 
@@ -61,9 +57,14 @@ public class SpectrumFactory {
      */
     private HashMap<String, MgfIndex> mgfIndexesMap = new HashMap<String, MgfIndex>();
     /**
-     * Map of the mzML unmarshallers (fileName &gt; unmarshaller).
+     * Map of the random access files of the mzML files (fileName &gt;
+     * random access file).
+     */
+    private HashMap<String, RandomAccessFile> mzMLRandomAccessFilesMap = new HashMap<String, RandomAccessFile>();
+    /**
+     * Map of the mzML indexes (fileName &gt; mzML index).
      */
-    private HashMap<String, MzMLUnmarshaller> mzMLUnmarshallers = new HashMap<String, MzMLUnmarshaller>();
+    private HashMap<String, MzMLIndex> mzMLIndexesMap = new HashMap<String, MzMLIndex>();
     /**
      * Map of the spectrum file mapped according to the name used by the search
      * engine.
@@ -117,7 +118,8 @@ public class SpectrumFactory {
         filesMap.clear();
         mgfRandomAccessFilesMap.clear();
         mgfIndexesMap.clear();
-        mzMLUnmarshallers.clear();
+        mzMLRandomAccessFilesMap.clear();
+        mzMLIndexesMap.clear();
         idToSpectrumName.clear();
     }
 
@@ -225,8 +227,42 @@ public class SpectrumFactory {
             mgfIndexesMap.put(fileName, mgfIndex);
 
         } else if (fileName.toLowerCase().endsWith(".mzml")) {
-            MzMLUnmarshaller mzMLUnmarshaller = new MzMLUnmarshaller(spectrumFile);
-            mzMLUnmarshallers.put(fileName, mzMLUnmarshaller);
+
+            File indexFile = new File(spectrumFile.getParent(), getIndexName(fileName));
+            MzMLIndex mzMLIndex = null;
+
+            if (indexFile.exists()) {
+                try {
+                    MzMLIndex tempIndex = (MzMLIndex) SerializationUtils.readObject(indexFile);
+                    Long indexLastModified = tempIndex.getLastModified();
+
+                    if (indexLastModified != null) {
+                        long fileLastModified = spectrumFile.lastModified();
+
+                        if (indexLastModified == fileLastModified) {
+                            mzMLIndex = tempIndex;
+                        } else {
+                            System.err.println("Reindexing: " + fileName + ". (changes in the file detected)");
+                        }
+                    }
+                } catch (Exception e) {
+                    System.err.println("Reindexing: " + fileName + ". (Reason: " + e.getLocalizedMessage() + ")");
+                }
+            }
+
+            if (mzMLIndex == null) {
+                mzMLIndex = MzMLReader.getIndexMap(spectrumFile, waitingHandler);
+
+                if (waitingHandler != null && waitingHandler.isRunCanceled()) {
+                    return; // return without saving the partial index
+                }
+
+                writeIndex(mzMLIndex, spectrumFile.getParentFile());
+            }
+
+            mzMLRandomAccessFilesMap.put(fileName, new RandomAccessFile(spectrumFile, "r"));
+            mzMLIndexesMap.put(fileName, mzMLIndex);
+
         } else {
             throw new IllegalArgumentException("Spectrum file format not supported.");
         }
@@ -515,6 +551,10 @@ public class SpectrumFactory {
      * @return the number of spectra
      */
     public int getNSpectra(String fileName) {
+        MzMLIndex mzMLIndex = mzMLIndexesMap.get(fileName);
+        if (mzMLIndex != null) {
+            return mzMLIndex.getNSpectra();
+        }
         return mgfIndexesMap.get(fileName).getNSpectra();
     }
 
@@ -530,6 +570,9 @@ public class SpectrumFactory {
         for (String fileName : mgfIndexesMap.keySet()) {
             totalSpectrumCount += getNSpectra(fileName);
         }
+        for (String fileName : mzMLIndexesMap.keySet()) {
+            totalSpectrumCount += getNSpectra(fileName);
+        }
 
         return totalSpectrumCount;
     }
@@ -556,12 +599,15 @@ public class SpectrumFactory {
 
     /**
      * Returns a boolean indicating whether the spectrum file has been loaded.
+     * Both mgf and mzML files are considered, the readers using this method
+     * to get the title of a spectrum from its number thus query the index of
+     * the mzML files as well, see getSpectrumTitle(String, int).
      *
      * @param fileName the file name
      * @return a boolean indicating whether the spectrum file has been loaded
      */
     public boolean fileLoaded(String fileName) {
-        return mgfIndexesMap.containsKey(fileName);
+        return mgfIndexesMap.containsKey(fileName) || mzMLIndexesMap.containsKey(fileName);
     }
 
     /**
@@ -574,6 +620,10 @@ public class SpectrumFactory {
      * given spectrum file
      */
     public boolean spectrumLoaded(String fileName, String spectrumTitle) {
+        MzMLIndex mzMLIndex = mzMLIndexesMap.get(fileName);
+        if (mzMLIndex != null) {
+            return mzMLIndex.containsSpectrum(spectrumTitle);
+        }
         // a special fix for mgf files with strange titles...
         spectrumTitle = fixMgfTitle(spectrumTitle, fileName);
         return mgfIndexesMap.containsKey(fileName) && mgfIndexesMap.get(fileName).containsSpectrum(spectrumTitle);
@@ -647,49 +697,11 @@ public class SpectrumFactory {
                 }
             }
         } else if (fileName.toLowerCase().endsWith(".mzml")) {
-            uk.ac.ebi.jmzml.model.mzml.Spectrum mzMLSpectrum = mzMLUnmarshallers.get(fileName).getSpectrumById(spectrumTitle);
-            int level = 2;
-            double mzPrec = 0.0;
-            double scanTime = -1.0;
-            int chargePrec = 0;
-            for (CVParam cvParam : mzMLSpectrum.getCvParam()) {
-                if (cvParam.getAccession().equals("MS:1000511")) {
-                    level = new Integer(cvParam.getValue());
-                    break;
-                }
-            }
-            ScanList scanList = mzMLSpectrum.getScanList();
-            if (scanList != null) {
-                for (CVParam cvParam : scanList.getScan().get(scanList.getScan().size() - 1).getCvParam()) {
-                    if (cvParam.getAccession().equals("MS:1000016")) {
-                        scanTime = new Double(cvParam.getValue());
-                        break;
-                    }
-                }
-            }
-            PrecursorList precursorList = mzMLSpectrum.getPrecursorList();
-            if (precursorList != null) {
-                if (precursorList.getCount().intValue() == 1) {
-                    SelectedIonList sIonList = precursorList.getPrecursor().get(0).getSelectedIonList();
-                    if (sIonList != null) {
-                        for (CVParam cvParam : sIonList.getSelectedIon().get(0).getCvParam()) {
-                            if (cvParam.getAccession().equals("MS:1000744")
-                                    || cvParam.getAccession().equals("MS:1000040")) {
-                                mzPrec = new Double(cvParam.getValue());
-                            } else if (cvParam.getAccession().equals("MS:1000041")) {
-                                chargePrec = new Integer(cvParam.getValue());
-                            }
-                        }
-                    }
-                }
-            }
-            if (level == 1) {
+            Spectrum mzMLSpectrum = getMzMLSpectrum(fileName, spectrumTitle, false);
+            if (mzMLSpectrum.getLevel() == 1) {
                 throw new IllegalArgumentException("MS1 spectrum");
             } else {
-                //@TODO: is this correct..?
-                ArrayList<Charge> charges = new ArrayList<Charge>();
-                charges.add(new Charge(Charge.PLUS, chargePrec));
-                currentPrecursor = new Precursor(scanTime, mzPrec, charges);
+                currentPrecursor = ((MSnSpectrum) mzMLSpectrum).getPrecursor();
             }
         } else {
             throw new IllegalArgumentException("Spectrum file format not supported.");
@@ -801,67 +813,8 @@ public class SpectrumFactory {
             }
         } else if (spectrumFile.toLowerCase().endsWith(".mzml")) {
 
-            if (mzMLUnmarshallers.get(spectrumFile) == null) {
-                throw new IOException("mzML file not found: \'" + spectrumFile + "\'!");
-            }
-            if (mzMLUnmarshallers.get(spectrumFile).getSpectrumById(spectrumTitle) == null) {
-                throw new IOException("Spectrum \'" + spectrumTitle + "\' in mzML file \'" + spectrumFile + "\' not found!");
-            }
+            currentSpectrum = getMzMLSpectrum(spectrumFile, spectrumTitle, true);
 
-            uk.ac.ebi.jmzml.model.mzml.Spectrum mzMLSpectrum = mzMLUnmarshallers.get(spectrumFile).getSpectrumById(spectrumTitle);
-            int level = 2;
-            double mzPrec = 0.0;
-            double scanTime = -1.0;
-            int chargePrec = 0;
-            for (CVParam cvParam : mzMLSpectrum.getCvParam()) {
-                if (cvParam.getAccession().equals("MS:1000511")) {
-                    level = new Integer(cvParam.getValue());
-                    break;
-                }
-            }
-            ScanList scanList = mzMLSpectrum.getScanList();
-            if (scanList != null) {
-                for (CVParam cvParam : scanList.getScan().get(scanList.getScan().size() - 1).getCvParam()) {
-                    if (cvParam.getAccession().equals("MS:1000016")) {
-                        scanTime = new Double(cvParam.getValue());
-                        break;
-                    }
-                }
-            }
-            PrecursorList precursorList = mzMLSpectrum.getPrecursorList();
-            if (precursorList != null) {
-                if (precursorList.getCount().intValue() == 1) {
-                    SelectedIonList sIonList = precursorList.getPrecursor().get(0).getSelectedIonList();
-                    if (sIonList != null) {
-                        for (CVParam cvParam : sIonList.getSelectedIon().get(0).getCvParam()) {
-                            if (cvParam.getAccession().equals("MS:1000744")
-                                    || cvParam.getAccession().equals("MS:1000040")) {
-                                mzPrec = new Double(cvParam.getValue());
-                            } else if (cvParam.getAccession().equals("MS:1000041")) {
-                                chargePrec = new Integer(cvParam.getValue());
-                            }
-                        }
-                    }
-                }
-            }
-            List<BinaryDataArray> bdal = mzMLSpectrum.getBinaryDataArrayList().getBinaryDataArray();
-            BinaryDataArray mzBinaryDataArray = (BinaryDataArray) bdal.get(0);
-            Number[] mzNumbers = mzBinaryDataArray.getBinaryDataAsNumberArray();
-            BinaryDataArray intBinaryDataArray = (BinaryDataArray) bdal.get(1);
-            Number[] intNumbers = intBinaryDataArray.getBinaryDataAsNumberArray();
-            HashMap<Double, Peak> peakList = new HashMap<Double, Peak>();
-            for (int i = 0; i < mzNumbers.length; i++) {
-                peakList.put(mzNumbers[i].doubleValue(), new Peak(mzNumbers[i].doubleValue(), intNumbers[i].doubleValue(), scanTime));
-            }
-            if (level == 1) {
-                currentSpectrum = new MS1Spectrum(spectrumFile, spectrumTitle, scanTime, peakList);
-            } else {
-                //@TODO: is this the correct way to set the precursor..?
-                ArrayList<Charge> charges = new ArrayList<Charge>();
-                charges.add(new Charge(Charge.PLUS, chargePrec));
-                Precursor precursor = new Precursor(scanTime, mzPrec, charges);
-                currentSpectrum = new MSnSpectrum(level, precursor, spectrumTitle, peakList, spectrumFile, scanTime);
-            }
         } else {
             throw new IllegalArgumentException("Spectrum file format not supported.");
         }
@@ -885,6 +838,65 @@ public class SpectrumFactory {
         return currentSpectrum;
     }
 
+    /**
+     * Parses the desired spectrum of an mzML file.
+     *
+     * @param fileName the name of the mzML file
+     * @param spectrumTitle the id of the spectrum
+     * @param decodePeaks if false the binary arrays are not decoded and the
+     * spectrum has no peaks
+     *
+     * @return the spectrum
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     */
+    private Spectrum getMzMLSpectrum(String fileName, String spectrumTitle, boolean decodePeaks) throws IOException {
+
+        MzMLIndex mzMLIndex = mzMLIndexesMap.get(fileName);
+
+        if (mzMLIndex == null) {
+            throw new FileNotFoundException("mzML file not found: \'" + fileName + "\'!");
+        }
+
+        Long offset = mzMLIndex.getIndex(spectrumTitle);
+
+        if (offset == null) {
+            throw new IOException("Spectrum \'" + spectrumTitle + "\' in mzML file \'" + fileName + "\' not found!");
+        }
+
+        return MzMLReader.getSpectrum(mzMLRandomAccessFilesMap.get(fileName), offset, fileName, decodePeaks);
+    }
+
+    /**
+     * Returns the desired spectra of an mzML file in the given order. The
+     * spectra are read sequentially from a dedicated file handle and their
+     * binary arrays decoded in parallel. The spectra are not stored in cache.
+     *
+     * @param fileName the name of the mzML file
+     * @param spectrumTitles the ids of the spectra
+     * @param nThreads the number of threads to use
+     * @param waitingHandler a waiting handler displaying the progress (can be
+     * null). The secondary progress methods will be called.
+     *
+     * @return the spectra in the order of the ids
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    public ArrayList<Spectrum> getMzMLSpectra(String fileName, Collection<String> spectrumTitles, int nThreads, WaitingHandler waitingHandler) throws IOException, InterruptedException {
+
+        MzMLIndex mzMLIndex = mzMLIndexesMap.get(fileName);
+
+        if (mzMLIndex == null) {
+            throw new FileNotFoundException("mzML file not found: \'" + fileName + "\'!");
+        }
+
+        return MzMLReader.getSpectra(filesMap.get(fileName), mzMLIndex, spectrumTitles, nThreads, waitingHandler);
+    }
+
     /**
      * Writes the given mgf file index in the given directory.
      *
@@ -898,6 +910,19 @@ public class SpectrumFactory {
         SerializationUtils.writeObject(mgfIndex, indexFile);
     }
 
+    /**
+     * Writes the given mzML file index in the given directory.
+     *
+     * @param mzMLIndex the mzML file index
+     * @param directory the destination directory
+     * @throws IOException exception thrown whenever an error is encountered
+     * while writing the file
+     */
+    public void writeIndex(MzMLIndex mzMLIndex, File directory) throws IOException {
+        File indexFile = new File(directory, getIndexName(mzMLIndex.getFileName()));
+        SerializationUtils.writeObject(mzMLIndex, indexFile);
+    }
+
     /**
      * Deserializes the index of an mgf file.
      *
@@ -924,6 +949,9 @@ public class SpectrumFactory {
         for (BufferedRandomAccessFile randomAccessFile : mgfRandomAccessFilesMap.values()) {
             randomAccessFile.close();
         }
+        for (RandomAccessFile randomAccessFile : mzMLRandomAccessFilesMap.values()) {
+            randomAccessFile.close();
+        }
     }
 
     /**
@@ -941,7 +969,7 @@ public class SpectrumFactory {
      * @return a list of loaded mzML files
      */
     public ArrayList<String> getMzMLFileNames() {
-        return new ArrayList<String>(mzMLUnmarshallers.keySet());
+        return new ArrayList<String>(mzMLIndexesMap.keySet());
     }
 
     /**
@@ -951,6 +979,10 @@ public class SpectrumFactory {
      * @return a list of titles from indexed spectra in the given file
      */
     public ArrayList<String> getSpectrumTitles(String mgfFile) {
+        MzMLIndex mzMLIndex = mzMLIndexesMap.get(mgfFile);
+        if (mzMLIndex != null) {
+            return mzMLIndex.getSpectrumTitles();
+        }
         MgfIndex index = mgfIndexesMap.get(mgfFile);
         if (index == null) {
             return null;
@@ -968,6 +1000,10 @@ public class SpectrumFactory {
      * @return the spectrum index of the given spectrum
      */
     public Integer getSpectrumIndex(String spectrumTitle, String mgfFile) {
+        MzMLIndex mzMLIndex = mzMLIndexesMap.get(mgfFile);
+        if (mzMLIndex != null) {
+            return mzMLIndex.getSpectrumIndex(spectrumTitle);
+        }
         MgfIndex mgfIndex = mgfIndexesMap.get(mgfFile);
         if (mgfIndex == null) {
             return null;
@@ -977,7 +1013,9 @@ public class SpectrumFactory {
 
     /**
      * Returns the spectrum title of the spectrum of the given number in the
-     * given file. 1 is the first spectrum. Null if not found.
+     * given file. 1 is the first spectrum. Null if not found. For mzML files
+     * the number is the position of the spectrum in the index of the file,
+     * null is returned when it is out of range.
      *
      * @param mgfFile the name of the mgf file of interest
      * @param spectrumNumber the number of the spectrum in the file
@@ -985,6 +1023,10 @@ public class SpectrumFactory {
      * @return the title of the spectrum of interest
      */
     public String getSpectrumTitle(String mgfFile, int spectrumNumber) {
+        MzMLIndex mzMLIndex = mzMLIndexesMap.get(mgfFile);
+        if (mzMLIndex != null) {
+            return mzMLIndex.getSpectrumTitle(spectrumNumber - 1);
+        }
         MgfIndex mgfIndex = mgfIndexesMap.get(mgfFile);
         if (mgfIndex == null) {
             return null;
@@ -992,6 +1034,26 @@ public class SpectrumFactory {
         return mgfIndex.getSpectrumTitle(spectrumNumber - 1);
     }
 
+    /**
+     * Returns the spectrum title of the spectrum of the given scan number in
+     * the given file, null if not found. For mzML files whose spectrum ids
+     * contain scan numbers, the spectrum is found by scan number; otherwise
+     * the scan number is taken as the number of the spectrum in the file, see
+     * getSpectrumTitle(String, int).
+     *
+     * @param fileName the name of the spectrum file
+     * @param scanNumber the scan number of the spectrum
+     *
+     * @return the title of the spectrum of interest
+     */
+    public String getSpectrumTitleOfScan(String fileName, int scanNumber) {
+        MzMLIndex mzMLIndex = mzMLIndexesMap.get(fileName);
+        if (mzMLIndex != null && mzMLIndex.hasScanNumbers()) {
+            return mzMLIndex.getSpectrumTitleOfScan(scanNumber);
+        }
+        return getSpectrumTitle(fileName, scanNumber);
+    }
+
     /**
      * Returns the fixed mgf title.
      *
@@ -0,0 +1,117 @@
+package com.compomics.util.experiment.refinementparameters;
+
+import com.compomics.util.experiment.identification.ptm.PtmScore;
+import com.compomics.util.experiment.personalization.UrParameter;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * This class contains the PTM localization scores computed for a spectrum
+ * match and will be saved as additional parameter.
+ *
+ * @author Marc Vaudel
+ */
+public class PtmLocalizationScores implements UrParameter {
+
+    /**
+     * Serial number for backward compatibility.
+     */
+    static final long serialVersionUID = -2286935837493151216L;
+    /**
+     * The site scores: PTM name &gt; score type &gt; site &gt; score.
+     */
+    private HashMap<String, HashMap<PtmScore, HashMap<Integer, Double>>> siteScores = new HashMap<String, HashMap<PtmScore, HashMap<Integer, Double>>>(2);
+    /**
+     * The MD scores: PTM name &gt; MD score.
+     */
+    private HashMap<String, Double> mdScores = null;
+
+    /**
+     * Constructor.
+     */
+    public PtmLocalizationScores() {
+    }
+
+    /**
+     * Sets the site scores obtained for the given PTM using the given score.
+     *
+     * @param ptmName the name of the PTM
+     * @param ptmScore the score used
+     * @param scores the scores in a map: site &gt; score
+     */
+    public void addSiteScores(String ptmName, PtmScore ptmScore, HashMap<Integer, Double> scores) {
+        HashMap<PtmScore, HashMap<Integer, Double>> ptmScores = siteScores.get(ptmName);
+        if (ptmScores == null) {
+            ptmScores = new HashMap<PtmScore, HashMap<Integer, Double>>(2);
+            siteScores.put(ptmName, ptmScores);
+        }
+        ptmScores.put(ptmScore, scores);
+    }
+
+    /**
+     * Returns the site scores obtained for the given PTM using the given
+     * score. Null if not set.
+     *
+     * @param ptmName the name of the PTM
+     * @param ptmScore the score of interest
+     *
+     * @return the scores in a map: site &gt; score
+     */
+    public HashMap<Integer, Double> getSiteScores(String ptmName, PtmScore ptmScore) {
+        HashMap<PtmScore, HashMap<Integer, Double>> ptmScores = siteScores.get(ptmName);
+        if (ptmScores == null) {
+            return null;
+        }
+        return ptmScores.get(ptmScore);
+    }
+
+    /**
+     * Sets the MD score obtained for the given PTM.
+     *
+     * @param ptmName the name of the PTM
+     * @param mdScore the MD score
+     */
+    public void setMDScore(String ptmName, Double mdScore) {
+        if (mdScores == null) {
+            mdScores = new HashMap<String, Double>(2);
+        }
+        mdScores.put(ptmName, mdScore);
+    }
+
+    /**
+     * Returns the MD score obtained for the given PTM. Null if not set.
+     *
+     * @param ptmName the name of the PTM
+     *
+     * @return the MD score
+     */
+    public Double getMDScore(String ptmName) {
+        if (mdScores == null) {
+            return null;
+        }
+        return mdScores.get(ptmName);
+    }
+
+    /**
+     * Returns the names of the PTMs scored.
+     *
+     * @return the names of the PTMs scored
+     */
+    public HashSet<String> getScoredPtms() {
+        HashSet<String> result = new HashSet<String>(siteScores.keySet());
+        if (mdScores != null) {
+            result.addAll(mdScores.keySet());
+        }
+        return result;
+    }
+
+    @Override
+    public String getFamilyName() {
+        return "Utilities";
+    }
+
+    @Override
+    public int getIndex() {
+        return 0;
+    }
+}
@@ -0,0 +1,338 @@
+package com.compomics.util.general;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class represents a chemical formula (or amino acid or nucleotide
+ * sequence) parsed once for all in the syntax of MassCalc: the multiplicities
+ * are summed, inner formulas in brackets included, and the element symbols of
+ * the built-in element lists of MassCalc are replaced by ordinals shared by
+ * all formulas. Other symbols, like modification tags or self-defined
+ * elements, are not registered so that the registry remains bounded whatever
+ * the formulas parsed. Compiled formulas are immutable and cached, see
+ * compile.
+ *
+ * @see com.compomics.util.general.MassCalc
+ * @author Marc Vaudel
+ */
+public class CompiledFormula {
+
+    /**
+     * The maximal number of formulas kept in cache.
+     */
+    public static final int CACHE_SIZE = 100000;
+    /**
+     * Cache of the compiled formulas indexed by formula.
+     */
+    private static final ConcurrentHashMap<String, CompiledFormula> cache = new ConcurrentHashMap<String, CompiledFormula>();
+    /**
+     * The ordinals of the element symbols of the built-in element lists.
+     */
+    private static final ConcurrentHashMap<String, Integer> ordinals = new ConcurrentHashMap<String, Integer>();
+    /**
+     * The element symbols indexed by ordinal.
+     */
+    private static final ArrayList<String> symbols = new ArrayList<String>();
+    /**
+     * The symbols of the elements of the formula, in order of first
+     * appearance.
+     */
+    private final String[] elementSymbols;
+    /**
+     * The ordinals of the elements of the formula, -1 for the symbols not
+     * registered.
+     */
+    private final int[] elements;
+    /**
+     * The multiplicity of every element of the formula.
+     */
+    private final int[] counts;
+    /**
+     * The number of times the terminal groups of a sequence must be counted:
+     * one for the formula plus the multiplicity of every inner formula.
+     */
+    private final int nTerminals;
+
+    /**
+     * Constructor.
+     *
+     * @param elementSymbols the symbols of the elements
+     * @param elements the ordinals of the elements
+     * @param counts the multiplicity of every element
+     * @param nTerminals the number of times the terminal groups must be
+     * counted
+     */
+    private CompiledFormula(String[] elementSymbols, int[] elements, int[] counts, int nTerminals) {
+        this.elementSymbols = elementSymbols;
+        this.elements = elements;
+        this.counts = counts;
+        this.nTerminals = nTerminals;
+    }
+
+    /**
+     * Returns the compiled version of the given formula from the cache,
+     * parsing it if needed.
+     *
+     * @param aFormula String with the chemical formula (or sequence)
+     *
+     * @return the compiled formula
+     */
+    public static CompiledFormula compile(String aFormula) {
+        CompiledFormula result = cache.get(aFormula);
+        if (result == null) {
+            result = parse(aFormula);
+            if (cache.size() >= CACHE_SIZE) {
+                cache.clear();
+            }
+            cache.put(aFormula, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ordinal of the given element symbol, -1 if the symbol is
+     * not registered.
+     *
+     * @param aSymbol String with the element symbol
+     *
+     * @return the ordinal of the element symbol
+     */
+    public static int getOrdinal(String aSymbol) {
+        Integer ordinal = ordinals.get(aSymbol);
+        if (ordinal == null) {
+            return -1;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Registers the element symbols of a built-in element list of MassCalc.
+     * Only lists of fixed content should be registered.
+     *
+     * @param aSymbols the element symbols
+     */
+    static synchronized void registerSymbols(Collection<String> aSymbols) {
+        for (String symbol : aSymbols) {
+            if (!ordinals.containsKey(symbol)) {
+                ordinals.put(symbol, symbols.size());
+                symbols.add(symbol);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of element symbols registered.
+     *
+     * @return the number of element symbols registered
+     */
+    static synchronized int getNSymbols() {
+        return symbols.size();
+    }
+
+    /**
+     * Returns the element symbol of the given ordinal.
+     *
+     * @param aOrdinal int with the ordinal
+     *
+     * @return the element symbol
+     */
+    public static synchronized String getSymbol(int aOrdinal) {
+        return symbols.get(aOrdinal);
+    }
+
+    /**
+     * Returns the number of distinct elements in the formula.
+     *
+     * @return the number of distinct elements in the formula
+     */
+    public int getNElements() {
+        return elements.length;
+    }
+
+    /**
+     * Returns the ordinal of the element at the given index, -1 if the symbol
+     * of the element is not registered.
+     *
+     * @param aIndex the index of the element in the formula
+     *
+     * @return the ordinal of the element
+     */
+    public int getElement(int aIndex) {
+        int ordinal = elements[aIndex];
+        if (ordinal == -1) {
+            // the symbol might have been registered after the compilation
+            ordinal = getOrdinal(elementSymbols[aIndex]);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Returns the symbol of the element at the given index.
+     *
+     * @param aIndex the index of the element in the formula
+     *
+     * @return the symbol of the element
+     */
+    public String getElementSymbol(int aIndex) {
+        return elementSymbols[aIndex];
+    }
+
+    /**
+     * Returns the multiplicity of the element at the given index.
+     *
+     * @param aIndex the index of the element in the formula
+     *
+     * @return the multiplicity of the element
+     */
+    public int getCount(int aIndex) {
+        return counts[aIndex];
+    }
+
+    /**
+     * Returns the number of times the terminal groups of a sequence must be
+     * counted, one for the formula plus one per inner formula.
+     *
+     * @return the number of times the terminal groups must be counted
+     */
+    public int getNTerminals() {
+        return nTerminals;
+    }
+
+    /**
+     * Parses the given formula. Elements consist of an uppercase letter (or
+     * '_' or '*') optionally followed by a lowercase letter or by a
+     * modification tag between '&lt;' and '&gt;', and by a multiplicity.
+     * Inner formulas are placed between brackets and can be followed by a
+     * multiplicity.
+     *
+     * @param aFormula String with the formula
+     *
+     * @return the compiled formula
+     */
+    private static CompiledFormula parse(String aFormula) {
+
+        LinkedHashMap<String, Integer> bruto = new LinkedHashMap<String, Integer>();
+        int nTerminals = 1;
+        int length = aFormula.length();
+        int i = 0;
+
+        while (i < length) {
+            char currentChar = aFormula.charAt(i);
+            if (Character.isLetter(currentChar) || ('_' == currentChar) || ('*' == currentChar)) {
+                String element;
+                int multiplicity = 1;
+                i++;
+                if (i < length && Character.isLetter(aFormula.charAt(i)) && Character.isLowerCase(aFormula.charAt(i))) {
+                    element = aFormula.substring(i - 1, i + 1);
+                    i++;
+                    int end = getNumberEnd(aFormula, i);
+                    if (end > i) {
+                        multiplicity = Integer.parseInt(aFormula.substring(i, end));
+                        i = end;
+                    }
+                } else if (i < length && aFormula.charAt(i) == '<') {
+                    // modification tag, never followed by a multiplicity
+                    int end = getClosingIndex(aFormula, i, '<', '>');
+                    element = aFormula.substring(i - 1, end + 1);
+                    i = end + 1;
+                } else {
+                    element = Character.toString(currentChar);
+                    int end = getNumberEnd(aFormula, i);
+                    if (end > i) {
+                        multiplicity = Integer.parseInt(aFormula.substring(i, end));
+                        i = end;
+                    }
+                }
+                add(bruto, element, multiplicity);
+            } else if (currentChar == '(') {
+                int end = getClosingIndex(aFormula, i, '(', ')');
+                CompiledFormula inner = compile(aFormula.substring(i + 1, end));
+                i = end + 1;
+                int multiplicity = 1;
+                int numberEnd = getNumberEnd(aFormula, i);
+                if (numberEnd > i) {
+                    multiplicity = Integer.parseInt(aFormula.substring(i, numberEnd));
+                    i = numberEnd;
+                }
+                for (int j = 0; j < inner.elements.length; j++) {
+                    add(bruto, inner.elementSymbols[j], multiplicity * inner.counts[j]);
+                }
+                nTerminals += multiplicity * inner.nTerminals;
+            } else {
+                throw new IllegalArgumentException("Formula '" + aFormula
+                        + "' could not be parsed due to the following unrecognized character: '" + currentChar + "'!\n");
+            }
+        }
+
+        String[] elementSymbols = new String[bruto.size()];
+        int[] elements = new int[bruto.size()];
+        int[] counts = new int[bruto.size()];
+        int index = 0;
+        for (Map.Entry<String, Integer> entry : bruto.entrySet()) {
+            elementSymbols[index] = entry.getKey();
+            elements[index] = getOrdinal(entry.getKey());
+            counts[index] = entry.getValue();
+            index++;
+        }
+        return new CompiledFormula(elementSymbols, elements, counts, nTerminals);
+    }
+
+    /**
+     * Adds the multiplicity of an element to the bruto formula.
+     *
+     * @param aBruto the bruto formula
+     * @param aElement String with the element symbol
+     * @param aMultiplicity int with the multiplicity of the element
+     */
+    private static void add(LinkedHashMap<String, Integer> aBruto, String aElement, int aMultiplicity) {
+        Integer count = aBruto.get(aElement);
+        aBruto.put(aElement, count == null ? aMultiplicity : count + aMultiplicity);
+    }
+
+    /**
+     * Returns the index following the digits starting at the given index.
+     *
+     * @param aFormula String with the formula
+     * @param aStart int with the index where to start
+     *
+     * @return the index following the digits
+     */
+    private static int getNumberEnd(String aFormula, int aStart) {
+        int i = aStart;
+        while (i < aFormula.length() && Character.isDigit(aFormula.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns the index of the token closing the inner part opened at the
+     * given index. Inner parts can be nested.
+     *
+     * @param aFormula String with the formula
+     * @param aStart int with the index of the opening token
+     * @param aOpener char with the opening token
+     * @param aCloser char with the closing token
+     *
+     * @return the index of the closing token
+     */
+    private static int getClosingIndex(String aFormula, int aStart, char aOpener, char aCloser) {
+        int tokenCount = 0;
+        for (int i = aStart; i < aFormula.length(); i++) {
+            char c = aFormula.charAt(i);
+            if (c == aOpener) {
+                tokenCount++;
+            } else if (c == aCloser) {
+                tokenCount--;
+                if (tokenCount == 0) {
+                    return i;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Formula '" + aFormula + "' could not be parsed: no '" + aCloser + "' matching the '" + aOpener + "' at position " + aStart + "!\n");
+    }
+}
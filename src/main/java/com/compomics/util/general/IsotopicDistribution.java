@@ -2,10 +2,6 @@ package com.compomics.util.general;
 
 import com.compomics.util.enumeration.MolecularElement;
 import com.compomics.util.protein.MolecularFormula;
-import org.apache.commons.math.distribution.BinomialDistributionImpl;
-import org.apache.log4j.Logger;
-
-import java.util.Vector;
 
 /**
  * This class calculates the isotopic distribution based on a molecular formula.
@@ -17,17 +13,14 @@ import java.util.Vector;
  */
 public class IsotopicDistribution {
 
-    // Class specific log4j logger for AASequenceImpl instances.
-    Logger logger = Logger.getLogger(IsotopicDistribution.class);
-
     /**
      * The result of the isotopic distributions calculation. Percentage of the total contribution
      */
-    private Vector<Double> iPercTot = null;
+    private double[] iPercTot = null;
     /**
      * The result of the isotopic distributions calculation. Percentage of the contribution compared to the maximum
      */
-    private Vector<Double> iPercMax = null;
+    private double[] iPercMax = null;
     /**
      * The molecular formula
      */
@@ -69,104 +62,30 @@ public class IsotopicDistribution {
     }
 
     /**
-     * This method will do the calculations
+     * This method will do the calculations. The distribution of the formula
+     * is obtained from the IsotopicDistributionFactory which caches the
+     * distributions by composition.
      */
     public void calculate(){
 
-        Vector<Vector<Double>> lPerc = new Vector<Vector<Double>>();
-        Vector<Integer> lNumbers = new Vector<Integer>();
-        Vector<Integer> lDaltonDifferences = new Vector<Integer>();
-        Vector<BinomialDistributionImpl> lBinomDistributions = new Vector<BinomialDistributionImpl>();
-        Vector<IsotopicElement> lElements = IsotopicElement.getAllIsotopicElements(this.getClass(), logger);
-
-        for(int e = 0; e<lElements.size(); e ++){
-            IsotopicElement lElmnt = lElements.get(e);
-            int lCount = iMolecularFormula.getElementCount(lElmnt.getElement());
-            if(lCount > 0){
-                lNumbers.add(lCount);
-                Vector<Double> lPercElement = new Vector<Double>();
-                lPerc.add(lPercElement);
-                lBinomDistributions.add(new BinomialDistributionImpl(lCount, lElmnt.getOccurrence()));
-                lDaltonDifferences.add(lElmnt.getDaltonDifference());
-            }
-        }
-
-
-        for(int i = 0; i<15; i++){
-            for(int p = 0; p<lPerc.size(); p ++){
-                Vector<Double> lPercElement = lPerc.get(p);
-                BinomialDistributionImpl lBinom = lBinomDistributions.get(p);
-                int lDaltonDiff = lDaltonDifferences.get(p);
-                if(lDaltonDiff > 1){
-                    if(i%lDaltonDiff == 0){
-                        lPercElement.add(lBinom.probability(i/lDaltonDiff)*lNumbers.get(p));
-                    } else {
-                        lPercElement.add(0.0);
-                    }
-                } else {
-                    lPercElement.add(lBinom.probability(i)*lNumbers.get(p));
-                }
-            }
-        }
-
-        Vector<Double> lPercTotal = new Vector<Double>();
-
-        for(int i = 0 ; i<lPerc.size(); i ++){
-            if(i==0){
-                for(int j = 0; j<lPerc.get(i).size(); j ++){
-                    lPercTotal.add(lPerc.get(i).get(j));
-                }
-            } else {
-                if(lNumbers.get(i) != 0){
-                    Vector<Double> lTempTotal = new Vector<Double>();
-                    for(int k = 1; k<=lPercTotal.size(); k ++){
-                        double lTempValue = 0.0;
-                        for(int l = 0; l<k; l ++){
-                            if(lPercTotal.get(l) != 0.0 && lPerc.get(i).get(k - l - 1) != 0.0){
-                                lTempValue = lTempValue + ((lPercTotal.get(l))*lPerc.get(i).get(k - l - 1));
-                            }
-                        }
-                        lTempTotal.add(lTempValue);
-                    }
-                    lPercTotal = lTempTotal;
-                }
-            }
-        }
+        double[] lPercTotal = IsotopicDistributionFactory.getInstance().getPercTot(iMolecularFormula);
 
-        double lMax = 0.0;
-        for(int k = 0; k<lPercTotal.size(); k ++){
-            for(int e = 0; e<lNumbers.size(); e ++){
-                lPercTotal.set(k, lPercTotal.get(k)/lNumbers.get(e));
-            }
-            if(lPercTotal.get(k)>lMax){
-                lMax = lPercTotal.get(k);
-            }
-        }
         if(iLabel){
-            lMax = 0.0;
-            Vector<Double> lTempPercTotal = new Vector<Double>();
-            for(int i = 0; i<lPercTotal.size(); i ++){
-                double lTempPeak1 = lPercTotal.get(i);
+            double[] lTempPercTotal = new double[lPercTotal.length];
+            for(int i = 0; i<lPercTotal.length; i ++){
+                double lTempPeak1 = lPercTotal[i];
                 double lTempPeak2 = 0.0;
                 if(i-iLabelDaltonDifference >= 0){
-                    lTempPeak2 = lPercTotal.get(i-iLabelDaltonDifference);
+                    lTempPeak2 = lPercTotal[i-iLabelDaltonDifference];
                 }
                 lTempPeak1 = lTempPeak1 + lTempPeak2;
-                lTempPercTotal.add(lTempPeak1/2.0);
-            }
-            for(int k = 0; k<lTempPercTotal.size(); k ++){
-                if(lTempPercTotal.get(k)>lMax){
-                    lMax = lTempPercTotal.get(k);
-                }
+                lTempPercTotal[i] = lTempPeak1/2.0;
             }
             lPercTotal = lTempPercTotal;
         }
 
         iPercTot = lPercTotal;
-        iPercMax = new Vector<Double>();
-        for(int k = 0; k<iPercTot.size(); k ++){
-            iPercMax.add(iPercTot.get(k)/lMax);
-        }
+        iPercMax = IsotopicDistributionFactory.getPercMax(iPercTot);
     }
 
     /**
@@ -195,8 +114,10 @@ public class IsotopicDistribution {
         if(iPercMax == null){
             calculate();
         }
-        Double[] lReturn = new Double[iPercMax.size()];
-        iPercMax.toArray(lReturn);
+        Double[] lReturn = new Double[iPercMax.length];
+        for(int i = 0; i<iPercMax.length; i ++){
+            lReturn[i] = iPercMax[i];
+        }
         return lReturn;
     }
 
@@ -208,8 +129,32 @@ public class IsotopicDistribution {
         if(iPercTot == null){
             calculate();
         }
-        Double[] lReturn = new Double[iPercTot.size()];
-        iPercTot.toArray(lReturn);
+        Double[] lReturn = new Double[iPercTot.length];
+        for(int i = 0; i<iPercTot.length; i ++){
+            lReturn[i] = iPercTot[i];
+        }
         return lReturn;
     }
+
+    /**
+     * Getter for result of the isotopic distributions calculation as primitive array. Percentage of the contribution compared to the maximum.
+     * @return Array of doubles with %, location in array corresponds with the number of the peak
+     */
+    public double[] getPercMaxValues() {
+        if(iPercMax == null){
+            calculate();
+        }
+        return iPercMax.clone();
+    }
+
+    /**
+     * Getter for result of the isotopic distributions calculation as primitive array. Percentage of the total contribution.
+     * @return Array of doubles with %, location in array corresponds with the number of the peak
+     */
+    public double[] getPercTotValues() {
+        if(iPercTot == null){
+            calculate();
+        }
+        return iPercTot.clone();
+    }
 }
@@ -0,0 +1,311 @@
+package com.compomics.util.general;
+
+import com.compomics.util.enumeration.MolecularElement;
+import com.compomics.util.protein.MolecularFormula;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.math.distribution.BinomialDistributionImpl;
+import org.apache.log4j.Logger;
+
+/**
+ * Thread-safe factory computing and caching isotopic distributions. The
+ * contribution of every isotopic element for a given number of atoms is
+ * cached, and the distributions are cached in a bounded memory keyed by
+ * composition. Distributions are computed on primitive arrays and the
+ * convolution skips null contributions. An approximation of the distribution
+ * of peptides of a given mass is provided using the averagine composition.
+ *
+ * @author Marc Vaudel
+ */
+public class IsotopicDistributionFactory {
+
+    /**
+     * The number of peaks of the distributions.
+     */
+    public static final int N_PEAKS = 15;
+    /**
+     * The maximal number of distributions kept in cache.
+     */
+    public static final int CACHE_SIZE = 10000;
+    /**
+     * The maximal number of atom counts kept in cache for every isotopic
+     * element.
+     */
+    private static final int ELEMENT_CACHE_SIZE = 10000;
+    /**
+     * The mass of the averagine residue (Senko et al., 1995).
+     */
+    public static final double AVERAGINE_MASS = 111.1254;
+    /**
+     * The elements of the averagine residue.
+     */
+    private static final MolecularElement[] AVERAGINE_ELEMENTS = {MolecularElement.C, MolecularElement.H, MolecularElement.N, MolecularElement.O, MolecularElement.S};
+    /**
+     * The number of atoms of every element in the averagine residue.
+     */
+    private static final double[] AVERAGINE_COMPOSITION = {4.9384, 7.7583, 1.3577, 1.4773, 0.0417};
+    /**
+     * The instance of the factory.
+     */
+    private static IsotopicDistributionFactory instance = null;
+    /**
+     * Class specific log4j logger.
+     */
+    private static final Logger logger = Logger.getLogger(IsotopicDistributionFactory.class);
+    /**
+     * The isotopic elements.
+     */
+    private final IsotopicElement[] isotopicElements;
+    /**
+     * Cache of the contribution of the isotopic elements indexed by number of
+     * atoms.
+     */
+    private final ConcurrentHashMap<Integer, double[]>[] elementContributions;
+    /**
+     * Cache of the distributions in percentage of the total contribution,
+     * indexed by composition, the least recently used distribution is removed
+     * first.
+     */
+    private final LinkedHashMap<String, double[]> distributionsCache = new LinkedHashMap<String, double[]>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Constructor.
+     */
+    @SuppressWarnings("unchecked")
+    private IsotopicDistributionFactory() {
+        Vector<IsotopicElement> elements = IsotopicElement.getAllIsotopicElements(IsotopicDistributionFactory.class, logger);
+        isotopicElements = elements.toArray(new IsotopicElement[elements.size()]);
+        elementContributions = new ConcurrentHashMap[isotopicElements.length];
+        for (int i = 0; i < isotopicElements.length; i++) {
+            elementContributions[i] = new ConcurrentHashMap<Integer, double[]>();
+        }
+    }
+
+    /**
+     * Returns the instance of the factory.
+     *
+     * @return the instance of the factory
+     */
+    public static IsotopicDistributionFactory getInstance() {
+        if (instance == null) {
+            createInstance();
+        }
+        return instance;
+    }
+
+    /**
+     * Creates the instance of the factory in a synchronized method.
+     */
+    private static synchronized void createInstance() {
+        if (instance == null) {
+            instance = new IsotopicDistributionFactory();
+        }
+    }
+
+    /**
+     * Returns the isotopic distribution of the given molecular formula in
+     * percentage of the total contribution, the index in the array
+     * corresponding to the number of the peak. The returned array can be
+     * modified.
+     *
+     * @param molecularFormula the molecular formula
+     *
+     * @return the isotopic distribution in percentage of the total
+     * contribution
+     */
+    public double[] getPercTot(MolecularFormula molecularFormula) {
+        int[] counts = new int[isotopicElements.length];
+        for (int i = 0; i < isotopicElements.length; i++) {
+            counts[i] = molecularFormula.getElementCount(isotopicElements[i].getElement());
+        }
+        return getPercTot(counts).clone();
+    }
+
+    /**
+     * Returns the isotopic distribution of the given molecular formula in
+     * percentage of the most intense peak, the index in the array
+     * corresponding to the number of the peak.
+     *
+     * @param molecularFormula the molecular formula
+     *
+     * @return the isotopic distribution in percentage of the most intense peak
+     */
+    public double[] getPercMax(MolecularFormula molecularFormula) {
+        return getPercMax(getPercTot(molecularFormula));
+    }
+
+    /**
+     * Returns the approximate isotopic distribution of a peptide of the given
+     * mass in percentage of the total contribution. The distribution is
+     * computed for the number of averagine residues corresponding to the mass.
+     *
+     * @param mass the mass of the peptide
+     *
+     * @return the approximate isotopic distribution in percentage of the total
+     * contribution
+     */
+    public double[] getAveragineDistribution(double mass) {
+        if (mass < 0 || Double.isNaN(mass) || Double.isInfinite(mass)) {
+            throw new IllegalArgumentException("Incorrect mass for an averagine estimation: " + mass + ".");
+        }
+        MolecularFormula formula = new MolecularFormula();
+        double nResidues = mass / AVERAGINE_MASS;
+        for (int i = 0; i < AVERAGINE_ELEMENTS.length; i++) {
+            formula.addElement(AVERAGINE_ELEMENTS[i], (int) Math.round(nResidues * AVERAGINE_COMPOSITION[i]));
+        }
+        return getPercTot(formula);
+    }
+
+    /**
+     * Returns the given distribution in percentage of the most intense peak.
+     *
+     * @param percTot the distribution in percentage of the total contribution
+     *
+     * @return the distribution in percentage of the most intense peak
+     */
+    public static double[] getPercMax(double[] percTot) {
+        double max = 0.0;
+        for (double value : percTot) {
+            if (value > max) {
+                max = value;
+            }
+        }
+        double[] result = new double[percTot.length];
+        for (int k = 0; k < percTot.length; k++) {
+            result[k] = percTot[k] / max;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cached distribution for the given numbers of atoms of the
+     * isotopic elements, computing it if not in cache. The returned array must
+     * not be modified.
+     *
+     * @param counts the number of atoms of every isotopic element
+     *
+     * @return the distribution in percentage of the total contribution
+     */
+    private double[] getPercTot(int[] counts) {
+        StringBuilder keyBuilder = new StringBuilder(4 * counts.length);
+        for (int count : counts) {
+            keyBuilder.append(count).append(',');
+        }
+        String key = keyBuilder.toString();
+        double[] result;
+        synchronized (distributionsCache) {
+            result = distributionsCache.get(key);
+        }
+        if (result == null) {
+            result = computePercTot(counts);
+            synchronized (distributionsCache) {
+                distributionsCache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the distribution for the given numbers of atoms of the isotopic
+     * elements by convolution of the contributions of the elements.
+     *
+     * @param counts the number of atoms of every isotopic element
+     *
+     * @return the distribution in percentage of the total contribution
+     */
+    private double[] computePercTot(int[] counts) {
+
+        double[] total = null;
+        for (int e = 0; e < counts.length; e++) {
+            int count = counts[e];
+            if (count > 0) {
+                double[] contribution = getElementContribution(e, count);
+                if (total == null) {
+                    total = contribution.clone();
+                } else {
+                    double[] convolution = new double[N_PEAKS];
+                    for (int k = 1; k <= N_PEAKS; k++) {
+                        double value = 0.0;
+                        for (int l = 0; l < k; l++) {
+                            double a = total[l];
+                            double b = contribution[k - l - 1];
+                            if (a != 0.0 && b != 0.0) {
+                                value = value + a * b;
+                            }
+                        }
+                        convolution[k - 1] = value;
+                    }
+                    total = convolution;
+                }
+            }
+        }
+
+        if (total == null) {
+            return new double[0];
+        }
+
+        // the contributions are scaled by the number of atoms
+        for (int k = 0; k < N_PEAKS; k++) {
+            for (int count : counts) {
+                if (count > 0) {
+                    total[k] = total[k] / count;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the contribution of the given isotopic element for the given
+     * number of atoms: the probability to observe the isotope at every peak,
+     * multiplied by the number of atoms.
+     *
+     * @param index the index of the isotopic element
+     * @param count the number of atoms
+     *
+     * @return the contribution of the isotopic element
+     */
+    private double[] getElementContribution(int index, int count) {
+        ConcurrentHashMap<Integer, double[]> cache = elementContributions[index];
+        double[] result = cache.get(count);
+        if (result == null) {
+            IsotopicElement isotopicElement = isotopicElements[index];
+            BinomialDistributionImpl binomialDistribution = new BinomialDistributionImpl(count, isotopicElement.getOccurrence());
+            int daltonDifference = isotopicElement.getDaltonDifference();
+            result = new double[N_PEAKS];
+            for (int i = 0; i < N_PEAKS; i++) {
+                if (daltonDifference > 1) {
+                    if (i % daltonDifference == 0) {
+                        result[i] = binomialDistribution.probability(i / daltonDifference) * count;
+                    }
+                } else {
+                    result[i] = binomialDistribution.probability(i) * count;
+                }
+            }
+            if (cache.size() >= ELEMENT_CACHE_SIZE) {
+                cache.clear();
+            }
+            cache.put(count, result);
+        }
+        return result;
+    }
+
+    /**
+     * Clears the caches.
+     */
+    public void clearCache() {
+        synchronized (distributionsCache) {
+            distributionsCache.clear();
+        }
+        for (ConcurrentHashMap<Integer, double[]> cache : elementContributions) {
+            cache.clear();
+        }
+    }
+}
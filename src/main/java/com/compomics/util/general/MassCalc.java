@@ -12,7 +12,6 @@ import java.util.Vector;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Properties;
-import java.text.StringCharacterIterator;
 
 /*
  * CVS information:
@@ -41,6 +40,8 @@ import java.text.StringCharacterIterator;
  *    a Double instance for the HashMap. No other formats are accepted!
  *  </li>
  * </ul>
+ * Formulas are parsed once and cached as CompiledFormula instances, and a
+ * MassCalc instance can be used concurrently to calculate masses.
  *
  * @author	Lennart Martens
  */
@@ -69,14 +70,25 @@ public class MassCalc {
     private static Vector allMaps = new Vector(2);
 
     /**
-     * An index into an array.
+     * The masses of the elements of the built-in lists indexed by ordinal,
+     * see CompiledFormula. Filled upon first use.
      */
-    private static final int ELEMENT = 0;
+    private volatile double[] ordinalMasses = null;
 
     /**
-     * An index into an array.
+     * Value marking an element of unknown mass in ordinalMasses.
      */
-    private static final int MULTIPLICITY = 1;
+    private static final double UNKNOWN_MASS = Double.NaN;
+
+    /**
+     * The mass of the terminal groups of amino acid sequences.
+     */
+    private static volatile Double aaTerminalMass = null;
+
+    /**
+     * The mass of the terminal groups of nucleotide sequences.
+     */
+    private static volatile Double nucleotideTerminalMass = null;
 
     /**
      * Index for the monoisotopic masses of the biochemically relevant
@@ -116,18 +128,39 @@ public class MassCalc {
      *								elementlist to use.
      */
     public MassCalc(int aMassListIdentifier) {
-        if (allMaps.isEmpty()) {
-            allMaps.add(MONOELEMENTS, this.loadMassesFromPropFile("MonoElementMasses.properties"));
-            allMaps.add(MONOAA, this.loadMassesFromPropFile("MonoAAMasses.properties"));
-            allMaps.add(MONONUCLEOTIDES, this.loadMassesFromPropFile("MonoNucleotideMasses.properties"));
-        }
+        this.loadBuiltInLists();
         if (aMassListIdentifier > allMaps.size()) {
             throw new IllegalArgumentException("No such elementlist defined (" + aMassListIdentifier + ").\n");
         }
-        masses = (HashMap) ((HashMap) allMaps.elementAt(aMassListIdentifier)).clone();
+        // The built-in lists are never modified and can be shared.
+        masses = (HashMap) allMaps.elementAt(aMassListIdentifier);
         iChosen = aMassListIdentifier;
     }
 
+    /**
+     * This method loads the built-in element lists in a synchronized
+     * method, and registers their elements in CompiledFormula. The elements
+     * are registered before the lists are published so that the registry
+     * is complete once the lists are available.
+     */
+    private void loadBuiltInLists() {
+        if (allMaps.isEmpty()) {
+            synchronized (allMaps) {
+                if (allMaps.isEmpty()) {
+                    HashMap monoElements = this.loadMassesFromPropFile("MonoElementMasses.properties");
+                    HashMap monoAA = this.loadMassesFromPropFile("MonoAAMasses.properties");
+                    HashMap monoNucleotides = this.loadMassesFromPropFile("MonoNucleotideMasses.properties");
+                    CompiledFormula.registerSymbols(monoElements.keySet());
+                    CompiledFormula.registerSymbols(monoAA.keySet());
+                    CompiledFormula.registerSymbols(monoNucleotides.keySet());
+                    allMaps.add(MONOELEMENTS, monoElements);
+                    allMaps.add(MONOAA, monoAA);
+                    allMaps.add(MONONUCLEOTIDES, monoNucleotides);
+                }
+            }
+        }
+    }
+
     /**
      * This constructor allows the caller to use an elementlist of
      * its own making. Simply passing the filename of the file suffices. <br>
@@ -137,6 +170,7 @@ public class MassCalc {
      *						classpath and mst be a simple properties file!
      */
     public MassCalc(String aFilename) {
+        this.loadBuiltInLists();
         masses = this.loadMassesFromPropFile(aFilename);
     }
 
@@ -150,9 +184,12 @@ public class MassCalc {
      *  <li>VALUE must be a Double value</li>
      * </ul>
      *
+     * The elementlist must not be modified once the instance created.
+     *
      * @param	aElementList	HashMap with the elementlist to use.
      */
     public MassCalc(HashMap aElementList) {
+        this.loadBuiltInLists();
         masses = aElementList;
     }
 
@@ -174,6 +211,7 @@ public class MassCalc {
      */
     public MassCalc(int aMassListIdentifier, HashMap aSupplElementList) {
         this(aMassListIdentifier);
+        this.masses = new HashMap(this.masses);
         this.masses.putAll(aSupplElementList);
     }
 
@@ -181,7 +219,8 @@ public class MassCalc {
      * This method attempts to calculate the mass of a chemical formula.
      * It cannot calculate the mass of an element if it is not known to
      * this class (i.e.: if it does not occur in the Properties instance).
-     * In that case it will flag an exception.
+     * In that case it will flag an exception. <br>
+     * The formula is parsed only once and cached, see CompiledFormula.
      *
      * @param	aFormula	String with the chemical formula (or bruto
      *						formula) of the compound in question.
@@ -190,75 +229,29 @@ public class MassCalc {
      *											mass is unknown to the class.
      */
     public double calculateMass(String aFormula) throws UnknownElementMassException {
-        // Implemented with a character iterator.
-        StringCharacterIterator sci = new StringCharacterIterator(aFormula);
+        return calculateMass(CompiledFormula.compile(aFormula));
+    }
 
-        // The mass we so hungrily crave.
+    /**
+     * This method calculates the mass of a compiled formula.
+     *
+     * @param	aFormula	CompiledFormula with the formula of the compound
+     *						in question.
+     * @return	double	with the mass of the compound.
+     * @exception	UnknownElementMassException	when one of the composing elements'
+     *											mass is unknown to the class.
+     */
+    public double calculateMass(CompiledFormula aFormula) throws UnknownElementMassException {
         double mass = 0.0;
-
-        // A HashMap for the Bruto formula.
-        HashMap bruto = new HashMap(sci.getEndIndex());
-
-        // Now cycle the iterator.
-        char currentChar;
-        // Note that iterator advancement is taken care of in the
-        // processing methods called form this one!
-        while ((currentChar = sci.current()) != StringCharacterIterator.DONE) {
-            // For this character, there are only TWO possibilities:
-            // either it is a letter, or it is a opening bracket.
-            // If it is a letter, we forward to the getElement() method,
-            // else we forward it to the getInnerFormula method.
-            // The getElement returns an array with two elements: the
-            // element and its multiplicity (which can be '1' or more).
-            // Indexes are defined in the final variables ELEMENT and
-            // MULTIPLICITY.
-            // The getInnerFormula just returns a mass.
-            if (Character.isLetter(currentChar) || ('_' == currentChar) || ('*' == currentChar)) {
-                Object[] result = this.getElement(sci);
-                // this method takes care of adding this stuff to the
-                // brutoformula.
-                // Just to prevent code clutter.
-                this.addResultToBrutoFormula((String) result[ELEMENT],
-                        ((Integer) result[MULTIPLICITY]).intValue(),
-                        bruto);
-            } else if (currentChar == '(') {
-                mass += this.getInnerFormulaMass(sci);
-            } else {
-                // This means: no letter and no bracket.
-                // It has got to be an error.
-                throw new IllegalArgumentException("Formula '" + aFormula
-                        + "' could not be parsed due to the following unrecognized character: '" + currentChar + "'!\n");
-            }
-        }
-
-        // We have a part of the mass (at least, if any inner formulae were
-        // present) and the bruto formula for the remainder of the elements.
-        // We'll cycle it and add all masses.
-        Iterator iter = bruto.keySet().iterator();
-        while (iter.hasNext()) {
-            String key = (String) iter.next();
-            if (masses.containsKey(key)) {
-                double tempMass = ((Double) masses.get(key)).doubleValue();
-                int multiplicity = ((Integer) bruto.get(key)).intValue();
-                mass += multiplicity * tempMass;
-            } else {
-                // Oooops! Unknown element! Flag an UnknownElementMassException
-                // and be done with it.
-                throw new UnknownElementMassException(key);
-            }
+        for (int i = 0; i < aFormula.getNElements(); i++) {
+            mass += aFormula.getCount(i) * getElementMass(aFormula, i);
         }
 
         // If the sequence is somehow connected to AAmasses,
-        // we should add the mass of H2O!
-        MassCalc innerMC = new MassCalc(MassCalc.MONOELEMENTS);
-        if (iChosen == MONOAA) {
-
-            //mass += 18.010565;
-            mass += innerMC.calculateMass("H2O");
-        } else if (iChosen == MONONUCLEOTIDES) {
-            // For nucleotides, add hydrogen (for 5') and subtract PO2 (for 3').
-            mass += innerMC.calculateMass("H");
-            mass -= innerMC.calculateMass("PO2");
+        // we should add the mass of H2O, for nucleotides
+        // add hydrogen (for 5') and subtract PO2 (for 3').
+        if (iChosen == MONOAA || iChosen == MONONUCLEOTIDES) {
+            mass += aFormula.getNTerminals() * getTerminalMass(iChosen);
         }
 
         // This should be it.
@@ -266,223 +259,114 @@ public class MassCalc {
     }
 
     /**
-     * This method adds the element with given multiplicity to the
-     * HashMap. the element as the key, multiplicity as the value.
-     * If the element was already present as a key, the multiplicity
-     * is added to the existing multiplicity.
+     * This method calculates the masses of an array of chemical formulas
+     * (or sequences).
      *
-     * @param	aElement	String with the element symbol.
-     * @param	aMultiplicity	int with the multiplicity of the element.
-     * @param	aBruto	HashMap with the bruto formula to add the element and
-     *					multiplicity to.
+     * @param	aFormulas	String[] with the chemical formulas.
+     * @return	double[]	with the masses of the compounds, in the same order.
+     * @exception	UnknownElementMassException	when one of the composing elements'
+     *											mass is unknown to the class.
      */
-    private void addResultToBrutoFormula(String aElement, int aMultiplicity, HashMap aBruto) {
-        if (aBruto.containsKey(aElement)) {
-            // Add the multiplicity to the existing value.
-            int tempValue = ((Integer) aBruto.get(aElement)).intValue();
-            tempValue += aMultiplicity;
-            aBruto.put(aElement, Integer.valueOf(tempValue));
-        } else {
-            // Not yet there, simply insert it.
-            aBruto.put(aElement, Integer.valueOf(aMultiplicity));
+    public double[] calculateMasses(String[] aFormulas) throws UnknownElementMassException {
+        double[] result = new double[aFormulas.length];
+        for (int i = 0; i < aFormulas.length; i++) {
+            result[i] = calculateMass(CompiledFormula.compile(aFormulas[i]));
         }
+        return result;
     }
 
     /**
-     * This method will read an element symbol and it's multiplicity from an
-     * SCI.
+     * This method calculates the masses of an array of compiled formulas.
      *
-     * @param	aSCI	StringCharacterIterator to read from.
-     * @return	Object[]	with the element behind index ELEMENT and the
-     *						multiplicity behind index MULTIPLICITY.
+     * @param	aFormulas	CompiledFormula[] with the formulas.
+     * @return	double[]	with the masses of the compounds, in the same order.
+     * @exception	UnknownElementMassException	when one of the composing elements'
+     *											mass is unknown to the class.
      */
-    private Object[] getElement(StringCharacterIterator aSCI) {
-        Object[] result = new Object[2];
-
-        // Okay, we'll need to find out the element name.
-        // It can consist of one or two letters, the second
-        // being lowercase if present.
-        String element = Character.toString(aSCI.current());
-        int multiplicity = 1;
-
-        // First of all, check whether there IS a next (the element
-        // could well be the last in line, in which case multiplicity is 1
-        // and we're done!
-        char next = aSCI.next();
-        if (next == StringCharacterIterator.DONE) {
-            // We don't do anything else here.
-        } else {
-            // Check if the next char is a lowercase letter.
-            if (Character.isLetter(next) && Character.isLowerCase(next)) {
-                // Add the second char to the element String and
-                // move the position one step further.
-                element += Character.toString(next);
-                next = aSCI.next();
-            } else if (next == '<') {
-                // It's the start of a modification tag.
-                // Let's grab it and add it!
-                element += this.isolateInnerPartString(aSCI, '<', '>', true);
-            }
-
-            // Now we can check multiplicity.
-            // This is only necessary if the next char is a number, else
-            // we'll just set it to '1'.
-            if ((next != StringCharacterIterator.DONE) && Character.isDigit(next)) {
-                multiplicity = this.getMultiplicity(aSCI);
-            } else {
-                // Just set to one.
-                multiplicity = 1;
-            }
+    public double[] calculateMasses(CompiledFormula[] aFormulas) throws UnknownElementMassException {
+        double[] result = new double[aFormulas.length];
+        for (int i = 0; i < aFormulas.length; i++) {
+            result[i] = calculateMass(aFormulas[i]);
         }
-
-        // Voila.
-        result[ELEMENT] = element;
-        result[MULTIPLICITY] = Integer.valueOf(multiplicity);
-
         return result;
     }
 
     /**
-     * This method attempts to read a multiplicity starting from the current
-     * position in the SCI parameter. The position will be moved such that
-     * calling next on the iterator results in getting the first non-numerical
-     * character to follow the multiplicity.
+     * This method returns the mass of the element at the given index of a
+     * compiled formula. The masses of the elements of the built-in lists are
+     * copied from the element list into an array indexed by ordinal (see
+     * CompiledFormula) upon first use, the element list must therefore not
+     * be modified after construction. The masses of the other elements are
+     * read from the element list.
      *
-     * @param	aSCI	StringCharacterIterator to read from.
-     * @return	int	the multiplicity.
+     * @param	aFormula	CompiledFormula with the formula.
+     * @param	aIndex	int with the index of the element in the formula.
+     * @return	double	with the mass of the element.
+     * @exception	UnknownElementMassException	when the mass of the element
+     *											is unknown to the class.
      */
-    private int getMultiplicity(StringCharacterIterator aSCI) {
-        int mp = 0;
-
-        // If the current char is not a number, multiplicity is simply
-        // '1'.
-        if (!Character.isDigit(aSCI.current())) {
-            mp = 1;
+    private double getElementMass(CompiledFormula aFormula, int aIndex) throws UnknownElementMassException {
+        int ordinal = aFormula.getElement(aIndex);
+        double[] lookup = getOrdinalMasses();
+        double mass;
+        if (ordinal >= 0 && ordinal < lookup.length) {
+            mass = lookup[ordinal];
         } else {
-            // The current char is the first of the number.
-            String number = Character.toString(aSCI.current());
-
-            // Fence-post.
-            char next = aSCI.next();
-            // Get all digits constructing the number.
-            while ((next != StringCharacterIterator.DONE) && Character.isDigit(next)) {
-
-                // Add it to the number.
-                number += Character.toString(next);
-
-                // Increment.
-                next = aSCI.next();
-            }
-
-            // Convert the number into an int.
-            mp = Integer.parseInt(number);
+            Double elementMass = (Double) masses.get(aFormula.getElementSymbol(aIndex));
+            mass = elementMass == null ? UNKNOWN_MASS : elementMass.doubleValue();
         }
-
-        // Voila.
-        return mp;
+        if (Double.isNaN(mass)) {
+            // Oooops! Unknown element! Flag an UnknownElementMassException
+            // and be done with it.
+            throw new UnknownElementMassException(aFormula.getElementSymbol(aIndex));
+        }
+        return mass;
     }
 
     /**
-     * This method will isolate and calculate the mass for the inner formula
-     * presented here, starting from the current position in the aSCI.
-     * This means that a call to current yields an opening bracket.
-     * The position of the SCI will be moved to the closing bracket of
-     * the inner formula.
+     * This method returns the masses of the elements of the built-in lists
+     * indexed by ordinal, filling the array upon first use. The array is
+     * filled before being published so that concurrent readers always see
+     * a complete array.
      *
-     * @param	aSCI	StringCharacterIterator with the inner formula.
-     * @return	double	with the mass of the inner formula.
+     * @return	double[]	with the masses indexed by ordinal.
      */
-    private double getInnerFormulaMass(StringCharacterIterator aSCI) throws UnknownElementMassException {
-
-        int multiplicity;
-
-        // Isolate inner formula String.
-        String inner = this.isolateInnerPartString(aSCI, '(', ')', false);
-
-        // Calculate mass.
-        double mass = this.calculateMass(inner);
-
-        // Get multiplicity.
-        multiplicity = this.getMultiplicity(aSCI);
-
-        // Calculate result.
-        mass *= multiplicity;
-
-        return mass;
+    private double[] getOrdinalMasses() {
+        double[] lookup = ordinalMasses;
+        if (lookup == null) {
+            lookup = new double[CompiledFormula.getNSymbols()];
+            for (int i = 0; i < lookup.length; i++) {
+                Double mass = (Double) masses.get(CompiledFormula.getSymbol(i));
+                lookup[i] = mass == null ? UNKNOWN_MASS : mass.doubleValue();
+            }
+            ordinalMasses = lookup;
+        }
+        return lookup;
     }
 
     /**
-     * This method will isolate an inner part, if the SCI is
-     * currently positioned on the opening token of that inner
-     * part. <br />
-     * It also allows for nested inner parts!
+     * This method returns the mass of the terminal groups of the sequences
+     * of the given built-in list, calculated once with the monoisotopic
+     * element masses.
      *
-     * @param	aSCI	StringCharacterIterator from which to read the
-     *					inner formula.
-     * @param	aOpener	char with the opening token for the inner part.
-     * @param	aCloser	char with the closing token for the inner part.
-     * @param	aKeepTokens	boolean that indicates whether the tokens
-     *						should be included in the return String.
-     * @return	String	with the inner formula.
+     * @param	aMassListIdentifier	int with the identifier of the built-in list.
+     * @return	double	with the mass of the terminal groups.
+     * @exception	UnknownElementMassException	when the mass of one of the
+     *											terminal elements is unknown.
      */
-    private String isolateInnerPartString(StringCharacterIterator aSCI, char aOpener, char aCloser, boolean aKeepTokens) {
-        // The String which we'll return.
-        String innerFormula = "";
-
-        // We will count tokens...
-        int tokenCount = 1;
-
-        // Current character is opening token and can and will be ignored.
-        char next = aSCI.next();
-        // This position is also the starting position for our String to be.
-        int startPosition = aSCI.getIndex();
-        // This one is derived from the logic within the loop below.
-        int endPosition = -1;
-
-        // Now to count tokens. Opening token adds 1 to the counter,
-        // closing token subtracts 1. If the counter reaches zero, we've
-        // found the end of our innerFormula.
-        while (tokenCount > 0) {
-
-            if (next == aOpener) {
-                // Opening token, add one to counter.
-                tokenCount++;
-            } else if (next == aCloser) {
-                // Closing token, subtract one from counter.
-                tokenCount--;
+    private static double getTerminalMass(int aMassListIdentifier) throws UnknownElementMassException {
+        Double mass = aMassListIdentifier == MONOAA ? aaTerminalMass : nucleotideTerminalMass;
+        if (mass == null) {
+            MassCalc innerMC = new MassCalc(MassCalc.MONOELEMENTS);
+            if (aMassListIdentifier == MONOAA) {
+                mass = innerMC.calculateMass("H2O");
+                aaTerminalMass = mass;
+            } else {
+                mass = innerMC.calculateMass("H") - innerMC.calculateMass("PO2");
+                nucleotideTerminalMass = mass;
             }
-
-            // Advance one character.
-            next = aSCI.next();
-        }
-
-        // Okay, end found. We'll have to retrieve it's position, 'though.
-        // It's position is NOT the current, since that is BEYOND the last
-        // closing token. It is not one before that, since that would be
-        // the closing token itself.
-        // We need the position 2 before the current.
-        // BTW: this int is to reset to the current position when we're done.
-        int imPosition = aSCI.getIndex();
-        endPosition = imPosition - 2;
-
-        // Construct the inner formula from the characters starting at
-        // 'startPosition' and ending with 'endPosition'. Note that both are
-        // inclusive.
-        for (int i = startPosition; i <= endPosition; i++) {
-            // Set the index for the char to retrieve.
-            aSCI.setIndex(i);
-            // Get the current char and append it to the String.
-            innerFormula += Character.valueOf(aSCI.current());
         }
-
-        // Reset the index on the SCI to the correct endposition (which is
-        // just after the last closing bracket, btw).
-        // We've stored that position in 'imPosition'.
-        aSCI.setIndex(imPosition);
-
-        // All done.
-        return ((aKeepTokens ? Character.valueOf(aOpener) : "")
-                + innerFormula + (aKeepTokens ? Character.toString(aCloser) : ""));
+        return mass;
     }
 
     /**
@@ -11,6 +11,7 @@ import java.io.*;
 import java.util.HashMap;
 import java.util.Enumeration;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.*;
 
@@ -50,6 +51,13 @@ public class MassCalcServlet extends HttpServlet {
     private static final int ONLY_SELF = 1;
     private static final int ADD_SELF = 2;
 
+    /**
+     * The mass calculators of the built-in lists, indexed by list identifier.
+     * MassCalc instances can be used concurrently and share the cache of
+     * compiled formulas.
+     */
+    private final ConcurrentHashMap<Integer, MassCalc> builtInMassCalcs = new ConcurrentHashMap<Integer, MassCalc>(3);
+
     /**
      * Override of parent class, implemented here as a simple forward to the
      * 'doPost' method.
@@ -148,8 +156,8 @@ public class MassCalcServlet extends HttpServlet {
                         // Additive selflist.
                         mc = new MassCalc(massList, selfList);
                     } else {
-                        // Plain old built-in type.
-                        mc = new MassCalc(massList);
+                        // Plain old built-in type, shared between requests.
+                        mc = this.getBuiltInMassCalc(massList);
                     }
                 } else {
                     // Use only self defined list.
@@ -169,6 +177,25 @@ public class MassCalcServlet extends HttpServlet {
         }
     }
 
+    /**
+     * This method returns the shared mass calculator for the given built-in
+     * list, creating it if needed.
+     *
+     * @param aMassList int with the identifier of the built-in list
+     * @return MassCalc for the built-in list
+     */
+    private MassCalc getBuiltInMassCalc(int aMassList) {
+        MassCalc mc = builtInMassCalcs.get(aMassList);
+        if (mc == null) {
+            mc = new MassCalc(aMassList);
+            MassCalc previous = builtInMassCalcs.putIfAbsent(aMassList, mc);
+            if (previous != null) {
+                mc = previous;
+            }
+        }
+        return mc;
+    }
+
     /**
      * THis method generates the submission form that users will employ to enter the
      * sequence for which they want to obtain a mass.
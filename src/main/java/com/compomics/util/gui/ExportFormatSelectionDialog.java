@@ -59,6 +59,8 @@ public class ExportFormatSelectionDialog extends javax.swing.JDialog {
     public ExportFormat getFormat() {
         if (textJRadioButton.isSelected()) {
             return ExportFormat.text;
+        } else if (xlsxJRadioButton.isSelected()) {
+            return ExportFormat.xlsx;
         } else {
             return ExportFormat.excel;
         }
@@ -78,6 +80,7 @@ public class ExportFormatSelectionDialog extends javax.swing.JDialog {
         formatTypeJPanel = new javax.swing.JPanel();
         textJRadioButton = new javax.swing.JRadioButton();
         excelJRadioButton = new javax.swing.JRadioButton();
+        xlsxJRadioButton = new javax.swing.JRadioButton();
         exportJButton = new javax.swing.JButton();
         cancelJButton = new javax.swing.JButton();
 
@@ -106,6 +109,11 @@ public class ExportFormatSelectionDialog extends javax.swing.JDialog {
         excelJRadioButton.setIconTextGap(15);
         excelJRadioButton.setOpaque(false);
 
+        buttonGroup.add(xlsxJRadioButton);
+        xlsxJRadioButton.setText("Excel 2007 Workbook (recommended for large exports)");
+        xlsxJRadioButton.setIconTextGap(15);
+        xlsxJRadioButton.setOpaque(false);
+
         javax.swing.GroupLayout formatTypeJPanelLayout = new javax.swing.GroupLayout(formatTypeJPanel);
         formatTypeJPanel.setLayout(formatTypeJPanelLayout);
         formatTypeJPanelLayout.setHorizontalGroup(
@@ -114,6 +122,7 @@ public class ExportFormatSelectionDialog extends javax.swing.JDialog {
                 .addContainerGap()
                 .addGroup(formatTypeJPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                     .addComponent(excelJRadioButton)
+                    .addComponent(xlsxJRadioButton)
                     .addComponent(textJRadioButton))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
@@ -124,6 +133,8 @@ public class ExportFormatSelectionDialog extends javax.swing.JDialog {
                 .addComponent(textJRadioButton)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addComponent(excelJRadioButton)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
+                .addComponent(xlsxJRadioButton)
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
 
@@ -224,5 +235,6 @@ public class ExportFormatSelectionDialog extends javax.swing.JDialog {
     private javax.swing.JButton exportJButton;
     private javax.swing.JPanel formatTypeJPanel;
     private javax.swing.JRadioButton textJRadioButton;
+    private javax.swing.JRadioButton xlsxJRadioButton;
     // End of variables declaration//GEN-END:variables
 }
@@ -127,6 +127,8 @@ public class IsotopicDistributionPanel extends GraphicsPanel {
         // add the peaks to the dataset
         HashMap lPeaks = new HashMap();
 
+        double[] lIsoPercMax = lIso.getPercMaxValues();
+
         try {
             for (int i = 0; i < 15; i++) {
 
@@ -137,18 +139,18 @@ public class IsotopicDistributionPanel extends GraphicsPanel {
                 // if profile mode, add some additional "profile mode looking" peaks before the peak
                 if (currentGraphicsPanelType.equals(GraphicsPanelType.isotopicDistributionProfile)) {
                     for (int j=0; j < numberOfSidePeaks; j++) {
-                        lPeaks.put(mzValue + (i * (new MassCalc().calculateMass("H") / (double) peptideCharge)) - 0.01*(numberOfSidePeaks-j), lIso.getPercMax()[i] * j*10);
+                        lPeaks.put(mzValue + (i * (new MassCalc().calculateMass("H") / (double) peptideCharge)) - 0.01*(numberOfSidePeaks-j), lIsoPercMax[i] * j*10);
                     }
                 }
 
-                lPeaks.put(mzValue + (i * (new MassCalc().calculateMass("H") / (double) peptideCharge)), lIso.getPercMax()[i] * 100);
+                lPeaks.put(mzValue + (i * (new MassCalc().calculateMass("H") / (double) peptideCharge)), lIsoPercMax[i] * 100);
 
 //                      @TODO: refine the adding of additional peaks
 
                 // if profile mode, add some additional "profile mode looking" peaks before the peak
                 if (currentGraphicsPanelType.equals(GraphicsPanelType.isotopicDistributionProfile)) {
                     for (int j=1; j <= numberOfSidePeaks; j++) {
-                        lPeaks.put(mzValue + (i * (new MassCalc().calculateMass("H") / (double) peptideCharge)) + 0.01*j, lIso.getPercMax()[i] * (100 - j*10));
+                        lPeaks.put(mzValue + (i * (new MassCalc().calculateMass("H") / (double) peptideCharge)) + 0.01*j, lIsoPercMax[i] * (100 - j*10));
                     }
                 }
             }
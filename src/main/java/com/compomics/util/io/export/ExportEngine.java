@@ -0,0 +1,331 @@
+package com.compomics.util.io.export;
+
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Engine writing the sections of a report defined by an export scheme. The
+ * rows of a section are divided in blocks: the objects needed by upcoming
+ * blocks are prefetched in the order of the report by a dedicated thread,
+ * the rows of the blocks are generated concurrently, and the blocks are
+ * streamed to the export writer in the order of the report. The number of
+ * blocks waiting to be written is bounded, so is the memory used.
+ *
+ * @author Marc Vaudel
+ */
+public class ExportEngine {
+
+    /**
+     * The default number of rows per block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+    /**
+     * The export writer.
+     */
+    private final ExportWriter exportWriter;
+    /**
+     * The export scheme.
+     */
+    private final ExportScheme exportScheme;
+    /**
+     * The number of threads used to generate the rows.
+     */
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The number of rows per block.
+     */
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    /**
+     * The maximal number of blocks prefetched or generated ahead of the
+     * writer, -1 for twice the number of threads.
+     */
+    private int maxPendingBlocks = -1;
+    /**
+     * The number of rows written in the current section.
+     */
+    private int nRows = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param exportWriter the writer where to write the report
+     * @param exportScheme the scheme of the report
+     */
+    public ExportEngine(ExportWriter exportWriter, ExportScheme exportScheme) {
+        this.exportWriter = exportWriter;
+        this.exportScheme = exportScheme;
+    }
+
+    /**
+     * Writes the main title of the scheme, if any.
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the report
+     */
+    public void writeMainTitle() throws IOException {
+        if (exportScheme.getMainTitle() != null) {
+            exportWriter.writeMainTitle(exportScheme.getMainTitle());
+        }
+    }
+
+    /**
+     * Writes a section of the report: the section title if required by the
+     * scheme, the header, and one row per key in the order of the keys.
+     *
+     * @param sectionName the name of the section in the export scheme
+     * @param keys the keys of the rows, for example match keys
+     * @param exportRowGenerator the generator of the rows
+     * @param waitingHandler a waiting handler displaying the progress and
+     * allowing canceling the process (can be null). The progress will be
+     * displayed on the secondary progress bar.
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the report
+     * @throws SQLException exception thrown whenever an error occurred while
+     * interacting with the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while deserializing an object
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    public void writeSection(String sectionName, ArrayList<String> keys, final ExportRowGenerator exportRowGenerator, final WaitingHandler waitingHandler)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+
+        final ArrayList<ExportFeature> exportFeatures = exportScheme.getExportFeatures(sectionName);
+        if (exportFeatures == null) {
+            throw new IllegalArgumentException("Section " + sectionName + " not found in export scheme " + exportScheme.getName() + ".");
+        }
+
+        if (exportScheme.isIncludeSectionTitles()) {
+            exportWriter.startNewSection(sectionName);
+        } else {
+            exportWriter.startNewSection();
+        }
+        if (exportScheme.isHeader()) {
+            writeHeader(exportFeatures);
+        }
+        nRows = 0;
+
+        int nBlocks = (keys.size() + blockSize - 1) / blockSize;
+        int maxPending = maxPendingBlocks > 0 ? maxPendingBlocks : 2 * nThreads;
+
+        if (waitingHandler != null) {
+            waitingHandler.setSecondaryProgressCounterIndeterminate(false);
+            waitingHandler.resetSecondaryProgressCounter();
+            waitingHandler.setMaxSecondaryProgressCounter(keys.size());
+        }
+
+        ExecutorService prefetchPool = Executors.newSingleThreadExecutor();
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        LinkedList<Future<ArrayList<ArrayList<String>>>> pendingBlocks = new LinkedList<Future<ArrayList<ArrayList<String>>>>();
+        int nextBlock = 0;
+
+        try {
+            while (nextBlock < nBlocks || !pendingBlocks.isEmpty()) {
+
+                // keep a bounded number of blocks ahead of the writer
+                while (nextBlock < nBlocks && pendingBlocks.size() < maxPending) {
+                    final ArrayList<String> blockKeys = new ArrayList<String>(keys.subList(nextBlock * blockSize, Math.min(keys.size(), (nextBlock + 1) * blockSize)));
+                    final Future<Object> prefetch = prefetchPool.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            exportRowGenerator.prefetch(blockKeys, waitingHandler);
+                            return null;
+                        }
+                    });
+                    pendingBlocks.add(pool.submit(new Callable<ArrayList<ArrayList<String>>>() {
+                        @Override
+                        public ArrayList<ArrayList<String>> call() throws Exception {
+                            prefetch.get();
+                            ArrayList<ArrayList<String>> rows = new ArrayList<ArrayList<String>>(blockKeys.size());
+                            for (String key : blockKeys) {
+                                rows.add(exportRowGenerator.getRow(key, exportFeatures));
+                            }
+                            return rows;
+                        }
+                    }));
+                    nextBlock++;
+                }
+
+                // write the blocks in the order of the keys
+                ArrayList<ArrayList<String>> rows = getBlock(pendingBlocks.removeFirst());
+                for (ArrayList<String> row : rows) {
+                    writeRow(row);
+                }
+
+                if (waitingHandler != null) {
+                    waitingHandler.increaseSecondaryProgressCounter(rows.size());
+                    if (waitingHandler.isRunCanceled()) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            prefetchPool.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes the header of a section.
+     *
+     * @param exportFeatures the features of the section
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the report
+     */
+    private void writeHeader(ArrayList<ExportFeature> exportFeatures) throws IOException {
+        boolean first = true;
+        if (exportScheme.isIndexes()) {
+            exportWriter.writeHeaderText("");
+            first = false;
+        }
+        for (ExportFeature exportFeature : exportFeatures) {
+            if (!first) {
+                exportWriter.addSeparator();
+            }
+            exportWriter.writeHeaderText(exportFeature.getTitle());
+            first = false;
+        }
+        exportWriter.newLine();
+    }
+
+    /**
+     * Writes a row.
+     *
+     * @param row the values of the row
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the report
+     */
+    private void writeRow(ArrayList<String> row) throws IOException {
+        nRows++;
+        boolean first = true;
+        if (exportScheme.isIndexes()) {
+            exportWriter.write(nRows + "");
+            first = false;
+        }
+        for (String value : row) {
+            if (!first) {
+                exportWriter.addSeparator();
+            }
+            exportWriter.write(value);
+            first = false;
+        }
+        exportWriter.newLine();
+    }
+
+    /**
+     * Waits for the given block to be generated and returns its rows. The
+     * exceptions encountered while generating the block are thrown again.
+     *
+     * @param block the future result of the block generation
+     *
+     * @return the rows of the block
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the report
+     * @throws SQLException exception thrown whenever an error occurred while
+     * interacting with the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while deserializing an object
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    private ArrayList<ArrayList<String>> getBlock(Future<ArrayList<ArrayList<String>>> block)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException {
+        try {
+            return block.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ExecutionException) {
+                // exception thrown while prefetching
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof ClassNotFoundException) {
+                throw (ClassNotFoundException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Returns the number of threads used to generate the rows.
+     *
+     * @return the number of threads used to generate the rows
+     */
+    public int getnThreads() {
+        return nThreads;
+    }
+
+    /**
+     * Sets the number of threads used to generate the rows.
+     *
+     * @param nThreads the number of threads used to generate the rows
+     */
+    public void setnThreads(int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be a positive number.");
+        }
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Returns the number of rows per block.
+     *
+     * @return the number of rows per block
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Sets the number of rows per block.
+     *
+     * @param blockSize the number of rows per block
+     */
+    public void setBlockSize(int blockSize) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size must be a positive number.");
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Returns the maximal number of blocks prefetched or generated ahead of
+     * the writer, -1 for twice the number of threads.
+     *
+     * @return the maximal number of blocks ahead of the writer
+     */
+    public int getMaxPendingBlocks() {
+        return maxPendingBlocks;
+    }
+
+    /**
+     * Sets the maximal number of blocks prefetched or generated ahead of the
+     * writer, -1 for twice the number of threads.
+     *
+     * @param maxPendingBlocks the maximal number of blocks ahead of the writer
+     */
+    public void setMaxPendingBlocks(int maxPendingBlocks) {
+        this.maxPendingBlocks = maxPendingBlocks;
+    }
+}
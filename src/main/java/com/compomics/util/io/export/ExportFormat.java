@@ -14,7 +14,11 @@ public enum ExportFormat {
     /**
      * Excel file.
      */
-    excel(1, "Excel", "xls", "Microsoft Excel format");
+    excel(1, "Excel", "xls", "Microsoft Excel format"),
+    /**
+     * Excel 2007 file, streamed to the disk.
+     */
+    xlsx(2, "Excel 2007", "xlsx", "Microsoft Excel 2007 format, recommended for large exports");
 
     /**
      * The index of the format.
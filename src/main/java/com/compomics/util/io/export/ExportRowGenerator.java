@@ -0,0 +1,57 @@
+package com.compomics.util.io.export;
+
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+
+/**
+ * Interface for the generation of the rows of a report section by the
+ * ExportEngine. Rows are generated concurrently, implementations must thus
+ * be thread safe.
+ *
+ * @author Marc Vaudel
+ */
+public interface ExportRowGenerator {
+
+    /**
+     * Loads the objects needed to generate the rows of the given keys, for
+     * example the matches and their parameters. Blocks of keys are prefetched
+     * in the order of the report ahead of the generation of their rows.
+     *
+     * @param keys the keys of the upcoming rows
+     * @param waitingHandler a waiting handler allowing canceling the process
+     * (can be null)
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading an object
+     * @throws SQLException exception thrown whenever an error occurred while
+     * interacting with the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while deserializing an object
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    public void prefetch(ArrayList<String> keys, WaitingHandler waitingHandler)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException;
+
+    /**
+     * Returns the values of the given features for the row of the given key.
+     *
+     * @param key the key of the row, for example a match key
+     * @param exportFeatures the features to export
+     *
+     * @return the values of the features in the order of the features
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading an object
+     * @throws SQLException exception thrown whenever an error occurred while
+     * interacting with the database
+     * @throws ClassNotFoundException exception thrown whenever an error
+     * occurred while deserializing an object
+     * @throws InterruptedException exception thrown whenever a threading
+     * error occurred
+     */
+    public ArrayList<String> getRow(String key, ArrayList<ExportFeature> exportFeatures)
+            throws IOException, SQLException, ClassNotFoundException, InterruptedException;
+}
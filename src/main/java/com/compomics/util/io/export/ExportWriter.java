@@ -2,6 +2,7 @@ package com.compomics.util.io.export;
 
 import com.compomics.util.io.export.writers.ExcelWriter;
 import com.compomics.util.io.export.writers.TextWriter;
+import com.compomics.util.io.export.writers.XlsxWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -189,6 +190,8 @@ public abstract class ExportWriter {
         switch (exportFormat) {
             case excel:
                 return new ExcelWriter(destinationFile);
+            case xlsx:
+                return new XlsxWriter(destinationFile);
             case text:
                 return new TextWriter(destinationFile, separator, nSeparationLines);
             default:
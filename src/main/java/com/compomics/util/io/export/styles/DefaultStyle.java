@@ -2,6 +2,7 @@ package com.compomics.util.io.export.styles;
 
 import com.compomics.util.io.export.WorkbookStyle;
 import com.compomics.util.io.export.writers.ExcelWriter;
+import com.compomics.util.io.export.writers.XlsxWriter;
 import java.util.HashMap;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFPalette;
@@ -47,10 +48,33 @@ public class DefaultStyle implements WorkbookStyle {
      * @return the style attached to that writer
      */
     public static DefaultStyle getStyle(ExcelWriter excelWriter) {
-        HSSFWorkbook workbook = excelWriter.getWorkbook();
+        return getStyle(excelWriter.getWorkbook());
+    }
+
+    /**
+     * Returns the style attached to that writer or create a new one if none
+     * found.
+     *
+     * @param xlsxWriter the writer of interest
+     *
+     * @return the style attached to that writer
+     */
+    public static DefaultStyle getStyle(XlsxWriter xlsxWriter) {
+        return getStyle(xlsxWriter.getStyleWorkbook());
+    }
+
+    /**
+     * Returns the style attached to that workbook or create a new one if none
+     * found.
+     *
+     * @param workbook the workbook of interest
+     *
+     * @return the style attached to that workbook
+     */
+    private static synchronized DefaultStyle getStyle(HSSFWorkbook workbook) {
         DefaultStyle result = styles.get(workbook);
         if (result == null) {
-            result = new DefaultStyle(excelWriter);
+            result = new DefaultStyle(workbook);
             styles.put(workbook, result);
         }
         return result;
@@ -59,10 +83,10 @@ public class DefaultStyle implements WorkbookStyle {
     /**
      * Constructor.
      *
-     * @param excelWriter the excel writer for this style
+     * @param workbook the workbook for this style
      */
-    private DefaultStyle(ExcelWriter excelWriter) { //@TODO: possible to make a generic style workbook independent?
-        this.workbook = excelWriter.getWorkbook();
+    private DefaultStyle(HSSFWorkbook workbook) { //@TODO: possible to make a generic style workbook independent?
+        this.workbook = workbook;
         setCellStyles();
     }
 
@@ -0,0 +1,753 @@
+package com.compomics.util.io.export.writers;
+
+import com.compomics.util.io.export.ExportFormat;
+import com.compomics.util.io.export.ExportWriter;
+import com.compomics.util.io.export.WorkbookStyle;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.poi.hssf.usermodel.HSSFPalette;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+
+/**
+ * ExportWriter for the export to Excel 2007 (xlsx) files. The sheets are
+ * streamed as XML directly into the zip archive as rows are written, only the
+ * current row is kept in memory regardless of the size of the export. Cell
+ * styles are taken from the WorkbookStyle like for the ExcelWriter, they must
+ * be created using the workbook returned by getStyleWorkbook().
+ *
+ * @author Marc Vaudel
+ */
+public class XlsxWriter extends ExportWriter {
+
+    /**
+     * The maximal number of rows of a sheet.
+     */
+    public static final int MAX_ROWS = 1048576;
+    /**
+     * The default row height in points.
+     */
+    private static final float DEFAULT_ROW_HEIGHT = 12.75f;
+    /**
+     * The names of the border styles indexed by POI border code.
+     */
+    private static final String[] BORDER_STYLES = {"none", "thin", "medium", "dashed", "dotted", "thick", "double", "hair",
+        "mediumDashed", "dashDot", "mediumDashDot", "dashDotDot", "mediumDashDotDot", "slantDashDot"};
+    /**
+     * The names of the horizontal alignments indexed by POI alignment code.
+     */
+    private static final String[] HORIZONTAL_ALIGNMENTS = {"general", "left", "center", "right", "fill", "justify", "centerContinuous"};
+    /**
+     * The names of the vertical alignments indexed by POI alignment code.
+     */
+    private static final String[] VERTICAL_ALIGNMENTS = {"top", "center", "bottom", "justify"};
+    /**
+     * The zip archive.
+     */
+    private final ZipOutputStream zipOutputStream;
+    /**
+     * The writer of the current zip entry.
+     */
+    private final Writer writer;
+    /**
+     * The workbook used to create the cell styles.
+     */
+    private final HSSFWorkbook styleWorkbook = new HSSFWorkbook();
+    /**
+     * The workbook style to use.
+     */
+    private WorkbookStyle workbookStyle = null;
+    /**
+     * The names of the sheets written.
+     */
+    private final ArrayList<String> sheetNames = new ArrayList<String>();
+    /**
+     * Indicates whether a sheet is being written.
+     */
+    private boolean sheetOpen = false;
+    /**
+     * The sheet number used to name untitled sections.
+     */
+    private int sheetNumber;
+    /**
+     * The current hierarchical depth.
+     */
+    private int hierarchicalDepth = 0;
+    /**
+     * The current row number.
+     */
+    private int rowNumber = 0;
+    /**
+     * The current cell number.
+     */
+    private int cellNumber = 0;
+    /**
+     * Indicates whether a row is being written.
+     */
+    private boolean rowOpen = false;
+    /**
+     * The current cell content.
+     */
+    private StringBuilder currentCellContent = new StringBuilder();
+    /**
+     * The current cell style.
+     */
+    private CellStyle currentCellStyle = null;
+    /**
+     * The ids of the cell styles converted: cell style &gt; xf id.
+     */
+    private final HashMap<CellStyle, Integer> styleIds = new HashMap<CellStyle, Integer>();
+    /**
+     * The cell formats in the xml format.
+     */
+    private final ArrayList<String> cellFormats = new ArrayList<String>();
+    /**
+     * The fonts in the xml format.
+     */
+    private final ArrayList<String> fonts = new ArrayList<String>();
+    /**
+     * The fills in the xml format.
+     */
+    private final ArrayList<String> fills = new ArrayList<String>();
+    /**
+     * The borders in the xml format.
+     */
+    private final ArrayList<String> borders = new ArrayList<String>();
+
+    /**
+     * Constructor.
+     *
+     * @param destinationFile the file where to write the data
+     *
+     * @throws IOException if an IOException occurs
+     */
+    public XlsxWriter(File destinationFile) throws IOException {
+        zipOutputStream = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(destinationFile)));
+        writer = new BufferedWriter(new OutputStreamWriter(zipOutputStream, "UTF-8"));
+        exportFormat = ExportFormat.xlsx;
+        fonts.add("<font><sz val=\"10\"/><name val=\"Arial\"/></font>");
+        fills.add("<fill><patternFill patternType=\"none\"/></fill>");
+        fills.add("<fill><patternFill patternType=\"gray125\"/></fill>");
+        borders.add("<border><left/><right/><top/><bottom/><diagonal/></border>");
+        cellFormats.add("<xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\" xfId=\"0\"/>");
+    }
+
+    /**
+     * Returns the workbook style.
+     *
+     * @return the workbook style
+     */
+    public WorkbookStyle getWorkbookStyle() {
+        return workbookStyle;
+    }
+
+    /**
+     * Sets the workbook style.
+     *
+     * @param workbookStyle the workbook style
+     */
+    public void setWorkbookStyle(WorkbookStyle workbookStyle) {
+        this.workbookStyle = workbookStyle;
+    }
+
+    /**
+     * Returns the workbook to use to create the cell styles. This workbook
+     * contains no data.
+     *
+     * @return the workbook to use to create the cell styles
+     */
+    public HSSFWorkbook getStyleWorkbook() {
+        return styleWorkbook;
+    }
+
+    @Override
+    public void write(String text, WorkbookStyle textStyle) throws IOException {
+        if (!rowOpen) {
+            if (textStyle != null) {
+                startRow(textStyle.getStandardHeight());
+            } else if (workbookStyle != null) {
+                startRow(workbookStyle.getStandardHeight());
+            } else {
+                startRow(DEFAULT_ROW_HEIGHT);
+            }
+        }
+        if (textStyle != null) {
+            currentCellStyle = textStyle.getStandardStyle(hierarchicalDepth);
+        } else if (workbookStyle != null) {
+            currentCellStyle = workbookStyle.getStandardStyle(hierarchicalDepth);
+        }
+        currentCellContent.append(text);
+    }
+
+    @Override
+    public void writeMainTitle(String text, WorkbookStyle textStyle) throws IOException {
+
+        if (text != null) {
+
+            startSheet(" ");
+
+            float height = DEFAULT_ROW_HEIGHT;
+            if (textStyle != null) {
+                height = textStyle.getMainTitleRowHeight();
+                currentCellStyle = textStyle.getStandardStyle(hierarchicalDepth);
+            } else if (workbookStyle != null) {
+                height = workbookStyle.getMainTitleRowHeight();
+                currentCellStyle = workbookStyle.getStandardStyle(hierarchicalDepth);
+            }
+            startRow(height);
+            currentCellContent.append(text);
+            addSeparator();
+            endSheet();
+
+            sheetNumber++;
+        }
+    }
+
+    @Override
+    public void startNewSection(String sectionTitle, WorkbookStyle textStyle) throws IOException {
+        if (currentCellContent.length() > 0) {
+            addSeparator();
+        }
+        String sheetName = sectionTitle;
+        if (sheetName == null) {
+            sheetName = sheetNumber++ + "";
+        }
+        startSheet(sheetName);
+    }
+
+    @Override
+    public void writeHeaderText(String text, WorkbookStyle textStyle) throws IOException {
+        if (!rowOpen) {
+            if (textStyle != null) {
+                startRow(textStyle.getHeaderHeight());
+            } else if (workbookStyle != null) {
+                startRow(workbookStyle.getHeaderHeight());
+            } else {
+                startRow(DEFAULT_ROW_HEIGHT);
+            }
+        }
+        if (textStyle != null) {
+            currentCellStyle = textStyle.getHeaderStyle(hierarchicalDepth);
+        } else if (workbookStyle != null) {
+            currentCellStyle = workbookStyle.getHeaderStyle(hierarchicalDepth);
+        }
+        currentCellContent.append(text);
+    }
+
+    @Override
+    public void addSeparator(WorkbookStyle textStyle) throws IOException {
+        if (!rowOpen) {
+            if (textStyle != null) {
+                startRow(textStyle.getStandardHeight());
+            } else if (workbookStyle != null) {
+                startRow(workbookStyle.getStandardHeight());
+            } else {
+                startRow(DEFAULT_ROW_HEIGHT);
+            }
+        }
+        writeCell(currentCellContent.toString(), currentCellStyle);
+        cellNumber++;
+        currentCellContent = new StringBuilder();
+        currentCellStyle = null;
+    }
+
+    @Override
+    public void newLine() throws IOException {
+        if (!rowOpen) {
+            startRow(-1);
+        } else if (currentCellContent.length() > 0) {
+            addSeparator();
+        }
+        endRow();
+    }
+
+    @Override
+    public void close() throws IOException, FileNotFoundException {
+        try {
+            if (currentCellContent.length() > 0 && sheetOpen) {
+                addSeparator();
+            }
+            if (sheetNames.isEmpty()) {
+                startSheet(null);
+            }
+            endSheet();
+            writeEntry("xl/styles.xml", getStylesXml());
+            writeEntry("xl/workbook.xml", getWorkbookXml());
+            writeEntry("xl/_rels/workbook.xml.rels", getWorkbookRelationshipsXml());
+            writeEntry("_rels/.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                    + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"xl/workbook.xml\"/>"
+                    + "</Relationships>");
+            writeEntry("[Content_Types].xml", getContentTypesXml());
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public void increaseDepth() {
+        hierarchicalDepth++;
+    }
+
+    @Override
+    public void decreseDepth() {
+        if (hierarchicalDepth == 0) {
+            throw new IllegalArgumentException("No original row found for hierarchical depth " + hierarchicalDepth + ".");
+        }
+        hierarchicalDepth--;
+    }
+
+    /**
+     * Closes the current sheet, if any, and starts a new sheet.
+     *
+     * @param sheetName the name of the sheet, null for a default name
+     *
+     * @throws IOException if an IOException occurs
+     */
+    private void startSheet(String sheetName) throws IOException {
+        endSheet();
+        sheetNames.add(getUniqueSheetName(sheetName));
+        zipOutputStream.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        writer.write("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        sheetOpen = true;
+        rowNumber = 0;
+        cellNumber = 0;
+    }
+
+    /**
+     * Closes the current sheet, if any.
+     *
+     * @throws IOException if an IOException occurs
+     */
+    private void endSheet() throws IOException {
+        if (sheetOpen) {
+            endRow();
+            writer.write("</sheetData></worksheet>");
+            writer.flush();
+            zipOutputStream.closeEntry();
+            sheetOpen = false;
+        }
+    }
+
+    /**
+     * Starts a new row.
+     *
+     * @param height the height of the row in points, negative for the default
+     * height
+     *
+     * @throws IOException if an IOException occurs
+     */
+    private void startRow(float height) throws IOException {
+        if (!sheetOpen) {
+            throw new IllegalArgumentException("No section started to write in.");
+        }
+        if (rowNumber == MAX_ROWS) {
+            throw new IllegalArgumentException("Maximal number of rows (" + MAX_ROWS + ") reached in sheet " + sheetNames.get(sheetNames.size() - 1) + ".");
+        }
+        rowNumber++;
+        cellNumber = 0;
+        writer.write("<row r=\"");
+        writer.write(Integer.toString(rowNumber));
+        writer.write("\"");
+        if (height >= 0) {
+            writer.write(" ht=\"");
+            writer.write(Float.toString(height));
+            writer.write("\" customHeight=\"1\"");
+        }
+        if (hierarchicalDepth > 0) {
+            writer.write(" hidden=\"1\" outlineLevel=\"");
+            writer.write(Integer.toString(Math.min(hierarchicalDepth, 7)));
+            writer.write("\"");
+        }
+        writer.write(">");
+        rowOpen = true;
+    }
+
+    /**
+     * Closes the current row, if any.
+     *
+     * @throws IOException if an IOException occurs
+     */
+    private void endRow() throws IOException {
+        if (rowOpen) {
+            writer.write("</row>");
+            rowOpen = false;
+        }
+        cellNumber = 0;
+    }
+
+    /**
+     * Writes a cell of the current row. Numbers are written as numeric cells,
+     * other content as inline strings.
+     *
+     * @param content the content of the cell
+     * @param cellStyle the style of the cell, can be null
+     *
+     * @throws IOException if an IOException occurs
+     */
+    private void writeCell(String content, CellStyle cellStyle) throws IOException {
+        int styleId = cellStyle == null ? 0 : getStyleId(cellStyle);
+        if (content.length() == 0 && styleId == 0) {
+            return;
+        }
+        writer.write("<c r=\"");
+        writer.write(getColumnName(cellNumber));
+        writer.write(Integer.toString(rowNumber));
+        writer.write("\"");
+        if (styleId != 0) {
+            writer.write(" s=\"");
+            writer.write(Integer.toString(styleId));
+            writer.write("\"");
+        }
+        if (content.length() == 0) {
+            writer.write("/>");
+            return;
+        }
+        Double value = null;
+        try {
+            value = new Double(content);
+            if (value.isNaN() || value.isInfinite()) {
+                value = null;
+            }
+        } catch (NumberFormatException e) {
+            // Not a number
+        }
+        if (value != null) {
+            writer.write("><v>");
+            writer.write(value.toString());
+            writer.write("</v></c>");
+        } else {
+            writer.write(" t=\"inlineStr\"><is><t xml:space=\"preserve\">");
+            writeEscaped(content);
+            writer.write("</t></is></c>");
+        }
+    }
+
+    /**
+     * Writes the given text escaped for xml. Characters not allowed in xml
+     * are skipped.
+     *
+     * @param text the text to write
+     *
+     * @throws IOException if an IOException occurs
+     */
+    private void writeEscaped(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    writer.write("&amp;");
+                    break;
+                case '<':
+                    writer.write("&lt;");
+                    break;
+                case '>':
+                    writer.write("&gt;");
+                    break;
+                case '"':
+                    writer.write("&quot;");
+                    break;
+                default:
+                    if (c >= 0x20 && c != 0xFFFE && c != 0xFFFF || c == '\t' || c == '\n' || c == '\r') {
+                        writer.write(c);
+                    }
+            }
+        }
+    }
+
+    /**
+     * Returns the given text escaped for xml.
+     *
+     * @param text the text
+     *
+     * @return the escaped text
+     */
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    /**
+     * Returns the name of a column, e.g. A for the first column, AA for the
+     * 27th.
+     *
+     * @param column the index of the column, 0 for the first column
+     *
+     * @return the name of the column
+     */
+    public static String getColumnName(int column) {
+        StringBuilder name = new StringBuilder();
+        int remaining = column + 1;
+        while (remaining > 0) {
+            int letter = (remaining - 1) % 26;
+            name.insert(0, (char) ('A' + letter));
+            remaining = (remaining - 1) / 26;
+        }
+        return name.toString();
+    }
+
+    /**
+     * Returns a valid sheet name not used in the workbook. Characters not
+     * allowed are replaced by an underscore and names are truncated to 31
+     * characters.
+     *
+     * @param sheetName the desired name, can be null
+     *
+     * @return a valid unique sheet name
+     */
+    private String getUniqueSheetName(String sheetName) {
+        String name = sheetName == null ? "" : sheetName.replaceAll("[\\[\\]:*?/\\\\]", "_").trim();
+        if (name.length() == 0) {
+            name = "Sheet" + (sheetNames.size() + 1);
+        }
+        if (name.length() > 31) {
+            name = name.substring(0, 31);
+        }
+        HashSet<String> usedNames = new HashSet<String>();
+        for (String usedName : sheetNames) {
+            usedNames.add(usedName.toLowerCase());
+        }
+        String result = name;
+        int suffix = 2;
+        while (usedNames.contains(result.toLowerCase())) {
+            String suffixText = " (" + suffix++ + ")";
+            result = name.substring(0, Math.min(name.length(), 31 - suffixText.length())) + suffixText;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the id of the cell format corresponding to the given cell
+     * style, converting it if not done already.
+     *
+     * @param cellStyle the cell style
+     *
+     * @return the id of the cell format
+     */
+    private int getStyleId(CellStyle cellStyle) {
+
+        Integer id = styleIds.get(cellStyle);
+
+        if (id == null) {
+
+            Font font = styleWorkbook.getFontAt(cellStyle.getFontIndex());
+            StringBuilder fontXml = new StringBuilder("<font>");
+            if (font.getBoldweight() == Font.BOLDWEIGHT_BOLD) {
+                fontXml.append("<b/>");
+            }
+            if (font.getItalic()) {
+                fontXml.append("<i/>");
+            }
+            fontXml.append("<sz val=\"").append(font.getFontHeightInPoints()).append("\"/>");
+            String fontColor = getColor(font.getColor());
+            if (fontColor != null) {
+                fontXml.append("<color rgb=\"").append(fontColor).append("\"/>");
+            }
+            fontXml.append("<name val=\"").append(escape(font.getFontName())).append("\"/></font>");
+            int fontId = getIndex(fonts, fontXml.toString());
+
+            int fillId = 0;
+            if (cellStyle.getFillPattern() == CellStyle.SOLID_FOREGROUND) {
+                String fillColor = getColor(cellStyle.getFillForegroundColor());
+                if (fillColor != null) {
+                    fillId = getIndex(fills, "<fill><patternFill patternType=\"solid\"><fgColor rgb=\"" + fillColor + "\"/></patternFill></fill>");
+                }
+            }
+
+            String borderXml = "<border>" + getBorder("left", cellStyle.getBorderLeft()) + getBorder("right", cellStyle.getBorderRight())
+                    + getBorder("top", cellStyle.getBorderTop()) + getBorder("bottom", cellStyle.getBorderBottom()) + "<diagonal/></border>";
+            int borderId = getIndex(borders, borderXml);
+
+            StringBuilder formatXml = new StringBuilder("<xf numFmtId=\"0\" fontId=\"");
+            formatXml.append(fontId).append("\" fillId=\"").append(fillId).append("\" borderId=\"").append(borderId)
+                    .append("\" xfId=\"0\" applyFont=\"1\" applyFill=\"1\" applyBorder=\"1\" applyAlignment=\"1\"><alignment");
+            short alignment = cellStyle.getAlignment();
+            if (alignment > 0 && alignment < HORIZONTAL_ALIGNMENTS.length) {
+                formatXml.append(" horizontal=\"").append(HORIZONTAL_ALIGNMENTS[alignment]).append("\"");
+            }
+            short verticalAlignment = cellStyle.getVerticalAlignment();
+            if (verticalAlignment >= 0 && verticalAlignment < VERTICAL_ALIGNMENTS.length) {
+                formatXml.append(" vertical=\"").append(VERTICAL_ALIGNMENTS[verticalAlignment]).append("\"");
+            }
+            if (cellStyle.getWrapText()) {
+                formatXml.append(" wrapText=\"1\"");
+            }
+            formatXml.append("/></xf>");
+
+            id = getIndex(cellFormats, formatXml.toString());
+            styleIds.put(cellStyle, id);
+        }
+
+        return id;
+    }
+
+    /**
+     * Returns the index of the given element in the list, adding it if not
+     * present.
+     *
+     * @param elements the list of elements
+     * @param element the element
+     *
+     * @return the index of the element in the list
+     */
+    private static int getIndex(ArrayList<String> elements, String element) {
+        int index = elements.indexOf(element);
+        if (index == -1) {
+            index = elements.size();
+            elements.add(element);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the xml element of a border.
+     *
+     * @param side the side of the border
+     * @param borderStyle the POI border code
+     *
+     * @return the xml element of the border
+     */
+    private static String getBorder(String side, short borderStyle) {
+        if (borderStyle <= 0 || borderStyle >= BORDER_STYLES.length) {
+            return "<" + side + "/>";
+        }
+        return "<" + side + " style=\"" + BORDER_STYLES[borderStyle] + "\"><color auto=\"1\"/></" + side + ">";
+    }
+
+    /**
+     * Returns the ARGB code of the given color of the palette of the style
+     * workbook, null for automatic colors or if not found.
+     *
+     * @param colorIndex the index of the color in the palette
+     *
+     * @return the ARGB code of the color
+     */
+    private String getColor(short colorIndex) {
+        if (colorIndex == HSSFColor.AUTOMATIC.index || colorIndex == Font.COLOR_NORMAL) {
+            return null;
+        }
+        HSSFPalette palette = styleWorkbook.getCustomPalette();
+        HSSFColor color = palette.getColor(colorIndex);
+        if (color == null) {
+            return null;
+        }
+        short[] triplet = color.getTriplet();
+        return String.format("FF%02X%02X%02X", triplet[0], triplet[1], triplet[2]);
+    }
+
+    /**
+     * Writes a zip entry.
+     *
+     * @param name the name of the entry
+     * @param content the content of the entry
+     *
+     * @throws IOException if an IOException occurs
+     */
+    private void writeEntry(String name, String content) throws IOException {
+        zipOutputStream.putNextEntry(new ZipEntry(name));
+        writer.write(content);
+        writer.flush();
+        zipOutputStream.closeEntry();
+    }
+
+    /**
+     * Returns the content of the styles part.
+     *
+     * @return the content of the styles part
+     */
+    private String getStylesXml() {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        xml.append("<styleSheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
+        appendList(xml, "fonts", fonts);
+        appendList(xml, "fills", fills);
+        appendList(xml, "borders", borders);
+        xml.append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>");
+        appendList(xml, "cellXfs", cellFormats);
+        xml.append("<cellStyles count=\"1\"><cellStyle name=\"Normal\" xfId=\"0\" builtinId=\"0\"/></cellStyles>");
+        xml.append("</styleSheet>");
+        return xml.toString();
+    }
+
+    /**
+     * Appends a list of elements to the given xml.
+     *
+     * @param xml the xml
+     * @param name the name of the list element
+     * @param elements the elements
+     */
+    private static void appendList(StringBuilder xml, String name, ArrayList<String> elements) {
+        xml.append("<").append(name).append(" count=\"").append(elements.size()).append("\">");
+        for (String element : elements) {
+            xml.append(element);
+        }
+        xml.append("</").append(name).append(">");
+    }
+
+    /**
+     * Returns the content of the workbook part.
+     *
+     * @return the content of the workbook part
+     */
+    private String getWorkbookXml() {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        xml.append("<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheets>");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            xml.append("<sheet name=\"").append(escape(sheetNames.get(i - 1))).append("\" sheetId=\"").append(i).append("\" r:id=\"rId").append(i).append("\"/>");
+        }
+        xml.append("</sheets></workbook>");
+        return xml.toString();
+    }
+
+    /**
+     * Returns the content of the relationships of the workbook part.
+     *
+     * @return the content of the relationships of the workbook part
+     */
+    private String getWorkbookRelationshipsXml() {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        xml.append("<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            xml.append("<Relationship Id=\"rId").append(i).append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet")
+                    .append(i).append(".xml\"/>");
+        }
+        xml.append("<Relationship Id=\"rId").append(sheetNames.size() + 1).append("\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/styles\" Target=\"styles.xml\"/>");
+        xml.append("</Relationships>");
+        return xml.toString();
+    }
+
+    /**
+     * Returns the content of the content types part.
+     *
+     * @return the content of the content types part
+     */
+    private String getContentTypesXml() {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        xml.append("<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">");
+        xml.append("<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>");
+        xml.append("<Default Extension=\"xml\" ContentType=\"application/xml\"/>");
+        xml.append("<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            xml.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        xml.append("<Override PartName=\"/xl/styles.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.styles+xml\"/>");
+        xml.append("</Types>");
+        return xml.toString();
+    }
+}
@@ -2,7 +2,6 @@ package com.compomics.util.math;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import org.apache.commons.math3.util.FastMath;
 
@@ -25,6 +24,12 @@ public class BasicMathFunctions {
      * Cache for factorials.
      */
     private static final HashMap<Integer, Long> factorialsCache = new HashMap<Integer, Long>();
+    /**
+     * The percentiles used for robust estimations: 15.9%, median and 84.1%,
+     * i.e. median and median -/+ one standard deviation for a normal
+     * distribution.
+     */
+    private static final double[] ROBUST_PERCENTILES = {0.159, 0.5, 0.841};
 
     /**
      * Returns n! as a long. Returns null if the capacity of a long is not
@@ -118,7 +123,7 @@ public class BasicMathFunctions {
             if (kInN == null || nMinK == null) {
                 return null;
             } else {
-                return kInN / kInN;
+                return kInN / nMinK;
             }
         } else if (k == n) {
             return (long) 1;
@@ -128,22 +133,19 @@ public class BasicMathFunctions {
     }
 
     /**
-     * Method to estimate the median.
+     * The maximal recursion depth factor of the introselect before falling
+     * back to sorting.
+     */
+    private static final int INTROSELECT_DEPTH_FACTOR = 2;
+
+    /**
+     * Method to estimate the median. The input array is not modified.
      *
      * @param ratios array of double
      * @return median of the input
      */
     public static double median(double[] ratios) {
-        Arrays.sort(ratios);
-        int length = ratios.length;
-        if (ratios.length == 1) {
-            return ratios[0];
-        }
-        if (length % 2 == 1) {
-            return ratios[(length - 1) / 2];
-        } else {
-            return (ratios[length / 2] + ratios[(length) / 2 - 1]) / 2;
-        }
+        return percentile(ratios, 0.5);
     }
 
     /**
@@ -168,7 +170,10 @@ public class BasicMathFunctions {
 
     /**
      * Returns the desired percentile in a given array of double. If the
-     * percentile is between two values a linear interpolation is done.
+     * percentile is between two values a linear interpolation is done. The
+     * percentile is selected in a copy of the input in linear time, the input
+     * array is not modified. Note: When calculating multiple percentiles on
+     * the same array, it is advised to use percentiles.
      *
      * @param input the input array
      * @param percentile the desired percentile. 0.01 returns the first
@@ -177,10 +182,106 @@ public class BasicMathFunctions {
      * @return the desired percentile
      */
     public static double percentile(double[] input, double percentile) {
+        if (input == null) {
+            throw new IllegalArgumentException("Attempting to estimate the percentile of a null object.");
+        }
+        return percentileInPlace(Arrays.copyOf(input, input.length), percentile);
+    }
+
+    /**
+     * Returns the desired percentile in a given array of double. If the
+     * percentile is between two values a linear interpolation is done. The
+     * percentile is selected in linear time by partially reordering the given
+     * array.
+     *
+     * @param input the input array, will be reordered
+     * @param percentile the desired percentile. 0.01 returns the first
+     * percentile. 0.5 returns the median.
+     *
+     * @return the desired percentile
+     */
+    public static double percentileInPlace(double[] input, double percentile) {
+        if (percentile < 0 || percentile > 1) {
+            throw new IllegalArgumentException("Incorrect input for percentile: " + percentile + ". Input must be between 0 and 1.");
+        }
+        int length = input.length;
+        if (length == 0) {
+            throw new IllegalArgumentException("Attempting to estimate the percentile of an empty list.");
+        }
+        if (length == 1) {
+            return input[0];
+        }
+        double indexDouble = percentile * (length - 1);
+        int index = (int) (indexDouble);
+        double valueAtIndex = select(input, index);
+        double rest = indexDouble - index;
+        if (index == length - 1 || rest == 0) {
+            return valueAtIndex;
+        }
+        // after selection the next value is the minimum of the upper part
+        double nextValue = input[index + 1];
+        for (int i = index + 2; i < length; i++) {
+            if (input[i] < nextValue) {
+                nextValue = input[i];
+            }
+        }
+        return valueAtIndex + rest * (nextValue - valueAtIndex);
+    }
+
+    /**
+     * Returns the desired percentiles in a given array of double. If a
+     * percentile is between two values a linear interpolation is done. A
+     * sorted copy of the input is made once for all percentiles, the input
+     * array is not modified.
+     *
+     * @param input the input array
+     * @param percentiles the desired percentiles. 0.01 returns the first
+     * percentile. 0.5 returns the median.
+     *
+     * @return the desired percentiles in the order of the query
+     */
+    public static double[] percentiles(double[] input, double[] percentiles) {
+        if (input == null) {
+            throw new IllegalArgumentException("Attempting to estimate the percentile of a null object.");
+        }
+        double[] sortedInput = Arrays.copyOf(input, input.length);
+        Arrays.sort(sortedInput);
+        double[] result = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            result[i] = percentileSorted(sortedInput, percentiles[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the desired percentiles in a given list of double. If a
+     * percentile is between two values a linear interpolation is done. A
+     * sorted primitive copy of the input is made once for all percentiles.
+     *
+     * @param input the input list
+     * @param percentiles the desired percentiles. 0.01 returns the first
+     * percentile. 0.5 returns the median.
+     *
+     * @return the desired percentiles in the order of the query
+     */
+    public static double[] percentiles(ArrayList<Double> input, double[] percentiles) {
+        return percentiles(toArray(input), percentiles);
+    }
+
+    /**
+     * Returns the desired percentile in a given sorted array of double. If the
+     * percentile is between two values a linear interpolation is done.
+     *
+     * @param input the input array, sorted in ascending order
+     * @param percentile the desired percentile. 0.01 returns the first
+     * percentile. 0.5 returns the median.
+     *
+     * @return the desired percentile
+     */
+    public static double percentileSorted(double[] input, double percentile) {
         if (percentile < 0 || percentile > 1) {
             throw new IllegalArgumentException("Incorrect input for percentile: " + percentile + ". Input must be between 0 and 1.");
         }
-        Arrays.sort(input);
         int length = input.length;
         if (length == 0) {
             throw new IllegalArgumentException("Attempting to estimate the percentile of an empty list.");
@@ -192,17 +293,113 @@ public class BasicMathFunctions {
         int index = (int) (indexDouble);
         double valueAtIndex = input[index];
         double rest = indexDouble - index;
-        if (index == input.length - 1 || rest == 0) {
+        if (index == length - 1 || rest == 0) {
             return valueAtIndex;
         }
         return valueAtIndex + rest * (input[index + 1] - valueAtIndex);
     }
 
+    /**
+     * Returns the k-th smallest value of the given array, 0 for the minimum.
+     * The array is partially reordered so that the k-th smallest value is at
+     * index k, smaller or equal values before it and greater or equal values
+     * after. Introselect: quickselect with median of three pivots, falling
+     * back to sorting the remaining range when the recursion gets too deep, so
+     * the complexity is linear on average and n log(n) in the worst case.
+     *
+     * @param input the input array, will be reordered
+     * @param k the rank of the desired value
+     *
+     * @return the k-th smallest value
+     */
+    public static double select(double[] input, int k) {
+        if (k < 0 || k >= input.length) {
+            throw new IllegalArgumentException("Rank " + k + " out of bounds for an array of size " + input.length + ".");
+        }
+        int left = 0;
+        int right = input.length - 1;
+        int maxDepth = INTROSELECT_DEPTH_FACTOR * (32 - Integer.numberOfLeadingZeros(input.length));
+        while (right > left) {
+            if (maxDepth-- == 0) {
+                Arrays.sort(input, left, right + 1);
+                break;
+            }
+            // median of three pivot
+            int middle = (left + right) >>> 1;
+            if (input[middle] < input[left]) {
+                swap(input, left, middle);
+            }
+            if (input[right] < input[left]) {
+                swap(input, left, right);
+            }
+            if (input[right] < input[middle]) {
+                swap(input, middle, right);
+            }
+            double pivot = input[middle];
+            // Hoare partition
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (input[i] < pivot) {
+                    i++;
+                }
+                while (input[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(input, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                break;
+            }
+        }
+        return input[k];
+    }
+
+    /**
+     * Swaps two elements of an array.
+     *
+     * @param array the array
+     * @param i the index of the first element
+     * @param j the index of the second element
+     */
+    private static void swap(double[] array, int i, int j) {
+        double temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    /**
+     * Returns the values of the given list in an array.
+     *
+     * @param input the input list
+     *
+     * @return an array containing the values of the list
+     */
+    public static double[] toArray(ArrayList<Double> input) {
+        if (input == null) {
+            throw new IllegalArgumentException("Attempting to convert a null object.");
+        }
+        double[] result = new double[input.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = input.get(i);
+        }
+        return result;
+    }
+
     /**
      * Returns the desired percentile in a given list of double. If the
-     * percentile is between two values a linear interpolation is done. Note:
-     * When calculating multiple percentiles on the same list, it is advised to
-     * sort it and use percentileSorted.
+     * percentile is between two values a linear interpolation is done. The
+     * percentile is selected in a primitive copy of the list in linear time.
+     * Note: When calculating multiple percentiles on the same list, it is
+     * advised to use percentiles.
      *
      * @param input the input list
      * @param percentile the desired percentile. 0.01 returns the first
@@ -218,9 +415,7 @@ public class BasicMathFunctions {
         if (length == 0) {
             throw new IllegalArgumentException("Attempting to estimate the percentile of an empty list.");
         }
-        ArrayList<Double> sortedInput = new ArrayList<Double>(input);
-        Collections.sort(sortedInput);
-        return percentileSorted(sortedInput, percentile);
+        return percentileInPlace(toArray(input), percentile);
     }
 
     /**
@@ -270,7 +465,7 @@ public class BasicMathFunctions {
         for (int i = 0; i < ratios.length; i++) {
             deviations[i] = Math.abs(ratios[i] - med);
         }
-        return median(deviations);
+        return percentileInPlace(deviations, 0.5);
     }
 
     /**
@@ -280,12 +475,12 @@ public class BasicMathFunctions {
      * @return the mad of the input
      */
     public static double mad(ArrayList<Double> ratios) {
-        double[] deviations = new double[ratios.size()];
-        double med = median(ratios);
-        for (int i = 0; i < ratios.size(); i++) {
-            deviations[i] = Math.abs(ratios.get(i) - med);
+        double[] deviations = toArray(ratios);
+        double med = percentile(deviations, 0.5);
+        for (int i = 0; i < deviations.length; i++) {
+            deviations[i] = Math.abs(deviations[i] - med);
         }
-        return median(deviations);
+        return percentileInPlace(deviations, 0.5);
     }
 
     /**
@@ -407,8 +602,10 @@ public class BasicMathFunctions {
         if (n <= 1) {
             throw new IllegalArgumentException("At least two values are required for the estimation of correlation factors (" + n + " elements).");
         }
-        double std1 = (percentile(series1, 0.841) - percentile(series1, 0.159)) / 2;
-        double std2 = (percentile(series2, 0.841) - percentile(series2, 0.159)) / 2;
+        double[] percentiles1 = percentiles(series1, ROBUST_PERCENTILES);
+        double[] percentiles2 = percentiles(series2, ROBUST_PERCENTILES);
+        double std1 = (percentiles1[2] - percentiles1[0]) / 2;
+        double std2 = (percentiles2[2] - percentiles2[0]) / 2;
         if (std1 == 0 && std2 == 0) {
             return 1;
         }
@@ -418,8 +615,8 @@ public class BasicMathFunctions {
         if (std2 == 0) {
             std2 = std1;
         }
-        double mean1 = median(series1);
-        double mean2 = median(series2);
+        double mean1 = percentiles1[1];
+        double mean2 = percentiles2[1];
         double corr = 0;
         for (int i = 0; i < n; i++) {
             corr += (series1.get(i) - mean1) * (series2.get(i) - mean2);
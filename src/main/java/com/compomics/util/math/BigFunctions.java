@@ -25,6 +25,20 @@ public class BigFunctions {
      * Cache for factorials.
      */
     private static HashMap<BigInteger, BigInteger> factorialsCache = new HashMap<BigInteger, BigInteger>(1000);
+    /**
+     * Decimal order of magnitude below which a positive number is safely
+     * within the range of normal doubles.
+     */
+    private static final int MAX_DOUBLE_MAGNITUDE = 307;
+    /**
+     * Absolute value below which the exponential of a number is safely within
+     * the range of normal doubles.
+     */
+    private static final double MAX_DOUBLE_EXP = 700;
+    /**
+     * The largest integer for which the log space functions are used.
+     */
+    private static final BigInteger MAX_LOG_SPACE = BigInteger.valueOf(Integer.MAX_VALUE);
 
     /**
      * Returns n! as BigInteger.
@@ -115,6 +129,71 @@ public class BigFunctions {
         }
     }
 
+    /**
+     * Returns the natural logarithm of n!. The log space computation of
+     * LogFunctions is used when its error bound satisfies the precision of the
+     * math context, the factorial is computed otherwise. Results are not
+     * rounded.
+     *
+     * @param n a given BigInteger
+     * @param mathContext the math context to use for the calculation
+     *
+     * @return the natural logarithm of n!
+     */
+    public static BigDecimal lnFactorial(BigInteger n, MathContext mathContext) {
+        if (n.compareTo(BigInteger.ONE) != 1) {
+            return ln(new BigDecimal(factorial(n)), mathContext);
+        }
+        if (n.compareTo(MAX_LOG_SPACE) != 1 && isLogSpacePrecise(LogFunctions.LOG_FACTORIAL_RELATIVE_ERROR, mathContext)) {
+            return new BigDecimal(LogFunctions.logFactorial(n.intValue()));
+        }
+        return ln(new BigDecimal(factorial(n)), mathContext);
+    }
+
+    /**
+     * Returns the natural logarithm of the number of k-combinations in a set
+     * of n elements. The log space computation of LogFunctions is used when its
+     * error bound satisfies the precision of the math context, the number of
+     * combinations is computed otherwise. Results are not rounded.
+     *
+     * @param k the number of k-combinations
+     * @param n the number of elements
+     * @param mathContext the math context to use for the calculation
+     *
+     * @return the natural logarithm of the number of k-combinations in a set of
+     * n elements
+     */
+    public static BigDecimal lnCombination(BigInteger k, BigInteger n, MathContext mathContext) {
+        if (k.signum() == 0 || k.compareTo(n) == 0) {
+            return BigDecimal.ZERO;
+        }
+        if (n.compareTo(MAX_LOG_SPACE) != 1 && k.signum() == 1 && k.compareTo(n) == -1) {
+            int kInt = k.intValue();
+            int nInt = n.intValue();
+            double logCombination = LogFunctions.logCombination(kInt, nInt);
+            double relativeError = LogFunctions.getLogCombinationError(kInt, nInt) / logCombination;
+            if (isLogSpacePrecise(relativeError, mathContext)) {
+                return new BigDecimal(logCombination);
+            }
+        }
+        return ln(new BigDecimal(getCombination(k, n)), mathContext);
+    }
+
+    /**
+     * Indicates whether a result with the given relative error satisfies the
+     * precision of the given math context, with one order of magnitude as
+     * margin.
+     *
+     * @param relativeError the relative error of the result
+     * @param mathContext the math context
+     *
+     * @return a boolean indicating whether the precision is sufficient
+     */
+    private static boolean isLogSpacePrecise(double relativeError, MathContext mathContext) {
+        int precision = mathContext.getPrecision();
+        return precision > 0 && relativeError < FastMath.pow(10, -precision - 1);
+    }
+
     /**
      * Returns the natural logarithm of a big decimal. FastMath method is used
      * when possible. Results are not rounded.
@@ -138,7 +217,11 @@ public class BigFunctions {
         int precision = mathContext.getPrecision();
         boolean inRange = false;
         double deltaInf = FastMath.pow(10, -precision - 1); // one order of magnitude as margin
-        if (precision < 300) {
+        int magnitude = bigDecimal.precision() - bigDecimal.scale() - 1;
+        if (precision >= 2 && precision < 300 && magnitude > -MAX_DOUBLE_MAGNITUDE && magnitude < MAX_DOUBLE_MAGNITUDE) {
+            // well within the range of doubles, avoid building the bounds
+            inRange = true;
+        } else if (precision < 300) {
             double deltaSup = FastMath.pow(10, -precision + 1);
             // try to find the range where FastMath methods can be used
             if (bigDecimal.compareTo(BigDecimal.ONE) == 1) {
@@ -179,14 +262,10 @@ public class BigFunctions {
             // ln(x) = -ln(1/x)
             return lnBD(BigDecimal.ONE.divide(bigDecimal, mathContext), mathContext).negate();
         } else if (bigDecimal.compareTo(BigDecimal.TEN) == 1) {
-            // ln(x) = 10 + ln(x/10)
-            int k = -bigDecimal.scale();
-            BigDecimal reducedDecimal = bigDecimal.movePointLeft(k);
-            while (reducedDecimal.compareTo(BigDecimal.TEN) == 1) {
-                reducedDecimal = reducedDecimal.movePointLeft(1);
-                k++;
-            }
+            // ln(x) = k.ln(10) + ln(x/10^k) where k is the decimal order of magnitude of x
+            int k = bigDecimal.precision() - bigDecimal.scale() - 1;
             MathContext lnMathContext = new MathContext(mathContext.getPrecision() + 1, mathContext.getRoundingMode());
+            BigDecimal reducedDecimal = bigDecimal.movePointLeft(k).round(lnMathContext);
             BigDecimal reducedLog = lnBD(reducedDecimal, lnMathContext);
             int precisionIncrease = ((int) FastMath.log10((double) k)) + 1;
             int lnTenPrecisionNeeded = mathContext.getPrecision() + precisionIncrease;
@@ -266,7 +345,10 @@ public class BigFunctions {
         int precision = mathContext.getPrecision();
         boolean inRange = false;
         double deltaInf = FastMath.pow(10, -precision - 1);
-        if (precision < 300) {
+        if (precision >= 2 && precision < 300 && Math.abs(bigDecimal.doubleValue()) < MAX_DOUBLE_EXP) {
+            // well within the range of doubles, avoid building the bounds
+            inRange = true;
+        } else if (precision < 300) {
             double deltaSup = FastMath.pow(10, -precision + 1);
             // try to find the range where FastMath methods can be used
             if (bigDecimal.compareTo(BigDecimal.ZERO) == 1) {
@@ -0,0 +1,149 @@
+package com.compomics.util.math;
+
+/**
+ * Fast Fourier transform of arrays of double and convolution of real series.
+ * The transform is the iterative radix-2 Cooley-Tukey algorithm working in
+ * place on the real and imaginary parts.
+ *
+ * @author Marc Vaudel
+ */
+public class FastFourierTransform {
+
+    /**
+     * Empty default constructor.
+     */
+    public FastFourierTransform() {
+    }
+
+    /**
+     * Returns the smallest power of two greater or equal to the given number.
+     *
+     * @param n the number
+     *
+     * @return the smallest power of two greater or equal to the given number
+     */
+    public static int getPowerOfTwo(int n) {
+        if (n > 1 << 30) {
+            throw new IllegalArgumentException("Array size " + n + " too large for a fast Fourier transform.");
+        }
+        int result = 1;
+        while (result < n) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Computes in place the discrete Fourier transform of the given complex
+     * series. The inverse transform is scaled by 1/n so that the inverse
+     * transform of the transform is the original series.
+     *
+     * @param real the real parts, the length must be a power of two
+     * @param imaginary the imaginary parts, same length as the real parts
+     * @param inverse if true the inverse transform is computed
+     */
+    public static void transform(double[] real, double[] imaginary, boolean inverse) {
+
+        int n = real.length;
+        if (imaginary.length != n) {
+            throw new IllegalArgumentException("Real and imaginary parts must have the same length.");
+        }
+        if (Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("The length of the series (" + n + ") must be a power of two.");
+        }
+        if (n == 1) {
+            return;
+        }
+
+        // bit reversal permutation
+        int shift = Integer.numberOfLeadingZeros(n) + 1;
+        for (int i = 0; i < n; i++) {
+            int j = Integer.reverse(i) >>> shift;
+            if (j > i) {
+                double temp = real[i];
+                real[i] = real[j];
+                real[j] = temp;
+                temp = imaginary[i];
+                imaginary[i] = imaginary[j];
+                imaginary[j] = temp;
+            }
+        }
+
+        // twiddle factors
+        int halfN = n / 2;
+        double[] cos = new double[halfN];
+        double[] sin = new double[halfN];
+        double sign = inverse ? 1 : -1;
+        for (int i = 0; i < halfN; i++) {
+            double angle = 2 * Math.PI * i / n;
+            cos[i] = Math.cos(angle);
+            sin[i] = sign * Math.sin(angle);
+        }
+
+        // butterflies
+        for (int size = 2; size <= n; size <<= 1) {
+            int halfSize = size / 2;
+            int step = n / size;
+            for (int i = 0; i < n; i += size) {
+                for (int j = 0, k = 0; j < halfSize; j++, k += step) {
+                    int l = i + j + halfSize;
+                    double tReal = real[l] * cos[k] - imaginary[l] * sin[k];
+                    double tImaginary = real[l] * sin[k] + imaginary[l] * cos[k];
+                    real[l] = real[i + j] - tReal;
+                    imaginary[l] = imaginary[i + j] - tImaginary;
+                    real[i + j] += tReal;
+                    imaginary[i + j] += tImaginary;
+                }
+            }
+        }
+
+        if (inverse) {
+            for (int i = 0; i < n; i++) {
+                real[i] /= n;
+                imaginary[i] /= n;
+            }
+        }
+    }
+
+    /**
+     * Returns the linear convolution of two real series: result[i + j] +=
+     * signal[i] * kernel[j]. The convolution is computed using fast Fourier
+     * transforms in O(n log(n)).
+     *
+     * @param signal the signal
+     * @param kernel the kernel
+     *
+     * @return the convolution of the signal and the kernel, of length
+     * signal.length + kernel.length - 1
+     */
+    public static double[] convolve(double[] signal, double[] kernel) {
+
+        int resultLength = signal.length + kernel.length - 1;
+        int n = getPowerOfTwo(resultLength);
+
+        // both real series are transformed at once as the real and imaginary parts of a complex series
+        double[] real = new double[n];
+        double[] imaginary = new double[n];
+        System.arraycopy(signal, 0, real, 0, signal.length);
+        System.arraycopy(kernel, 0, imaginary, 0, kernel.length);
+        transform(real, imaginary, false);
+
+        // the product of the two transforms is obtained from the conjugate symmetry of real transforms
+        double[] productReal = new double[n];
+        double[] productImaginary = new double[n];
+        for (int i = 0; i < n; i++) {
+            int j = (n - i) & (n - 1);
+            double aReal = (real[i] + real[j]) / 2;
+            double aImaginary = (imaginary[i] - imaginary[j]) / 2;
+            double bReal = (imaginary[i] + imaginary[j]) / 2;
+            double bImaginary = (real[j] - real[i]) / 2;
+            productReal[i] = aReal * bReal - aImaginary * bImaginary;
+            productImaginary[i] = aReal * bImaginary + aImaginary * bReal;
+        }
+        transform(productReal, productImaginary, true);
+
+        double[] result = new double[resultLength];
+        System.arraycopy(productReal, 0, result, 0, resultLength);
+        return result;
+    }
+}
@@ -0,0 +1,211 @@
+package com.compomics.util.math;
+
+import org.apache.commons.math.special.Gamma;
+
+/**
+ * Functions operating in log space on doubles. They allow computing
+ * combinatorial and binomial probabilities far below the smallest double
+ * without resorting to BigDecimal. The natural logarithms of the factorials
+ * up to LOG_FACTORIAL_TABLE_SIZE - 1 are precomputed, larger factorials are
+ * obtained from the Stirling series. The relative error of the log factorials
+ * is below LOG_FACTORIAL_RELATIVE_ERROR, see BigFunctions for results at
+ * higher precision.
+ *
+ * @author Marc Vaudel
+ */
+public class LogFunctions {
+
+    /**
+     * The number of log factorials precomputed.
+     */
+    public static final int LOG_FACTORIAL_TABLE_SIZE = 4096;
+    /**
+     * Bound on the relative error of the log factorials, a few ulps.
+     */
+    public static final double LOG_FACTORIAL_RELATIVE_ERROR = 1e-15;
+    /**
+     * Half of the log of 2 pi.
+     */
+    private static final double HALF_LOG_TWO_PI = 0.5 * Math.log(2 * Math.PI);
+    /**
+     * The natural logarithms of the factorials.
+     */
+    private static final double[] logFactorials = new double[LOG_FACTORIAL_TABLE_SIZE];
+
+    static {
+        // compensated summation to keep the error of the table within a few ulps
+        double sum = 0;
+        double compensation = 0;
+        for (int i = 2; i < LOG_FACTORIAL_TABLE_SIZE; i++) {
+            double term = Math.log(i) - compensation;
+            double newSum = sum + term;
+            compensation = (newSum - sum) - term;
+            sum = newSum;
+            logFactorials[i] = sum;
+        }
+    }
+
+    /**
+     * Empty default constructor.
+     */
+    public LogFunctions() {
+    }
+
+    /**
+     * Returns the natural logarithm of n!.
+     *
+     * @param n a given integer
+     *
+     * @return the natural logarithm of n!
+     */
+    public static double logFactorial(int n) {
+        if (n < 0) {
+            throw new ArithmeticException("Attempting to calculate the factorial of a negative number.");
+        }
+        if (n < LOG_FACTORIAL_TABLE_SIZE) {
+            return logFactorials[n];
+        }
+        // Stirling series of ln(Gamma(n+1)), the first neglected term is below 1e-25 for n above the table
+        double x = n + 1.0;
+        double inverse = 1 / x;
+        double inverse2 = inverse * inverse;
+        double series = inverse * (1.0 / 12 - inverse2 * (1.0 / 360 - inverse2 * (1.0 / 1260 - inverse2 / 1680)));
+        return (x - 0.5) * Math.log(x) - x + HALF_LOG_TWO_PI + series;
+    }
+
+    /**
+     * Returns the natural logarithm of n!/k!.
+     *
+     * @param n a given integer
+     * @param k a given integer
+     *
+     * @return the natural logarithm of n!/k!
+     */
+    public static double logFactorial(int n, int k) {
+        if (n < k) {
+            throw new ArithmeticException("n < k in n!/k!.");
+        }
+        return logFactorial(n) - logFactorial(k);
+    }
+
+    /**
+     * Returns the natural logarithm of the gamma function. Integer arguments
+     * are taken from the log factorials.
+     *
+     * @param x a positive number
+     *
+     * @return the natural logarithm of gamma(x)
+     */
+    public static double logGamma(double x) {
+        if (x <= 0 || Double.isNaN(x)) {
+            throw new ArithmeticException("Attempting to calculate the gamma function of " + x + ".");
+        }
+        if (x == Math.rint(x) && x <= Integer.MAX_VALUE) {
+            return logFactorial((int) x - 1);
+        }
+        return Gamma.logGamma(x);
+    }
+
+    /**
+     * Returns the natural logarithm of the number of k-combinations in a set
+     * of n elements.
+     *
+     * @param k the number of k-combinations
+     * @param n the number of elements
+     *
+     * @return the natural logarithm of the number of k-combinations in a set of
+     * n elements
+     */
+    public static double logCombination(int k, int n) {
+        if (k < 0 || k > n) {
+            throw new IllegalArgumentException("Attempting to calculate the number of " + k + "-combinations in a set of " + n + " elements.");
+        }
+        if (k == 0 || k == n) {
+            return 0;
+        }
+        return logFactorial(n) - logFactorial(k) - logFactorial(n - k);
+    }
+
+    /**
+     * Returns a bound on the absolute error of logCombination.
+     *
+     * @param k the number of k-combinations
+     * @param n the number of elements
+     *
+     * @return a bound on the absolute error of logCombination
+     */
+    public static double getLogCombinationError(int k, int n) {
+        if (k == 0 || k == n) {
+            return 0;
+        }
+        // the three log factorials are bounded by the log factorial of n, plus one rounding of the difference
+        return (3 * LOG_FACTORIAL_RELATIVE_ERROR + Math.ulp(1.0)) * logFactorial(n);
+    }
+
+    /**
+     * Returns the natural logarithm of the probability of observing k
+     * successes in n trials of probability of success p.
+     *
+     * @param k the number of successes
+     * @param n the number of trials
+     * @param p the probability of success of each trial
+     *
+     * @return the natural logarithm of the binomial probability
+     */
+    public static double logBinomialProbability(int k, int n, double p) {
+        if (p < 0 || p > 1) {
+            throw new IllegalArgumentException("Probability " + p + " outside [0, 1].");
+        }
+        if (k < 0 || k > n) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (p == 0) {
+            return k == 0 ? 0 : Double.NEGATIVE_INFINITY;
+        }
+        if (p == 1) {
+            return k == n ? 0 : Double.NEGATIVE_INFINITY;
+        }
+        return logCombination(k, n) + k * Math.log(p) + (n - k) * Math.log1p(-p);
+    }
+
+    /**
+     * Returns ln(exp(a) + exp(b)) without overflow or underflow.
+     *
+     * @param a the log of the first term
+     * @param b the log of the second term
+     *
+     * @return the log of the sum of the exponentials
+     */
+    public static double logSumExp(double a, double b) {
+        double max = Math.max(a, b);
+        if (max == Double.NEGATIVE_INFINITY) {
+            return max;
+        }
+        double min = Math.min(a, b);
+        return max + Math.log1p(Math.exp(min - max));
+    }
+
+    /**
+     * Returns ln(sum(exp(x_i))) without overflow or underflow.
+     *
+     * @param logValues the logs of the terms to sum
+     *
+     * @return the log of the sum of the exponentials
+     */
+    public static double logSumExp(double[] logValues) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (double x : logValues) {
+            if (x > max) {
+                max = x;
+            }
+        }
+        if (max == Double.NEGATIVE_INFINITY || max == Double.POSITIVE_INFINITY) {
+            return max;
+        }
+        double sum = 0;
+        for (double x : logValues) {
+            sum += Math.exp(x - max);
+        }
+        return max + Math.log(sum);
+    }
+}
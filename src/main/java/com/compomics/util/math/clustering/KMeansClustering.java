@@ -10,6 +10,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import no.uib.jsparklines.renderers.util.Util;
 
 /**
@@ -19,6 +24,11 @@ import no.uib.jsparklines.renderers.util.Util;
  */
 public class KMeansClustering {
 
+    /**
+     * The default tolerance on the shift of the centroids used to test the
+     * convergence.
+     */
+    public static final double DEFAULT_TOLERANCE = 1e-6;
     /**
      * The number of clusters.
      */
@@ -32,17 +42,19 @@ public class KMeansClustering {
      */
     private final int NUM_VALUES;
     /**
-     * The sample data.
+     * The sample data in a flat array, the values of sample i are stored from
+     * index i * NUM_VALUES.
      */
-    private final double SAMPLES[][];
+    private final double SAMPLES[];
     /**
      * The sample identifiers.
      */
     private final String SAMPLE_IDS[];
     /**
-     * The centroids.
+     * The centroids in a flat array, the values of centroid c are stored from
+     * index c * NUM_VALUES.
      */
-    private double centroids[][];
+    private double centroids[];
     /**
      * The current cluster each sample belongs to.
      */
@@ -51,6 +63,23 @@ public class KMeansClustering {
      * The maximum number of iteration.
      */
     private int maxIterations = 500; // @TODO: what should the default be..?
+    /**
+     * The clustering stops when no centroid moves by more than this distance.
+     */
+    private double tolerance = DEFAULT_TOLERANCE;
+    /**
+     * The number of samples per iteration in mini-batch mode, 0 to use all
+     * samples at every iteration.
+     */
+    private int batchSize = 0;
+    /**
+     * The number of threads to use.
+     */
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+    /**
+     * The random number generator used for the seeding and the mini-batches.
+     */
+    private Random random = new Random();
 
     /**
      * Constructor.
@@ -61,11 +90,11 @@ public class KMeansClustering {
      */
     public KMeansClustering(double samples[][], String[] sampleIds, int numClusters) {
 
-        SAMPLES = samples;
         SAMPLE_IDS = sampleIds;
         NUM_SAMPLES = samples.length;
         NUM_VALUES = samples[0].length;
         NUM_CLUSTERS = numClusters;
+        SAMPLES = flatten(samples);
 
         if (NUM_CLUSTERS > NUM_SAMPLES) {
             throw new IllegalArgumentException("The number of clusters cannot be bigger than the number of samples! #clusters: " + NUM_CLUSTERS + ", #samples: " + NUM_SAMPLES);
@@ -84,11 +113,12 @@ public class KMeansClustering {
 
         SampleData sampleData = readDataFromFile(dataFile);
 
-        SAMPLES = sampleData.getSamples();
+        double[][] samples = sampleData.getSamples();
         SAMPLE_IDS = sampleData.getSampleIds();
-        NUM_SAMPLES = SAMPLES.length;
-        NUM_VALUES = SAMPLES[0].length;
+        NUM_SAMPLES = samples.length;
+        NUM_VALUES = samples[0].length;
         NUM_CLUSTERS = numClusters;
+        SAMPLES = flatten(samples);
 
         if (NUM_CLUSTERS > NUM_SAMPLES) {
             throw new IllegalArgumentException("The number of clusters cannot be bigger than the number of samples! #clusters: " + NUM_CLUSTERS + ", #samples: " + NUM_SAMPLES);
@@ -98,7 +128,40 @@ public class KMeansClustering {
     }
 
     /**
-     * Set up the empty clusters and set the initial centroids.
+     * Copies the samples in a flat array.
+     *
+     * @param samples the samples
+     *
+     * @return the samples in a flat array
+     */
+    private static double[] flatten(double[][] samples) {
+        int nValues = samples[0].length;
+        double[] result = new double[samples.length * nValues];
+        for (int i = 0; i < samples.length; i++) {
+            if (samples[i].length != nValues) {
+                throw new IllegalArgumentException("All samples must have the same number of values.");
+            }
+            System.arraycopy(samples[i], 0, result, i * nValues, nValues);
+        }
+        return result;
+    }
+
+    /**
+     * Sets the seed of the random number generator and draws new initial
+     * centroids, making the clustering reproducible.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
+        initialize();
+    }
+
+    /**
+     * Set up the empty clusters and set the initial centroids using the
+     * k-means++ seeding: every new centroid is a sample drawn with a
+     * probability proportional to its squared distance to the closest centroid
+     * already selected.
      */
     private void initialize() {
 
@@ -106,147 +169,370 @@ public class KMeansClustering {
         clusters = new int[NUM_SAMPLES];
 
         // add the initial centroids
-        centroids = new double[NUM_CLUSTERS][NUM_VALUES];
+        centroids = new double[NUM_CLUSTERS * NUM_VALUES];
+
+        int firstSample = random.nextInt(NUM_SAMPLES);
+        System.arraycopy(SAMPLES, firstSample * NUM_VALUES, centroids, 0, NUM_VALUES);
+
+        // the squared distance of every sample to the closest centroid
+        double[] distances = new double[NUM_SAMPLES];
+        for (int sampleNumber = 0; sampleNumber < NUM_SAMPLES; sampleNumber++) {
+            distances[sampleNumber] = distSampleToCentroid(sampleNumber, 0);
+        }
+
+        for (int centroidCounter = 1; centroidCounter < NUM_CLUSTERS; centroidCounter++) {
+
+            double sum = 0;
+            for (double distance : distances) {
+                sum += distance;
+            }
 
-        // set the initial random centroids
-        Random rand = new Random();
-        for (int centroidCounter = 0; centroidCounter < NUM_CLUSTERS; centroidCounter++) {
-            int randomSample = rand.nextInt(NUM_SAMPLES);
-            System.arraycopy(SAMPLES[randomSample], 0, centroids[centroidCounter], 0, NUM_VALUES);
+            int selectedSample = NUM_SAMPLES - 1;
+            if (sum > 0) {
+                double target = random.nextDouble() * sum;
+                double cumulative = 0;
+                for (int sampleNumber = 0; sampleNumber < NUM_SAMPLES; sampleNumber++) {
+                    cumulative += distances[sampleNumber];
+                    if (cumulative > target) {
+                        selectedSample = sampleNumber;
+                        break;
+                    }
+                }
+            } else {
+                // all samples are on a centroid already
+                selectedSample = random.nextInt(NUM_SAMPLES);
+            }
+            System.arraycopy(SAMPLES, selectedSample * NUM_VALUES, centroids, centroidCounter * NUM_VALUES, NUM_VALUES);
+
+            for (int sampleNumber = 0; sampleNumber < NUM_SAMPLES; sampleNumber++) {
+                double distance = distSampleToCentroid(sampleNumber, centroidCounter);
+                if (distance < distances[sampleNumber]) {
+                    distances[sampleNumber] = distance;
+                }
+            }
         }
     }
 
     /**
-     * Run the k-means clustering.
+     * Run the k-means clustering. If a batch size is set and smaller than the
+     * number of samples, the mini-batch algorithm is used, otherwise the
+     * algorithm of Lloyd with assignment and update steps distributed across
+     * threads. The iterations stop when no centroid moves by more than the
+     * tolerance.
      *
-     * @param waitingHandler the waiting handler
+     * @param waitingHandler the waiting handler (can be null)
      */
     public void kMeanCluster(WaitingHandler waitingHandler) {
 
-        boolean clustersChanged = true;
+        ExecutorService pool = nThreads > 1 ? Executors.newFixedThreadPool(nThreads) : null;
+
+        try {
+            if (batchSize > 0 && batchSize < NUM_SAMPLES) {
+                miniBatchCluster(waitingHandler);
+                assignToClusters(pool);
+            } else {
+                lloydCluster(pool, waitingHandler);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Runs the algorithm of Lloyd. When the iterations stop before
+     * convergence, the centroids are updated from the last assignment so that
+     * they remain the means of their clusters.
+     *
+     * @param pool the pool to use, null to run in the current thread
+     * @param waitingHandler the waiting handler (can be null)
+     */
+    private void lloydCluster(ExecutorService pool, WaitingHandler waitingHandler) {
 
         // asign the samples to the clusters
-        assignToClusters();
+        Partition partition = assignToClusters(pool);
 
         int iterationCounter = 0;
+        boolean converged = false;
 
-        // iterate until the clustering no longer changes
-        while (clustersChanged && iterationCounter < maxIterations && !waitingHandler.isRunCanceled()) {
+        // iterate until the centroids no longer move
+        while (iterationCounter < maxIterations && (waitingHandler == null || !waitingHandler.isRunCanceled())) {
 
             // calculate the new centroids
-            calculateNewCentroids();
+            double shift = calculateNewCentroids(partition);
+
+            if (shift <= tolerance * tolerance) {
+                converged = true;
+                break;
+            }
 
             // assign the samples to the new centroids
-            clustersChanged = assignToClusters();
+            partition = assignToClusters(pool);
 
             iterationCounter++;
         }
+
+        if (!converged) {
+            calculateNewCentroids(partition);
+        }
     }
 
     /**
-     * Assign the samples to the clusters.
+     * Runs the mini-batch k-means algorithm of Sculley: at every iteration a
+     * random batch of samples is assigned to the closest centroids, and every
+     * centroid is moved towards its samples with a learning rate decreasing
+     * with the number of samples it received so far.
      *
-     * @return true if the clustering changed
+     * @param waitingHandler the waiting handler (can be null)
      */
-    private boolean assignToClusters() {
+    private void miniBatchCluster(WaitingHandler waitingHandler) {
 
-        boolean clustersChanged = false;
+        long[] centroidCounts = new long[NUM_CLUSTERS];
+        int[] batch = new int[batchSize];
+        int[] batchClusters = new int[batchSize];
+        double[] previousCentroids = new double[centroids.length];
 
-        for (int sampleNumber = 0; sampleNumber < NUM_SAMPLES; sampleNumber++) {
+        for (int iterationCounter = 0; iterationCounter < maxIterations && (waitingHandler == null || !waitingHandler.isRunCanceled()); iterationCounter++) {
 
-            double minimumValue = Double.MAX_VALUE;
-            int selectedCentroidNumber = 0;
+            System.arraycopy(centroids, 0, previousCentroids, 0, centroids.length);
 
-            // find the closest cluster
-            for (int centroidNumber = 0; centroidNumber < NUM_CLUSTERS; centroidNumber++) {
-                double distance = distSampleToCentroid(sampleNumber, centroidNumber);
-                if (distance < minimumValue) {
-                    minimumValue = distance;
-                    selectedCentroidNumber = centroidNumber;
-                }
+            for (int i = 0; i < batchSize; i++) {
+                batch[i] = random.nextInt(NUM_SAMPLES);
+                batchClusters[i] = getClosestCentroid(batch[i]);
             }
 
-            // check if the sample's cluster assignment changed
-            if (clusters[sampleNumber] != selectedCentroidNumber) {
-                clustersChanged = true;
+            for (int i = 0; i < batchSize; i++) {
+                int centroidNumber = batchClusters[i];
+                double learningRate = 1.0 / ++centroidCounts[centroidNumber];
+                int centroidOffset = centroidNumber * NUM_VALUES;
+                int sampleOffset = batch[i] * NUM_VALUES;
+                for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
+                    centroids[centroidOffset + valueNumber] += learningRate * (SAMPLES[sampleOffset + valueNumber] - centroids[centroidOffset + valueNumber]);
+                }
             }
 
-            // add to the closest cluster
-            clusters[sampleNumber] = selectedCentroidNumber;
+            if (getMaxShift(previousCentroids) <= tolerance * tolerance) {
+                break;
+            }
         }
-
-        return clustersChanged;
     }
 
     /**
-     * Calculate new centroids.
+     * Returns the largest squared distance between the current centroids and
+     * the given centroids.
+     *
+     * @param previousCentroids the previous centroids
+     *
+     * @return the largest squared shift of a centroid
      */
-    private void calculateNewCentroids() {
+    private double getMaxShift(double[] previousCentroids) {
+        double maxShift = 0;
+        for (int centroidNumber = 0; centroidNumber < NUM_CLUSTERS; centroidNumber++) {
+            double shift = 0;
+            int offset = centroidNumber * NUM_VALUES;
+            for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
+                double delta = centroids[offset + valueNumber] - previousCentroids[offset + valueNumber];
+                shift += delta * delta;
+            }
+            if (shift > maxShift) {
+                maxShift = shift;
+            }
+        }
+        return maxShift;
+    }
 
-        // clear the centroids
-        clearCentroids();
+    /**
+     * Assign the samples to the clusters. The samples are divided in one range
+     * per thread, each range returning the sums of its samples per cluster.
+     *
+     * @param pool the pool to use, null to run in the current thread
+     *
+     * @return the sums of the samples per cluster
+     */
+    private Partition assignToClusters(ExecutorService pool) {
 
-        // calculate new centroids
-        for (int centroidNumber = 0; centroidNumber < NUM_CLUSTERS; centroidNumber++) {
+        if (pool == null) {
+            return new AssignmentTask(0, NUM_SAMPLES).call();
+        }
 
-            int totalInCluster = 0;
+        int rangeSize = (NUM_SAMPLES + nThreads - 1) / nThreads;
+        ArrayList<Future<Partition>> futures = new ArrayList<Future<Partition>>(nThreads);
+        for (int start = 0; start < NUM_SAMPLES; start += rangeSize) {
+            futures.add(pool.submit(new AssignmentTask(start, Math.min(NUM_SAMPLES, start + rangeSize))));
+        }
 
-            for (int sampleCounter = 0; sampleCounter < NUM_SAMPLES; sampleCounter++) {
-                if (clusters[sampleCounter] == centroidNumber) {
-                    for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
-                        centroids[centroidNumber][valueNumber] += SAMPLES[sampleCounter][valueNumber];
-                    }
-                    totalInCluster++;
+        Partition result = null;
+        try {
+            for (Future<Partition> future : futures) {
+                Partition partition = future.get();
+                if (result == null) {
+                    result = partition;
+                } else {
+                    result.merge(partition);
                 }
             }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("K-means clustering interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        return result;
+    }
 
-            if (totalInCluster > 0) {
-                for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
-                    centroids[centroidNumber][valueNumber] /= totalInCluster;
-                }
+    /**
+     * Returns the closest centroid to the given sample.
+     *
+     * @param sampleNumber the sample number
+     *
+     * @return the index of the closest centroid
+     */
+    private int getClosestCentroid(int sampleNumber) {
+
+        double minimumValue = Double.MAX_VALUE;
+        int selectedCentroidNumber = 0;
+
+        // find the closest cluster
+        for (int centroidNumber = 0; centroidNumber < NUM_CLUSTERS; centroidNumber++) {
+            double distance = distSampleToCentroid(sampleNumber, centroidNumber);
+            if (distance < minimumValue) {
+                minimumValue = distance;
+                selectedCentroidNumber = centroidNumber;
             }
         }
+
+        return selectedCentroidNumber;
     }
 
     /**
-     * Clear the centroids.
+     * Calculate new centroids from the sums of the samples per cluster. The
+     * centroids of empty clusters are not moved.
+     *
+     * @param partition the sums of the samples per cluster
+     *
+     * @return the largest squared shift of a centroid
      */
-    private void clearCentroids() {
+    private double calculateNewCentroids(Partition partition) {
+
+        double maxShift = 0;
+
         for (int centroidNumber = 0; centroidNumber < NUM_CLUSTERS; centroidNumber++) {
-            for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
-                centroids[centroidNumber][valueNumber] = 0.0;
+
+            int totalInCluster = partition.counts[centroidNumber];
+
+            if (totalInCluster > 0) {
+                double shift = 0;
+                int offset = centroidNumber * NUM_VALUES;
+                for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
+                    double newValue = partition.sums[offset + valueNumber] / totalInCluster;
+                    double delta = newValue - centroids[offset + valueNumber];
+                    shift += delta * delta;
+                    centroids[offset + valueNumber] = newValue;
+                }
+                if (shift > maxShift) {
+                    maxShift = shift;
+                }
             }
         }
+
+        return maxShift;
     }
 
     /**
-     * Calculate the Euclidean distance between a sample and a centroid.
+     * Calculate the squared Euclidean distance between a sample and a
+     * centroid.
      *
      * @param sampleNumber the sample number
      * @param centroidNumber the centroid number
-     * @return the Euclidean distance
+     * @return the squared Euclidean distance
      */
     private double distSampleToCentroid(int sampleNumber, int centroidNumber) {
         double distance = 0;
+        int sampleOffset = sampleNumber * NUM_VALUES;
+        int centroidOffset = centroidNumber * NUM_VALUES;
         for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
-            distance += Math.pow(SAMPLES[sampleNumber][valueNumber] - centroids[centroidNumber][valueNumber], 2);
+            double delta = SAMPLES[sampleOffset + valueNumber] - centroids[centroidOffset + valueNumber];
+            distance += delta * delta;
         }
-        return Math.sqrt(distance);
+        return distance;
     }
 
     /**
-     * Calculate the Euclidean distance between two samples.
-     *
-     * @param sampleNumber1 the samples number of the first sample
-     * @param sampleNumber2 the sample number of the second sample
-     * @return the Euclidean distance
+     * Task assigning a range of samples to the closest centroids and summing
+     * the samples per cluster.
      */
-    private double distSampleToSample(int sampleNumber1, int sampleNumber2) {
-        double distance = 0;
-        for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
-            distance += Math.pow(SAMPLES[sampleNumber1][valueNumber] - SAMPLES[sampleNumber2][valueNumber], 2);
+    private class AssignmentTask implements Callable<Partition> {
+
+        /**
+         * The first sample of the range.
+         */
+        private final int start;
+        /**
+         * The end of the range, exclusive.
+         */
+        private final int end;
+
+        /**
+         * Constructor.
+         *
+         * @param start the first sample of the range
+         * @param end the end of the range, exclusive
+         */
+        public AssignmentTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Partition call() {
+            Partition partition = new Partition();
+            for (int sampleNumber = start; sampleNumber < end; sampleNumber++) {
+                int centroidNumber = getClosestCentroid(sampleNumber);
+                clusters[sampleNumber] = centroidNumber;
+                partition.counts[centroidNumber]++;
+                int sampleOffset = sampleNumber * NUM_VALUES;
+                int centroidOffset = centroidNumber * NUM_VALUES;
+                for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
+                    partition.sums[centroidOffset + valueNumber] += SAMPLES[sampleOffset + valueNumber];
+                }
+            }
+            return partition;
+        }
+    }
+
+    /**
+     * The sums and number of samples per cluster.
+     */
+    private class Partition {
+
+        /**
+         * The sums of the samples per cluster in a flat array.
+         */
+        private final double[] sums = new double[NUM_CLUSTERS * NUM_VALUES];
+        /**
+         * The number of samples per cluster.
+         */
+        private final int[] counts = new int[NUM_CLUSTERS];
+
+        /**
+         * Adds the sums and counts of another partition to this one.
+         *
+         * @param other the other partition
+         */
+        private void merge(Partition other) {
+            for (int i = 0; i < sums.length; i++) {
+                sums[i] += other.sums[i];
+            }
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
         }
-        return Math.sqrt(distance);
     }
 
     /**
@@ -312,7 +598,7 @@ public class KMeansClustering {
                 if (valueNumber > 0) {
                     System.out.print("\t");
                 }
-                System.out.print(Util.roundDouble(centroids[centroidNumber][valueNumber], 2));
+                System.out.print(Util.roundDouble(centroids[centroidNumber * NUM_VALUES + valueNumber], 2));
             }
             System.out.println();
         }
@@ -331,7 +617,7 @@ public class KMeansClustering {
                         if (valueNumber > 0) {
                             System.out.print("\t");
                         }
-                        System.out.print(Util.roundDouble(SAMPLES[sampleIndex][valueNumber], 2));
+                        System.out.print(Util.roundDouble(SAMPLES[sampleIndex * NUM_VALUES + valueNumber], 2));
                     }
                     System.out.println();
                 }
@@ -340,6 +626,18 @@ public class KMeansClustering {
         }
     }
 
+    /**
+     * Returns the values of the centroid of the given cluster.
+     *
+     * @param clusterIndex the index of the cluster
+     * @return the values of the centroid of the given cluster
+     */
+    public double[] getCentroid(int clusterIndex) {
+        double[] centroid = new double[NUM_VALUES];
+        System.arraycopy(centroids, clusterIndex * NUM_VALUES, centroid, 0, NUM_VALUES);
+        return centroid;
+    }
+
     /**
      * Get the sample names of all the members in the given cluster.
      *
@@ -376,7 +674,7 @@ public class KMeansClustering {
                 ArrayList<Double> values = new ArrayList<Double>();
 
                 for (int valueNumber = 0; valueNumber < NUM_VALUES; valueNumber++) {
-                    values.add(SAMPLES[sampleIndex][valueNumber]);
+                    values.add(SAMPLES[sampleIndex * NUM_VALUES + valueNumber]);
                 }
 
                 clusterMembers.put(SAMPLE_IDS[sampleIndex], values);
@@ -479,6 +777,67 @@ public class KMeansClustering {
         this.maxIterations = maxIterations;
     }
 
+    /**
+     * Returns the convergence tolerance: the clustering stops when no
+     * centroid moves by more than this distance.
+     *
+     * @return the convergence tolerance
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets the convergence tolerance: the clustering stops when no centroid
+     * moves by more than this distance.
+     *
+     * @param tolerance the convergence tolerance
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Returns the number of samples per iteration in mini-batch mode, 0 if
+     * all samples are used at every iteration.
+     *
+     * @return the number of samples per iteration in mini-batch mode
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of samples per iteration in mini-batch mode, 0 to use
+     * all samples at every iteration.
+     *
+     * @param batchSize the number of samples per iteration in mini-batch mode
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Returns the number of threads to use.
+     *
+     * @return the number of threads to use
+     */
+    public int getnThreads() {
+        return nThreads;
+    }
+
+    /**
+     * Sets the number of threads to use.
+     *
+     * @param nThreads the number of threads to use
+     */
+    public void setnThreads(int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be a positive number.");
+        }
+        this.nThreads = nThreads;
+    }
+
     /**
      * Sample data.
      */
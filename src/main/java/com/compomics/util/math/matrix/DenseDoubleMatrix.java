@@ -0,0 +1,470 @@
+package com.compomics.util.math.matrix;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Matrix of primitive doubles stored in a contiguous array line after line
+ * (row-major). Multiplication and transposition are processed by blocks
+ * fitting in the processor cache, and the multiplication of large matrices is
+ * distributed across threads. Warning: all indexes start from 0.
+ *
+ * @author Marc Vaudel
+ */
+public class DenseDoubleMatrix {
+
+    /**
+     * The size of the square blocks processed at once.
+     */
+    public static final int BLOCK_SIZE = 64;
+    /**
+     * The number of multiply-add operations above which the multiplication is
+     * distributed across threads.
+     */
+    public static final long PARALLEL_THRESHOLD = 1L << 22;
+    /**
+     * The number of lines.
+     */
+    private final int nLines;
+    /**
+     * The number of columns.
+     */
+    private final int nColumns;
+    /**
+     * The values, the value at line i and column j being at index i *
+     * nColumns + j.
+     */
+    private final double[] values;
+
+    /**
+     * Constructor for a matrix filled with zeros.
+     *
+     * @param nLines the number of lines
+     * @param nColumns the number of columns
+     */
+    public DenseDoubleMatrix(int nLines, int nColumns) {
+        if (nLines < 0 || nColumns < 0) {
+            throw new IllegalArgumentException("Negative matrix dimension (" + nLines + " lines, " + nColumns + " columns).");
+        }
+        this.nLines = nLines;
+        this.nColumns = nColumns;
+        this.values = new double[nLines * nColumns];
+    }
+
+    /**
+     * Constructor wrapping the given array without copy.
+     *
+     * @param nLines the number of lines
+     * @param nColumns the number of columns
+     * @param values the values line after line
+     */
+    public DenseDoubleMatrix(int nLines, int nColumns, double[] values) {
+        if (values.length != nLines * nColumns) {
+            throw new IllegalArgumentException("Array of length " + values.length + " cannot be used for a matrix of " + nLines + " lines and " + nColumns + " columns.");
+        }
+        this.nLines = nLines;
+        this.nColumns = nColumns;
+        this.values = values;
+    }
+
+    /**
+     * Constructor copying the given lines.
+     *
+     * @param lines the lines of the matrix
+     */
+    public DenseDoubleMatrix(double[][] lines) {
+        this(lines.length, lines.length == 0 ? 0 : lines[0].length);
+        for (int i = 0; i < nLines; i++) {
+            if (lines[i].length != nColumns) {
+                throw new IllegalArgumentException("Impossible to add line of length " + lines[i].length + " in matrix of width " + nColumns + ".");
+            }
+            System.arraycopy(lines[i], 0, values, i * nColumns, nColumns);
+        }
+    }
+
+    /**
+     * Constructor copying the values of a DoubleMatrix.
+     *
+     * @param matrix the matrix to copy
+     */
+    public DenseDoubleMatrix(DoubleMatrix matrix) {
+        this(matrix.getNLines(), matrix.getNColumns());
+        for (int j = 0; j < nColumns; j++) {
+            ArrayList<Double> column = matrix.getColumn(j);
+            for (int i = 0; i < nLines; i++) {
+                values[i * nColumns + j] = column.get(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the values in a DoubleMatrix.
+     *
+     * @return the values in a DoubleMatrix
+     */
+    public DoubleMatrix toDoubleMatrix() {
+        DoubleMatrix result = new DoubleMatrix(nColumns);
+        if (nLines == 0) {
+            return result;
+        }
+        for (int j = 0; j < nColumns; j++) {
+            ArrayList<Double> column = new ArrayList<Double>(nLines);
+            for (int i = 0; i < nLines; i++) {
+                column.add(values[i * nColumns + j]);
+            }
+            result.addColumn(column);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the identity matrix of the given size.
+     *
+     * @param n the size of the matrix
+     *
+     * @return the identity matrix
+     */
+    public static DenseDoubleMatrix getIdentityMatrix(int n) {
+        DenseDoubleMatrix result = new DenseDoubleMatrix(n, n);
+        for (int i = 0; i < n; i++) {
+            result.values[i * n + i] = 1;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of lines.
+     *
+     * @return the number of lines
+     */
+    public int getNLines() {
+        return nLines;
+    }
+
+    /**
+     * Returns the number of columns.
+     *
+     * @return the number of columns
+     */
+    public int getNColumns() {
+        return nColumns;
+    }
+
+    /**
+     * Indicates whether the matrix is square.
+     *
+     * @return a boolean indicating whether the matrix is square
+     */
+    public boolean isSquare() {
+        return nLines == nColumns;
+    }
+
+    /**
+     * Returns the value at the given indexes.
+     *
+     * @param lineIndex the line index
+     * @param columnIndex the column index
+     *
+     * @return the value at the given indexes
+     */
+    public double getValueAt(int lineIndex, int columnIndex) {
+        return values[lineIndex * nColumns + columnIndex];
+    }
+
+    /**
+     * Sets the value at the given indexes.
+     *
+     * @param lineIndex the line index
+     * @param columnIndex the column index
+     * @param value the value
+     */
+    public void setValueAt(int lineIndex, int columnIndex, double value) {
+        values[lineIndex * nColumns + columnIndex] = value;
+    }
+
+    /**
+     * Returns the backing array of the values, line after line. Changes to the
+     * array are reflected in the matrix.
+     *
+     * @return the backing array of the values
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * Returns a copy of the given line.
+     *
+     * @param lineIndex the line index
+     *
+     * @return a copy of the line
+     */
+    public double[] getLine(int lineIndex) {
+        double[] line = new double[nColumns];
+        System.arraycopy(values, lineIndex * nColumns, line, 0, nColumns);
+        return line;
+    }
+
+    /**
+     * Returns a copy of the given column.
+     *
+     * @param columnIndex the column index
+     *
+     * @return a copy of the column
+     */
+    public double[] getColumn(int columnIndex) {
+        double[] column = new double[nLines];
+        for (int i = 0; i < nLines; i++) {
+            column[i] = values[i * nColumns + columnIndex];
+        }
+        return column;
+    }
+
+    /**
+     * Returns a copy of this matrix.
+     *
+     * @return a copy of this matrix
+     */
+    public DenseDoubleMatrix copy() {
+        return new DenseDoubleMatrix(nLines, nColumns, values.clone());
+    }
+
+    /**
+     * Returns the transposed matrix. The values are copied by square blocks
+     * so that both the reading and the writing stay in the cache.
+     *
+     * @return the transposed matrix
+     */
+    public DenseDoubleMatrix transpose() {
+        DenseDoubleMatrix result = new DenseDoubleMatrix(nColumns, nLines);
+        double[] resultValues = result.values;
+        for (int lineBlock = 0; lineBlock < nLines; lineBlock += BLOCK_SIZE) {
+            int lineEnd = Math.min(nLines, lineBlock + BLOCK_SIZE);
+            for (int columnBlock = 0; columnBlock < nColumns; columnBlock += BLOCK_SIZE) {
+                int columnEnd = Math.min(nColumns, columnBlock + BLOCK_SIZE);
+                for (int i = lineBlock; i < lineEnd; i++) {
+                    int offset = i * nColumns;
+                    for (int j = columnBlock; j < columnEnd; j++) {
+                        resultValues[j * nLines + i] = values[offset + j];
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the product of this matrix by the given matrix using as many
+     * threads as available processors for large matrices.
+     *
+     * @param other the matrix to multiply with, on the right
+     *
+     * @return the product of the matrices
+     */
+    public DenseDoubleMatrix multiply(DenseDoubleMatrix other) {
+        return multiply(other, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns the product of this matrix by the given matrix. The product is
+     * computed by blocks, the blocks of lines of the result being distributed
+     * across threads when the matrices are large.
+     *
+     * @param other the matrix to multiply with, on the right
+     * @param nThreads the maximal number of threads to use
+     *
+     * @return the product of the matrices
+     */
+    public DenseDoubleMatrix multiply(final DenseDoubleMatrix other, int nThreads) {
+
+        if (nColumns != other.nLines) {
+            throw new IllegalArgumentException("Impossible to multiply a matrix of " + nColumns + " columns with a matrix of " + other.nLines + " lines.");
+        }
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("The number of threads must be a positive number.");
+        }
+
+        final DenseDoubleMatrix result = new DenseDoubleMatrix(nLines, other.nColumns);
+        long nOperations = ((long) nLines) * nColumns * other.nColumns;
+        int nLineBlocks = (nLines + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+        if (nThreads == 1 || nLineBlocks == 1 || nOperations < PARALLEL_THRESHOLD) {
+            multiplyBlock(other, result, 0, nLines);
+            return result;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(nThreads, nLineBlocks));
+        try {
+            ArrayList<Future<Object>> futures = new ArrayList<Future<Object>>(nLineBlocks);
+            for (int lineBlock = 0; lineBlock < nLines; lineBlock += BLOCK_SIZE) {
+                final int start = lineBlock;
+                final int end = Math.min(nLines, lineBlock + BLOCK_SIZE);
+                futures.add(pool.submit(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        multiplyBlock(other, result, start, end);
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException("Matrix multiplication interrupted.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Computes the lines of the product of this matrix by another matrix
+     * between the given indexes. The inner loop runs along contiguous lines of
+     * the other matrix and of the result.
+     *
+     * @param other the matrix to multiply with, on the right
+     * @param result the matrix where to store the result
+     * @param lineStart the first line to compute
+     * @param lineEnd the end of the lines to compute, exclusive
+     */
+    private void multiplyBlock(DenseDoubleMatrix other, DenseDoubleMatrix result, int lineStart, int lineEnd) {
+        int p = other.nColumns;
+        double[] otherValues = other.values;
+        double[] resultValues = result.values;
+        for (int innerBlock = 0; innerBlock < nColumns; innerBlock += BLOCK_SIZE) {
+            int innerEnd = Math.min(nColumns, innerBlock + BLOCK_SIZE);
+            for (int columnBlock = 0; columnBlock < p; columnBlock += BLOCK_SIZE) {
+                int columnEnd = Math.min(p, columnBlock + BLOCK_SIZE);
+                for (int i = lineStart; i < lineEnd; i++) {
+                    int lineOffset = i * nColumns;
+                    int resultOffset = i * p;
+                    for (int k = innerBlock; k < innerEnd; k++) {
+                        double a = values[lineOffset + k];
+                        if (a != 0) {
+                            int otherOffset = k * p;
+                            for (int j = columnBlock; j < columnEnd; j++) {
+                                resultValues[resultOffset + j] += a * otherValues[otherOffset + j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the product of this matrix by the given vector.
+     *
+     * @param vector the vector
+     *
+     * @return the product of this matrix by the vector
+     */
+    public double[] multiply(double[] vector) {
+        if (vector.length != nColumns) {
+            throw new IllegalArgumentException("Impossible to multiply a matrix of " + nColumns + " columns with a vector of length " + vector.length + ".");
+        }
+        double[] result = new double[nLines];
+        for (int i = 0; i < nLines; i++) {
+            int offset = i * nColumns;
+            double sum = 0;
+            for (int j = 0; j < nColumns; j++) {
+                sum += values[offset + j] * vector[j];
+            }
+            result[i] = sum;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the trace of the matrix.
+     *
+     * @return the trace of the matrix
+     */
+    public double getTrace() {
+        if (!isSquare()) {
+            throw new IllegalArgumentException("Attempting to estimate the trace on a non-square matrix (" + nLines + " lines, " + nColumns + " columns).");
+        }
+        double result = 0;
+        for (int i = 0; i < nLines; i++) {
+            result += values[i * nColumns + i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the LU decomposition of the matrix.
+     *
+     * @return the LU decomposition of the matrix
+     */
+    public LuDecomposition getLuDecomposition() {
+        return new LuDecomposition(this);
+    }
+
+    /**
+     * Returns the determinant of the matrix computed from its LU
+     * decomposition.
+     *
+     * @return the determinant of the matrix
+     */
+    public double getDeterminant() {
+        if (nLines == 0) {
+            throw new IllegalArgumentException("Attempting to estimate the determinant on an empty matrix.");
+        }
+        return getLuDecomposition().getDeterminant();
+    }
+
+    /**
+     * Returns the solution x of the system A.x = b where A is this matrix.
+     *
+     * @param b the right-hand side of the system
+     *
+     * @return the solution of the system
+     */
+    public double[] solve(double[] b) {
+        return getLuDecomposition().solve(b);
+    }
+
+    /**
+     * Swaps two lines.
+     *
+     * @param line1 the index of the first line
+     * @param line2 the index of the second line
+     */
+    public void linePermutation(int line1, int line2) {
+        int offset1 = line1 * nColumns;
+        int offset2 = line2 * nColumns;
+        for (int j = 0; j < nColumns; j++) {
+            double temp = values[offset1 + j];
+            values[offset1 + j] = values[offset2 + j];
+            values[offset2 + j] = temp;
+        }
+    }
+
+    /**
+     * Swaps two columns.
+     *
+     * @param column1 the index of the first column
+     * @param column2 the index of the second column
+     */
+    public void columnPermutation(int column1, int column2) {
+        for (int i = 0; i < nLines; i++) {
+            int offset = i * nColumns;
+            double temp = values[offset + column1];
+            values[offset + column1] = values[offset + column2];
+            values[offset + column2] = temp;
+        }
+    }
+}
@@ -25,6 +25,7 @@ public class DoubleMatrix {
     }
 
     public DoubleMatrix(DoubleMatrix matrix) {
+        content = new ArrayList<ArrayList<Double>>(matrix.getNColumns());
         nLines = matrix.getNLines();
         for (ArrayList<Double> column : matrix.getColumns()) {
             ArrayList<Double> newColumn = new ArrayList<Double>(column);
@@ -243,6 +244,12 @@ public class DoubleMatrix {
         }
     }
 
+    /**
+     * Returns the determinant of the matrix computed from its LU
+     * decomposition in O(n^3).
+     *
+     * @return the determinant of the matrix
+     */
     public double getDeterminant() {
         if (!isSquare()) {
             throw new IllegalArgumentException("Attempting to estimate the determinant on a non-square matrix (" + getNLines() + " lines, " + getNColumns() + " columns).");
@@ -254,25 +261,40 @@ public class DoubleMatrix {
             return getValueAt(0, 0);
         } else if (nLines == 2) {
             return getValueAt(0, 0) * getValueAt(1, 1) - getValueAt(0, 1) * getValueAt(1, 0);
-        } else {
-            double determinant = 0;
-            for (int i = 0; i < getNLines(); i++) {
-                int line = i + 1;
-                System.out.println(line + " in " + nLines);
-                DoubleMatrix subMatrix;
-                if (i == nLines - 1) {
-                    subMatrix = getSubMatrix(0, nLines - 2, 1, nLines - 1);
-                } else {
-                    subMatrix = getSubMatrix(i + 1, nLines - 1, 1, nLines - 1);
-                    if (i > 0) {
-                        DoubleMatrix topMatrix = getSubMatrix(0, i - 1, 1, nLines - 1);
-                        subMatrix.appendLines(topMatrix);
-                    }
-                }
-                determinant += Math.pow(-1, i) * getValueAt(i, 0) * subMatrix.getDeterminant();
-            }
-            return determinant;
         }
+        return new DenseDoubleMatrix(this).getDeterminant();
+    }
+
+    /**
+     * Returns the solution x of the system A.x = b where A is this matrix.
+     *
+     * @param b the right-hand side of the system
+     *
+     * @return the solution of the system
+     */
+    public ArrayList<Double> solve(ArrayList<Double> b) {
+        double[] bArray = new double[b.size()];
+        for (int i = 0; i < bArray.length; i++) {
+            bArray[i] = b.get(i);
+        }
+        double[] x = new DenseDoubleMatrix(this).solve(bArray);
+        ArrayList<Double> result = new ArrayList<Double>(x.length);
+        for (double value : x) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the product of this matrix by the given matrix, see
+     * DenseDoubleMatrix.multiply.
+     *
+     * @param matrix the matrix to multiply with, on the right
+     *
+     * @return the product of the matrices
+     */
+    public DoubleMatrix multiply(DoubleMatrix matrix) {
+        return new DenseDoubleMatrix(this).multiply(new DenseDoubleMatrix(matrix)).toDoubleMatrix();
     }
 
     /**
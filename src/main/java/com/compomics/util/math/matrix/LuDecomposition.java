@@ -0,0 +1,197 @@
+package com.compomics.util.math.matrix;
+
+/**
+ * LU decomposition with partial pivoting of a square matrix: P.A = L.U where
+ * P is a permutation of the lines, L is lower triangular with a unit diagonal
+ * and U is upper triangular. The decomposition is computed once in O(n^3) and
+ * can then be used to compute the determinant and to solve linear systems in
+ * O(n^2).
+ *
+ * @author Marc Vaudel
+ */
+public class LuDecomposition {
+
+    /**
+     * The size of the matrix.
+     */
+    private final int n;
+    /**
+     * The L and U factors stored line after line in a single array, the unit
+     * diagonal of L being implicit.
+     */
+    private final double[] lu;
+    /**
+     * The index in the original matrix of every line of the decomposition.
+     */
+    private final int[] permutation;
+    /**
+     * The sign of the permutation, 1 if even, -1 if odd.
+     */
+    private final int permutationSign;
+    /**
+     * Indicates whether a null pivot was encountered.
+     */
+    private final boolean singular;
+
+    /**
+     * Constructor. The given matrix is not modified.
+     *
+     * @param matrix the matrix to decompose
+     */
+    public LuDecomposition(DenseDoubleMatrix matrix) {
+
+        if (!matrix.isSquare()) {
+            throw new IllegalArgumentException("Attempting to decompose a non-square matrix (" + matrix.getNLines() + " lines, " + matrix.getNColumns() + " columns).");
+        }
+
+        n = matrix.getNLines();
+        lu = matrix.getValues().clone();
+        permutation = new int[n];
+        for (int i = 0; i < n; i++) {
+            permutation[i] = i;
+        }
+
+        int sign = 1;
+        boolean nullPivot = false;
+        for (int k = 0; k < n; k++) {
+
+            // the largest value of the column is used as pivot for numerical stability
+            int pivot = k;
+            double pivotValue = Math.abs(lu[k * n + k]);
+            for (int i = k + 1; i < n; i++) {
+                double value = Math.abs(lu[i * n + k]);
+                if (value > pivotValue) {
+                    pivot = i;
+                    pivotValue = value;
+                }
+            }
+            if (pivot != k) {
+                int offset1 = pivot * n;
+                int offset2 = k * n;
+                for (int j = 0; j < n; j++) {
+                    double temp = lu[offset1 + j];
+                    lu[offset1 + j] = lu[offset2 + j];
+                    lu[offset2 + j] = temp;
+                }
+                int temp = permutation[pivot];
+                permutation[pivot] = permutation[k];
+                permutation[k] = temp;
+                sign = -sign;
+            }
+            if (pivotValue == 0) {
+                nullPivot = true;
+                continue;
+            }
+
+            // elimination below the pivot, the inner loop runs along contiguous lines
+            int pivotOffset = k * n;
+            double diagonal = lu[pivotOffset + k];
+            for (int i = k + 1; i < n; i++) {
+                int offset = i * n;
+                double factor = lu[offset + k] / diagonal;
+                lu[offset + k] = factor;
+                if (factor != 0) {
+                    for (int j = k + 1; j < n; j++) {
+                        lu[offset + j] -= factor * lu[pivotOffset + j];
+                    }
+                }
+            }
+        }
+        permutationSign = sign;
+        singular = nullPivot;
+    }
+
+    /**
+     * Indicates whether the matrix is singular.
+     *
+     * @return a boolean indicating whether the matrix is singular
+     */
+    public boolean isSingular() {
+        return singular;
+    }
+
+    /**
+     * Returns the determinant of the matrix.
+     *
+     * @return the determinant of the matrix
+     */
+    public double getDeterminant() {
+        if (singular) {
+            return 0;
+        }
+        double result = permutationSign;
+        for (int i = 0; i < n; i++) {
+            result *= lu[i * n + i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the solution x of the system A.x = b.
+     *
+     * @param b the right-hand side of the system
+     *
+     * @return the solution of the system
+     */
+    public double[] solve(double[] b) {
+        if (b.length != n) {
+            throw new IllegalArgumentException("Right-hand side of length " + b.length + " for a system of size " + n + ".");
+        }
+        if (singular) {
+            throw new IllegalArgumentException("Attempting to solve a system with a singular matrix.");
+        }
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = b[permutation[i]];
+        }
+        // forward substitution with L
+        for (int i = 1; i < n; i++) {
+            int offset = i * n;
+            double sum = x[i];
+            for (int j = 0; j < i; j++) {
+                sum -= lu[offset + j] * x[j];
+            }
+            x[i] = sum;
+        }
+        // backward substitution with U
+        for (int i = n - 1; i >= 0; i--) {
+            int offset = i * n;
+            double sum = x[i];
+            for (int j = i + 1; j < n; j++) {
+                sum -= lu[offset + j] * x[j];
+            }
+            x[i] = sum / lu[offset + i];
+        }
+        return x;
+    }
+
+    /**
+     * Returns the solution X of the system A.X = B.
+     *
+     * @param b the right-hand side of the system
+     *
+     * @return the solution of the system
+     */
+    public DenseDoubleMatrix solve(DenseDoubleMatrix b) {
+        if (b.getNLines() != n) {
+            throw new IllegalArgumentException("Right-hand side of " + b.getNLines() + " lines for a system of size " + n + ".");
+        }
+        DenseDoubleMatrix result = new DenseDoubleMatrix(n, b.getNColumns());
+        for (int j = 0; j < b.getNColumns(); j++) {
+            double[] column = solve(b.getColumn(j));
+            for (int i = 0; i < n; i++) {
+                result.setValueAt(i, j, column[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the inverse of the matrix.
+     *
+     * @return the inverse of the matrix
+     */
+    public DenseDoubleMatrix getInverse() {
+        return solve(DenseDoubleMatrix.getIdentityMatrix(n));
+    }
+}
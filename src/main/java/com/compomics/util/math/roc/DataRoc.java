@@ -1,9 +1,10 @@
 package com.compomics.util.math.roc;
 
+import com.compomics.util.math.BasicMathFunctions;
 import com.compomics.util.math.statistics.ROC;
+import com.compomics.util.math.statistics.distributions.BinnedDensityEstimator;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import org.apache.commons.math.MathException;
 
 /**
@@ -16,12 +17,12 @@ public class DataRoc implements ROC {
     /**
      * The x values of the ROC points.
      */
-    private ArrayList<Double> xValues;
+    private double[] xValues;
 
     /**
      * The y values of the ROC points.
      */
-    private ArrayList<Double> yValues;
+    private double[] yValues;
     /**
      * The method to use to interpolate between points.
      */
@@ -61,115 +62,231 @@ public class DataRoc implements ROC {
             throw new IllegalArgumentException("No patient values given for ROC curve creation.");
         }
         this.rocInterpolation = rocInterpolation;
-        // values map: value -> {# control, # patients}
-        HashMap<Double, int[]> valuesMap = new HashMap<Double, int[]>();
-        int nControls = 0;
-        for (Double value : controlValues) {
-            int[] n = valuesMap.get(value);
-            if (n == null) {
-                n = new int[]{1, 0};
-                valuesMap.put(value, n);
+        double[] controls = BasicMathFunctions.toArray(controlValues);
+        double[] patients = BasicMathFunctions.toArray(patientValues);
+        Arrays.sort(controls);
+        Arrays.sort(patients);
+        buildCurve(controls, null, patients, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param controlValues the control values, will be sorted
+     * @param patientValues the patient values, will be sorted
+     * @param rocInterpolation the method to use to interpolate between points
+     */
+    public DataRoc(double[] controlValues, double[] patientValues, RocInterpolation rocInterpolation) {
+        if (controlValues == null || controlValues.length == 0) {
+            throw new IllegalArgumentException("No control values given for ROC curve creation.");
+        }
+        if (patientValues == null || patientValues.length == 0) {
+            throw new IllegalArgumentException("No patient values given for ROC curve creation.");
+        }
+        this.rocInterpolation = rocInterpolation;
+        Arrays.sort(controlValues);
+        Arrays.sort(patientValues);
+        buildCurve(controlValues, null, patientValues, null);
+    }
+
+    /**
+     * Constructor building an approximate curve from histograms of the
+     * values, for instance when the values are too many to be kept in memory.
+     * The values of a bin are considered equal to the center of the bin.
+     *
+     * @param controlHistogram the histogram of the control values
+     * @param patientHistogram the histogram of the patient values
+     * @param rocInterpolation the method to use to interpolate between points
+     */
+    public DataRoc(BinnedDensityEstimator controlHistogram, BinnedDensityEstimator patientHistogram, RocInterpolation rocInterpolation) {
+        if (controlHistogram == null || controlHistogram.getCount() == 0) {
+            throw new IllegalArgumentException("No control values given for ROC curve creation.");
+        }
+        if (patientHistogram == null || patientHistogram.getCount() == 0) {
+            throw new IllegalArgumentException("No patient values given for ROC curve creation.");
+        }
+        this.rocInterpolation = rocInterpolation;
+        buildCurve(controlHistogram.getBinCenters(), controlHistogram.getBinCounts(), patientHistogram.getBinCenters(), patientHistogram.getBinCounts());
+    }
+
+    /**
+     * Builds the points of the curve by walking through the sorted control
+     * and patient values in a single pass. The values are compared as by
+     * Double.compare, consistently with Arrays.sort: NaN values are equal to
+     * each other and greater than all other values.
+     *
+     * @param controls the control values in ascending order
+     * @param controlWeights the number of occurrences of each control value,
+     * null if every value occurs once
+     * @param patients the patient values in ascending order
+     * @param patientWeights the number of occurrences of each patient value,
+     * null if every value occurs once
+     */
+    private void buildCurve(double[] controls, double[] controlWeights, double[] patients, double[] patientWeights) {
+
+        double nControls = getTotal(controls, controlWeights);
+        double nPatients = getTotal(patients, patientWeights);
+
+        int capacity = patients.length + 1;
+        xValues = new double[capacity];
+        yValues = new double[capacity];
+        int nPoints = 0;
+
+        double patientCpt = 0;
+        double controlCpt = 0;
+        int i = 0;
+        int j = 0;
+        while (i < controls.length || j < patients.length) {
+            double value;
+            if (j == patients.length || i < controls.length && Double.compare(controls[i], patients[j]) < 0) {
+                value = controls[i];
             } else {
-                n[0] = n[0] + 1;
+                value = patients[j];
             }
-            nControls++;
+            double controlCount = 0;
+            while (i < controls.length && Double.compare(controls[i], value) == 0) {
+                controlCount += controlWeights == null ? 1 : controlWeights[i];
+                i++;
+            }
+            double patientCount = 0;
+            while (j < patients.length && Double.compare(patients[j], value) == 0) {
+                patientCount += patientWeights == null ? 1 : patientWeights[j];
+                j++;
+            }
+            if (patientCount > 0) {
+                xValues[nPoints] = patientCpt / nPatients;
+                yValues[nPoints] = controlCpt / nControls;
+                nPoints++;
+            }
+            patientCpt += patientCount;
+            controlCpt += controlCount;
         }
-        int nPatients = 0;
-        for (Double value : patientValues) {
-            int[] n = valuesMap.get(value);
-            if (n == null) {
-                n = new int[]{0, 1};
-                valuesMap.put(value, n);
+        xValues[nPoints] = 1.0;
+        yValues[nPoints] = 1.0;
+        nPoints++;
+
+        xValues = Arrays.copyOf(xValues, nPoints);
+        yValues = Arrays.copyOf(yValues, nPoints);
+    }
+
+    /**
+     * Returns the total number of values.
+     *
+     * @param values the values
+     * @param weights the number of occurrences of each value, null if every
+     * value occurs once
+     *
+     * @return the total number of values
+     */
+    private static double getTotal(double[] values, double[] weights) {
+        if (weights == null) {
+            return values.length;
+        }
+        double total = 0;
+        for (double weight : weights) {
+            total += weight;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the index of the first element of the given sorted array greater
+     * or equal to the given value, the length of the array if none.
+     *
+     * @param array the array in ascending order
+     * @param value the value
+     *
+     * @return the index of the first element greater or equal to the value
+     */
+    private static int lowerBound(double[] array, double value) {
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (array[middle] < value) {
+                low = middle + 1;
             } else {
-                n[1] = n[1] + 1;
+                high = middle;
             }
-            nPatients++;
         }
-        xValues = new ArrayList<Double>();
-        yValues = new ArrayList<Double>();
-        ArrayList<Double> values = new ArrayList<Double>(valuesMap.keySet());
-        Collections.sort(values);
-        int patientCpt = 0;
-        int controlCpt = 0;
-        for (Double value : values) {
-            int[] counts = valuesMap.get(value);
-            if (counts[1] > 0) {
-                double x = ((double) patientCpt) / nPatients;
-                xValues.add(x);
-                double y = ((double) controlCpt) / nControls;
-                yValues.add(y);
+        return low;
+    }
+
+    /**
+     * Returns the index of the first element of the given sorted array
+     * strictly greater than the given value, the length of the array if none.
+     *
+     * @param array the array in ascending order
+     * @param value the value
+     *
+     * @return the index of the first element greater than the value
+     */
+    private static int upperBound(double[] array, double value) {
+        int low = 0;
+        int high = array.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (array[middle] <= value) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
-            patientCpt += counts[1];
-            controlCpt += counts[0];
         }
-        xValues.add(1.0);
-        yValues.add(1.0);
+        return low;
     }
 
     @Override
     public double getValueAt(double specificity) throws MathException {
-        Double xBefore = null;
-        Double yBefore = null;
-        Double xAfter = null;
-        Double yAfter = null;
-        int i = 0;
-        for (double xValue : xValues) {
-            if (xBefore == null || xValue < specificity && xValue > xBefore) {
-                xBefore = xValue;
-                yBefore = yValues.get(i);
-            } else if (xValue > specificity || i == xValues.size() - 1) {
-                xAfter = xValue;
-                yAfter = yValues.get(i);
-                break;
-            }
-            i++;
-        }
-        if (specificity == xBefore || rocInterpolation == RocInterpolation.minimum) {
-            return yBefore;
-        } else if (specificity == xAfter || rocInterpolation == RocInterpolation.maximum) {
-            return yAfter;
-        } else {
-            double y = yBefore + (specificity - xBefore) / (xAfter - xBefore) * (yAfter - yBefore);
-            return y;
-        }
+        // the last point before the specificity and the first point after, the x values are strictly increasing
+        int before = Math.max(0, lowerBound(xValues, specificity) - 1);
+        int after = Math.min(xValues.length - 1, Math.max(1, upperBound(xValues, specificity)));
+        return interpolate(specificity, xValues, yValues, before, after);
     }
 
     @Override
     public double getSpecificityAt(double sensitivity) throws MathException {
-        Double xBefore = null;
-        Double yBefore = null;
-        Double xAfter = null;
-        Double yAfter = null;
-        int i = 0;
-        for (double yValue : yValues) {
-            if (xBefore == null || yValue < sensitivity && yValue > yBefore) {
-                yBefore = yValue;
-                xBefore = xValues.get(i);
-            } else if (yValue > sensitivity || i == yValues.size() - 1) {
-                yAfter = yValue;
-                xAfter = xValues.get(i);
-                break;
-            }
-            i++;
+        // the first point of the largest y value below the sensitivity and the first point above, the y values are increasing
+        int before = lowerBound(yValues, sensitivity);
+        if (before > 0) {
+            before = lowerBound(yValues, yValues[before - 1]);
         }
-        if (sensitivity == yBefore || rocInterpolation == RocInterpolation.minimum) {
-            return xBefore;
-        } else if (sensitivity == yAfter || rocInterpolation == RocInterpolation.maximum) {
-            return xAfter;
+        int after = Math.min(yValues.length - 1, Math.max(1, upperBound(yValues, sensitivity)));
+        return interpolate(sensitivity, yValues, xValues, before, after);
+    }
+
+    /**
+     * Returns the value of the curve at the given abscissa between two points
+     * according to the interpolation method.
+     *
+     * @param abscissa the abscissa
+     * @param abscissas the abscissas of the points
+     * @param ordinates the ordinates of the points
+     * @param before the index of the point before
+     * @param after the index of the point after
+     *
+     * @return the interpolated ordinate
+     */
+    private double interpolate(double abscissa, double[] abscissas, double[] ordinates, int before, int after) {
+        double xBefore = abscissas[before];
+        double xAfter = abscissas[after];
+        if (abscissa == xBefore || rocInterpolation == RocInterpolation.minimum) {
+            return ordinates[before];
+        } else if (abscissa == xAfter || rocInterpolation == RocInterpolation.maximum) {
+            return ordinates[after];
+        } else if (xAfter == xBefore) {
+            return ordinates[before];
         } else {
-            double x = xBefore + (sensitivity - yBefore) / (yAfter - yBefore) * (xAfter - xBefore);
-            return x;
+            double yBefore = ordinates[before];
+            return yBefore + (abscissa - xBefore) / (xAfter - xBefore) * (ordinates[after] - yBefore);
         }
     }
 
     @Override
     public double[][] getxYValues() throws MathException {
-        double[][] result = new double[xValues.size()][2];
-        int i = 0;
-        for (double xValue : xValues) {
-            result[i][0] = xValue;
-            result[i][1] = yValues.get(i);
-            i++;
+        double[][] result = new double[xValues.length][2];
+        for (int i = 0; i < xValues.length; i++) {
+            result[i][0] = xValues[i];
+            result[i][1] = yValues[i];
         }
         return result;
     }
@@ -177,16 +294,16 @@ public class DataRoc implements ROC {
     @Override
     public double getAuc() throws MathException {
         double auc = 0;
-        for (int i = 0; i < xValues.size() - 1; i++) {
-            double xAfter = xValues.get(i + 1);
-            double xBefore = xValues.get(i);
+        for (int i = 0; i < xValues.length - 1; i++) {
+            double xAfter = xValues[i + 1];
+            double xBefore = xValues[i];
             if (rocInterpolation == RocInterpolation.minimum) {
-                auc += yValues.get(i) * (xAfter - xBefore);
+                auc += yValues[i] * (xAfter - xBefore);
             } else if (rocInterpolation == RocInterpolation.maximum) {
-                auc += yValues.get(i + 1) * (xAfter - xBefore);
+                auc += yValues[i + 1] * (xAfter - xBefore);
             } else if (rocInterpolation == RocInterpolation.linear) {
-                double yBefore = yValues.get(i);
-                double yAfter = yValues.get(i + 1);
+                double yBefore = yValues[i];
+                double yAfter = yValues[i + 1];
                 auc += ((yAfter + yBefore) / 2) * (xAfter - xBefore);
             } else {
                 throw new UnsupportedOperationException("No AUC calculation implemented for ROC interpolation " + rocInterpolation + ".");
@@ -0,0 +1,351 @@
+package com.compomics.util.math.statistics;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Streaming estimator of quantiles in the spirit of the t-digest of Dunning
+ * and Ertl. Values are buffered and merged into a bounded number of weighted
+ * centroids, small at the tails and larger around the median, so that
+ * extreme quantiles remain accurate while the memory used is independent of
+ * the number of values. Digests built on different partitions of the data can
+ * be merged. This class is not thread safe, use one digest per thread and
+ * merge them.
+ *
+ * @author Marc Vaudel
+ */
+public class QuantileDigest implements Serializable {
+
+    /**
+     * Serial version number for backward compatibility.
+     */
+    static final long serialVersionUID = 2970934614580934261L;
+    /**
+     * The default compression.
+     */
+    public static final double DEFAULT_COMPRESSION = 100;
+    /**
+     * The compression: the number of centroids is of the order of the
+     * compression.
+     */
+    private final double compression;
+    /**
+     * The means of the centroids in ascending order.
+     */
+    private double[] means;
+    /**
+     * The weights of the centroids.
+     */
+    private double[] weights;
+    /**
+     * The number of centroids.
+     */
+    private int nCentroids = 0;
+    /**
+     * The values waiting to be merged.
+     */
+    private double[] buffer;
+    /**
+     * The number of values in the buffer.
+     */
+    private int bufferSize = 0;
+    /**
+     * The total weight of the centroids.
+     */
+    private double centroidsWeight = 0;
+    /**
+     * The smallest value added.
+     */
+    private double min = Double.POSITIVE_INFINITY;
+    /**
+     * The largest value added.
+     */
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Constructor using the default compression.
+     */
+    public QuantileDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param compression the compression, the higher the more accurate and
+     * the more memory used
+     */
+    public QuantileDigest(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("The compression must be at least 10.");
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(2 * compression) + 10;
+        means = new double[capacity];
+        weights = new double[capacity];
+        buffer = new double[5 * capacity];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param x the value to add
+     */
+    public void add(double x) {
+        if (Double.isNaN(x)) {
+            throw new IllegalArgumentException("Cannot add NaN to a quantile digest.");
+        }
+        if (bufferSize == buffer.length) {
+            compress();
+        }
+        buffer[bufferSize++] = x;
+        if (x < min) {
+            min = x;
+        }
+        if (x > max) {
+            max = x;
+        }
+    }
+
+    /**
+     * Adds the values of an array.
+     *
+     * @param values the values to add
+     */
+    public void addAll(double[] values) {
+        for (double x : values) {
+            add(x);
+        }
+    }
+
+    /**
+     * Merges the given digest into this one. The other digest is not modified
+     * besides the merging of its buffer.
+     *
+     * @param other the digest to merge
+     */
+    public void merge(QuantileDigest other) {
+        other.compress();
+        compress();
+        if (other.nCentroids == 0) {
+            return;
+        }
+        mergeCentroids(other.means, other.weights, other.nCentroids);
+        centroidsWeight += other.centroidsWeight;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Merges the buffered values into the centroids.
+     */
+    public void compress() {
+        if (bufferSize == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, bufferSize);
+        double[] bufferWeights = new double[bufferSize];
+        Arrays.fill(bufferWeights, 1);
+        mergeCentroids(buffer, bufferWeights, bufferSize);
+        centroidsWeight += bufferSize;
+        bufferSize = 0;
+    }
+
+    /**
+     * Merges sorted weighted values into the centroids.
+     *
+     * @param otherMeans the means of the values in ascending order
+     * @param otherWeights the weights of the values
+     * @param nOther the number of values
+     */
+    private void mergeCentroids(double[] otherMeans, double[] otherWeights, int nOther) {
+
+        // merge the two sorted lists
+        int n = nCentroids + nOther;
+        double[] allMeans = new double[n];
+        double[] allWeights = new double[n];
+        int i = 0, j = 0, k = 0;
+        while (i < nCentroids || j < nOther) {
+            if (j == nOther || i < nCentroids && means[i] <= otherMeans[j]) {
+                allMeans[k] = means[i];
+                allWeights[k++] = weights[i++];
+            } else {
+                allMeans[k] = otherMeans[j];
+                allWeights[k++] = otherWeights[j++];
+            }
+        }
+
+        double totalWeight = 0;
+        for (k = 0; k < n; k++) {
+            totalWeight += allWeights[k];
+        }
+
+        // group neighboring values as long as the scale function allows it
+        int result = 0;
+        double currentMean = allMeans[0];
+        double currentWeight = allWeights[0];
+        double weightSoFar = 0;
+        double qLimit = getQLimit(0);
+        for (k = 1; k < n; k++) {
+            double q = (weightSoFar + currentWeight + allWeights[k]) / totalWeight;
+            if (q <= qLimit) {
+                currentWeight += allWeights[k];
+                currentMean += allWeights[k] * (allMeans[k] - currentMean) / currentWeight;
+            } else {
+                result = addCentroid(result, currentMean, currentWeight);
+                weightSoFar += currentWeight;
+                qLimit = getQLimit(weightSoFar / totalWeight);
+                currentMean = allMeans[k];
+                currentWeight = allWeights[k];
+            }
+        }
+        nCentroids = addCentroid(result, currentMean, currentWeight);
+    }
+
+    /**
+     * Sets a centroid of the compressed list, growing the arrays if needed.
+     *
+     * @param index the index of the centroid
+     * @param mean the mean of the centroid
+     * @param weight the weight of the centroid
+     *
+     * @return the number of centroids
+     */
+    private int addCentroid(int index, double mean, double weight) {
+        if (index == means.length) {
+            means = Arrays.copyOf(means, 2 * means.length);
+            weights = Arrays.copyOf(weights, 2 * weights.length);
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    /**
+     * Returns the largest quantile a centroid starting at the given quantile
+     * can reach, using the arcsine scale function.
+     *
+     * @param q the quantile where the centroid starts
+     *
+     * @return the largest quantile the centroid can reach
+     */
+    private double getQLimit(double q) {
+        double kScale = compression / (2 * Math.PI);
+        double k = kScale * Math.asin(2 * Math.min(1, Math.max(0, q)) - 1) + 1;
+        if (k / kScale >= Math.PI / 2) {
+            return 1;
+        }
+        return (Math.sin(k / kScale) + 1) / 2;
+    }
+
+    /**
+     * Returns the number of values added.
+     *
+     * @return the number of values added
+     */
+    public double getCount() {
+        return centroidsWeight + bufferSize;
+    }
+
+    /**
+     * Returns the smallest value added.
+     *
+     * @return the smallest value added
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value added.
+     *
+     * @return the largest value added
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the number of centroids after compression.
+     *
+     * @return the number of centroids
+     */
+    public int getnCentroids() {
+        compress();
+        return nCentroids;
+    }
+
+    /**
+     * Returns an estimate of the given quantile.
+     *
+     * @param q the quantile, between 0 and 1. 0.5 returns the median.
+     *
+     * @return the estimate of the quantile
+     */
+    public double getQuantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Incorrect input for quantile: " + q + ". Input must be between 0 and 1.");
+        }
+        compress();
+        if (nCentroids == 0) {
+            throw new IllegalArgumentException("Attempting to estimate the quantile of an empty digest.");
+        }
+        if (nCentroids == 1) {
+            return means[0];
+        }
+        double index = q * centroidsWeight;
+        double center = weights[0] / 2;
+        if (index <= center) {
+            if (weights[0] <= 1) {
+                return means[0];
+            }
+            return min + (means[0] - min) * index / center;
+        }
+        for (int i = 0; i < nCentroids - 1; i++) {
+            double nextCenter = center + (weights[i] + weights[i + 1]) / 2;
+            if (index <= nextCenter) {
+                return means[i] + (means[i + 1] - means[i]) * (index - center) / (nextCenter - center);
+            }
+            center = nextCenter;
+        }
+        double lastWeight = weights[nCentroids - 1];
+        if (lastWeight <= 1) {
+            return means[nCentroids - 1];
+        }
+        return means[nCentroids - 1] + (max - means[nCentroids - 1]) * Math.min(1, (index - center) / (lastWeight / 2));
+    }
+
+    /**
+     * Returns an estimate of the share of values smaller or equal to x.
+     *
+     * @param x the value of interest
+     *
+     * @return the estimate of the cumulative probability at x
+     */
+    public double getCumulativeProbability(double x) {
+        compress();
+        if (nCentroids == 0) {
+            throw new IllegalArgumentException("Attempting to estimate the cumulative probability of an empty digest.");
+        }
+        if (x < min) {
+            return 0;
+        }
+        if (x >= max) {
+            return 1;
+        }
+        double center = weights[0] / 2;
+        if (x < means[0]) {
+            return center * (x - min) / (means[0] - min) / centroidsWeight;
+        }
+        for (int i = 0; i < nCentroids - 1; i++) {
+            double nextCenter = center + (weights[i] + weights[i + 1]) / 2;
+            if (x < means[i + 1]) {
+                double weight = center + (nextCenter - center) * (x - means[i]) / (means[i + 1] - means[i]);
+                return weight / centroidsWeight;
+            }
+            center = nextCenter;
+        }
+        double weight = center + (centroidsWeight - center) * (x - means[nCentroids - 1]) / (max - means[nCentroids - 1]);
+        return weight / centroidsWeight;
+    }
+}
@@ -0,0 +1,335 @@
+package com.compomics.util.math.statistics.distributions;
+
+import com.compomics.util.math.FastFourierTransform;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Streaming estimator of the density of a series of values using a binned
+ * kernel density estimation. Values are counted in bins of equal width
+ * anchored at zero. When the values span more bins than allowed, the width of
+ * the bins is doubled, so that the memory used is bounded and independent of
+ * the number of values. Estimators created with the same initial bin width
+ * can be merged, for instance when the values were counted in different
+ * threads. This class is not thread safe, use one estimator per thread and
+ * merge them.
+ *
+ * @author Marc Vaudel
+ */
+public class BinnedDensityEstimator implements Serializable {
+
+    /**
+     * Serial version number for backward compatibility.
+     */
+    static final long serialVersionUID = 6390273870183021746L;
+    /**
+     * The default maximal number of bins.
+     */
+    public static final int DEFAULT_MAX_BINS = 4096;
+    /**
+     * The number of bandwidths covered by the kernel on each side.
+     */
+    public static final double KERNEL_SPAN = 4;
+    /**
+     * The length of kernel above which the convolution is computed using fast
+     * Fourier transforms.
+     */
+    private static final int DIRECT_CONVOLUTION_THRESHOLD = 64;
+    /**
+     * The maximal number of bins.
+     */
+    private final int maxBins;
+    /**
+     * The current width of the bins.
+     */
+    private double binWidth;
+    /**
+     * The counts of the bins.
+     */
+    private double[] counts;
+    /**
+     * The index of the first bin, the bin i covering [i*binWidth,
+     * (i+1)*binWidth[.
+     */
+    private long firstBin = 0;
+    /**
+     * The number of bins in use.
+     */
+    private int nBins = 0;
+    /**
+     * Estimator of the moments of the values.
+     */
+    private final MomentsEstimator moments = new MomentsEstimator();
+
+    /**
+     * Constructor using the default maximal number of bins.
+     *
+     * @param binWidth the initial width of the bins, the finest resolution of
+     * the estimation
+     */
+    public BinnedDensityEstimator(double binWidth) {
+        this(binWidth, DEFAULT_MAX_BINS);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param binWidth the initial width of the bins, the finest resolution of
+     * the estimation
+     * @param maxBins the maximal number of bins
+     */
+    public BinnedDensityEstimator(double binWidth, int maxBins) {
+        if (binWidth <= 0 || Double.isInfinite(binWidth) || Double.isNaN(binWidth)) {
+            throw new IllegalArgumentException("The bin width must be a positive number.");
+        }
+        if (maxBins < 2) {
+            throw new IllegalArgumentException("At least two bins must be allowed.");
+        }
+        this.binWidth = binWidth;
+        this.maxBins = maxBins;
+        counts = new double[maxBins];
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param x the value to add
+     */
+    public void add(double x) {
+        if (Double.isNaN(x) || Double.isInfinite(x)) {
+            throw new IllegalArgumentException("Cannot add " + x + " to a density estimator.");
+        }
+        addToBin((long) Math.floor(x / binWidth), 1);
+        moments.add(x);
+    }
+
+    /**
+     * Adds the values of an array.
+     *
+     * @param values the values to add
+     */
+    public void addAll(double[] values) {
+        for (double x : values) {
+            add(x);
+        }
+    }
+
+    /**
+     * Merges the given estimator into this one. The other estimator is not
+     * modified.
+     *
+     * @param other the estimator to merge
+     */
+    public void merge(BinnedDensityEstimator other) {
+        double ratio = other.binWidth / binWidth;
+        if (ratio != Math.scalb(1.0, Math.getExponent(ratio))) {
+            throw new IllegalArgumentException("Cannot merge density estimators of bin width " + binWidth + " and " + other.binWidth + ".");
+        }
+        while (binWidth < other.binWidth) {
+            coarsen();
+        }
+        for (int i = 0; i < other.nBins; i++) {
+            if (other.counts[i] > 0) {
+                // the bin widths differ by a power of two, the center of the other bin falls in the corresponding bin
+                double center = (other.firstBin + i + 0.5) * other.binWidth;
+                addToBin((long) Math.floor(center / binWidth), other.counts[i]);
+            }
+        }
+        moments.merge(other.moments);
+    }
+
+    /**
+     * Adds a weight to a bin, expanding or coarsening the bins if needed.
+     *
+     * @param bin the index of the bin
+     * @param weight the weight to add
+     */
+    private void addToBin(long bin, double weight) {
+        if (nBins == 0) {
+            firstBin = bin;
+            nBins = 1;
+            counts[0] = weight;
+            return;
+        }
+        while (Math.max(firstBin + nBins - 1, bin) - Math.min(firstBin, bin) + 1 > maxBins) {
+            coarsen();
+            bin >>= 1;
+        }
+        if (bin < firstBin) {
+            int shift = (int) (firstBin - bin);
+            System.arraycopy(counts, 0, counts, shift, nBins);
+            Arrays.fill(counts, 0, shift, 0);
+            firstBin = bin;
+            nBins += shift;
+        } else if (bin >= firstBin + nBins) {
+            nBins = (int) (bin - firstBin + 1);
+        }
+        counts[(int) (bin - firstBin)] += weight;
+    }
+
+    /**
+     * Doubles the width of the bins.
+     */
+    private void coarsen() {
+        double[] newCounts = new double[maxBins];
+        long newFirstBin = firstBin >> 1;
+        for (int i = 0; i < nBins; i++) {
+            newCounts[(int) (((firstBin + i) >> 1) - newFirstBin)] += counts[i];
+        }
+        nBins = (int) (((firstBin + nBins - 1) >> 1) - newFirstBin + 1);
+        firstBin = newFirstBin;
+        counts = newCounts;
+        binWidth *= 2;
+    }
+
+    /**
+     * Returns the number of values added.
+     *
+     * @return the number of values added
+     */
+    public long getCount() {
+        return moments.getCount();
+    }
+
+    /**
+     * Returns the current width of the bins.
+     *
+     * @return the current width of the bins
+     */
+    public double getBinWidth() {
+        return binWidth;
+    }
+
+    /**
+     * Returns the estimator of the moments of the values added.
+     *
+     * @return the estimator of the moments of the values added
+     */
+    public MomentsEstimator getMoments() {
+        return moments;
+    }
+
+    /**
+     * Returns the center of the bins in use.
+     *
+     * @return the center of the bins in use
+     */
+    public double[] getBinCenters() {
+        double[] centers = new double[nBins];
+        for (int i = 0; i < nBins; i++) {
+            centers[i] = (firstBin + i + 0.5) * binWidth;
+        }
+        return centers;
+    }
+
+    /**
+     * Returns the counts of the bins in use.
+     *
+     * @return the counts of the bins in use
+     */
+    public double[] getBinCounts() {
+        return Arrays.copyOf(counts, nBins);
+    }
+
+    /**
+     * Returns an estimate of the given quantile from the bins, interpolating
+     * linearly within bins.
+     *
+     * @param q the quantile, between 0 and 1
+     *
+     * @return an estimate of the quantile
+     */
+    public double getQuantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Incorrect input for quantile: " + q + ". Input must be between 0 and 1.");
+        }
+        if (nBins == 0) {
+            throw new IllegalArgumentException("Attempting to estimate the quantile of an empty estimator.");
+        }
+        double target = q * getCount();
+        double cumulative = 0;
+        for (int i = 0; i < nBins; i++) {
+            if (counts[i] > 0 && cumulative + counts[i] >= target) {
+                double start = (firstBin + i) * binWidth;
+                return start + binWidth * (target - cumulative) / counts[i];
+            }
+            cumulative += counts[i];
+        }
+        return (firstBin + nBins) * binWidth;
+    }
+
+    /**
+     * Returns the bandwidth given by the robust rule of thumb of Silverman:
+     * 0.9 min(std, IQR/1.34) n^(-1/5). The bin width is used when the values
+     * show no dispersion.
+     *
+     * @return the bandwidth given by the rule of thumb of Silverman
+     */
+    public double getSilvermanBandwidth() {
+        long n = getCount();
+        if (n == 0) {
+            throw new IllegalArgumentException("Attempting to estimate the bandwidth of an empty estimator.");
+        }
+        double std = moments.getStd();
+        double iqr = (getQuantile(0.75) - getQuantile(0.25)) / 1.34;
+        double spread = iqr > 0 ? Math.min(std, iqr) : std;
+        double bandwidth = 0.9 * spread * Math.pow(n, -0.2);
+        return bandwidth > 0 ? bandwidth : binWidth;
+    }
+
+    /**
+     * Returns the kernel density distribution of the values added using a
+     * normal kernel and the bandwidth of the rule of thumb of Silverman.
+     *
+     * @return the kernel density distribution of the values added
+     */
+    public KernelDensityDistribution getDistribution() {
+        return getDistribution(getSilvermanBandwidth());
+    }
+
+    /**
+     * Returns the kernel density distribution of the values added using a
+     * normal kernel of the given bandwidth. The density is estimated at the
+     * center of the bins and of additional bins covering the tails of the
+     * kernel.
+     *
+     * @param bandwidth the bandwidth of the kernel
+     *
+     * @return the kernel density distribution of the values added
+     */
+    public KernelDensityDistribution getDistribution(double bandwidth) {
+        if (nBins == 0) {
+            throw new IllegalArgumentException("Attempting to estimate the density of an empty estimator.");
+        }
+        if (bandwidth <= 0) {
+            throw new IllegalArgumentException("The bandwidth must be a positive number.");
+        }
+        int kernelBins = (int) Math.ceil(KERNEL_SPAN * bandwidth / binWidth);
+        double[] kernel = new double[2 * kernelBins + 1];
+        double norm = 1 / (Math.sqrt(2 * Math.PI) * bandwidth * getCount());
+        for (int d = -kernelBins; d <= kernelBins; d++) {
+            double u = d * binWidth / bandwidth;
+            kernel[d + kernelBins] = norm * Math.exp(-u * u / 2);
+        }
+        double[] density;
+        if (kernel.length > DIRECT_CONVOLUTION_THRESHOLD) {
+            density = FastFourierTransform.convolve(Arrays.copyOf(counts, nBins), kernel);
+            for (int i = 0; i < density.length; i++) {
+                // the convolution can be slightly negative due to rounding errors
+                density[i] = Math.max(0, density[i]);
+            }
+        } else {
+            density = new double[nBins + 2 * kernelBins];
+            for (int i = 0; i < nBins; i++) {
+                double count = counts[i];
+                if (count > 0) {
+                    for (int k = 0; k < kernel.length; k++) {
+                        density[i + k] += count * kernel[k];
+                    }
+                }
+            }
+        }
+        double start = (firstBin - kernelBins + 0.5) * binWidth;
+        return new KernelDensityDistribution(start, binWidth, density);
+    }
+}
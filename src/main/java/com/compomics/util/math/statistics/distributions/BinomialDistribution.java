@@ -1,19 +1,62 @@
 package com.compomics.util.math.statistics.distributions;
 
 import com.compomics.util.math.statistics.Distribution;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.commons.math.MathException;
 import org.apache.commons.math.distribution.BinomialDistributionImpl;
 import org.apache.commons.math.special.Beta;
 
 /**
- * Implementation of a binomial distribution.
+ * Implementation of a binomial distribution. The probabilities are memoized in
+ * tables over 0..n divided in chunks allocated on first use: reads are lock
+ * free and concurrent computations of the same value publish the same result.
+ * Instances are shared through a registry, see getBinomialDistribution.
  *
  * @author Marc Vaudel
  */
 public class BinomialDistribution implements Distribution {
 
+    /**
+     * The largest number of trials for which probabilities are memoized.
+     */
+    public static final int MAX_CACHED_N = 100000;
+    /**
+     * The maximal number of values which can be memoized by the distributions
+     * of the registry, i.e. the sum of n + 1 over the distributions kept.
+     */
+    public static final int REGISTRY_CAPACITY = 1000000;
+    /**
+     * The number of bits of the index of a value in its chunk.
+     */
+    private static final int CHUNK_BITS = 10;
+    /**
+     * The number of values per chunk of the tables.
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    /**
+     * The bits marking a value not yet computed in the tables, a NaN never
+     * returned by the computation.
+     */
+    private static final long NOT_COMPUTED = 0x7ff8dead0000beefL;
+    /**
+     * Registry of the distributions indexed by number of trials and
+     * probability of success.
+     */
+    private static final ConcurrentHashMap<DistributionKey, BinomialDistribution> registry = new ConcurrentHashMap<DistributionKey, BinomialDistribution>();
+    /**
+     * The keys of the registry in the order of registration.
+     */
+    private static final ConcurrentLinkedQueue<DistributionKey> registryOrder = new ConcurrentLinkedQueue<DistributionKey>();
+    /**
+     * The number of values which can be memoized by the distributions of the
+     * registry.
+     */
+    private static final AtomicLong registrySize = new AtomicLong();
     /**
      * Instance of the apache distribution.
      */
@@ -27,20 +70,22 @@ public class BinomialDistribution implements Distribution {
      */
     private double p;
     /**
-     * The maximal number of keys kept in each cache map.
+     * The chunks of the cache for the probabilities, null if n is too large.
      */
-    private int cacheSize = 1000;
+    private final AtomicReferenceArray<AtomicLongArray> pCache;
     /**
-     * A cache for the probabilities.
+     * The chunks of the cache for the descending cumulative probabilities,
+     * null if n is too large.
      */
-    private HashMap<Integer, Double> pCache = new HashMap<Integer, Double>();
+    private final AtomicReferenceArray<AtomicLongArray> descendingCumulativePCache;
     /**
-     * A cache for the cumulative probabilities.
+     * Indicates whether a value was stored in the caches.
      */
-    private HashMap<Integer, Double> descendingCumulativePCache = new HashMap<Integer, Double>();
+    private volatile boolean cacheUsed = false;
 
     /**
-     * Constructor.
+     * Constructor. Use getBinomialDistribution to share instances and their
+     * caches.
      *
      * @param n the number of trials
      * @param p the probability of success of each trial
@@ -49,43 +94,132 @@ public class BinomialDistribution implements Distribution {
         this.n = n;
         this.p = p;
         binomialDistributionImpl = new BinomialDistributionImpl(n, p);
+        if (n <= MAX_CACHED_N) {
+            int nChunks = (n >> CHUNK_BITS) + 1;
+            pCache = new AtomicReferenceArray<AtomicLongArray>(nChunks);
+            descendingCumulativePCache = new AtomicReferenceArray<AtomicLongArray>(nChunks);
+        } else {
+            pCache = null;
+            descendingCumulativePCache = null;
+        }
     }
 
-    @Override
-    public Double getProbabilityAt(double x) {
-
-        if (x < 0 || x > n) {
-            return 0.0;
+    /**
+     * Returns the binomial distribution of the given parameters from the
+     * registry, creating it if needed. When the distributions registered can
+     * memoize more than REGISTRY_CAPACITY values, the oldest are removed from
+     * the registry.
+     *
+     * @param n the number of trials
+     * @param p the probability of success of each trial
+     *
+     * @return the binomial distribution
+     */
+    public static BinomialDistribution getBinomialDistribution(int n, double p) {
+        DistributionKey key = new DistributionKey(n, p);
+        BinomialDistribution distribution = registry.get(key);
+        if (distribution == null) {
+            distribution = new BinomialDistribution(n, p);
+            BinomialDistribution previous = registry.putIfAbsent(key, distribution);
+            if (previous != null) {
+                return previous;
+            }
+            registryOrder.add(key);
+            long size = registrySize.addAndGet(distribution.getCapacity());
+            while (size > REGISTRY_CAPACITY) {
+                DistributionKey oldestKey = registryOrder.poll();
+                if (oldestKey == null) {
+                    break;
+                }
+                BinomialDistribution oldest = registry.remove(oldestKey);
+                if (oldest != null) {
+                    size = registrySize.addAndGet(-oldest.getCapacity());
+                }
+            }
         }
+        return distribution;
+    }
 
-        int k = (int) x;
-        Double result = pCache.get(k);
-        if (result == null) {
-            result = binomialDistributionImpl.probability(k);
-            addPToCache(k, result);
+    /**
+     * Empties the registry of distributions.
+     */
+    public static void clearRegistry() {
+        DistributionKey key;
+        while ((key = registryOrder.poll()) != null) {
+            BinomialDistribution distribution = registry.remove(key);
+            if (distribution != null) {
+                registrySize.addAndGet(-distribution.getCapacity());
+            }
         }
+    }
 
-        return result;
+    /**
+     * Returns the number of values which can be memoized by this
+     * distribution, at least one.
+     *
+     * @return the number of values which can be memoized
+     */
+    private int getCapacity() {
+        return pCache == null ? 1 : n + 1;
+    }
 
+    /**
+     * Returns the value memoized at the given index as bits, NOT_COMPUTED if
+     * not set.
+     *
+     * @param cache the chunks of the cache
+     * @param k the index of the value
+     *
+     * @return the bits of the value
+     */
+    private static long getCachedValue(AtomicReferenceArray<AtomicLongArray> cache, int k) {
+        AtomicLongArray chunk = cache.get(k >> CHUNK_BITS);
+        if (chunk == null) {
+            return NOT_COMPUTED;
+        }
+        return chunk.get(k & (CHUNK_SIZE - 1));
     }
 
     /**
-     * Adds a probability to the cache and manages the cache size.
+     * Memoizes a value at the given index, allocating its chunk if needed.
      *
-     * @param k the value
-     * @param p the probability
-     */
-    private synchronized void addPToCache(int k, Double p) {
-        if (pCache.size() >= cacheSize) {
-            HashSet<Integer> keys = new HashSet<Integer>(pCache.keySet());
-            for (Integer key : keys) {
-                pCache.remove(key);
-                if (pCache.size() < cacheSize) {
-                    break;
-                }
+     * @param cache the chunks of the cache
+     * @param k the index of the value
+     * @param value the value
+     */
+    private void setCachedValue(AtomicReferenceArray<AtomicLongArray> cache, int k, double value) {
+        int chunkIndex = k >> CHUNK_BITS;
+        AtomicLongArray chunk = cache.get(chunkIndex);
+        if (chunk == null) {
+            long[] values = new long[Math.min(CHUNK_SIZE, n + 1 - (chunkIndex << CHUNK_BITS))];
+            Arrays.fill(values, NOT_COMPUTED);
+            chunk = new AtomicLongArray(values);
+            if (!cache.compareAndSet(chunkIndex, null, chunk)) {
+                chunk = cache.get(chunkIndex);
             }
         }
-        pCache.put(k, p);
+        chunk.set(k & (CHUNK_SIZE - 1), Double.doubleToRawLongBits(value));
+        cacheUsed = true;
+    }
+
+    @Override
+    public Double getProbabilityAt(double x) {
+
+        if (x < 0 || x > n) {
+            return 0.0;
+        }
+
+        int k = (int) x;
+        if (pCache == null) {
+            return binomialDistributionImpl.probability(k);
+        }
+        long bits = getCachedValue(pCache, k);
+        if (bits != NOT_COMPUTED) {
+            return Double.longBitsToDouble(bits);
+        }
+        double result = binomialDistributionImpl.probability(k);
+        setCachedValue(pCache, k, result);
+        return result;
     }
 
     @Override
@@ -98,38 +232,36 @@ public class BinomialDistribution implements Distribution {
     public Double getDescendingCumulativeProbabilityAt(double x) throws MathException {
 
         int k = (int) x;
-        if (k > n) {
+        if (k >= n) {
             return 0.0;
         } else if (k < 0) {
             return 1.0;
         }
-        Double result = pCache.get(k);
-        if (result == null) {
-            // adapted from http://commons.apache.org/proper/commons-math/apidocs/src-html/org/apache/commons/math3/distribution/BinomialDistribution.html#line.130
-            result = Beta.regularizedBeta(p, x + 1.0, n - x);
-            addDescendingCumulativePToCache(k, result);
+        if (descendingCumulativePCache == null) {
+            return getDescendingCumulativeProbability(k);
         }
-
+        long bits = getCachedValue(descendingCumulativePCache, k);
+        if (bits != NOT_COMPUTED) {
+            return Double.longBitsToDouble(bits);
+        }
+        double result = getDescendingCumulativeProbability(k);
+        setCachedValue(descendingCumulativePCache, k, result);
         return result;
     }
 
     /**
-     * Adds a probability to the cache and manages the cache size.
+     * Computes the probability to observe more than k successes.
      *
-     * @param k the value
-     * @param p the probability
-     */
-    private synchronized void addDescendingCumulativePToCache(int k, Double p) {
-        if (descendingCumulativePCache.size() >= cacheSize) {
-            HashSet<Integer> keys = new HashSet<Integer>(descendingCumulativePCache.keySet());
-            for (Integer key : keys) {
-                descendingCumulativePCache.remove(key);
-                if (descendingCumulativePCache.size() < cacheSize) {
-                    break;
-                }
-            }
-        }
-        descendingCumulativePCache.put(k, p);
+     * @param k the number of successes, between 0 and n - 1
+     *
+     * @return the probability to observe more than k successes
+     *
+     * @throws MathException exception thrown whenever an error occurred while
+     * computing the probability
+     */
+    private double getDescendingCumulativeProbability(int k) throws MathException {
+        // adapted from http://commons.apache.org/proper/commons-math/apidocs/src-html/org/apache/commons/math3/distribution/BinomialDistribution.html#line.130
+        return Beta.regularizedBeta(p, k + 1.0, n - k);
     }
 
     /**
@@ -138,7 +270,7 @@ public class BinomialDistribution implements Distribution {
      * @return a boolean indicating whether all caches are empty
      */
     public boolean isCacheEmpty() {
-        return pCache.isEmpty() && descendingCumulativePCache.isEmpty();
+        return !cacheUsed;
     }
 
     @Override
@@ -165,4 +297,45 @@ public class BinomialDistribution implements Distribution {
     public Double getValueAtDescendingCumulativeProbability(double p) throws MathException {
         throw new UnsupportedOperationException("Not supported.");
     }
+
+    /**
+     * Key of a distribution in the registry.
+     */
+    private static class DistributionKey {
+
+        /**
+         * The number of trials.
+         */
+        private final int n;
+        /**
+         * The probability of success of each trial.
+         */
+        private final double p;
+
+        /**
+         * Constructor.
+         *
+         * @param n the number of trials
+         * @param p the probability of success of each trial
+         */
+        public DistributionKey(int n, double p) {
+            this.n = n;
+            this.p = p;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof DistributionKey)) {
+                return false;
+            }
+            DistributionKey other = (DistributionKey) obj;
+            return n == other.n && Double.compare(p, other.p) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(p);
+            return 31 * n + (int) (bits ^ (bits >>> 32));
+        }
+    }
 }
@@ -0,0 +1,186 @@
+package com.compomics.util.math.statistics.distributions;
+
+import com.compomics.util.math.statistics.Distribution;
+import org.apache.commons.math.MathException;
+
+/**
+ * Distribution given by a density estimated on a regular grid, for instance by
+ * a kernel density estimation. The density is interpolated linearly between
+ * the points of the grid and is null outside the grid. The cumulative
+ * probability is integrated from the interpolated density and normalized to
+ * one.
+ *
+ * @author Marc Vaudel
+ */
+public class KernelDensityDistribution implements Distribution {
+
+    /**
+     * Serial version number for backward compatibility.
+     */
+    static final long serialVersionUID = -2409183746920158264L;
+    /**
+     * The first point of the grid.
+     */
+    private final double start;
+    /**
+     * The step of the grid.
+     */
+    private final double step;
+    /**
+     * The density at the points of the grid.
+     */
+    private final double[] density;
+    /**
+     * The cumulative probability at the points of the grid.
+     */
+    private final double[] cumulative;
+
+    /**
+     * Constructor.
+     *
+     * @param start the first point of the grid
+     * @param step the step of the grid
+     * @param density the density at the points of the grid
+     */
+    public KernelDensityDistribution(double start, double step, double[] density) {
+        if (density.length < 2) {
+            throw new IllegalArgumentException("At least two points are needed to define a density.");
+        }
+        if (step <= 0) {
+            throw new IllegalArgumentException("The step of the grid must be a positive number.");
+        }
+        this.start = start;
+        this.step = step;
+        int n = density.length;
+        double[] cumulativeDensity = new double[n];
+        for (int i = 1; i < n; i++) {
+            cumulativeDensity[i] = cumulativeDensity[i - 1] + step * (density[i - 1] + density[i]) / 2;
+        }
+        double total = cumulativeDensity[n - 1];
+        if (total <= 0) {
+            throw new IllegalArgumentException("The density must have a positive integral.");
+        }
+        this.density = new double[n];
+        for (int i = 0; i < n; i++) {
+            this.density[i] = density[i] / total;
+            cumulativeDensity[i] /= total;
+        }
+        cumulativeDensity[n - 1] = 1;
+        this.cumulative = cumulativeDensity;
+    }
+
+    /**
+     * Returns the points of the grid.
+     *
+     * @return the points of the grid
+     */
+    public double[] getX() {
+        double[] x = new double[density.length];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = start + i * step;
+        }
+        return x;
+    }
+
+    /**
+     * Returns the normalized density at the points of the grid.
+     *
+     * @return the normalized density at the points of the grid
+     */
+    public double[] getDensity() {
+        return density.clone();
+    }
+
+    @Override
+    public Double getProbabilityAt(double x) {
+        double position = (x - start) / step;
+        if (position < 0 || position > density.length - 1) {
+            return 0.0;
+        }
+        int i = (int) position;
+        if (i == density.length - 1) {
+            return density[i];
+        }
+        double rest = position - i;
+        return density[i] + rest * (density[i + 1] - density[i]);
+    }
+
+    @Override
+    public Double getCumulativeProbabilityAt(double x) throws MathException {
+        double position = (x - start) / step;
+        if (position <= 0) {
+            return 0.0;
+        }
+        if (position >= density.length - 1) {
+            return 1.0;
+        }
+        int i = (int) position;
+        double dx = (position - i) * step;
+        double slope = (density[i + 1] - density[i]) / step;
+        return cumulative[i] + dx * (density[i] + slope * dx / 2);
+    }
+
+    @Override
+    public Double getDescendingCumulativeProbabilityAt(double x) throws MathException {
+        return 1.0 - getCumulativeProbabilityAt(x);
+    }
+
+    @Override
+    public Double getSmallestCumulativeProbabilityAt(double x) throws MathException {
+        double p = getCumulativeProbabilityAt(x);
+        return Math.min(p, 1 - p);
+    }
+
+    @Override
+    public Double getMaxValueForProbability(double p) {
+        for (int i = density.length - 1; i > 0; i--) {
+            if (density[i - 1] >= p) {
+                if (density[i] >= p) {
+                    return start + i * step;
+                }
+                return start + (i - 1 + (density[i - 1] - p) / (density[i - 1] - density[i])) * step;
+            }
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public Double getMinValueForProbability(double p) {
+        for (int i = 0; i < density.length - 1; i++) {
+            if (density[i + 1] >= p) {
+                if (density[i] >= p) {
+                    return start + i * step;
+                }
+                return start + (i + 1 - (density[i + 1] - p) / (density[i + 1] - density[i])) * step;
+            }
+        }
+        return Double.NaN;
+    }
+
+    @Override
+    public Double getValueAtCumulativeProbability(double p) throws MathException {
+        if (p < 0 || p > 1) {
+            throw new IllegalArgumentException("Incorrect input for probability: " + p + ". Input must be between 0 and 1.");
+        }
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < p) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        double mass = cumulative[high] - cumulative[low];
+        if (mass <= 0) {
+            return start + low * step;
+        }
+        return start + (low + (p - cumulative[low]) / mass) * step;
+    }
+
+    @Override
+    public Double getValueAtDescendingCumulativeProbability(double p) throws MathException {
+        return getValueAtCumulativeProbability(1 - p);
+    }
+}
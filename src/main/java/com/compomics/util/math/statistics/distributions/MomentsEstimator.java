@@ -0,0 +1,176 @@
+package com.compomics.util.math.statistics.distributions;
+
+import java.io.Serializable;
+
+/**
+ * Streaming estimator of the mean and variance of a series of values. Values
+ * are added one at a time using the updating formulas of Welford, estimators
+ * built on different partitions of the data can be merged using the pairwise
+ * formulas of Chan et al. This class is not thread safe, use one estimator per
+ * thread and merge them.
+ *
+ * @author Marc Vaudel
+ */
+public class MomentsEstimator implements Serializable {
+
+    /**
+     * Serial version number for backward compatibility.
+     */
+    static final long serialVersionUID = -1822915823471956482L;
+    /**
+     * The number of values.
+     */
+    private long count = 0;
+    /**
+     * The mean of the values.
+     */
+    private double mean = 0;
+    /**
+     * The sum of the squared deviations to the mean.
+     */
+    private double m2 = 0;
+    /**
+     * The smallest value added.
+     */
+    private double min = Double.POSITIVE_INFINITY;
+    /**
+     * The largest value added.
+     */
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Constructor.
+     */
+    public MomentsEstimator() {
+
+    }
+
+    /**
+     * Adds a value.
+     *
+     * @param x the value to add
+     */
+    public void add(double x) {
+        count++;
+        double delta = x - mean;
+        mean += delta / count;
+        m2 += delta * (x - mean);
+        if (x < min) {
+            min = x;
+        }
+        if (x > max) {
+            max = x;
+        }
+    }
+
+    /**
+     * Adds the values of an array.
+     *
+     * @param values the values to add
+     */
+    public void addAll(double[] values) {
+        for (double x : values) {
+            add(x);
+        }
+    }
+
+    /**
+     * Merges the given estimator into this one. The other estimator is not
+     * modified.
+     *
+     * @param other the estimator to merge
+     */
+    public void merge(MomentsEstimator other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            mean = other.mean;
+            m2 = other.m2;
+            min = other.min;
+            max = other.max;
+            return;
+        }
+        long total = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        m2 += other.m2 + delta * delta * ((double) count) * other.count / total;
+        count = total;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Returns the number of values added.
+     *
+     * @return the number of values added
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of the values added.
+     *
+     * @return the mean of the values added
+     */
+    public double getMean() {
+        if (count == 0) {
+            throw new IllegalArgumentException("Attempting to estimate the mean of an empty estimator.");
+        }
+        return mean;
+    }
+
+    /**
+     * Returns the sample variance of the values added, 0 if less than two
+     * values were added.
+     *
+     * @return the sample variance of the values added
+     */
+    public double getVariance() {
+        if (count < 2) {
+            return 0;
+        }
+        return m2 / (count - 1);
+    }
+
+    /**
+     * Returns the sample standard deviation of the values added, 0 if less
+     * than two values were added. Consistent with BasicMathFunctions.std.
+     *
+     * @return the sample standard deviation of the values added
+     */
+    public double getStd() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Returns the smallest value added.
+     *
+     * @return the smallest value added
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value added.
+     *
+     * @return the largest value added
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the normal distribution calibrated on the mean and standard
+     * deviation of the values added.
+     *
+     * @return the normal distribution calibrated on the mean and standard
+     * deviation
+     */
+    public NormalDistribution getNormalDistribution() {
+        return new NormalDistribution(getMean(), getStd());
+    }
+}
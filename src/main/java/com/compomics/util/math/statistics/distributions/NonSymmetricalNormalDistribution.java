@@ -2,10 +2,10 @@ package com.compomics.util.math.statistics.distributions;
 
 import com.compomics.util.math.BasicMathFunctions;
 import com.compomics.util.math.statistics.Distribution;
+import com.compomics.util.math.statistics.QuantileDigest;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
-import java.util.Collections;
 import org.apache.commons.math.MathException;
 
 /**
@@ -91,9 +91,24 @@ public class NonSymmetricalNormalDistribution implements Distribution {
      * and 84.1% percentiles.
      */
     public static NonSymmetricalNormalDistribution getRobustNonSymmetricalNormalDistribution(ArrayList<Double> input) {
-        ArrayList<Double> sortedInput = new ArrayList<Double>(input);
-        Collections.sort(sortedInput);
-        return getRobustNonSymmetricalNormalDistributionFromSortedList(sortedInput);
+        double[] percentiles = BasicMathFunctions.percentiles(input, new double[]{0.159, 0.5, 0.841});
+        double median = percentiles[1];
+        return new NonSymmetricalNormalDistribution(median, median - percentiles[0], percentiles[2] - median);
+    }
+
+    /**
+     * Returns the non-symmetrical distribution calibrated on the median, 15.9%
+     * and 84.1% percentiles estimated by the given quantile digest.
+     *
+     * @param quantileDigest the quantile digest of the values
+     * @return the non symmetrical distribution calibrated on the median, 15.9%
+     * and 84.1% percentiles.
+     */
+    public static NonSymmetricalNormalDistribution getRobustNonSymmetricalNormalDistribution(QuantileDigest quantileDigest) {
+        double median = quantileDigest.getQuantile(0.5);
+        double percentileDown = quantileDigest.getQuantile(0.159);
+        double percentileUp = quantileDigest.getQuantile(0.841);
+        return new NonSymmetricalNormalDistribution(median, median - percentileDown, percentileUp - median);
     }
 
     /**
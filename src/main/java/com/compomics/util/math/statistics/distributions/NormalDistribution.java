@@ -2,6 +2,7 @@ package com.compomics.util.math.statistics.distributions;
 
 import com.compomics.util.math.BasicMathFunctions;
 import com.compomics.util.math.statistics.Distribution;
+import com.compomics.util.math.statistics.QuantileDigest;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
@@ -70,8 +71,23 @@ public class NormalDistribution implements Distribution {
      * to median distance
      */
     public static NormalDistribution getRobustNormalDistribution(ArrayList<Double> input) {
-        double std = (BasicMathFunctions.percentile(input, 0.841) - BasicMathFunctions.percentile(input, 0.159)) / 2;
-        return new NormalDistribution(BasicMathFunctions.median(input), std);
+        double[] percentiles = BasicMathFunctions.percentiles(input, new double[]{0.159, 0.5, 0.841});
+        double std = (percentiles[2] - percentiles[0]) / 2;
+        return new NormalDistribution(percentiles[1], std);
+    }
+
+    /**
+     * Returns the normal distribution calibrated on median and 34.1%
+     * percentile to median distance estimated by the given quantile digest.
+     *
+     * @param quantileDigest the quantile digest of the values
+     *
+     * @return a normal distribution calibrated on median and 34.1% percentile
+     * to median distance
+     */
+    public static NormalDistribution getRobustNormalDistribution(QuantileDigest quantileDigest) {
+        double std = (quantileDigest.getQuantile(0.841) - quantileDigest.getQuantile(0.159)) / 2;
+        return new NormalDistribution(quantileDigest.getQuantile(0.5), std);
     }
 
     @Override
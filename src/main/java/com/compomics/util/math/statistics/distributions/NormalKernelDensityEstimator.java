@@ -1,131 +1,361 @@
 package com.compomics.util.math.statistics.distributions;
 
+import com.compomics.util.math.BasicMathFunctions;
+import com.compomics.util.math.FastFourierTransform;
 import java.util.ArrayList;
-import java.util.Arrays;
-import umontreal.iro.lecuyer.gof.KernelDensity;
-import umontreal.iro.lecuyer.probdist.EmpiricalDist;
-import umontreal.iro.lecuyer.probdist.NormalDist;
-import umontreal.iro.lecuyer.randvar.KernelDensityGen;
-import umontreal.iro.lecuyer.randvar.NormalGen;
-import umontreal.iro.lecuyer.rng.MRG31k3p;
-import umontreal.iro.lecuyer.rng.RandomStream;
 
 /**
- * This class makes use of "SSJ: Stochastic Simulation in Java" library from
- * iro.umontreal.ca to estimate probability density function of an array of
- * double. It first generates independent and identically distributed random
- * variables from the dataset, at which the density needs to be computed and
- * then generates the vector of density estimates at the corresponding
- * variables.
+ * This class estimates the probability density function of an array of double
+ * using a kernel density estimation with a normal kernel. The basic idea is to
+ * center a copy of the same symmetric density at each observation and take an
+ * equally weighted mixture of the n copies as an estimator of the density from
+ * which the observations come. The resulting kernel density has the general
+ * form: fn(x) = (1/nh)sum(k((x - xi)/h)). K is the kernel (here a Gaussian is
+ * chosen) and h is the bandwidth (smoothing factor).
  *
- * The KernelDensityGen class from the same library is used: the class
- * implements random variate generators for distributions obtained via kernel
- * density estimation methods from a set of n individual observations x1,...,
- * xn. The basic idea is to center a copy of the same symmetric density at each
- * observation and take an equally weighted mixture of the n copies as an
- * estimator of the density from which the observations come. The resulting
- * kernel density has the general form: fn(x) = (1/nh)?i=1nk((x - xi)/h). K is
- * the kernel (here a Gaussian is chosen) and h is the bandwidth (smoothing
- * factor).
+ * The density is estimated on a regular grid: the observations are linearly
+ * binned on the grid and the bins are convolved with the kernel using fast
+ * Fourier transforms, as done by the R "density" function. The estimation is
+ * deterministic and runs in O(N + n log(n)) where N is the number of
+ * observations and n the number of points of the grid. Once estimated, the
+ * density can be evaluated at any point without allocation.
  *
  * @author Paola Masuzzo
  */
 public class NormalKernelDensityEstimator {
 
     /**
-     * N, estimation precision, is set to a default of 512, as in most KDE
-     * algorithms default values, i.e. R "density"function, OmicSoft, Matlab
-     * algorithm.
+     * Rules of thumb available to select the bandwidth.
      */
-    private final int n = 4096;
+    public enum BandwidthRule {
+
+        /**
+         * Robust rule of thumb of Silverman with the factor historically
+         * used by this estimator: 0.99 min(std, IQR/1.34) n^(-1/5).
+         */
+        silverman(0.99, true),
+        /**
+         * Rule of thumb of Scott: 1.06 std n^(-1/5).
+         */
+        scott(1.06, false);
+        /**
+         * The factor of the rule.
+         */
+        private final double factor;
+        /**
+         * Indicates whether the spread is robustly estimated using the inter
+         * quartile range.
+         */
+        private final boolean robust;
+
+        /**
+         * Constructor.
+         *
+         * @param factor the factor of the rule
+         * @param robust indicates whether the spread is robustly estimated
+         * using the inter quartile range
+         */
+        private BandwidthRule(double factor, boolean robust) {
+            this.factor = factor;
+            this.robust = robust;
+        }
+
+        /**
+         * Returns the bandwidth of the rule for the given data.
+         *
+         * @param data the data
+         *
+         * @return the bandwidth
+         */
+        public double getBandwidth(double[] data) {
+            MomentsEstimator moments = new MomentsEstimator();
+            moments.addAll(data);
+            double spread = moments.getStd();
+            if (robust) {
+                double[] quartiles = BasicMathFunctions.percentiles(data, new double[]{0.25, 0.75});
+                double iqr = (quartiles[1] - quartiles[0]) / 1.34;
+                if (iqr > 0) {
+                    spread = Math.min(spread, iqr);
+                }
+            }
+            // fall back on the scale of the data if no dispersion is found, as done in R
+            if (spread == 0 && data.length > 0) {
+                spread = Math.abs(data[0]);
+            }
+            if (spread == 0) {
+                spread = 1;
+            }
+            return factor * spread * Math.pow(data.length, -0.2);
+        }
+    }
+
+    /**
+     * N, estimation precision, is set to a default of 4096 points of the grid,
+     * R "density" function uses 512.
+     */
+    private int n = 4096;
+    /**
+     * The number of bandwidths the grid extends beyond the extreme values, 3
+     * as in R.
+     */
+    private double cut = 3;
+    /**
+     * The number of bandwidths covered by the kernel on each side.
+     */
+    private static final double KERNEL_SPAN = 4;
+    /**
+     * The rule used to select the bandwidth.
+     */
+    private BandwidthRule bandwidthRule = BandwidthRule.silverman;
+    /**
+     * A user defined bandwidth, used instead of the rule when positive.
+     */
+    private double userBandwidth = -1;
     /**
-     * The empirical distribution.
+     * The bandwidth used for the last estimation.
      */
-    private EmpiricalDist empiricalDist;
+    private double bandwidth;
     /**
-     * The kernel density generator.
+     * The first point of the grid.
      */
-    private KernelDensityGen kernelDensityGen;
+    private double gridStart;
     /**
-     * The dataset size.
+     * The step of the grid.
      */
-    private double datasetSize;
+    private double gridStep;
+    /**
+     * The points of the grid.
+     */
+    private double[] gridX;
+    /**
+     * The estimated density at the points of the grid.
+     */
+    private double[] gridDensity;
 
     /**
-     * This method initiates the KDE, i.e. sort values in ascending order,
-     * compute an empirical distribution out of it, makes use of a NormalGen to
-     * generate random variates from the normal distribution, and then use these
-     * variates to generate a kernel density generator of the empirical
-     * distribution.
+     * Estimates the density function on the grid, the results can then be
+     * accessed using the getters.
      *
      * @param data the data
      */
-    private void init(double[] data) {
-        datasetSize = (double) data.length;
-        Arrays.sort(data);
-        empiricalDist = new EmpiricalDist(data);
-        // new Stream to randomly generate numbers
-        // combined multiple recursive generator (CMRG)
-        RandomStream stream = new MRG31k3p();
-        NormalGen normalKernelDensityGen = new NormalGen(stream);
-        kernelDensityGen = new KernelDensityGen(stream, empiricalDist, normalKernelDensityGen);
+    public void estimate(double[] data) {
+
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Attempting to estimate the density of an empty dataset.");
+        }
+        double min = data[0];
+        double max = data[0];
+        for (double x : data) {
+            if (x < min) {
+                min = x;
+            }
+            if (x > max) {
+                max = x;
+            }
+        }
+        bandwidth = userBandwidth > 0 ? userBandwidth : bandwidthRule.getBandwidth(data);
+        gridStart = min - cut * bandwidth;
+        double gridEnd = max + cut * bandwidth;
+        gridStep = (gridEnd - gridStart) / (n - 1);
+
+        // linear binning of the data on the grid
+        double[] bins = new double[n];
+        for (double x : data) {
+            double position = (x - gridStart) / gridStep;
+            int i = Math.min((int) position, n - 2);
+            double rest = position - i;
+            bins[i] += 1 - rest;
+            bins[i + 1] += rest;
+        }
+
+        // kernel sampled on the grid
+        int kernelBins = Math.min(n - 1, (int) Math.ceil(KERNEL_SPAN * bandwidth / gridStep));
+        double[] kernel = new double[2 * kernelBins + 1];
+        double norm = 1 / (Math.sqrt(2 * Math.PI) * bandwidth * data.length);
+        for (int d = -kernelBins; d <= kernelBins; d++) {
+            double u = d * gridStep / bandwidth;
+            kernel[d + kernelBins] = norm * Math.exp(-u * u / 2);
+        }
+
+        double[] convolution = FastFourierTransform.convolve(bins, kernel);
+        gridX = new double[n];
+        gridDensity = new double[n];
+        for (int i = 0; i < n; i++) {
+            gridX[i] = gridStart + i * gridStep;
+            // the convolution can be slightly negative due to rounding errors
+            gridDensity[i] = Math.max(0, convolution[i + kernelBins]);
+        }
     }
 
     /**
      * Estimate the density function.
      *
      * @param data the data
-     * @return the estimated density function
+     * @return the estimated density function: the points of the grid and the
+     * density at these points
      */
     public ArrayList estimateDensityFunction(Double[] data) {
-        init(excludeNullValues(data)); // init the KDE with a normal generator
-        return estimateDensityFunction();
+        return estimateDensityFunction(excludeNullValues(data));
     }
 
     /**
      * Estimate the density function.
      *
      * @param data the data
-     * @return the estimated density function
+     * @return the estimated density function: the points of the grid and the
+     * density at these points
      */
     public ArrayList estimateDensityFunction(double[] data) {
-        init(data); // init the KDE with a normal generator
-        return estimateDensityFunction();
+        estimate(data);
+        ArrayList densityFunction = new ArrayList();
+        densityFunction.add(gridX.clone());
+        densityFunction.add(gridDensity.clone());
+        return densityFunction;
     }
 
     /**
-     * Estimate the density function.
+     * Returns the estimated density at x, interpolated linearly between the
+     * points of the grid, 0 outside the grid.
      *
-     * @return the estimated density function
+     * @param x the point of interest
+     *
+     * @return the estimated density at x
      */
-    private ArrayList estimateDensityFunction() {
-
-        ArrayList densityFunction = new ArrayList();
+    public double getDensityAt(double x) {
+        if (gridDensity == null) {
+            throw new IllegalArgumentException("Density not estimated.");
+        }
+        double position = (x - gridStart) / gridStep;
+        if (position < 0 || position > n - 1) {
+            return 0;
+        }
+        int i = Math.min((int) position, n - 2);
+        double rest = position - i;
+        return gridDensity[i] + rest * (gridDensity[i + 1] - gridDensity[i]);
+    }
 
-        // array for random samples
-        double[] randomSamples = new double[n];
+    /**
+     * Evaluates the estimated density at the given points and stores the
+     * result in the given array.
+     *
+     * @param x the points of interest
+     * @param result the array where to store the density, at least as long
+     * as x
+     */
+    public void getDensityAt(double[] x, double[] result) {
+        for (int i = 0; i < x.length; i++) {
+            result[i] = getDensityAt(x[i]);
+        }
+    }
 
-        // compute x values
-        for (int i = 0; i < n; i++) {
-            double nextDouble = kernelDensityGen.nextDouble();
-            randomSamples[i] = nextDouble;
+    /**
+     * Returns the distribution corresponding to the estimated density.
+     *
+     * @return the distribution corresponding to the estimated density
+     */
+    public KernelDensityDistribution getDistribution() {
+        if (gridDensity == null) {
+            throw new IllegalArgumentException("Density not estimated.");
         }
+        return new KernelDensityDistribution(gridStart, gridStep, gridDensity);
+    }
 
-        Arrays.sort(randomSamples);
-        densityFunction.add(randomSamples);
+    /**
+     * Returns the points of the grid of the last estimation.
+     *
+     * @return the points of the grid of the last estimation
+     */
+    public double[] getX() {
+        return gridX;
+    }
 
-        // compute y values
-        // use normal default kernel
-        NormalDist kern = new NormalDist();
+    /**
+     * Returns the density at the points of the grid of the last estimation.
+     *
+     * @return the density at the points of the grid of the last estimation
+     */
+    public double[] getDensity() {
+        return gridDensity;
+    }
 
-        // calculate optimal bandwidth with the (ROBUST) Silverman's "rule of thumb" (Scott Variation uses factor = 1.06)
-        double bandWidth = 0.99 * Math.min(empiricalDist.getSampleStandardDeviation(), (empiricalDist.getInterQuartileRange() / 1.34)) / Math.pow(datasetSize, 0.2);
+    /**
+     * Returns the bandwidth used for the last estimation.
+     *
+     * @return the bandwidth used for the last estimation
+     */
+    public double getBandwidth() {
+        return bandwidth;
+    }
 
-        // estimate density and store values in a vector
-        double[] estimatedDensityValues = KernelDensity.computeDensity(empiricalDist, kern, bandWidth, randomSamples);
-        densityFunction.add(estimatedDensityValues);
+    /**
+     * Sets a bandwidth to use instead of the bandwidth rule. A negative value
+     * restores the use of the rule.
+     *
+     * @param bandwidth the bandwidth
+     */
+    public void setBandwidth(double bandwidth) {
+        this.userBandwidth = bandwidth;
+    }
 
-        return densityFunction;
+    /**
+     * Returns the rule used to select the bandwidth.
+     *
+     * @return the rule used to select the bandwidth
+     */
+    public BandwidthRule getBandwidthRule() {
+        return bandwidthRule;
+    }
+
+    /**
+     * Sets the rule used to select the bandwidth.
+     *
+     * @param bandwidthRule the rule used to select the bandwidth
+     */
+    public void setBandwidthRule(BandwidthRule bandwidthRule) {
+        this.bandwidthRule = bandwidthRule;
+    }
+
+    /**
+     * Returns the number of points of the grid.
+     *
+     * @return the number of points of the grid
+     */
+    public int getnPoints() {
+        return n;
+    }
+
+    /**
+     * Sets the number of points of the grid.
+     *
+     * @param nPoints the number of points of the grid
+     */
+    public void setnPoints(int nPoints) {
+        if (nPoints < 2) {
+            throw new IllegalArgumentException("The grid must contain at least two points.");
+        }
+        this.n = nPoints;
+    }
+
+    /**
+     * Returns the number of bandwidths the grid extends beyond the extreme
+     * values.
+     *
+     * @return the number of bandwidths the grid extends beyond the extreme
+     * values
+     */
+    public double getCut() {
+        return cut;
+    }
+
+    /**
+     * Sets the number of bandwidths the grid extends beyond the extreme
+     * values.
+     *
+     * @param cut the number of bandwidths the grid extends beyond the extreme
+     * values
+     */
+    public void setCut(double cut) {
+        this.cut = cut;
     }
 
     /**
@@ -12,6 +12,11 @@ import java.util.HashMap;
  */
 public class ProbabilityFilter {
 
+    /**
+     * The quartiles used to estimate the slopes.
+     */
+    private static final double[] QUARTILES = {0.25, 0.5, 0.75};
+
     /**
      * Returns a list containing first the filtered xs and then the filtered ys.
      * Doublets are filtered to the given (non cumulative) probability p of
@@ -40,12 +45,14 @@ public class ProbabilityFilter {
         if (n <= 10) {
             throw new IllegalArgumentException("Attempting to perform filtering of a vectore of size " + n + ". 10 minimum, >100 advised.");
         }
-        Double medianX = BasicMathFunctions.median(x);
-        Double quantileX1 = BasicMathFunctions.percentile(x, 0.25);
-        Double quantileX2 = BasicMathFunctions.percentile(x, 0.75);
-        Double medianY = BasicMathFunctions.median(y);
-        Double quantileY1 = BasicMathFunctions.percentile(y, 0.25);
-        Double quantileY2 = BasicMathFunctions.percentile(y, 0.75);
+        double[] quantilesX = BasicMathFunctions.percentiles(x, QUARTILES);
+        double[] quantilesY = BasicMathFunctions.percentiles(y, QUARTILES);
+        Double medianX = quantilesX[1];
+        Double quantileX1 = quantilesX[0];
+        Double quantileX2 = quantilesX[2];
+        Double medianY = quantilesY[1];
+        Double quantileY1 = quantilesY[0];
+        Double quantileY2 = quantilesY[2];
         ArrayList<Double> slopes = new ArrayList<Double>(n);
         HashMap<Integer, Double> slopesMap = new HashMap<Integer, Double>(n);
         Double x0 = x.get(0);
@@ -0,0 +1,236 @@
+package com.compomics.util.test.experiment;
+
+import com.compomics.util.Util;
+import com.compomics.util.experiment.biology.AminoAcid;
+import com.compomics.util.experiment.identification.amino_acid_tags.AminoAcidCombinationIndex;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the index of amino acid compositions against the enumeration of all
+ * compositions.
+ *
+ * @author Marc Vaudel
+ */
+public class AminoAcidCombinationIndexTest extends TestCase {
+
+    /**
+     * The maximal length of the compositions tested.
+     */
+    private static final int MAX_LENGTH = 3;
+
+    /**
+     * Compares the queries of the index to the brute force enumeration of the
+     * compositions.
+     */
+    public void testLookups() {
+
+        HashMap<Character, Double> fixedModifications = getFixedModifications();
+        HashMap<Character, HashMap<String, Double>> variableModifications = getVariableModifications();
+        AminoAcidCombinationIndex index = new AminoAcidCombinationIndex(MAX_LENGTH, fixedModifications, variableModifications);
+
+        // enumerate the building blocks and the compositions
+        ArrayList<String> blocks = new ArrayList<String>();
+        ArrayList<Double> blockMasses = new ArrayList<Double>();
+        for (char aa : AminoAcid.getAminoAcids()) {
+            double mass = AminoAcid.getAminoAcid(aa).getMonoisotopicMass();
+            Double fixedMass = fixedModifications.get(aa);
+            if (fixedMass != null) {
+                mass += fixedMass;
+            }
+            blocks.add(Character.toString(aa));
+            blockMasses.add(mass);
+            HashMap<String, Double> aaModifications = variableModifications.get(aa);
+            if (aaModifications != null) {
+                for (String modification : aaModifications.keySet()) {
+                    blocks.add(aa + "<" + modification + ">");
+                    blockMasses.add(mass + aaModifications.get(modification));
+                }
+            }
+        }
+        ArrayList<String> compositions = new ArrayList<String>();
+        ArrayList<Double> masses = new ArrayList<Double>();
+        ArrayList<Integer> lengths = new ArrayList<Integer>();
+        enumerate(blocks, blockMasses, 0, 0, 0.0, new ArrayList<String>(), compositions, masses, lengths);
+        Assert.assertEquals(compositions.size(), index.size());
+
+        Random random = new Random(42);
+        double[] tolerances = {0.01, 0.5, 5};
+        for (int i = 0; i < 300; i++) {
+            double mass = 50 + 600 * random.nextDouble();
+            double tolerance = tolerances[i % tolerances.length];
+            double minMass = mass - tolerance, maxMass = mass + tolerance;
+
+            ArrayList<String> expected = new ArrayList<String>();
+            int minLength = Integer.MAX_VALUE, maxLength = 0;
+            int[] lengthCounts = new int[MAX_LENGTH + 1];
+            for (int j = 0; j < compositions.size(); j++) {
+                if (masses.get(j) >= minMass && masses.get(j) <= maxMass) {
+                    expected.add(compositions.get(j));
+                    minLength = Math.min(minLength, lengths.get(j));
+                    maxLength = Math.max(maxLength, lengths.get(j));
+                    lengthCounts[lengths.get(j)]++;
+                }
+            }
+            Collections.sort(expected);
+
+            Assert.assertEquals(expected.size(), index.count(minMass, maxMass));
+            for (int length = 1; length <= MAX_LENGTH; length++) {
+                Assert.assertEquals(lengthCounts[length], index.count(length, minMass, maxMass));
+            }
+            int[] lengthRange = index.getLengthRange(minMass, maxMass);
+            if (expected.isEmpty()) {
+                Assert.assertNull(lengthRange);
+            } else {
+                Assert.assertEquals(minLength, lengthRange[0]);
+                Assert.assertEquals(maxLength, lengthRange[1]);
+            }
+
+            ArrayList<String> sequences = index.getCombinations(mass, tolerance);
+            ArrayList<String[]> modifications = index.getModifications(mass, tolerance);
+            Assert.assertEquals(sequences.size(), modifications.size());
+            ArrayList<String> result = new ArrayList<String>(sequences.size());
+            for (int j = 0; j < sequences.size(); j++) {
+                String sequence = sequences.get(j);
+                String[] composition = new String[sequence.length()];
+                for (int k = 0; k < sequence.length(); k++) {
+                    String modification = modifications.get(j)[k];
+                    composition[k] = modification == null ? Character.toString(sequence.charAt(k)) : sequence.charAt(k) + "<" + modification + ">";
+                }
+                result.add(getCompositionKey(composition));
+            }
+            Collections.sort(result);
+            Assert.assertEquals(expected, result);
+        }
+    }
+
+    /**
+     * Tests the registry and the saving of the indexes in the cache folder.
+     */
+    public void testRegistry() {
+
+        File cacheFolder = new File("src/test/resources/experiment/aaCombinationIndexTest");
+        cacheFolder.mkdirs();
+        File previousCacheFolder = AminoAcidCombinationIndex.getCacheFolder();
+        try {
+            AminoAcidCombinationIndex.setCacheFolder(cacheFolder);
+            AminoAcidCombinationIndex.clearRegistry();
+
+            HashMap<Character, Double> fixedModifications = getFixedModifications();
+            HashMap<Character, HashMap<String, Double>> variableModifications = getVariableModifications();
+            AminoAcidCombinationIndex index = AminoAcidCombinationIndex.getIndex(MAX_LENGTH, fixedModifications, variableModifications);
+            Assert.assertSame(index, AminoAcidCombinationIndex.getIndex(MAX_LENGTH, getFixedModifications(), getVariableModifications()));
+            Assert.assertNotSame(index, AminoAcidCombinationIndex.getIndex(MAX_LENGTH, fixedModifications, new HashMap<Character, HashMap<String, Double>>()));
+            Assert.assertEquals(2, cacheFolder.listFiles().length);
+
+            // the index is loaded from the cache folder
+            AminoAcidCombinationIndex.clearRegistry();
+            AminoAcidCombinationIndex savedIndex = AminoAcidCombinationIndex.getIndex(MAX_LENGTH, fixedModifications, variableModifications);
+            Assert.assertNotSame(index, savedIndex);
+            Assert.assertEquals(index.size(), savedIndex.size());
+            Assert.assertEquals(index.getCombinations(500, 1), savedIndex.getCombinations(500, 1));
+
+        } finally {
+            AminoAcidCombinationIndex.setCacheFolder(previousCacheFolder);
+            AminoAcidCombinationIndex.clearRegistry();
+            Util.deleteDir(cacheFolder);
+        }
+    }
+
+    /**
+     * Tests that configurations which cannot be indexed are rejected.
+     */
+    public void testLimits() {
+        HashMap<String, Double> modifications = new HashMap<String, Double>();
+        for (int i = 0; i < Byte.MAX_VALUE; i++) {
+            modifications.put("modification " + i, 1.0 + i);
+        }
+        HashMap<Character, HashMap<String, Double>> variableModifications = new HashMap<Character, HashMap<String, Double>>();
+        variableModifications.put('A', modifications);
+        try {
+            new AminoAcidCombinationIndex(MAX_LENGTH, new HashMap<Character, Double>(), variableModifications);
+            Assert.fail("Too many building blocks should not be indexed.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Enumerates the compositions as non decreasing block indexes.
+     *
+     * @param blocks the building blocks
+     * @param blockMasses the masses of the building blocks
+     * @param firstBlock the index of the first block to use
+     * @param length the current length
+     * @param mass the current mass
+     * @param current the current composition
+     * @param compositions the list where to add the compositions
+     * @param masses the list where to add the masses
+     * @param lengths the list where to add the lengths
+     */
+    private void enumerate(ArrayList<String> blocks, ArrayList<Double> blockMasses, int firstBlock, int length, double mass, ArrayList<String> current,
+            ArrayList<String> compositions, ArrayList<Double> masses, ArrayList<Integer> lengths) {
+        for (int i = firstBlock; i < blocks.size(); i++) {
+            double newMass = length == 0 ? blockMasses.get(i) : mass + blockMasses.get(i);
+            current.add(blocks.get(i));
+            compositions.add(getCompositionKey(current.toArray(new String[current.size()])));
+            masses.add(newMass);
+            lengths.add(length + 1);
+            if (length + 1 < MAX_LENGTH) {
+                enumerate(blocks, blockMasses, i, length + 1, newMass, current, compositions, masses, lengths);
+            }
+            current.remove(current.size() - 1);
+        }
+    }
+
+    /**
+     * Returns a key for the given composition independent of the order of the
+     * blocks.
+     *
+     * @param composition the blocks of the composition
+     *
+     * @return a key for the composition
+     */
+    private String getCompositionKey(String[] composition) {
+        String[] sorted = composition.clone();
+        Arrays.sort(sorted);
+        StringBuilder key = new StringBuilder();
+        for (String block : sorted) {
+            key.append(block).append(' ');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the fixed modifications used for the tests.
+     *
+     * @return the fixed modifications
+     */
+    private HashMap<Character, Double> getFixedModifications() {
+        HashMap<Character, Double> fixedModifications = new HashMap<Character, Double>();
+        fixedModifications.put('C', 57.021464);
+        return fixedModifications;
+    }
+
+    /**
+     * Returns the variable modifications used for the tests.
+     *
+     * @return the variable modifications
+     */
+    private HashMap<Character, HashMap<String, Double>> getVariableModifications() {
+        HashMap<Character, HashMap<String, Double>> variableModifications = new HashMap<Character, HashMap<String, Double>>();
+        HashMap<String, Double> oxidation = new HashMap<String, Double>();
+        oxidation.put("Oxidation of M", 15.994915);
+        variableModifications.put('M', oxidation);
+        HashMap<String, Double> phosphorylation = new HashMap<String, Double>();
+        phosphorylation.put("Phosphorylation of S", 79.966331);
+        variableModifications.put('S', phosphorylation);
+        return variableModifications;
+    }
+}
@@ -1,8 +1,11 @@
 package com.compomics.util.test.experiment;
 
+import com.compomics.util.experiment.biology.AminoAcid;
 import com.compomics.util.experiment.biology.AminoAcidPattern;
 import com.compomics.util.preferences.SequenceMatchingPreferences;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 
@@ -48,4 +51,130 @@ public class AminoAcidPatternTest extends TestCase {
         pattern = new AminoAcidPattern("XXX");
         Assert.assertTrue(pattern.matches(input, sequenceMatchingPreferences));
     }
+
+    /**
+     * Compares the indexes found by the compiled pattern to a position by
+     * position matching of random patterns on random sequences.
+     */
+    public void testCompiledMatching() {
+        Random random = new Random(1);
+        char[] aminoAcids = AminoAcid.getUniqueAminoAcids();
+        String letters = new String(aminoAcids) + "BJZX";
+        SequenceMatchingPreferences aminoAcidMatching = SequenceMatchingPreferences.getDefaultSequenceMatching();
+        for (int i = 0; i < 200; i++) {
+            AminoAcidPattern pattern = new AminoAcidPattern();
+            int patternLength = 1 + random.nextInt(4);
+            for (int j = 0; j < patternLength; j++) {
+                if (random.nextInt(4) == 0) {
+                    pattern.setExcluded(j, null);
+                } else {
+                    ArrayList<Character> targets = new ArrayList<Character>();
+                    int nTargets = 1 + random.nextInt(3);
+                    for (int k = 0; k < nTargets; k++) {
+                        targets.add(aminoAcids[random.nextInt(aminoAcids.length)]);
+                    }
+                    pattern.setTargeted(j, targets);
+                }
+            }
+            pattern.setTarget(random.nextInt(patternLength));
+            StringBuilder sequence = new StringBuilder();
+            for (int j = 0; j < 300; j++) {
+                sequence.append(letters.charAt(random.nextInt(letters.length())));
+            }
+            String input = sequence.toString();
+            Assert.assertEquals(getIndexes(pattern, input, false), pattern.getIndexes(input, SequenceMatchingPreferences.defaultStringMatching));
+            Assert.assertEquals(getIndexes(pattern, input, true), pattern.getIndexes(input, aminoAcidMatching));
+
+            // the patterns are also matched on patterns
+            AminoAcidPattern inputPattern = new AminoAcidPattern(input);
+            Assert.assertEquals(getIndexes(pattern, input, false), pattern.getIndexes(inputPattern, SequenceMatchingPreferences.defaultStringMatching));
+        }
+    }
+
+    /**
+     * Tests that the compiled pattern follows the modifications of the pattern
+     * and that the lists returned by the getters cannot modify it.
+     */
+    public void testModifications() {
+        String input = "KTESTRTESTKPTESTKRPESTK";
+        AminoAcidPattern pattern = AminoAcidPattern.getTrypsinExample();
+        ArrayList<Integer> indexes = pattern.getIndexes(input, SequenceMatchingPreferences.defaultStringMatching);
+        Assert.assertEquals(getIndexes(pattern, input, false), indexes);
+
+        // editing the returned lists does not change the pattern
+        pattern.getTargetedAA(0).add('T');
+        pattern.getAaTargeted().get(0).add('T');
+        pattern.getAminoAcidsAtTarget().clear();
+        Assert.assertEquals(indexes, pattern.getIndexes(input, SequenceMatchingPreferences.defaultStringMatching));
+        Assert.assertEquals(indexes, getIndexes(pattern, input, false));
+
+        // editing the list given to the setter does not change the pattern
+        ArrayList<Character> targets = new ArrayList<Character>();
+        targets.add('T');
+        pattern.setTargeted(0, targets);
+        ArrayList<Integer> newIndexes = pattern.getIndexes(input, SequenceMatchingPreferences.defaultStringMatching);
+        Assert.assertEquals(getIndexes(pattern, input, false), newIndexes);
+        Assert.assertFalse(indexes.equals(newIndexes));
+        targets.add('K');
+        Assert.assertEquals(newIndexes, pattern.getIndexes(input, SequenceMatchingPreferences.defaultStringMatching));
+
+        // merging updates the compiled pattern
+        pattern.merge(AminoAcidPattern.getTrypsinExample());
+        Assert.assertEquals(getIndexes(pattern, input, false), pattern.getIndexes(input, SequenceMatchingPreferences.defaultStringMatching));
+    }
+
+    /**
+     * Returns the indexes where the pattern is found in the input by matching
+     * the amino acids of every position. 1 is the first amino acid. Like in
+     * the pattern, the search resumes after the target of the previous match.
+     *
+     * @param pattern the pattern
+     * @param input the input sequence
+     * @param aminoAcidMatching if true the sub amino acids and combinations of
+     * the targeted amino acids are matched, and I, J and L are
+     * indistinguishable
+     *
+     * @return the indexes where the pattern is found
+     */
+    private ArrayList<Integer> getIndexes(AminoAcidPattern pattern, String input, boolean aminoAcidMatching) {
+        int patternLength = pattern.length();
+        ArrayList<HashSet<Character>> targets = new ArrayList<HashSet<Character>>(patternLength);
+        for (int j = 0; j < patternLength; j++) {
+            HashSet<Character> positionTargets = new HashSet<Character>();
+            for (Character aa : pattern.getTargetedAA(j)) {
+                positionTargets.add(aa);
+                if (aminoAcidMatching) {
+                    AminoAcid aminoAcid = AminoAcid.getAminoAcid(aa);
+                    for (char subAa : aminoAcid.getSubAminoAcids()) {
+                        positionTargets.add(subAa);
+                    }
+                    for (char combination : aminoAcid.getCombinations()) {
+                        positionTargets.add(combination);
+                    }
+                    if (aminoAcid == AminoAcid.I || aminoAcid == AminoAcid.J || aminoAcid == AminoAcid.L) {
+                        positionTargets.add('I');
+                        positionTargets.add('J');
+                        positionTargets.add('L');
+                    }
+                }
+            }
+            targets.add(positionTargets);
+        }
+        ArrayList<Integer> result = new ArrayList<Integer>();
+        int i = 0;
+        while (i + patternLength <= input.length()) {
+            boolean match = true;
+            for (int j = 0; j < patternLength && match; j++) {
+                HashSet<Character> positionTargets = targets.get(j);
+                match = positionTargets.isEmpty() || positionTargets.contains(input.charAt(i + j));
+            }
+            if (match) {
+                result.add(i + pattern.getTarget() + 1);
+                i += pattern.getTarget() + 1;
+            } else {
+                i++;
+            }
+        }
+        return result;
+    }
 }
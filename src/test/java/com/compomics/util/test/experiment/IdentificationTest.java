@@ -0,0 +1,279 @@
+package com.compomics.util.test.experiment;
+
+import com.compomics.util.Util;
+import com.compomics.util.db.DerbyUtil;
+import com.compomics.util.db.ObjectsCache;
+import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.Identification;
+import com.compomics.util.experiment.identification.SpectrumIdentificationAssumption;
+import com.compomics.util.experiment.identification.identifications.Ms2Identification;
+import com.compomics.util.experiment.identification.matches.ModificationMatch;
+import com.compomics.util.experiment.identification.matches.PeptideMatch;
+import com.compomics.util.experiment.identification.matches.ProteinMatch;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.experiment.massspectrometry.Charge;
+import com.compomics.util.experiment.massspectrometry.Spectrum;
+import com.compomics.util.preferences.SequenceMatchingPreferences;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the import of spectrum matches in an identification and the building
+ * of the peptide and protein matches.
+ *
+ * @author Marc Vaudel
+ */
+public class IdentificationTest extends TestCase {
+
+    /**
+     * The sequences of the peptides.
+     */
+    private static final String[] SEQUENCES = {"PEPTIDEK", "ELVISLIVESK", "TESTMSEQR", "SEQVENCER", "AMINACIDK", "LLLLLLLK", "IIIIIIIK"};
+
+    /**
+     * Tests that the peptide and protein matches built using several threads
+     * are the same as the ones built one spectrum match at a time.
+     */
+    public void testBuildPeptidesAndProteins() throws Exception {
+
+        Result serial = buildPeptidesAndProteins(1);
+        for (int nThreads : new int[]{2, 4}) {
+            Result parallel = buildPeptidesAndProteins(nThreads);
+            Assert.assertEquals(serial.peptideMatches, parallel.peptideMatches);
+            Assert.assertEquals(serial.proteinMatches, parallel.proteinMatches);
+            Assert.assertEquals(serial.proteinMap, parallel.proteinMap);
+        }
+        Assert.assertEquals(SEQUENCES.length - 1, serial.peptideMatches.size());
+        Assert.assertFalse(serial.proteinMap.isEmpty());
+    }
+
+    /**
+     * Tests that the spectrum matches imported in batch are merged as when
+     * imported one by one, skipping the duplicate assumptions.
+     */
+    public void testAddSpectrumMatches() throws Exception {
+
+        HashMap<String, ArrayList<String>> batch = addSpectrumMatches(true);
+        HashMap<String, ArrayList<String>> oneByOne = addSpectrumMatches(false);
+        Assert.assertEquals(oneByOne, batch);
+
+        String spectrumKey = Spectrum.getSpectrumKey("test1.mgf", "spectrum 0");
+        ArrayList<String> expected = new ArrayList<String>();
+        expected.add(Advocate.mascot.getIndex() + " 0.1 PEPTIDEK 2+");
+        expected.add(Advocate.mascot.getIndex() + " 0.1 PEPTIDEK 3+");
+        expected.add(Advocate.mascot.getIndex() + " 0.1 PEPTIDEK_Oxidation of M_5 2+");
+        expected.add(Advocate.mascot.getIndex() + " 0.2 ELVISLIVESK 2+");
+        expected.add(Advocate.mascot.getIndex() + " 0.3 TESTMSEQR 2+");
+        expected.add(Advocate.mascot.getIndex() + " 0.4 SEQVENCER 2+");
+        expected.add(Advocate.omssa.getIndex() + " 0.1 PEPTIDEK 2+");
+        Collections.sort(expected);
+        Assert.assertEquals(expected, batch.get(spectrumKey));
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals(1, batch.get(Spectrum.getSpectrumKey("test2.mgf", "spectrum 1")).size());
+    }
+
+    /**
+     * Adds spectrum matches of the same spectra with duplicate assumptions
+     * to a new identification, first in a batch of new spectra then in a
+     * batch completing a spectrum already imported, and returns the
+     * assumptions found in the database.
+     *
+     * @param batch if true the matches are added in batch, one by one
+     * otherwise
+     *
+     * @return descriptions of the assumptions indexed by spectrum key
+     */
+    private HashMap<String, ArrayList<String>> addSpectrumMatches(boolean batch) throws Exception {
+
+        String path = this.getClass().getResource("IdentificationTest.class").getPath();
+        path = path.substring(1, path.indexOf("/target/"));
+        path += "/src/test/resources/experiment/identificationTestDB";
+        try {
+            ObjectsCache cache = new ObjectsCache();
+            cache.setAutomatedMemoryManagement(false);
+            cache.setCacheSize(0);
+            Identification identification = new Ms2Identification("identificationTest");
+            identification.establishConnection(path, true, cache);
+            try {
+
+                String spectrumKey0 = Spectrum.getSpectrumKey("test1.mgf", "spectrum 0");
+                String spectrumKey1 = Spectrum.getSpectrumKey("test2.mgf", "spectrum 1");
+                int mascot = Advocate.mascot.getIndex();
+
+                ArrayList<SpectrumMatch> newSpectra = new ArrayList<SpectrumMatch>();
+                newSpectra.add(getSpectrumMatch(spectrumKey0, mascot, "PEPTIDEK", 2, 0.1, "ELVISLIVESK", 2, 0.2));
+                SpectrumMatch spectrumMatch = getSpectrumMatch(spectrumKey0, mascot, "PEPTIDEK", 2, 0.1, "PEPTIDEK", 3, 0.1, "TESTMSEQR", 2, 0.3);
+                ArrayList<ModificationMatch> modificationMatches = new ArrayList<ModificationMatch>();
+                modificationMatches.add(new ModificationMatch("Oxidation of M", true, 5));
+                Peptide peptide = new Peptide("PEPTIDEK", modificationMatches);
+                spectrumMatch.addHit(mascot, new PeptideAssumption(peptide, 1, mascot, new Charge(Charge.PLUS, 2), 0.1, "no file"), false);
+                newSpectra.add(spectrumMatch);
+                newSpectra.add(getSpectrumMatch(spectrumKey1, mascot, "PEPTIDEK", 2, 0.1));
+                newSpectra.add(getSpectrumMatch(spectrumKey0, Advocate.omssa.getIndex(), "PEPTIDEK", 2, 0.1));
+                newSpectra.add(getSpectrumMatch(spectrumKey1, mascot, "PEPTIDEK", 2, 0.1));
+
+                ArrayList<SpectrumMatch> knownSpectra = new ArrayList<SpectrumMatch>();
+                knownSpectra.add(getSpectrumMatch(spectrumKey0, mascot, "TESTMSEQR", 2, 0.3, "SEQVENCER", 2, 0.4));
+
+                ArrayList<ArrayList<SpectrumMatch>> batches = new ArrayList<ArrayList<SpectrumMatch>>();
+                batches.add(newSpectra);
+                batches.add(knownSpectra);
+                for (ArrayList<SpectrumMatch> spectrumMatches : batches) {
+                    if (batch) {
+                        identification.addSpectrumMatches(spectrumMatches, null);
+                    } else {
+                        for (SpectrumMatch tempMatch : spectrumMatches) {
+                            identification.addSpectrumMatch(tempMatch);
+                        }
+                    }
+                }
+
+                HashMap<String, ArrayList<String>> result = new HashMap<String, ArrayList<String>>();
+                for (String spectrumFile : identification.getSpectrumIdentificationMap().keySet()) {
+                    for (String spectrumKey : identification.getSpectrumIdentification(spectrumFile)) {
+                        Assert.assertNotNull(identification.getSpectrumMatch(spectrumKey));
+                        ArrayList<String> descriptions = new ArrayList<String>();
+                        HashMap<Integer, HashMap<Double, ArrayList<SpectrumIdentificationAssumption>>> assumptions = identification.getAssumptions(spectrumKey);
+                        for (Integer advocateId : assumptions.keySet()) {
+                            for (Double score : assumptions.get(advocateId).keySet()) {
+                                for (SpectrumIdentificationAssumption assumption : assumptions.get(advocateId).get(score)) {
+                                    Peptide assumptionPeptide = ((PeptideAssumption) assumption).getPeptide();
+                                    String sequence = assumptionPeptide.getSequence();
+                                    if (assumptionPeptide.isModified()) {
+                                        for (ModificationMatch modificationMatch : assumptionPeptide.getModificationMatches()) {
+                                            sequence += "_" + modificationMatch.getTheoreticPtm() + "_" + modificationMatch.getModificationSite();
+                                        }
+                                    }
+                                    descriptions.add(advocateId + " " + score + " " + sequence + " " + assumption.getIdentificationCharge().toString());
+                                }
+                            }
+                        }
+                        Collections.sort(descriptions);
+                        result.put(spectrumKey, descriptions);
+                    }
+                }
+                return result;
+
+            } finally {
+                identification.close();
+            }
+        } finally {
+            File dbFolder = new File(path);
+            DerbyUtil.closeConnection();
+            Util.deleteDir(dbFolder);
+        }
+    }
+
+    /**
+     * Returns a spectrum match with the given hits of unmodified peptides.
+     *
+     * @param spectrumKey the key of the spectrum
+     * @param advocateId the index of the advocate
+     * @param hits the hits: sequence, charge and score of every hit
+     *
+     * @return a spectrum match
+     */
+    private SpectrumMatch getSpectrumMatch(String spectrumKey, int advocateId, Object... hits) {
+        SpectrumMatch spectrumMatch = new SpectrumMatch(spectrumKey);
+        for (int i = 0; i < hits.length; i += 3) {
+            Peptide peptide = new Peptide((String) hits[i], new ArrayList<ModificationMatch>());
+            Charge charge = new Charge(Charge.PLUS, (Integer) hits[i + 1]);
+            spectrumMatch.addHit(advocateId, new PeptideAssumption(peptide, 1, advocateId, charge, (Double) hits[i + 2], "no file"), false);
+        }
+        return spectrumMatch;
+    }
+
+    /**
+     * Imports seeded spectrum matches in a new identification, builds the
+     * peptide and protein matches using the given number of threads, and
+     * returns the matches found in the database.
+     *
+     * @param nThreads the number of threads to use
+     *
+     * @return the peptide and protein matches built
+     */
+    private Result buildPeptidesAndProteins(int nThreads) throws Exception {
+
+        String path = this.getClass().getResource("IdentificationTest.class").getPath();
+        path = path.substring(1, path.indexOf("/target/"));
+        path += "/src/test/resources/experiment/identificationTestDB";
+        try {
+            ObjectsCache cache = new ObjectsCache();
+            cache.setAutomatedMemoryManagement(false);
+            cache.setCacheSize(0);
+            Identification identification = new Ms2Identification("identificationTest");
+            identification.establishConnection(path, true, cache);
+            try {
+
+                // more spectra than a chunk, peptides shared across files, some sharing proteins
+                Random random = new Random(42);
+                for (int i = 0; i < 2500; i++) {
+                    String spectrumFile = i % 2 == 0 ? "test1.mgf" : "test2.mgf";
+                    SpectrumMatch spectrumMatch = new SpectrumMatch(Spectrum.getSpectrumKey(spectrumFile, "spectrum " + i));
+                    int peptideIndex = random.nextInt(SEQUENCES.length - 1);
+                    Peptide peptide = new Peptide(SEQUENCES[peptideIndex], new ArrayList<ModificationMatch>());
+                    ArrayList<String> parentProteins = new ArrayList<String>();
+                    parentProteins.add("P" + (peptideIndex / 2));
+                    if (peptideIndex % 3 == 0) {
+                        parentProteins.add(0, "Q" + peptideIndex);
+                    }
+                    peptide.setParentProteins(parentProteins);
+                    PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, 1, Advocate.mascot.getIndex(), new Charge(Charge.PLUS, 2), 0.1, "no file");
+                    spectrumMatch.addHit(Advocate.mascot.getIndex(), peptideAssumption, false);
+                    spectrumMatch.setBestPeptideAssumption(peptideAssumption);
+                    identification.addSpectrumMatch(spectrumMatch);
+                }
+
+                identification.buildPeptidesAndProteins(null, SequenceMatchingPreferences.getDefaultSequenceMatching(), nThreads);
+
+                Result result = new Result();
+                for (String peptideKey : identification.getPeptideIdentification()) {
+                    PeptideMatch peptideMatch = identification.getPeptideMatch(peptideKey);
+                    result.peptideMatches.put(peptideKey, new ArrayList<String>(peptideMatch.getSpectrumMatchesKeys()));
+                }
+                for (String proteinKey : identification.getProteinIdentification()) {
+                    ProteinMatch proteinMatch = identification.getProteinMatch(proteinKey);
+                    result.proteinMatches.put(proteinKey, new HashSet<String>(proteinMatch.getPeptideMatchesKeys()));
+                }
+                for (String protein : identification.getProteinMap().keySet()) {
+                    result.proteinMap.put(protein, new HashSet<String>(identification.getProteinMap().get(protein)));
+                }
+                return result;
+
+            } finally {
+                identification.close();
+            }
+        } finally {
+            File dbFolder = new File(path);
+            DerbyUtil.closeConnection();
+            Util.deleteDir(dbFolder);
+        }
+    }
+
+    /**
+     * The peptide and protein matches of an identification.
+     */
+    private static class Result {
+
+        /**
+         * The spectrum match keys of the peptide matches.
+         */
+        private final HashMap<String, ArrayList<String>> peptideMatches = new HashMap<String, ArrayList<String>>();
+        /**
+         * The peptide match keys of the protein matches.
+         */
+        private final HashMap<String, HashSet<String>> proteinMatches = new HashMap<String, HashSet<String>>();
+        /**
+         * The protein map of the identification.
+         */
+        private final HashMap<String, HashSet<String>> proteinMap = new HashMap<String, HashSet<String>>();
+    }
+}
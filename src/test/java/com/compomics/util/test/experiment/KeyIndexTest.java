@@ -0,0 +1,125 @@
+package com.compomics.util.test.experiment;
+
+import com.compomics.util.experiment.identification.Identification;
+import com.compomics.util.experiment.identification.KeyIndex;
+import com.compomics.util.experiment.identification.identifications.Ms2Identification;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the interning of match keys.
+ *
+ * @author Marc Vaudel
+ */
+public class KeyIndexTest extends TestCase {
+
+    public void testRegistration() throws Exception {
+
+        KeyIndex keyIndex = new KeyIndex();
+        int nKeys = 10000;
+
+        for (int i = 0; i < nKeys; i++) {
+            Assert.assertEquals(i, keyIndex.register("test.mgf_cus_" + i));
+        }
+        Assert.assertEquals(nKeys, keyIndex.size());
+
+        for (int i = 0; i < nKeys; i++) {
+            String key = "test.mgf_cus_" + i;
+            Assert.assertEquals(i, keyIndex.register(key));
+            Assert.assertEquals(i, keyIndex.getId(key));
+            Assert.assertEquals(key, keyIndex.getKey(i));
+            Assert.assertSame(keyIndex.getKey(i), keyIndex.intern(new String(key)));
+        }
+        Assert.assertEquals(nKeys, keyIndex.size());
+        Assert.assertEquals(-1, keyIndex.getId("unknown"));
+        Assert.assertFalse(keyIndex.contains("unknown"));
+        Assert.assertNull(keyIndex.getKey(nKeys));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(keyIndex);
+        out.close();
+        KeyIndex copy = (KeyIndex) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        for (int i = 0; i < nKeys; i++) {
+            Assert.assertEquals(i, copy.getId("test.mgf_cus_" + i));
+        }
+        Assert.assertEquals(nKeys, copy.register("new key"));
+    }
+
+    /**
+     * Tests that unregistered keys are forgotten, that their ids are not
+     * attributed again and that the other keys remain reachable.
+     */
+    public void testUnregistration() throws Exception {
+
+        KeyIndex keyIndex = new KeyIndex();
+        int nKeys = 10000;
+
+        for (int i = 0; i < nKeys; i++) {
+            keyIndex.register("test.mgf_cus_" + i);
+        }
+        for (int i = 0; i < nKeys; i += 3) {
+            Assert.assertEquals(i, keyIndex.unregister("test.mgf_cus_" + i));
+        }
+        Assert.assertEquals(-1, keyIndex.unregister("test.mgf_cus_0"));
+        Assert.assertEquals(nKeys - (nKeys + 2) / 3, keyIndex.size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(keyIndex);
+        out.close();
+        KeyIndex copy = (KeyIndex) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        for (KeyIndex index : new KeyIndex[]{keyIndex, copy}) {
+            for (int i = 0; i < nKeys; i++) {
+                String key = "test.mgf_cus_" + i;
+                if (i % 3 == 0) {
+                    Assert.assertEquals(-1, index.getId(key));
+                    Assert.assertFalse(index.contains(key));
+                    Assert.assertNull(index.getKey(i));
+                } else {
+                    Assert.assertEquals(i, index.getId(key));
+                    Assert.assertEquals(key, index.getKey(i));
+                }
+            }
+            Assert.assertEquals(nKeys, index.register("test.mgf_cus_0"));
+        }
+    }
+
+    /**
+     * Tests that the key indexes of an identification are not saved and are
+     * rebuilt after loading.
+     */
+    public void testIdentificationIndexes() throws Exception {
+
+        for (Field field : Identification.class.getDeclaredFields()) {
+            if (field.getType() == KeyIndex.class) {
+                Assert.assertTrue(field.getName(), Modifier.isTransient(field.getModifiers()));
+            }
+        }
+
+        Identification identification = new Ms2Identification("keyIndexTest");
+        identification.getPeptideIdentification().add("PEPTIDEK");
+        identification.getProteinIdentification().add("P12345");
+        Assert.assertEquals(0, identification.getPeptideMatchId("PEPTIDEK"));
+        Assert.assertEquals(0, identification.getProteinMatchId("P12345"));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(identification);
+        out.close();
+        Identification copy = (Identification) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        Assert.assertEquals(0, copy.getPeptideMatchId("PEPTIDEK"));
+        Assert.assertEquals("PEPTIDEK", copy.getPeptideMatchKey(0));
+        Assert.assertEquals("P12345", copy.getProteinMatchKey(0));
+        Assert.assertEquals(-1, copy.getSpectrumMatchId("test.mgf_cus_1"));
+    }
+}
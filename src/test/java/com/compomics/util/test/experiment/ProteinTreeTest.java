@@ -20,6 +20,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Random;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 import org.xmlpull.v1.XmlPullParserException;
@@ -180,4 +181,105 @@ public class ProteinTreeTest extends TestCase {
 
         proteinTree.deleteDb();
     }
+
+    /**
+     * Tests that the parallel mapping of tags sharing a tag matcher gives the
+     * same results as the mapping of the tags one by one.
+     *
+     * @throws FileNotFoundException thrown whenever a file is not found
+     * @throws IOException thrown whenever an error occurs while reading or
+     * writing a file
+     * @throws ClassNotFoundException thrown whenever an error occurs while
+     * deserializing an object
+     * @throws InterruptedException thrown whenever a threading issue occurred
+     * while interacting with the tree
+     * @throws SQLException if an SQLException thrown whenever a problem
+     * occurred while interacting with the tree database
+     */
+    public void testParallelTagToProteinMapping() throws IOException, FileNotFoundException, ClassNotFoundException, InterruptedException, SQLException {
+
+        PTMFactory ptmFactory = PTMFactory.getInstance();
+        ptmFactory.clearFactory();
+
+        WaitingHandlerCLIImpl waitingHandlerCLIImpl = new WaitingHandlerCLIImpl();
+        ExceptionHandler exceptionHandler = new CommandLineExceptionHandler();
+        File sequences = new File("src/test/resources/experiment/proteinTreeTestSequences_1");
+        SequenceFactory sequenceFactory = SequenceFactory.getInstance();
+        sequenceFactory.loadFastaFile(sequences, waitingHandlerCLIImpl);
+
+        ProteinTree proteinTree = new ProteinTree(1000, 1000);
+        proteinTree.initiateTree(3, 50, 50, waitingHandlerCLIImpl, exceptionHandler, true, false, 1);
+
+        ArrayList<String> fixedModifications = new ArrayList<String>();
+        fixedModifications.add("Carbamidomethylation of C");
+        ArrayList<String> variableModifications = new ArrayList<String>();
+        variableModifications.add("Oxidation of M");
+        variableModifications.add("Pyrolidone from carbamidomethylated C");
+        SequenceMatchingPreferences sequenceMatchingPreferences = new SequenceMatchingPreferences();
+        sequenceMatchingPreferences.setSequenceMatchingType(SequenceMatchingPreferences.MatchingType.indistiguishableAminoAcids);
+
+        // TESTMRITESTCKTESTK
+        double rmt = AminoAcid.R.getMonoisotopicMass() + AminoAcid.M.getMonoisotopicMass() + AminoAcid.T.getMonoisotopicMass();
+        double ck = AminoAcid.C.getMonoisotopicMass() + AminoAcid.K.getMonoisotopicMass();
+        ArrayList<Tag> distinctTags = new ArrayList<Tag>();
+        distinctTags.add(new Tag(rmt, new AminoAcidPattern("LTEST"), ck));
+        distinctTags.add(new Tag(rmt, new AminoAcidPattern("LTEST"), ck + 57.02));
+        distinctTags.add(new Tag(rmt + 15.99, new AminoAcidPattern("LTEST"), ck + 57.02));
+        distinctTags.add(new Tag(ck + 57.02 - 17.0265, new AminoAcidPattern("TEST"), AminoAcid.K.getMonoisotopicMass()));
+        distinctTags.add(new Tag(AminoAcid.T.getMonoisotopicMass(), new AminoAcidPattern("EST"), AminoAcid.M.getMonoisotopicMass()));
+        ArrayList<Tag> tags = new ArrayList<Tag>();
+        for (int i = 0; i < 20; i++) {
+            tags.addAll(distinctTags);
+        }
+        Collections.shuffle(tags, new Random(42));
+
+        TagMatcher serialTagMatcher = new TagMatcher(fixedModifications, variableModifications, sequenceMatchingPreferences);
+        ArrayList<HashMap<String, HashMap<String, ArrayList<Integer>>>> expected = new ArrayList<HashMap<String, HashMap<String, ArrayList<Integer>>>>(tags.size());
+        for (Tag tag : tags) {
+            expected.add(getComparableMapping(proteinTree.getProteinMapping(tag, serialTagMatcher, sequenceMatchingPreferences, 0.5)));
+        }
+        Assert.assertFalse(expected.get(tags.indexOf(distinctTags.get(1))).isEmpty());
+
+        for (boolean synchronizedIndexing : new boolean[]{false, true}) {
+            TagMatcher tagMatcher = new TagMatcher(fixedModifications, variableModifications, sequenceMatchingPreferences);
+            tagMatcher.setSynchronizedIndexing(synchronizedIndexing);
+            ArrayList<HashMap<Peptide, HashMap<String, ArrayList<Integer>>>> mappings = proteinTree.getProteinMapping(tags, tagMatcher, sequenceMatchingPreferences, 0.5, 4, null);
+            Assert.assertEquals(tags.size(), mappings.size());
+            for (int i = 0; i < tags.size(); i++) {
+                Assert.assertEquals(expected.get(i), getComparableMapping(mappings.get(i)));
+            }
+            Assert.assertTrue(tagMatcher.getnCacheHits() > 0);
+        }
+
+        proteinTree.deleteDb();
+    }
+
+    /**
+     * Returns the given tag mapping indexed by peptide key with sorted
+     * indexes.
+     *
+     * @param proteinMapping the protein mapping of a tag
+     *
+     * @return the mapping indexed by peptide key
+     */
+    private HashMap<String, HashMap<String, ArrayList<Integer>>> getComparableMapping(HashMap<Peptide, HashMap<String, ArrayList<Integer>>> proteinMapping) {
+        HashMap<String, HashMap<String, ArrayList<Integer>>> result = new HashMap<String, HashMap<String, ArrayList<Integer>>>();
+        for (Peptide peptide : proteinMapping.keySet()) {
+            HashMap<String, ArrayList<Integer>> peptideMapping = result.get(peptide.getKey());
+            if (peptideMapping == null) {
+                peptideMapping = new HashMap<String, ArrayList<Integer>>();
+                result.put(peptide.getKey(), peptideMapping);
+            }
+            for (String accession : proteinMapping.get(peptide).keySet()) {
+                ArrayList<Integer> indexes = peptideMapping.get(accession);
+                if (indexes == null) {
+                    indexes = new ArrayList<Integer>();
+                    peptideMapping.put(accession, indexes);
+                }
+                indexes.addAll(proteinMapping.get(peptide).get(accession));
+                Collections.sort(indexes);
+            }
+        }
+        return result;
+    }
 }
@@ -0,0 +1,84 @@
+package com.compomics.util.test.experiment;
+
+import com.compomics.util.Util;
+import com.compomics.util.db.DerbyUtil;
+import com.compomics.util.db.ObjectsCache;
+import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.Identification;
+import com.compomics.util.experiment.identification.identifications.Ms2Identification;
+import com.compomics.util.experiment.identification.matches.ModificationMatch;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.ptm.PtmLocalizationRunner;
+import com.compomics.util.experiment.identification.ptm.PtmScore;
+import com.compomics.util.experiment.identification.spectrum_annotation.AnnotationSettings;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.experiment.massspectrometry.Charge;
+import com.compomics.util.experiment.massspectrometry.Spectrum;
+import com.compomics.util.preferences.SequenceMatchingPreferences;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the batch PTM localization runner.
+ *
+ * @author Marc Vaudel
+ */
+public class PtmLocalizationRunnerTest extends TestCase {
+
+    /**
+     * Tests that an error encountered by a scoring thread is thrown by the
+     * runner: the spectrum file of the match is not loaded in the spectrum
+     * factory.
+     */
+    public void testFailure() throws Exception {
+
+        String path = this.getClass().getResource("PtmLocalizationRunnerTest.class").getPath();
+        path = path.substring(1, path.indexOf("/target/"));
+        path += "/src/test/resources/experiment/ptmLocalizationTestDB";
+        try {
+            ObjectsCache cache = new ObjectsCache();
+            cache.setAutomatedMemoryManagement(false);
+            cache.setCacheSize(0);
+            Identification identification = new Ms2Identification("ptmLocalizationTest");
+            identification.establishConnection(path, true, cache);
+            try {
+
+                for (int i = 0; i < 10; i++) {
+                    SpectrumMatch spectrumMatch = new SpectrumMatch(Spectrum.getSpectrumKey("not_loaded.mgf", "spectrum " + i));
+                    ArrayList<ModificationMatch> modificationMatches = new ArrayList<ModificationMatch>();
+                    modificationMatches.add(new ModificationMatch("Phosphorylation of S", true, 2));
+                    Peptide peptide = new Peptide("PSSEPTIDE", modificationMatches);
+                    PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, 1, Advocate.mascot.getIndex(), new Charge(Charge.PLUS, 2), 0.1, "no file");
+                    spectrumMatch.addHit(Advocate.mascot.getIndex(), peptideAssumption, false);
+                    spectrumMatch.setBestPeptideAssumption(peptideAssumption);
+                    identification.addSpectrumMatch(spectrumMatch);
+                }
+
+                ArrayList<PtmScore> ptmScores = new ArrayList<PtmScore>();
+                ptmScores.add(PtmScore.AScore);
+                SequenceMatchingPreferences sequenceMatchingPreferences = SequenceMatchingPreferences.getDefaultSequenceMatching();
+                PtmLocalizationRunner ptmLocalizationRunner = new PtmLocalizationRunner(identification, ptmScores, false, new AnnotationSettings(), true,
+                        sequenceMatchingPreferences, sequenceMatchingPreferences);
+
+                try {
+                    ptmLocalizationRunner.scorePtmLocalization(4, null);
+                    Assert.fail("The scoring of spectra not loaded should fail.");
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof FileNotFoundException);
+                }
+
+            } finally {
+                identification.close();
+            }
+        } finally {
+            File dbFolder = new File(path);
+            DerbyUtil.closeConnection();
+            Util.deleteDir(dbFolder);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.compomics.util.test.experiment;
+
+import com.compomics.util.experiment.biology.PTM;
+import com.compomics.util.experiment.biology.PTMFactory;
+import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import com.compomics.util.experiment.identification.matches.ModificationMatch;
+import com.compomics.util.experiment.identification.ptm.ptmscores.AScore;
+import com.compomics.util.experiment.identification.ptm.ptmscores.ReducedSpectra;
+import com.compomics.util.experiment.identification.spectrum_annotation.AnnotationSettings;
+import com.compomics.util.experiment.identification.spectrum_annotation.SpecificAnnotationSettings;
+import com.compomics.util.experiment.identification.spectrum_annotation.spectrum_annotators.PeptideSpectrumAnnotator;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.experiment.massspectrometry.Charge;
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import com.compomics.util.experiment.massspectrometry.Peak;
+import com.compomics.util.experiment.massspectrometry.Precursor;
+import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
+import com.compomics.util.preferences.SequenceMatchingPreferences;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the spectra filtered on intensity used by the A-score.
+ *
+ * @author Marc Vaudel
+ */
+public class ReducedSpectraTest extends TestCase {
+
+    /**
+     * The m/z tolerance.
+     */
+    private static final double MZ_TOLERANCE = 0.5;
+
+    /**
+     * Tests that the spectra at every depth contain the most intense peaks of
+     * every window, that they are the same when cached, and that they are
+     * the ones of the previous implementation when the spectrum has no
+     * intensity ties.
+     */
+    public void testReducedSpectra() {
+
+        Random random = new Random(42);
+        for (int test = 0; test < 50; test++) {
+            boolean ties = test % 2 == 1;
+            MSnSpectrum spectrum = getRandomSpectrum(random, "spectrum " + test, 300, ties);
+            ReducedSpectra reducedSpectra = new ReducedSpectra(spectrum, MZ_TOLERANCE, 10);
+            ReducedSpectra cachedSpectra = ReducedSpectra.getReducedSpectra(spectrum, MZ_TOLERANCE, 10);
+            HashMap<Integer, MSnSpectrum> previousSpectra = getPreviousReducedSpectra(spectrum, MZ_TOLERANCE, 10);
+            Assert.assertEquals(10, reducedSpectra.getNDepths());
+
+            for (int depth = 0; depth < 10; depth++) {
+                HashSet<Double> expected = getReferencePeaks(spectrum, MZ_TOLERANCE, depth);
+                Assert.assertEquals(expected, getMzs(reducedSpectra.getSpectrum(depth)));
+                Assert.assertEquals(expected, getMzs(cachedSpectra.getSpectrum(depth)));
+                Assert.assertEquals(expected.size(), reducedSpectra.getNPeaks(depth));
+                HashSet<Double> previous = getMzs(previousSpectra.get(depth));
+                if (ties) {
+                    // the previous implementation kept a single peak per intensity of the window
+                    HashMap<Double, Integer> windows = getWindows(spectrum, MZ_TOLERANCE);
+                    Assert.assertEquals(getWindowIntensities(previousSpectra.get(depth), windows),
+                            getWindowIntensities(reducedSpectra.getSpectrum(depth), windows));
+                    Assert.assertTrue(expected.size() >= previous.size());
+                } else {
+                    Assert.assertEquals(expected, previous);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the peaks of equal intensity in a window are all kept,
+     * ranked by m/z.
+     */
+    public void testTies() {
+
+        HashMap<Double, Peak> peakMap = new HashMap<Double, Peak>();
+        double[] mzs = {100, 101, 102, 103};
+        double[] intensities = {5, 10, 10, 1};
+        for (int i = 0; i < mzs.length; i++) {
+            peakMap.put(mzs[i], new Peak(mzs[i], intensities[i]));
+        }
+        MSnSpectrum spectrum = getSpectrum("ties", peakMap);
+        ReducedSpectra reducedSpectra = new ReducedSpectra(spectrum, MZ_TOLERANCE, -1);
+
+        Assert.assertEquals(4, reducedSpectra.getNDepths());
+        Assert.assertEquals(2, reducedSpectra.getRank(0));
+        Assert.assertEquals(0, reducedSpectra.getRank(1));
+        Assert.assertEquals(1, reducedSpectra.getRank(2));
+        Assert.assertEquals(3, reducedSpectra.getRank(3));
+        Assert.assertEquals("[101.0]", getSortedMzs(reducedSpectra.getSpectrum(0)).toString());
+        Assert.assertEquals("[101.0, 102.0]", getSortedMzs(reducedSpectra.getSpectrum(1)).toString());
+        Assert.assertEquals("[100.0, 101.0, 102.0]", getSortedMzs(reducedSpectra.getSpectrum(2)).toString());
+
+        // the previous implementation kept only the last tied peak
+        HashMap<Integer, MSnSpectrum> previousSpectra = getPreviousReducedSpectra(spectrum, MZ_TOLERANCE, 4);
+        Assert.assertEquals("[102.0]", getSortedMzs(previousSpectra.get(0)).toString());
+        Assert.assertEquals("[102.0]", getSortedMzs(previousSpectra.get(1)).toString());
+        Assert.assertEquals("[100.0, 102.0]", getSortedMzs(previousSpectra.get(2)).toString());
+    }
+
+    /**
+     * Tests that depthMax = -1 gives the number of peaks of the most
+     * populated window and not of the first window.
+     */
+    public void testMaximalDepth() {
+
+        HashMap<Double, Peak> peakMap = new HashMap<Double, Peak>();
+        peakMap.put(1.0, new Peak(1.0, 1));
+        for (int i = 0; i < 5; i++) {
+            double mz = 500 + i;
+            peakMap.put(mz, new Peak(mz, 10 + i));
+        }
+        MSnSpectrum spectrum = getSpectrum("depth", peakMap);
+        ReducedSpectra reducedSpectra = new ReducedSpectra(spectrum, MZ_TOLERANCE, -1);
+
+        Assert.assertEquals(5, reducedSpectra.getNDepths());
+        Assert.assertEquals(6, reducedSpectra.getNPeaks(4));
+        Assert.assertEquals(1, getPreviousReducedSpectra(spectrum, MZ_TOLERANCE, -1).size());
+        Assert.assertEquals(5, AScore.getReducedSpectra(spectrum, MZ_TOLERANCE, -1).size());
+    }
+
+    /**
+     * Tests that the cache returns the same reduced spectra for the same
+     * spectrum instance and tolerance, that it is invalidated when the
+     * spectrum is reloaded, and that it is bounded by the size of the
+     * spectrum factory cache.
+     */
+    public void testCache() {
+
+        SpectrumFactory spectrumFactory = SpectrumFactory.getInstance();
+        int cacheSize = spectrumFactory.getCacheSize();
+        ReducedSpectra.emptyCache();
+        try {
+            Random random = new Random(42);
+            MSnSpectrum spectrum = getRandomSpectrum(random, "cache", 100, false);
+            ReducedSpectra reducedSpectra = ReducedSpectra.getReducedSpectra(spectrum, MZ_TOLERANCE, 10);
+            Assert.assertSame(reducedSpectra, ReducedSpectra.getReducedSpectra(spectrum, MZ_TOLERANCE, 10));
+            Assert.assertSame(reducedSpectra.getSpectrum(3), reducedSpectra.getSpectrum(3));
+            Assert.assertNotSame(reducedSpectra, ReducedSpectra.getReducedSpectra(spectrum, 2 * MZ_TOLERANCE, 10));
+            Assert.assertNotSame(reducedSpectra, ReducedSpectra.getReducedSpectra(spectrum, MZ_TOLERANCE, 5));
+
+            // a reloaded spectrum with the same key and other peaks
+            MSnSpectrum reloaded = getRandomSpectrum(random, "cache", 100, false);
+            Assert.assertEquals(spectrum.getSpectrumKey(), reloaded.getSpectrumKey());
+            ReducedSpectra reloadedSpectra = ReducedSpectra.getReducedSpectra(reloaded, MZ_TOLERANCE, 10);
+            Assert.assertNotSame(reducedSpectra, reloadedSpectra);
+            Assert.assertEquals(getReferencePeaks(reloaded, MZ_TOLERANCE, 3), getMzs(reloadedSpectra.getSpectrum(3)));
+            Assert.assertSame(reloadedSpectra, ReducedSpectra.getReducedSpectra(reloaded, MZ_TOLERANCE, 10));
+
+            ReducedSpectra.emptyCache();
+            Assert.assertNotSame(reloadedSpectra, ReducedSpectra.getReducedSpectra(reloaded, MZ_TOLERANCE, 10));
+
+            spectrumFactory.setCacheSize(2);
+            ReducedSpectra.emptyCache();
+            MSnSpectrum[] spectra = new MSnSpectrum[3];
+            ReducedSpectra[] cached = new ReducedSpectra[spectra.length];
+            for (int i = 0; i < spectra.length; i++) {
+                spectra[i] = getRandomSpectrum(random, "cache " + i, 50, false);
+                cached[i] = ReducedSpectra.getReducedSpectra(spectra[i], MZ_TOLERANCE, 10);
+            }
+            Assert.assertSame(cached[2], ReducedSpectra.getReducedSpectra(spectra[2], MZ_TOLERANCE, 10));
+            Assert.assertSame(cached[1], ReducedSpectra.getReducedSpectra(spectra[1], MZ_TOLERANCE, 10));
+            Assert.assertNotSame(cached[0], ReducedSpectra.getReducedSpectra(spectra[0], MZ_TOLERANCE, 10));
+        } finally {
+            spectrumFactory.setCacheSize(cacheSize);
+            ReducedSpectra.emptyCache();
+        }
+    }
+
+    /**
+     * Tests that the A-scores of the sites of a phosphorylated peptide
+     * computed on the cached reduced spectra are the ones computed on the
+     * spectra of the previous implementation for spectra without intensity
+     * ties.
+     */
+    public void testScores() throws Exception {
+
+        PTM ptm = PTMFactory.getInstance().getPTM("Phosphorylation of S");
+        ArrayList<PTM> ptms = new ArrayList<PTM>();
+        ptms.add(ptm);
+        ArrayList<ModificationMatch> modificationMatches = new ArrayList<ModificationMatch>();
+        modificationMatches.add(new ModificationMatch(ptm.getName(), true, 2));
+        Peptide peptide = new Peptide("PSSEPTIDESK", modificationMatches);
+        Peptide noModPeptide = Peptide.getNoModPeptide(peptide, ptms);
+        ArrayList<Integer> possibleSites = new ArrayList<Integer>();
+        possibleSites.add(2);
+        possibleSites.add(3);
+        possibleSites.add(10);
+
+        PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, 1, Advocate.mascot.getIndex(), new Charge(Charge.PLUS, 2), 0.1, "no file");
+        AnnotationSettings annotationSettings = new AnnotationSettings(new SearchParameters());
+        annotationSettings.setNeutralLossesSequenceAuto(false);
+        SequenceMatchingPreferences sequenceMatchingPreferences = SequenceMatchingPreferences.getDefaultSequenceMatching();
+        PeptideSpectrumAnnotator spectrumAnnotator = new PeptideSpectrumAnnotator();
+
+        Random random = new Random(42);
+        for (int test = 0; test < 10; test++) {
+            MSnSpectrum spectrum = getRandomSpectrum(random, "score " + test, 400, false);
+            SpecificAnnotationSettings specificAnnotationSettings = annotationSettings.getSpecificAnnotationPreferences(spectrum.getSpectrumKey(), peptideAssumption,
+                    sequenceMatchingPreferences, sequenceMatchingPreferences);
+            HashMap<Integer, HashMap<Integer, Double>> previousScores = AScore.getPositionToScoreMap(peptide, noModPeptide, possibleSites, spectrum,
+                    getPreviousReducedSpectra(spectrum, MZ_TOLERANCE, 10), annotationSettings, specificAnnotationSettings, spectrumAnnotator, ptm);
+            HashMap<Integer, HashMap<Integer, Double>> scores = AScore.getPositionToScoreMap(peptide, noModPeptide, possibleSites,
+                    ReducedSpectra.getReducedSpectra(spectrum, MZ_TOLERANCE, 10), annotationSettings, specificAnnotationSettings, spectrumAnnotator, ptm);
+            Assert.assertEquals(previousScores, scores);
+        }
+        ReducedSpectra.emptyCache();
+    }
+
+    /**
+     * Returns a spectrum of random peaks between 100 and 1500 m/z.
+     *
+     * @param random the random number generator
+     * @param spectrumTitle the title of the spectrum
+     * @param nPeaks the number of peaks
+     * @param ties if true the intensities are drawn among a few values,
+     * distinct intensities are drawn otherwise
+     *
+     * @return a spectrum of random peaks
+     */
+    private MSnSpectrum getRandomSpectrum(Random random, String spectrumTitle, int nPeaks, boolean ties) {
+        HashMap<Double, Peak> peakMap = new HashMap<Double, Peak>(nPeaks);
+        HashSet<Double> intensities = new HashSet<Double>(nPeaks);
+        while (peakMap.size() < nPeaks) {
+            double mz = 100 + 1400 * random.nextDouble();
+            double intensity = ties ? 1 + random.nextInt(4) : 1 + 1000 * random.nextDouble();
+            if (!ties && !intensities.add(intensity)) {
+                continue;
+            }
+            peakMap.put(mz, new Peak(mz, intensity));
+        }
+        return getSpectrum(spectrumTitle, peakMap);
+    }
+
+    /**
+     * Returns a spectrum with the given peaks.
+     *
+     * @param spectrumTitle the title of the spectrum
+     * @param peakMap the peaks
+     *
+     * @return a spectrum
+     */
+    private MSnSpectrum getSpectrum(String spectrumTitle, HashMap<Double, Peak> peakMap) {
+        ArrayList<Charge> charges = new ArrayList<Charge>();
+        charges.add(new Charge(Charge.PLUS, 2));
+        return new MSnSpectrum(2, new Precursor(0, 600, charges), spectrumTitle, peakMap, "test.mgf");
+    }
+
+    /**
+     * Returns the m/z of the peaks of a spectrum.
+     *
+     * @param spectrum the spectrum
+     *
+     * @return the m/z of the peaks
+     */
+    private HashSet<Double> getMzs(MSnSpectrum spectrum) {
+        HashSet<Double> result = new HashSet<Double>();
+        for (Peak peak : spectrum.getPeakList()) {
+            result.add(peak.mz);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sorted m/z of the peaks of a spectrum.
+     *
+     * @param spectrum the spectrum
+     *
+     * @return the sorted m/z of the peaks
+     */
+    private ArrayList<Double> getSortedMzs(MSnSpectrum spectrum) {
+        ArrayList<Double> result = new ArrayList<Double>(getMzs(spectrum));
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the index of the window of every peak of a spectrum, the peaks
+     * after the last window being in none.
+     *
+     * @param spectrum the spectrum
+     * @param mzTolerance the m/z tolerance
+     *
+     * @return the index of the window indexed by peak m/z
+     */
+    private HashMap<Double, Integer> getWindows(MSnSpectrum spectrum, double mzTolerance) {
+        ArrayList<Double> mzs = getSortedMzs(spectrum);
+        HashMap<Double, Integer> result = new HashMap<Double, Integer>();
+        int cpt = 0;
+        int window = 0;
+        double currentmzMin = 0;
+        while (currentmzMin < mzs.get(mzs.size() - 1)) {
+            while (cpt < mzs.size() && mzs.get(cpt) < currentmzMin + 20 * mzTolerance) {
+                result.put(mzs.get(cpt), window);
+                cpt++;
+            }
+            window++;
+            currentmzMin += 200 * mzTolerance;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the distinct intensities of the peaks of a reduced spectrum
+     * per window, as window index and intensity.
+     *
+     * @param spectrum the reduced spectrum
+     * @param windows the index of the window indexed by peak m/z
+     *
+     * @return the distinct intensities of the peaks per window
+     */
+    private HashSet<String> getWindowIntensities(MSnSpectrum spectrum, HashMap<Double, Integer> windows) {
+        HashSet<String> result = new HashSet<String>();
+        for (Peak peak : spectrum.getPeakList()) {
+            result.add(windows.get(peak.mz) + "_" + peak.intensity);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the m/z of the peaks retained at the given depth, rebuilding
+     * the windows for this depth: the depth + 1 most intense peaks of every
+     * window, the peaks of equal intensity being ranked by m/z.
+     *
+     * @param spectrum the spectrum
+     * @param mzTolerance the m/z tolerance
+     * @param depth the depth
+     *
+     * @return the m/z of the peaks retained
+     */
+    private HashSet<Double> getReferencePeaks(MSnSpectrum spectrum, double mzTolerance, int depth) {
+        ArrayList<Double> mzs = getSortedMzs(spectrum);
+        HashMap<Double, Peak> peakMap = spectrum.getPeakMap();
+        HashSet<Double> result = new HashSet<Double>();
+        int cpt = 0;
+        double currentmzMin = 0;
+        while (currentmzMin < mzs.get(mzs.size() - 1)) {
+            ArrayList<Peak> window = new ArrayList<Peak>();
+            while (cpt < mzs.size() && mzs.get(cpt) < currentmzMin + 20 * mzTolerance) {
+                window.add(peakMap.get(mzs.get(cpt)));
+                cpt++;
+            }
+            for (int i = 0; i <= depth && !window.isEmpty(); i++) {
+                Peak mostIntense = window.get(0);
+                for (Peak peak : window) {
+                    if (peak.intensity > mostIntense.intensity) {
+                        mostIntense = peak;
+                    }
+                }
+                window.remove(mostIntense);
+                result.add(mostIntense.mz);
+            }
+            currentmzMin += 200 * mzTolerance;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the reduced spectra as built by the previous implementation of
+     * the A-score, indexed by depth.
+     *
+     * @param baseSpectrum the base spectrum
+     * @param mzTolerance the m/z tolerance
+     * @param depthMax the depth to look into, -1 for the size of the first
+     * window
+     *
+     * @return the reduced spectra indexed by depth
+     */
+    private HashMap<Integer, MSnSpectrum> getPreviousReducedSpectra(MSnSpectrum baseSpectrum, double mzTolerance, int depthMax) {
+
+        HashMap<Integer, MSnSpectrum> result = new HashMap<Integer, MSnSpectrum>();
+        HashMap<Double, Peak> tempMap, peakMap = baseSpectrum.getPeakMap();
+        ArrayList<Double> intensities, mz = new ArrayList<Double>(peakMap.keySet());
+        Collections.sort(mz);
+        double mzMax = mz.get(mz.size() - 1);
+        int cpt = 0;
+        double currentmzMin = 0;
+
+        while (currentmzMin < mzMax) {
+            int cptTemp = 0;
+            while (cpt < mz.size()
+                    && mz.get(cpt) < currentmzMin + 20 * mzTolerance) {
+                cptTemp++;
+                cpt++;
+            }
+            if (depthMax == -1
+                    && cptTemp > depthMax) {
+                depthMax = cptTemp;
+            }
+            currentmzMin += 200 * mzTolerance;
+        }
+
+        for (int i = 0; i < depthMax; i++) {
+            result.put(i, new MSnSpectrum(2, baseSpectrum.getPrecursor(), baseSpectrum.getSpectrumTitle() + "_" + i, new HashMap<Double, Peak>(), "a score"));
+        }
+
+        cpt = 0;
+        currentmzMin = 0;
+
+        while (currentmzMin < mzMax) {
+            intensities = new ArrayList<Double>();
+            tempMap = new HashMap<Double, Peak>();
+
+            while (cpt < mz.size()
+                    && mz.get(cpt) < currentmzMin + 20 * mzTolerance) {
+                Peak tempPeak = peakMap.get(mz.get(cpt));
+                intensities.add(-tempPeak.intensity);
+                tempMap.put(-tempPeak.intensity, tempPeak);
+                cpt++;
+            }
+
+            Collections.sort(intensities);
+
+            for (int i = 0; i < intensities.size(); i++) {
+                for (int j = i; j < depthMax; j++) {
+                    result.get(j).addPeak(tempMap.get(intensities.get(i)));
+                }
+            }
+
+            currentmzMin += 200 * mzTolerance;
+        }
+        return result;
+    }
+}
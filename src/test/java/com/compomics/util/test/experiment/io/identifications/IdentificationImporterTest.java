@@ -0,0 +1,263 @@
+package com.compomics.util.test.experiment.io.identifications;
+
+import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import com.compomics.util.experiment.identification.identifications.Ms2Identification;
+import com.compomics.util.experiment.identification.matches.ModificationMatch;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.experiment.io.identifications.IdentificationImporter;
+import com.compomics.util.experiment.io.identifications.IdfileReader;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchConsumer;
+import com.compomics.util.experiment.massspectrometry.Charge;
+import com.compomics.util.experiment.massspectrometry.Spectrum;
+import com.compomics.util.preferences.SequenceMatchingPreferences;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the import pipeline of the identification importer, in particular
+ * that the failure of a stage ends the import with the error of the stage.
+ *
+ * @author Marc Vaudel
+ */
+public class IdentificationImporterTest extends TestCase {
+
+    /**
+     * The number of spectrum matches per file.
+     */
+    private static final int N_MATCHES = 2000;
+
+    /**
+     * Tests that all the spectrum matches are written.
+     */
+    public void testImport() throws Exception {
+        TestIdentification identification = new TestIdentification(-1);
+        ArrayList<IdfileReader> readers = new ArrayList<IdfileReader>();
+        for (int i = 0; i < 3; i++) {
+            readers.add(new TestReader("file" + i + ".mgf", false));
+        }
+        IdentificationImporter importer = importSpectrumMatches(identification, readers);
+        Assert.assertEquals(3 * N_MATCHES, identification.nWritten);
+        Assert.assertEquals(3 * N_MATCHES, importer.getnRead());
+        Assert.assertEquals(3 * N_MATCHES, importer.getnMapped());
+        Assert.assertEquals(3 * N_MATCHES, importer.getnWritten());
+
+        // an import without file
+        importSpectrumMatches(identification, new ArrayList<IdfileReader>());
+    }
+
+    /**
+     * Tests that a failure of the writing stage ends the import with its
+     * error while the readers are blocked by the full queues.
+     */
+    public void testWriterFailure() throws Exception {
+        ArrayList<IdfileReader> readers = new ArrayList<IdfileReader>();
+        readers.add(new TestReader("file.mgf", false));
+        try {
+            importSpectrumMatches(new TestIdentification(2), readers);
+            Assert.fail("The error of the writing stage should be thrown.");
+        } catch (SQLException e) {
+            Assert.assertEquals("Test writing error.", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that a failure of a reader ends the import with its error.
+     */
+    public void testReaderFailure() throws Exception {
+        ArrayList<IdfileReader> readers = new ArrayList<IdfileReader>();
+        readers.add(new TestReader("file1.mgf", false));
+        readers.add(new TestReader("file2.mgf", true));
+        try {
+            importSpectrumMatches(new TestIdentification(-1), readers);
+            Assert.fail("The error of the reader should be thrown.");
+        } catch (IOException e) {
+            Assert.assertEquals("Test reading error.", e.getMessage());
+        }
+    }
+
+    /**
+     * Imports the spectrum matches of the given readers with small queues,
+     * failing if the import does not end within a minute.
+     *
+     * @param identification the identification where to import the matches
+     * @param readers the readers
+     *
+     * @return the importer used
+     *
+     * @throws Exception the exception thrown by the import
+     */
+    private IdentificationImporter importSpectrumMatches(TestIdentification identification, final ArrayList<IdfileReader> readers) throws Exception {
+        final IdentificationImporter importer = new IdentificationImporter(identification);
+        importer.setnReadingThreads(2);
+        importer.setnMappingThreads(3);
+        importer.setBatchSize(10);
+        importer.setQueueSize(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Object> task = pool.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    importer.importSpectrumMatches(readers, new SearchParameters(), false, null);
+                    return null;
+                }
+            });
+            try {
+                task.get(1, TimeUnit.MINUTES);
+            } catch (TimeoutException e) {
+                Assert.fail("The import did not end.");
+            } catch (ExecutionException e) {
+                throw (Exception) e.getCause();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return importer;
+    }
+
+    /**
+     * Identification counting the written spectrum matches and failing after
+     * a given number of batches.
+     */
+    private static class TestIdentification extends Ms2Identification {
+
+        /**
+         * The number of batches after which the writing fails, -1 for never.
+         */
+        private final int nBatchesBeforeFailure;
+        /**
+         * The number of batches written.
+         */
+        private int nBatches = 0;
+        /**
+         * The number of spectrum matches written.
+         */
+        private int nWritten = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param nBatchesBeforeFailure the number of batches after which the
+         * writing fails, -1 for never
+         */
+        public TestIdentification(int nBatchesBeforeFailure) {
+            super("identificationImporterTest");
+            this.nBatchesBeforeFailure = nBatchesBeforeFailure;
+        }
+
+        @Override
+        public synchronized void addSpectrumMatches(Collection<SpectrumMatch> spectrumMatches, WaitingHandler waitingHandler) throws SQLException {
+            if (nBatches++ == nBatchesBeforeFailure) {
+                throw new SQLException("Test writing error.");
+            }
+            nWritten += spectrumMatches.size();
+        }
+    }
+
+    /**
+     * Reader streaming generated spectrum matches, optionally failing in the
+     * middle of the file.
+     */
+    private static class TestReader implements IdfileReader {
+
+        /**
+         * The name of the spectrum file.
+         */
+        private final String spectrumFile;
+        /**
+         * If true the reading fails in the middle of the file.
+         */
+        private final boolean fail;
+
+        /**
+         * Constructor.
+         *
+         * @param spectrumFile the name of the spectrum file
+         * @param fail if true the reading fails in the middle of the file
+         */
+        public TestReader(String spectrumFile, boolean fail) {
+            this.spectrumFile = spectrumFile;
+            this.fail = fail;
+        }
+
+        @Override
+        public HashMap<String, ArrayList<String>> getSoftwareVersions() {
+            return new HashMap<String, ArrayList<String>>(0);
+        }
+
+        @Override
+        public String getExtension() {
+            return ".test";
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+
+        @Override
+        public LinkedList<SpectrumMatch> getAllSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters) throws IOException,
+                SQLException, ClassNotFoundException, InterruptedException {
+            return getAllSpectrumMatches(waitingHandler, searchParameters, null, false);
+        }
+
+        @Override
+        public LinkedList<SpectrumMatch> getAllSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters,
+                SequenceMatchingPreferences sequenceMatchingPreferences, boolean expandAaCombinations) throws IOException, SQLException,
+                ClassNotFoundException, InterruptedException {
+            SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+            streamSpectrumMatches(waitingHandler, searchParameters, sequenceMatchingPreferences, expandAaCombinations, spectrumMatchCollector,
+                    SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+            return spectrumMatchCollector.getSpectrumMatches();
+        }
+
+        @Override
+        public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+                boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize) throws IOException, SQLException,
+                ClassNotFoundException, InterruptedException {
+            SpectrumMatchBuffer spectrumMatchBuffer = new SpectrumMatchBuffer(spectrumMatchConsumer, batchSize);
+            for (int i = 0; i < N_MATCHES; i++) {
+                if (fail && i == N_MATCHES / 2) {
+                    throw new IOException("Test reading error.");
+                }
+                SpectrumMatch spectrumMatch = new SpectrumMatch(Spectrum.getSpectrumKey(spectrumFile, "spectrum " + i));
+                Peptide peptide = new Peptide("PEPTIDEK", new ArrayList<ModificationMatch>());
+                PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, 1, Advocate.mascot.getIndex(), new Charge(Charge.PLUS, 2), 0.01, "test.dat");
+                spectrumMatch.addHit(Advocate.mascot.getIndex(), peptideAssumption, false);
+                spectrumMatchBuffer.add(spectrumMatch);
+            }
+            spectrumMatchBuffer.flush();
+        }
+
+        @Override
+        public boolean hasDeNovoTags() {
+            return false;
+        }
+
+        @Override
+        public HashMap<String, LinkedList<SpectrumMatch>> getTagsMap() {
+            return new HashMap<String, LinkedList<SpectrumMatch>>(0);
+        }
+
+        @Override
+        public void clearTagsMap() {
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.compomics.util.test.experiment.io.identifications;
+
+import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.SpectrumIdentificationAssumption;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.experiment.io.identifications.idfilereaders.MzIdentMLIdfileReader;
+import com.compomics.util.experiment.massspectrometry.Spectrum;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the parsing of mzIdentML files by the custom parser of the mzIdentML
+ * reader, sequentially and in parallel.
+ *
+ * @author Marc Vaudel
+ */
+public class MzIdentMLIdfileReaderTest extends TestCase {
+
+    /**
+     * The peptide sequences used for the tests.
+     */
+    private static final String[] SEQUENCES = {"PEPTIDEK", "ELVISLIVESK", "TESTMSEQR", "SEQVENCER", "AMINACIDK"};
+    /**
+     * The number of spectra in the test file.
+     */
+    private static final int N_SPECTRA = 50;
+
+    /**
+     * Tests that the sequential and parallel parsing return the same spectrum
+     * matches.
+     */
+    public void testParsing() throws Exception {
+
+        File file = File.createTempFile("mzIdentMLIdfileReaderTest", ".mzid");
+        try {
+            writeFile(file, null, false);
+
+            ArrayList<String> serial = getDescriptions(parse(file, 1, 1024 * 1024));
+            Assert.assertEquals(N_SPECTRA, serial.size());
+            Assert.assertTrue(serial.get(0).startsWith(Spectrum.getSpectrumKey("test.mgf", "spectrum 0") + " "));
+            Assert.assertTrue(serial.get(0).contains("X!Tandem"));
+
+            for (int chunkSize : new int[]{1, 500, 1024 * 1024}) {
+                for (int nThreads : new int[]{2, 4}) {
+                    Assert.assertEquals(serial, getDescriptions(parse(file, nThreads, chunkSize)));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that the errors encountered while parsing are thrown both by the
+     * sequential and the parallel parsing.
+     */
+    public void testErrors() throws Exception {
+
+        File file = File.createTempFile("mzIdentMLIdfileReaderTest", ".mzid");
+        try {
+
+            // a result referencing a peptide which is not defined
+            writeFile(file, "unknown_peptide", false);
+            for (int nThreads : new int[]{1, 4}) {
+                try {
+                    parse(file, nThreads, 500);
+                    Assert.fail("A reference to an unknown peptide should not be parsed.");
+                } catch (IllegalArgumentException e) {
+                    // expected
+                }
+            }
+
+            // a truncated file
+            writeFile(file, null, true);
+            for (int nThreads : new int[]{1, 4}) {
+                try {
+                    parse(file, nThreads, 500);
+                    Assert.fail("A truncated file should not be parsed.");
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Parses the given file and returns the spectrum matches.
+     *
+     * @param file the mzIdentML file
+     * @param nThreads the number of threads to use
+     * @param chunkSize the size in bytes of the chunks parsed in parallel
+     *
+     * @return the spectrum matches
+     *
+     * @throws Exception thrown if an error occurred while parsing the file
+     */
+    private LinkedList<SpectrumMatch> parse(File file, int nThreads, int chunkSize) throws Exception {
+        MzIdentMLIdfileReader reader = new MzIdentMLIdfileReader(file);
+        reader.setnThreads(nThreads);
+        reader.setChunkSize(chunkSize);
+        try {
+            return reader.getAllSpectrumMatches(null, new SearchParameters());
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Writes an mzIdentML file laid out like the files of the search engines,
+     * i.e. one element per line. The peptides are shared by several results.
+     *
+     * @param file the file to write
+     * @param wrongReference if not null, the peptide reference of the last
+     * result
+     * @param truncated if true the file ends in the middle of the results
+     *
+     * @throws IOException thrown if an error occurred while writing the file
+     */
+    private void writeFile(File file, String wrongReference, boolean truncated) throws IOException {
+
+        Random random = new Random(42);
+        BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+        try {
+            bw.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            bw.write("<MzIdentML id=\"test\" version=\"1.1.0\" xmlns=\"http://psidev.info/psi/pi/mzIdentML/1.1\">\n");
+            bw.write("    <AnalysisSoftwareList>\n");
+            bw.write("        <AnalysisSoftware version=\"2013.09.01\" name=\"X!Tandem\" id=\"ID_software\">\n");
+            bw.write("            <SoftwareName>\n");
+            bw.write("                <cvParam cvRef=\"PSI-MS\" accession=\"MS:1001476\" name=\"X!Tandem\"/>\n");
+            bw.write("            </SoftwareName>\n");
+            bw.write("        </AnalysisSoftware>\n");
+            bw.write("    </AnalysisSoftwareList>\n");
+            bw.write("    <SequenceCollection>\n");
+            for (int i = 0; i < SEQUENCES.length; i++) {
+                bw.write("        <Peptide id=\"Pep_" + i + "\">\n");
+                bw.write("            <PeptideSequence>" + SEQUENCES[i] + "</PeptideSequence>\n");
+                bw.write("        </Peptide>\n");
+            }
+            bw.write("    </SequenceCollection>\n");
+            bw.write("    <DataCollection>\n");
+            bw.write("        <Inputs>\n");
+            bw.write("            <SpectraData location=\"test.mgf\" name=\"test.mgf\" id=\"SID_1\">\n");
+            bw.write("            </SpectraData>\n");
+            bw.write("        </Inputs>\n");
+            bw.write("        <AnalysisData>\n");
+            bw.write("            <SpectrumIdentificationList id=\"SIL_1\">\n");
+            for (int i = 0; i < N_SPECTRA; i++) {
+                bw.write("                <SpectrumIdentificationResult spectraData_ref=\"SID_1\" spectrumID=\"index=" + i + "\" id=\"SIR_" + i + "\">\n");
+                int nHits = 1 + random.nextInt(3);
+                for (int rank = 1; rank <= nHits; rank++) {
+                    String peptideRef = "Pep_" + random.nextInt(SEQUENCES.length);
+                    if (wrongReference != null && i == N_SPECTRA - 1) {
+                        peptideRef = wrongReference;
+                    }
+                    bw.write("                    <SpectrumIdentificationItem chargeState=\"" + (2 + random.nextInt(2)) + "\" id=\"SII_" + i + "_" + rank
+                            + "\" peptide_ref=\"" + peptideRef + "\" rank=\"" + rank + "\" passThreshold=\"true\">\n");
+                    bw.write("                        <PeptideEvidenceRef peptideEvidence_ref=\"PepEv_" + rank + "\"/>\n");
+                    bw.write("                        <cvParam cvRef=\"PSI-MS\" accession=\"MS:1001330\" name=\"X!Tandem:expect\" value=\"" + random.nextDouble() + "\"/>\n");
+                    bw.write("                        <cvParam cvRef=\"PSI-MS\" accession=\"MS:1001331\" name=\"X!Tandem:hyperscore\" value=\"" + 100 * random.nextDouble() + "\"/>\n");
+                    bw.write("                    </SpectrumIdentificationItem>\n");
+                }
+                bw.write("                    <cvParam cvRef=\"PSI-MS\" accession=\"MS:1000796\" name=\"spectrum title\" value=\"spectrum " + i + "\"/>\n");
+                if (truncated && i == N_SPECTRA / 2) {
+                    return;
+                }
+                bw.write("                </SpectrumIdentificationResult>\n");
+            }
+            bw.write("            </SpectrumIdentificationList>\n");
+            bw.write("        </AnalysisData>\n");
+            bw.write("    </DataCollection>\n");
+            bw.write("</MzIdentML>\n");
+        } finally {
+            bw.close();
+        }
+    }
+
+    /**
+     * Returns a description of every spectrum match: its key, its spectrum
+     * number and its assumptions.
+     *
+     * @param spectrumMatches the spectrum matches
+     *
+     * @return the descriptions of the spectrum matches
+     */
+    private ArrayList<String> getDescriptions(LinkedList<SpectrumMatch> spectrumMatches) {
+        ArrayList<String> result = new ArrayList<String>(spectrumMatches.size());
+        for (SpectrumMatch spectrumMatch : spectrumMatches) {
+            ArrayList<String> assumptions = new ArrayList<String>();
+            for (SpectrumIdentificationAssumption assumption : spectrumMatch.getAllAssumptions()) {
+                StringBuilder description = new StringBuilder();
+                description.append(Advocate.getAdvocate(assumption.getAdvocate()).getName()).append(' ').append(assumption.getRank()).append(' ')
+                        .append(assumption.getScore()).append(' ').append(assumption.getRawScore()).append(' ')
+                        .append(assumption.getIdentificationCharge().value).append(' ');
+                Peptide peptide = ((PeptideAssumption) assumption).getPeptide();
+                description.append(peptide.getSequence());
+                assumptions.add(description.toString());
+            }
+            Collections.sort(assumptions);
+            result.add(spectrumMatch.getKey() + " " + spectrumMatch.getSpectrumNumber() + " " + assumptions);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,115 @@
+package com.compomics.util.test.experiment.io.identifications;
+
+import com.compomics.util.experiment.identification.SpectrumIdentificationAssumption;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.idfilereaders.PepxmlIdfileReader;
+import com.compomics.util.experiment.massspectrometry.Spectrum;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the parsing of pepXML files.
+ *
+ * @author Marc Vaudel
+ */
+public class PepxmlIdfileReaderTest extends TestCase {
+
+    /**
+     * Tests that the queries of a spectrum found at different places of the
+     * file are merged in a single spectrum match, keeping every peptide once.
+     */
+    public void testInterleavedQueries() throws Exception {
+
+        File file = File.createTempFile("pepxmlIdfileReaderTest", ".pep.xml");
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            try {
+                bw.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+                bw.write("<msms_pipeline_analysis xmlns=\"http://regis-web.systemsbiology.net/pepXML\">\n");
+                bw.write("<msms_run_summary base_name=\"test\" raw_data=\".mzML\">\n");
+                bw.write("<search_summary search_engine=\"X!Tandem\" search_engine_version=\"2015.04.01\">\n");
+                bw.write("</search_summary>\n");
+                writeQuery(bw, 1, "PEPTIDEK");
+                writeQuery(bw, 2, "ELVISLIVESK");
+                writeQuery(bw, 1, "PEPTIDEK", "TESTMSEQR");
+                writeQuery(bw, 3, "SEQVENCER");
+                writeQuery(bw, 3, "AMINACIDK");
+                bw.write("</msms_run_summary>\n");
+                bw.write("</msms_pipeline_analysis>\n");
+            } finally {
+                bw.close();
+            }
+
+            PepxmlIdfileReader reader = new PepxmlIdfileReader(file);
+            LinkedList<SpectrumMatch> spectrumMatches = reader.getAllSpectrumMatches(null, new SearchParameters());
+            reader.close();
+            Assert.assertEquals(3, spectrumMatches.size());
+            Assert.assertEquals(Spectrum.getSpectrumKey("test.mgf", "1"), spectrumMatches.get(0).getKey());
+            Assert.assertEquals("[PEPTIDEK, TESTMSEQR]", getSequences(spectrumMatches.get(0)).toString());
+            Assert.assertEquals(Spectrum.getSpectrumKey("test.mgf", "2"), spectrumMatches.get(1).getKey());
+            Assert.assertEquals("[ELVISLIVESK]", getSequences(spectrumMatches.get(1)).toString());
+            Assert.assertEquals(Spectrum.getSpectrumKey("test.mgf", "3"), spectrumMatches.get(2).getKey());
+            Assert.assertEquals("[AMINACIDK, SEQVENCER]", getSequences(spectrumMatches.get(2)).toString());
+
+            // when streaming only the consecutive queries are merged
+            reader = new PepxmlIdfileReader(file);
+            SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+            reader.streamSpectrumMatches(null, new SearchParameters(), null, true, spectrumMatchCollector, SpectrumMatchBuffer.DEFAULT_BATCH_SIZE);
+            reader.close();
+            spectrumMatches = spectrumMatchCollector.getSpectrumMatches();
+            Assert.assertEquals(4, spectrumMatches.size());
+            Assert.assertEquals("[AMINACIDK, SEQVENCER]", getSequences(spectrumMatches.get(3)).toString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes a spectrum query.
+     *
+     * @param bw the writer
+     * @param scanNumber the scan number of the spectrum
+     * @param sequences the sequences of the search hits
+     *
+     * @throws IOException thrown if an error occurred while writing
+     */
+    private void writeQuery(BufferedWriter bw, int scanNumber, String... sequences) throws IOException {
+        bw.write("<spectrum_query spectrum=\"test." + scanNumber + "." + scanNumber + ".2\" start_scan=\"" + scanNumber + "\" end_scan=\""
+                + scanNumber + "\" assumed_charge=\"2\" index=\"" + scanNumber + "\">\n");
+        bw.write("<search_result>\n");
+        for (int i = 0; i < sequences.length; i++) {
+            bw.write("<search_hit hit_rank=\"" + (i + 1) + "\" peptide=\"" + sequences[i] + "\">\n");
+            bw.write("<search_score name=\"expect\" value=\"0.0" + (i + 1) + "\"/>\n");
+            bw.write("</search_hit>\n");
+        }
+        bw.write("</search_result>\n");
+        bw.write("</spectrum_query>\n");
+    }
+
+    /**
+     * Returns the sorted sequences of the assumptions of a spectrum match.
+     *
+     * @param spectrumMatch the spectrum match
+     *
+     * @return the sorted sequences
+     */
+    private ArrayList<String> getSequences(SpectrumMatch spectrumMatch) {
+        ArrayList<String> sequences = new ArrayList<String>();
+        for (SpectrumIdentificationAssumption assumption : spectrumMatch.getAllAssumptions()) {
+            sequences.add(((PeptideAssumption) assumption).getPeptide().getSequence());
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+}
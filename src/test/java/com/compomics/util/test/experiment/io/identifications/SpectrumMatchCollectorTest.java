@@ -0,0 +1,80 @@
+package com.compomics.util.test.experiment.io.identifications;
+
+import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.matches.ModificationMatch;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.massspectrometry.Charge;
+import com.compomics.util.experiment.massspectrometry.Spectrum;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the merging of the spectrum matches by the spectrum match collector.
+ *
+ * @author Marc Vaudel
+ */
+public class SpectrumMatchCollectorTest extends TestCase {
+
+    /**
+     * Tests that only the consecutive matches of a spectrum are merged, also
+     * across batches, unless all matches are to be merged.
+     */
+    public void testMerging() throws Exception {
+
+        SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+
+        ArrayList<SpectrumMatch> batch = new ArrayList<SpectrumMatch>();
+        batch.add(getSpectrumMatch("spectrum 1", "PEPTIDE", 1));
+        batch.add(getSpectrumMatch("spectrum 1", "PEPTIDEK", 2));
+        batch.add(getSpectrumMatch("spectrum 2", "PEPTIDER", 1));
+        spectrumMatchCollector.processSpectrumMatches(batch);
+
+        batch = new ArrayList<SpectrumMatch>();
+        batch.add(getSpectrumMatch("spectrum 2", "PEPTIDES", 2));
+        batch.add(getSpectrumMatch("spectrum 1", "PEPTIDEM", 1));
+        spectrumMatchCollector.processSpectrumMatches(batch);
+
+        LinkedList<SpectrumMatch> spectrumMatches = spectrumMatchCollector.getSpectrumMatches();
+        Assert.assertEquals(3, spectrumMatches.size());
+        Assert.assertEquals(Spectrum.getSpectrumKey("test.mgf", "spectrum 1"), spectrumMatches.get(0).getKey());
+        Assert.assertEquals(2, spectrumMatches.get(0).getAllAssumptions().size());
+        Assert.assertEquals(Spectrum.getSpectrumKey("test.mgf", "spectrum 2"), spectrumMatches.get(1).getKey());
+        Assert.assertEquals(2, spectrumMatches.get(1).getAllAssumptions().size());
+        Assert.assertEquals(Spectrum.getSpectrumKey("test.mgf", "spectrum 1"), spectrumMatches.get(2).getKey());
+        Assert.assertEquals(1, spectrumMatches.get(2).getAllAssumptions().size());
+
+        // all the matches of a spectrum can also be merged
+        spectrumMatchCollector = new SpectrumMatchCollector(true);
+        batch = new ArrayList<SpectrumMatch>();
+        batch.add(getSpectrumMatch("spectrum 1", "PEPTIDE", 1));
+        batch.add(getSpectrumMatch("spectrum 2", "PEPTIDER", 1));
+        batch.add(getSpectrumMatch("spectrum 1", "PEPTIDEM", 1));
+        spectrumMatchCollector.processSpectrumMatches(batch);
+        spectrumMatches = spectrumMatchCollector.getSpectrumMatches();
+        Assert.assertEquals(2, spectrumMatches.size());
+        Assert.assertEquals(Spectrum.getSpectrumKey("test.mgf", "spectrum 1"), spectrumMatches.get(0).getKey());
+        Assert.assertEquals(2, spectrumMatches.get(0).getAllAssumptions().size());
+    }
+
+    /**
+     * Returns a spectrum match with a single peptide assumption.
+     *
+     * @param spectrumTitle the title of the spectrum
+     * @param sequence the sequence of the peptide
+     * @param rank the rank of the assumption
+     *
+     * @return a spectrum match
+     */
+    private SpectrumMatch getSpectrumMatch(String spectrumTitle, String sequence, int rank) {
+        SpectrumMatch spectrumMatch = new SpectrumMatch(Spectrum.getSpectrumKey("test.mgf", spectrumTitle));
+        Peptide peptide = new Peptide(sequence, new ArrayList<ModificationMatch>());
+        PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, rank, Advocate.mascot.getIndex(), new Charge(Charge.PLUS, 2), 0.01 * rank, "test.dat");
+        spectrumMatch.addHit(Advocate.mascot.getIndex(), peptideAssumption, false);
+        return spectrumMatch;
+    }
+}
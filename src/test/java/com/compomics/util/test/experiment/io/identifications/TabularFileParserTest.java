@@ -0,0 +1,489 @@
+package com.compomics.util.test.experiment.io.identifications;
+
+import com.compomics.util.experiment.biology.Peptide;
+import com.compomics.util.experiment.identification.Advocate;
+import com.compomics.util.experiment.identification.SpectrumIdentificationAssumption;
+import com.compomics.util.experiment.identification.identification_parameters.SearchParameters;
+import com.compomics.util.experiment.identification.matches.ModificationMatch;
+import com.compomics.util.experiment.identification.matches.SpectrumMatch;
+import com.compomics.util.experiment.identification.spectrum_assumptions.PeptideAssumption;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchBuffer;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchCollector;
+import com.compomics.util.experiment.io.identifications.TabularFileParser;
+import com.compomics.util.experiment.io.identifications.TabularLine;
+import com.compomics.util.experiment.io.identifications.TabularLineParser;
+import com.compomics.util.experiment.io.identifications.idfilereaders.AndromedaIdfileReader;
+import com.compomics.util.experiment.io.identifications.idfilereaders.MsAmandaIdfileReader;
+import com.compomics.util.experiment.io.identifications.idfilereaders.NovorIdfileReader;
+import com.compomics.util.experiment.io.identifications.idfilereaders.TideIdfileReader;
+import com.compomics.util.experiment.massspectrometry.Charge;
+import com.compomics.util.experiment.massspectrometry.Spectrum;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the concurrent parsing of tabular identification files: the results
+ * must not depend on the number of threads and on the size of the chunks.
+ *
+ * @author Marc Vaudel
+ */
+public class TabularFileParserTest extends TestCase {
+
+    /**
+     * The sequences used in the fixtures.
+     */
+    private static final String[] SEQUENCES = {"PEPTIDEK", "ELVISLIVESK", "TESTMSEQR", "SEQVENCER", "AMINACIDK"};
+    /**
+     * The spectrum file used in the keys.
+     */
+    private static final String SPECTRUM_FILE = "test.mgf";
+
+    /**
+     * Tests that chunks start at lines and that the parsing merges the lines
+     * of a spectrum in the order of the file whatever the chunks and threads.
+     */
+    public void testChunks() throws Exception {
+
+        File file = File.createTempFile("tabularFileParserTest", ".txt");
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            try {
+                // consecutive lines of a spectrum with changing case are merged,
+                // a spectrum found again later in the file is a new match
+                String[] titles = {"spectrum 1", "spectrum 1", "Spectrum 1", "spectrum 2", "spectrum 3", "spectrum 3", "spectrum 1", "spectrum 4"};
+                Random random = new Random(42);
+                for (int i = 0; i < 60; i++) {
+                    String title = titles[i % titles.length] + " " + (i / titles.length);
+                    bw.write(title + "\t" + SEQUENCES[random.nextInt(SEQUENCES.length)] + "\t" + (1 + random.nextInt(5)));
+                    bw.newLine();
+                }
+            } finally {
+                bw.close();
+            }
+
+            ArrayList<String> expected = getReference(file, null);
+            Assert.assertEquals(37, expected.size());
+
+            int[] chunkSizes = {1, 7, 50, TabularFileParser.DEFAULT_CHUNK_SIZE};
+            for (int chunkSize : chunkSizes) {
+                for (int nThreads = 1; nThreads <= 4; nThreads += 3) {
+
+                    TabularFileParser tabularFileParser = new TabularFileParser(file, "\t", nThreads);
+                    tabularFileParser.setChunkSize(chunkSize);
+
+                    long[] bounds = tabularFileParser.getChunkBounds(0);
+                    checkBounds(file, bounds, null);
+                    if (chunkSize == 1) {
+                        Assert.assertEquals(60, bounds.length - 1);
+                    } else if (chunkSize == TabularFileParser.DEFAULT_CHUNK_SIZE) {
+                        Assert.assertEquals(1, bounds.length - 1);
+                    }
+
+                    SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+                    SpectrumMatchBuffer spectrumMatchBuffer = new SpectrumMatchBuffer(spectrumMatchCollector, 3);
+                    tabularFileParser.parse(0, new TestLineParser(), spectrumMatchBuffer, null);
+                    Assert.assertEquals(expected, getDescriptions(spectrumMatchCollector.getSpectrumMatches()));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that chunks only start at the lines starting a record when a
+     * record prefix is set, like in Andromeda files.
+     */
+    public void testRecordPrefix() throws Exception {
+
+        File file = File.createTempFile("tabularFileParserTest", ".txt");
+        try {
+            int nRecords = 0;
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            try {
+                Random random = new Random(42);
+                for (int i = 0; i < 20; i++) {
+                    bw.write(">spectrum " + i);
+                    bw.newLine();
+                    nRecords++;
+                    int nHits = random.nextInt(4);
+                    for (int j = 0; j < nHits; j++) {
+                        bw.write(SEQUENCES[random.nextInt(SEQUENCES.length)] + "\t" + (j + 1));
+                        bw.newLine();
+                    }
+                }
+            } finally {
+                bw.close();
+            }
+
+            ArrayList<String> expected = getReference(file, ">");
+
+            int[] chunkSizes = {1, 10, 100, TabularFileParser.DEFAULT_CHUNK_SIZE};
+            for (int chunkSize : chunkSizes) {
+                for (int nThreads = 1; nThreads <= 4; nThreads += 3) {
+
+                    TabularFileParser tabularFileParser = new TabularFileParser(file, "\t", nThreads);
+                    tabularFileParser.setRecordPrefix(">");
+                    tabularFileParser.setChunkSize(chunkSize);
+
+                    long[] bounds = tabularFileParser.getChunkBounds(0);
+                    checkBounds(file, bounds, ">");
+                    if (chunkSize == 1) {
+                        Assert.assertEquals(nRecords, bounds.length - 1);
+                    }
+
+                    SpectrumMatchCollector spectrumMatchCollector = new SpectrumMatchCollector();
+                    SpectrumMatchBuffer spectrumMatchBuffer = new SpectrumMatchBuffer(spectrumMatchCollector, 3);
+                    tabularFileParser.parse(0, new TestRecordParser(), spectrumMatchBuffer, null);
+                    Assert.assertEquals(expected, getDescriptions(spectrumMatchCollector.getSpectrumMatches()));
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that the Andromeda reader returns the same matches in parallel
+     * and serial.
+     */
+    public void testAndromedaReader() throws Exception {
+
+        File file = File.createTempFile("tabularFileParserTest", ".res");
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            try {
+                Random random = new Random(42);
+                for (int i = 0; i < 40; i++) {
+                    // the hits of a spectrum can be listed in different blocks
+                    bw.write(">spectrum%20" + (i % 30));
+                    bw.newLine();
+                    int nHits = 1 + random.nextInt(3);
+                    for (int j = 0; j < nHits; j++) {
+                        String sequence = SEQUENCES[random.nextInt(SEQUENCES.length)];
+                        StringBuilder modifications = new StringBuilder();
+                        for (int k = 0; k < sequence.length(); k++) {
+                            if (k > 0) {
+                                modifications.append(',');
+                            }
+                            modifications.append(sequence.charAt(k) == 'M' ? "Oxidation of M" : "A");
+                        }
+                        bw.write(sequence + "\t" + (10 + random.nextInt(100)) + "\t0\t0\t" + modifications + "\t0\t" + (2 + random.nextInt(2)));
+                        bw.newLine();
+                    }
+                }
+            } finally {
+                bw.close();
+            }
+
+            AndromedaIdfileReader serialReader = new AndromedaIdfileReader(file);
+            serialReader.setnThreads(1);
+            LinkedList<SpectrumMatch> serialMatches = serialReader.getAllSpectrumMatches(null, null);
+            Assert.assertEquals(30, serialMatches.size());
+
+            AndromedaIdfileReader parallelReader = new AndromedaIdfileReader(file);
+            parallelReader.setnThreads(4);
+            parallelReader.setChunkSize(16);
+            Assert.assertEquals(getDescriptions(serialMatches), getDescriptions(parallelReader.getAllSpectrumMatches(null, null)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that the MS Amanda reader returns the same matches in parallel
+     * and serial.
+     */
+    public void testMsAmandaReader() throws Exception {
+
+        File file = File.createTempFile("tabularFileParserTest", ".csv");
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            try {
+                bw.write("#version: 1.0.0.5242");
+                bw.newLine();
+                bw.write("Scan Number\tTitle\tSequence\tModifications\tProtein Accessions\tAmanda Score\tWeighted Probability\tRank\tm/z\tCharge\tRT\tFilename");
+                bw.newLine();
+                Random random = new Random(42);
+                int line = 0;
+                for (int i = 0; i < 30; i++) {
+                    int nHits = 1 + random.nextInt(3);
+                    for (int j = 0; j < nHits; j++) {
+                        String sequence = SEQUENCES[random.nextInt(SEQUENCES.length)];
+                        String modifications = sequence.startsWith("P") ? "" : "N-Term(acetylation of protein n-term|42.010565|variable)";
+                        bw.write(line++ + "\tspectrum%20" + i + "\t" + sequence + "\t" + modifications + "\tP12345\t" + (10 + random.nextInt(100))
+                                + "\t" + random.nextDouble() + "\t" + (j + 1) + "\t500.2\t" + (2 + random.nextInt(2)) + "\t10.5\t" + SPECTRUM_FILE);
+                        bw.newLine();
+                    }
+                }
+            } finally {
+                bw.close();
+            }
+
+            MsAmandaIdfileReader serialReader = new MsAmandaIdfileReader(file);
+            serialReader.setnThreads(1);
+            LinkedList<SpectrumMatch> serialMatches = serialReader.getAllSpectrumMatches(null, null);
+            Assert.assertEquals(30, serialMatches.size());
+
+            MsAmandaIdfileReader parallelReader = new MsAmandaIdfileReader(file);
+            parallelReader.setnThreads(4);
+            parallelReader.setChunkSize(16);
+            Assert.assertEquals(getDescriptions(serialMatches), getDescriptions(parallelReader.getAllSpectrumMatches(null, null)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that the Tide reader returns the same matches in parallel and
+     * serial.
+     */
+    public void testTideReader() throws Exception {
+
+        File file = File.createTempFile("tabularFileParserTest", ".tide-search.target.txt");
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            try {
+                bw.write("scan\tcharge\txcorr score\txcorr rank\tsequence");
+                bw.newLine();
+                Random random = new Random(42);
+                for (int i = 0; i < 30; i++) {
+                    int nHits = 1 + random.nextInt(3);
+                    for (int j = 0; j < nHits; j++) {
+                        String sequence = SEQUENCES[random.nextInt(SEQUENCES.length)].replace("M", "M[15.9949]");
+                        bw.write(i + "\t" + (2 + random.nextInt(2)) + "\t" + random.nextDouble() + "\t" + (j + 1) + "\t" + sequence);
+                        bw.newLine();
+                    }
+                }
+            } finally {
+                bw.close();
+            }
+
+            TideIdfileReader serialReader = new TideIdfileReader(file);
+            serialReader.setnThreads(1);
+            LinkedList<SpectrumMatch> serialMatches = serialReader.getAllSpectrumMatches(null, null);
+            Assert.assertEquals(30, serialMatches.size());
+
+            TideIdfileReader parallelReader = new TideIdfileReader(file);
+            parallelReader.setnThreads(4);
+            parallelReader.setChunkSize(16);
+            Assert.assertEquals(getDescriptions(serialMatches), getDescriptions(parallelReader.getAllSpectrumMatches(null, null)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that the Novor reader returns the same matches in parallel and
+     * serial.
+     */
+    public void testNovorReader() throws Exception {
+
+        File file = File.createTempFile("tabularFileParserTest", ".novor.csv");
+        try {
+            BufferedWriter bw = new BufferedWriter(new FileWriter(file));
+            try {
+                bw.write("# input file = " + SPECTRUM_FILE);
+                bw.newLine();
+                bw.write("# fixedModifications = Carbamidomethylation of C");
+                bw.newLine();
+                bw.write("# variableModifications = Oxidation of M");
+                bw.newLine();
+                bw.write("# id, scanNum, RT, mz(data), z, pepMass(denovo), err(data-denovo), ppm(1e6*err/(mz*z)), score, peptide, aaScore,");
+                bw.newLine();
+                Random random = new Random(42);
+                for (int i = 0; i < 30; i++) {
+                    String sequence = SEQUENCES[random.nextInt(SEQUENCES.length)].replace("M", "M(0)");
+                    bw.write(i + ", " + i + ", 10.5, 500.2, " + (2 + random.nextInt(2)) + ", 998.4, 0.01, 2.0, " + random.nextInt(100) + ", " + sequence + ", 80-85-90");
+                    bw.newLine();
+                }
+            } finally {
+                bw.close();
+            }
+
+            NovorIdfileReader serialReader = new NovorIdfileReader(file);
+            serialReader.setnThreads(1);
+            LinkedList<SpectrumMatch> serialMatches = serialReader.getAllSpectrumMatches(null, new SearchParameters());
+            Assert.assertEquals(30, serialMatches.size());
+
+            NovorIdfileReader parallelReader = new NovorIdfileReader(file);
+            parallelReader.setnThreads(4);
+            parallelReader.setChunkSize(16);
+            Assert.assertEquals(getDescriptions(serialMatches), getDescriptions(parallelReader.getAllSpectrumMatches(null, new SearchParameters())));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks that the bounds of the chunks are increasing, cover the file and
+     * start at lines, or records if a record prefix is given.
+     *
+     * @param file the file parsed
+     * @param bounds the bounds of the chunks
+     * @param recordPrefix the prefix of the lines starting a record, null if
+     * none
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     */
+    private void checkBounds(File file, long[] bounds, String recordPrefix) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            Assert.assertEquals(0, bounds[0]);
+            Assert.assertEquals(randomAccessFile.length(), bounds[bounds.length - 1]);
+            for (int i = 1; i < bounds.length; i++) {
+                Assert.assertTrue(bounds[i] > bounds[i - 1]);
+            }
+            for (int i = 1; i < bounds.length - 1; i++) {
+                randomAccessFile.seek(bounds[i] - 1);
+                Assert.assertEquals('\n', randomAccessFile.read());
+                if (recordPrefix != null) {
+                    Assert.assertTrue(randomAccessFile.readLine().startsWith(recordPrefix));
+                }
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Parses the file line by line and returns the descriptions of the
+     * spectrum matches, the hits of consecutive lines of a spectrum being
+     * merged.
+     *
+     * @param file the file to parse
+     * @param recordPrefix the prefix of the lines containing the spectrum
+     * title, null if the title is in the first field of every line
+     *
+     * @return the descriptions of the spectrum matches
+     *
+     * @throws Exception exception thrown whenever an error occurred while
+     * parsing the file
+     */
+    private ArrayList<String> getReference(File file, String recordPrefix) throws Exception {
+        LinkedList<SpectrumMatch> spectrumMatches = new LinkedList<SpectrumMatch>();
+        TabularLineParser tabularLineParser = recordPrefix == null ? new TestLineParser() : new TestRecordParser();
+        TabularLine tabularLine = new TabularLine("\t");
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            String line;
+            while ((line = randomAccessFile.readLine()) != null) {
+                tabularLine.setLine(line);
+                SpectrumMatch spectrumMatch = tabularLineParser.parseLine(tabularLine);
+                if (spectrumMatch != null) {
+                    if (!spectrumMatches.isEmpty() && spectrumMatches.getLast().getKey().equalsIgnoreCase(spectrumMatch.getKey())) {
+                        SpectrumMatchCollector.mergeHits(spectrumMatches.getLast(), spectrumMatch);
+                    } else {
+                        spectrumMatches.add(spectrumMatch);
+                    }
+                }
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+        return getDescriptions(spectrumMatches);
+    }
+
+    /**
+     * Returns a description of every spectrum match: its key and its
+     * assumptions.
+     *
+     * @param spectrumMatches the spectrum matches
+     *
+     * @return the descriptions of the spectrum matches
+     */
+    private ArrayList<String> getDescriptions(LinkedList<SpectrumMatch> spectrumMatches) {
+        ArrayList<String> result = new ArrayList<String>(spectrumMatches.size());
+        for (SpectrumMatch spectrumMatch : spectrumMatches) {
+            ArrayList<String> assumptions = new ArrayList<String>();
+            for (SpectrumIdentificationAssumption assumption : spectrumMatch.getAllAssumptions()) {
+                StringBuilder description = new StringBuilder();
+                description.append(assumption.getAdvocate()).append(' ').append(assumption.getRank()).append(' ')
+                        .append(assumption.getScore()).append(' ').append(assumption.getRawScore()).append(' ')
+                        .append(assumption.getIdentificationCharge().value).append(' ');
+                Peptide peptide = ((PeptideAssumption) assumption).getPeptide();
+                description.append(peptide.getSequence());
+                if (peptide.getModificationMatches() != null) {
+                    for (ModificationMatch modificationMatch : peptide.getModificationMatches()) {
+                        description.append(' ').append(modificationMatch.getTheoreticPtm()).append('@').append(modificationMatch.getModificationSite());
+                    }
+                }
+                assumptions.add(description.toString());
+            }
+            Collections.sort(assumptions);
+            result.add(spectrumMatch.getKey() + " " + assumptions);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a spectrum match with a single peptide assumption.
+     *
+     * @param spectrumTitle the title of the spectrum
+     * @param sequence the sequence of the peptide
+     * @param rank the rank of the assumption
+     *
+     * @return a spectrum match
+     */
+    private static SpectrumMatch getSpectrumMatch(String spectrumTitle, String sequence, int rank) {
+        SpectrumMatch spectrumMatch = new SpectrumMatch(Spectrum.getSpectrumKey(SPECTRUM_FILE, spectrumTitle));
+        Peptide peptide = new Peptide(sequence, new ArrayList<ModificationMatch>());
+        PeptideAssumption peptideAssumption = new PeptideAssumption(peptide, rank, Advocate.mascot.getIndex(), new Charge(Charge.PLUS, 2), 0.01 * rank, "test.dat");
+        spectrumMatch.addHit(Advocate.mascot.getIndex(), peptideAssumption, false);
+        return spectrumMatch;
+    }
+
+    /**
+     * Line parser for files where every line contains a spectrum title, a
+     * sequence and a rank.
+     */
+    private static class TestLineParser implements TabularLineParser {
+
+        @Override
+        public TabularLineParser getChunkParser() {
+            return this;
+        }
+
+        @Override
+        public SpectrumMatch parseLine(TabularLine tabularLine) {
+            return getSpectrumMatch(tabularLine.getField(0), tabularLine.getField(1), tabularLine.getInt(2));
+        }
+    }
+
+    /**
+     * Line parser for files where the spectrum title lines start with '&gt;'
+     * and are followed by lines containing a sequence and a rank.
+     */
+    private static class TestRecordParser implements TabularLineParser {
+
+        /**
+         * The title of the current spectrum.
+         */
+        private String spectrumTitle = null;
+
+        @Override
+        public TabularLineParser getChunkParser() {
+            return new TestRecordParser();
+        }
+
+        @Override
+        public SpectrumMatch parseLine(TabularLine tabularLine) {
+            if (tabularLine.startsWith(">")) {
+                spectrumTitle = tabularLine.getLine().substring(1);
+                return null;
+            }
+            Assert.assertNotNull(spectrumTitle);
+            return getSpectrumMatch(spectrumTitle, tabularLine.getField(0), tabularLine.getInt(1));
+        }
+    }
+}
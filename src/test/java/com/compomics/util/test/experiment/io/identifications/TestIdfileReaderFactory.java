@@ -4,6 +4,7 @@ import com.compomics.util.experiment.identification.identification_parameters.Se
 import com.compomics.util.experiment.identification.matches.SpectrumMatch;
 import com.compomics.util.experiment.io.identifications.IdfileReader;
 import com.compomics.util.experiment.io.identifications.IdfileReaderFactory;
+import com.compomics.util.experiment.io.identifications.SpectrumMatchConsumer;
 import com.compomics.util.preferences.SequenceMatchingPreferences;
 import com.compomics.util.waiting.WaitingHandler;
 import junit.framework.Assert;
@@ -51,6 +52,12 @@ public class TestIdfileReaderFactory extends TestCase {
                 return null;
             }
 
+            @Override
+            public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+                    boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize)
+                    throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
+            }
+
             @Override
             public String getExtension() {
                 return ".crazyThingThatDoesNotExist";
@@ -144,6 +151,13 @@ public class TestIdfileReaderFactory extends TestCase {
             return null;
         }
 
+        @Override
+        public void streamSpectrumMatches(WaitingHandler waitingHandler, SearchParameters searchParameters, SequenceMatchingPreferences sequenceMatchingPreferences,
+                boolean expandAaCombinations, SpectrumMatchConsumer spectrumMatchConsumer, int batchSize)
+                throws IOException, IllegalArgumentException, SQLException, ClassNotFoundException, InterruptedException, JAXBException {
+            // Does nothing.
+        }
+
         @Override
         public String getExtension() {
             return ".yourNotBelievingThisAreYou";
@@ -0,0 +1,464 @@
+package com.compomics.util.test.experiment.io.massspectrometry;
+
+import com.compomics.util.experiment.io.massspectrometry.MzMLIndex;
+import com.compomics.util.experiment.io.massspectrometry.MzMLReader;
+import com.compomics.util.experiment.massspectrometry.MSnSpectrum;
+import com.compomics.util.experiment.massspectrometry.Peak;
+import com.compomics.util.experiment.massspectrometry.Spectrum;
+import com.compomics.util.experiment.massspectrometry.SpectrumFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import uk.ac.ebi.jmzml.model.mzml.BinaryDataArray;
+import uk.ac.ebi.jmzml.xml.io.MzMLUnmarshaller;
+
+/**
+ * Tests the mzML reader on small files written by the test: the peaks
+ * decoded must be the ones written for every encoding, whether the file is
+ * indexed or not.
+ *
+ * @author Marc Vaudel
+ */
+public class MzMLReaderTest extends TestCase {
+
+    /**
+     * The ids of the spectra written, the last one is escaped in the file.
+     */
+    private static final String[] SPECTRUM_IDS = {"controllerType=0 controllerNumber=1 scan=1", "controllerType=0 controllerNumber=1 scan=2",
+        "controllerType=0 controllerNumber=1 scan=3", "controllerType=0 controllerNumber=1 scan=4 a&b"};
+    /**
+     * The base64 alphabet.
+     */
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    /**
+     * Tests the reading of indexed and scanned files with 32 and 64 bit
+     * arrays, compressed or not.
+     */
+    public void testReading() throws Exception {
+        for (int indexed = 0; indexed < 2; indexed++) {
+            for (int bytesPerValue = 4; bytesPerValue <= 8; bytesPerValue += 4) {
+                for (int zlib = 0; zlib < 2; zlib++) {
+                    testFile(indexed == 1, false, bytesPerValue, zlib == 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that a file whose index does not point to spectrum elements is
+     * scanned.
+     */
+    public void testInconsistentIndex() throws Exception {
+        testFile(true, true, 8, true);
+    }
+
+    /**
+     * Tests that truncated compressed data is not silently decoded.
+     */
+    public void testTruncatedData() throws Exception {
+        double[] values = new double[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 100.0 + i;
+        }
+        byte[] compressed = compress(getBytes(values, 8));
+        String encodedData = encodeBase64(Arrays.copyOf(compressed, compressed.length / 2));
+        try {
+            MzMLReader.decodeBinaryArray(encodedData, 8, false, true, values.length);
+            Assert.fail("Truncated data should not be decoded.");
+        } catch (IOException e) {
+            // expected
+        }
+        double[] decoded = MzMLReader.decodeBinaryArray(encodeBase64(compressed), 8, false, true, values.length);
+        Assert.assertTrue(Arrays.equals(values, decoded));
+    }
+
+    /**
+     * Compares the peaks read to the ones read by jmzml.
+     */
+    public void testJmzml() throws Exception {
+        Random random = new Random(42);
+        double[][] mzs = new double[SPECTRUM_IDS.length][];
+        double[][] intensities = new double[SPECTRUM_IDS.length][];
+        for (int i = 0; i < SPECTRUM_IDS.length; i++) {
+            mzs[i] = getMzs(random);
+            intensities[i] = getIntensities(random, mzs[i].length);
+        }
+        File file = File.createTempFile("mzMLReaderTest", ".mzML");
+        try {
+            writeFile(file, SPECTRUM_IDS, mzs, intensities, true, false, 8, true);
+            MzMLIndex mzMLIndex = MzMLReader.getIndexMap(file, null);
+            ArrayList<Spectrum> spectra = MzMLReader.getSpectra(file, mzMLIndex, Arrays.asList(SPECTRUM_IDS), 2, null);
+            MzMLUnmarshaller mzMLUnmarshaller = new MzMLUnmarshaller(file);
+            for (int i = 0; i < SPECTRUM_IDS.length; i++) {
+                List<BinaryDataArray> binaryDataArrays = mzMLUnmarshaller.getSpectrumById(SPECTRUM_IDS[i]).getBinaryDataArrayList().getBinaryDataArray();
+                Number[] mzNumbers = binaryDataArrays.get(0).getBinaryDataAsNumberArray();
+                Number[] intensityNumbers = binaryDataArrays.get(1).getBinaryDataAsNumberArray();
+                HashMap<Double, Peak> peakMap = spectra.get(i).getPeakMap();
+                Assert.assertEquals(mzNumbers.length, peakMap.size());
+                for (int j = 0; j < mzNumbers.length; j++) {
+                    Peak peak = peakMap.get(mzNumbers[j].doubleValue());
+                    Assert.assertNotNull(peak);
+                    Assert.assertEquals(intensityNumbers[j].doubleValue(), peak.intensity);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that the spectra of an mzML file are found by scan number when
+     * the scan numbers do not match the positions of the spectra in the file.
+     */
+    public void testScanNumbers() throws Exception {
+        String[] spectrumIds = {"controllerType=0 controllerNumber=1 scan=101", "controllerType=0 controllerNumber=1 scan=3",
+            "controllerType=0 controllerNumber=1 scan=1"};
+        Random random = new Random(42);
+        double[][] mzs = new double[spectrumIds.length][];
+        double[][] intensities = new double[spectrumIds.length][];
+        for (int i = 0; i < spectrumIds.length; i++) {
+            mzs[i] = getMzs(random);
+            intensities[i] = getIntensities(random, mzs[i].length);
+        }
+        File folder = File.createTempFile("mzMLReaderTest", "");
+        folder.delete();
+        folder.mkdir();
+        File file = new File(folder, "scanNumbers.mzML");
+        SpectrumFactory spectrumFactory = SpectrumFactory.getInstance();
+        try {
+            writeFile(file, spectrumIds, mzs, intensities, true, false, 8, false);
+            spectrumFactory.addSpectra(file);
+            String fileName = file.getName();
+            Assert.assertEquals(spectrumIds[2], spectrumFactory.getSpectrumTitleOfScan(fileName, 1));
+            Assert.assertEquals(spectrumIds[1], spectrumFactory.getSpectrumTitleOfScan(fileName, 3));
+            Assert.assertEquals(spectrumIds[0], spectrumFactory.getSpectrumTitleOfScan(fileName, 101));
+            Assert.assertNull(spectrumFactory.getSpectrumTitleOfScan(fileName, 2));
+            Assert.assertNull(spectrumFactory.getSpectrumTitleOfScan(fileName, 4));
+
+            // the numbers are positions in the file for getSpectrumTitle
+            Assert.assertEquals(spectrumIds[0], spectrumFactory.getSpectrumTitle(fileName, 1));
+            Assert.assertNull(spectrumFactory.getSpectrumTitle(fileName, 101));
+        } finally {
+            spectrumFactory.closeFiles();
+            spectrumFactory.clearFactory();
+            for (File child : folder.listFiles()) {
+                child.delete();
+            }
+            folder.delete();
+        }
+
+        Assert.assertEquals(new Integer(42), MzMLIndex.getScanNumber("scan=42"));
+        Assert.assertEquals(new Integer(42), MzMLIndex.getScanNumber("controllerType=0 controllerNumber=1 scan=42"));
+        Assert.assertNull(MzMLIndex.getScanNumber("index=42"));
+        Assert.assertNull(MzMLIndex.getScanNumber("controllerType=0 subscan=42"));
+        Assert.assertNull(MzMLIndex.getScanNumber("scan=abc"));
+    }
+
+    /**
+     * Writes a file with the given configuration and checks that the spectra
+     * read correspond to the spectra written.
+     *
+     * @param indexed if true an index list is written
+     * @param wrongOffsets if true the offsets of the index are wrong
+     * @param bytesPerValue the number of bytes of the values, 4 or 8
+     * @param zlib if true the arrays are compressed
+     *
+     * @throws Exception exception thrown whenever an error occurred
+     */
+    private void testFile(boolean indexed, boolean wrongOffsets, int bytesPerValue, boolean zlib) throws Exception {
+
+        Random random = new Random(42);
+        double[][] mzs = new double[SPECTRUM_IDS.length][];
+        double[][] intensities = new double[SPECTRUM_IDS.length][];
+        for (int i = 0; i < SPECTRUM_IDS.length; i++) {
+            mzs[i] = getMzs(random);
+            intensities[i] = getIntensities(random, mzs[i].length);
+        }
+
+        File file = File.createTempFile("mzMLReaderTest", ".mzML");
+        try {
+            writeFile(file, SPECTRUM_IDS, mzs, intensities, indexed, wrongOffsets, bytesPerValue, zlib);
+
+            MzMLIndex mzMLIndex = MzMLReader.getIndexMap(file, null);
+            Assert.assertEquals(indexed && !wrongOffsets, mzMLIndex.isIndexedMzML());
+            Assert.assertEquals(Arrays.asList(SPECTRUM_IDS), mzMLIndex.getSpectrumTitles());
+            Assert.assertNull(mzMLIndex.getSpectrumTitle(SPECTRUM_IDS.length));
+
+            // read the spectra in reverse order
+            ArrayList<String> spectrumTitles = new ArrayList<String>(Arrays.asList(SPECTRUM_IDS));
+            Collections.reverse(spectrumTitles);
+            ArrayList<Spectrum> spectra = MzMLReader.getSpectra(file, mzMLIndex, spectrumTitles, 2, null);
+            Assert.assertEquals(SPECTRUM_IDS.length, spectra.size());
+
+            for (int i = 0; i < SPECTRUM_IDS.length; i++) {
+                Spectrum spectrum = spectra.get(SPECTRUM_IDS.length - 1 - i);
+                String message = "spectrum " + i + ", indexed " + indexed + ", " + bytesPerValue + " bytes, zlib " + zlib;
+                Assert.assertEquals(message, SPECTRUM_IDS[i], spectrum.getSpectrumTitle());
+                Assert.assertEquals(message, i == 0 ? 1 : 2, spectrum.getLevel());
+                if (i > 0) {
+                    MSnSpectrum msnSpectrum = (MSnSpectrum) spectrum;
+                    Assert.assertEquals(message, 400.0 + i, msnSpectrum.getPrecursor().getMz());
+                    Assert.assertEquals(message, 2, msnSpectrum.getPrecursor().getPossibleCharges().get(0).value);
+                }
+                HashMap<Double, Peak> peakMap = spectrum.getPeakMap();
+                Assert.assertEquals(message, mzs[i].length, peakMap.size());
+                for (int j = 0; j < mzs[i].length; j++) {
+                    double mz = getStoredValue(mzs[i][j], bytesPerValue);
+                    Peak peak = peakMap.get(mz);
+                    Assert.assertNotNull(message, peak);
+                    Assert.assertEquals(message, getStoredValue(intensities[i][j], bytesPerValue), peak.intensity);
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes an mzML file containing an MS1 spectrum followed by MS2 spectra.
+     *
+     * @param file the file
+     * @param spectrumIds the ids of the spectra
+     * @param mzs the m/z values of every spectrum
+     * @param intensities the intensities of every spectrum
+     * @param indexed if true an index list is written
+     * @param wrongOffsets if true the offsets of the index are wrong
+     * @param bytesPerValue the number of bytes of the values, 4 or 8
+     * @param zlib if true the arrays are compressed
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * writing the file
+     */
+    private void writeFile(File file, String[] spectrumIds, double[][] mzs, double[][] intensities, boolean indexed, boolean wrongOffsets, int bytesPerValue, boolean zlib) throws IOException {
+
+        StringBuilder mzML = new StringBuilder();
+        mzML.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        if (indexed) {
+            mzML.append("<indexedmzML xmlns=\"http://psi.hupo.org/ms/mzml\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://psi.hupo.org/ms/mzml http://psidev.info/files/ms/mzML/xsd/mzML1.1.0_idx.xsd\">\n");
+        }
+        mzML.append("<mzML xmlns=\"http://psi.hupo.org/ms/mzml\" version=\"1.1.0\">\n");
+        mzML.append("<cvList count=\"2\">\n");
+        mzML.append("<cv id=\"MS\" fullName=\"Proteomics Standards Initiative Mass Spectrometry Ontology\" URI=\"http://psidev.cvs.sourceforge.net/*checkout*/psidev/psi/psi-ms/mzML/controlledVocabulary/psi-ms.obo\"/>\n");
+        mzML.append("<cv id=\"UO\" fullName=\"Unit Ontology\" URI=\"http://obo.cvs.sourceforge.net/*checkout*/obo/obo/ontology/phenotype/unit.obo\"/>\n");
+        mzML.append("</cvList>\n");
+        mzML.append("<fileDescription><fileContent><cvParam cvRef=\"MS\" accession=\"MS:1000580\" name=\"MSn spectrum\" value=\"\"/></fileContent></fileDescription>\n");
+        mzML.append("<softwareList count=\"1\"><software id=\"test\" version=\"1\"><cvParam cvRef=\"MS\" accession=\"MS:1000799\" name=\"custom unreleased software tool\" value=\"\"/></software></softwareList>\n");
+        mzML.append("<instrumentConfigurationList count=\"1\"><instrumentConfiguration id=\"IC\"><cvParam cvRef=\"MS\" accession=\"MS:1000031\" name=\"instrument model\" value=\"\"/></instrumentConfiguration></instrumentConfigurationList>\n");
+        mzML.append("<dataProcessingList count=\"1\"><dataProcessing id=\"DP\"><processingMethod order=\"0\" softwareRef=\"test\"><cvParam cvRef=\"MS\" accession=\"MS:1000544\" name=\"Conversion to mzML\" value=\"\"/></processingMethod></dataProcessing></dataProcessingList>\n");
+        mzML.append("<run id=\"test\" defaultInstrumentConfigurationRef=\"IC\">\n");
+        mzML.append("<spectrumList count=\"").append(spectrumIds.length).append("\" defaultDataProcessingRef=\"DP\">\n");
+
+        long[] offsets = new long[spectrumIds.length];
+        for (int i = 0; i < spectrumIds.length; i++) {
+            offsets[i] = mzML.length();
+            mzML.append("<spectrum index=\"").append(i).append("\" id=\"").append(escape(spectrumIds[i])).append("\" defaultArrayLength=\"").append(mzs[i].length).append("\">\n");
+            mzML.append("<cvParam cvRef=\"MS\" accession=\"MS:1000511\" name=\"ms level\" value=\"").append(i == 0 ? 1 : 2).append("\"/>\n");
+            mzML.append("<scanList count=\"1\"><cvParam cvRef=\"MS\" accession=\"MS:1000795\" name=\"no combination\" value=\"\"/>\n");
+            mzML.append("<scan><cvParam cvRef=\"MS\" accession=\"MS:1000016\" name=\"scan start time\" value=\"").append(10.0 + i).append("\" unitCvRef=\"UO\" unitAccession=\"UO:0000010\" unitName=\"second\"/></scan>\n");
+            mzML.append("</scanList>\n");
+            if (i > 0) {
+                mzML.append("<precursorList count=\"1\"><precursor><selectedIonList count=\"1\"><selectedIon>\n");
+                mzML.append("<cvParam cvRef=\"MS\" accession=\"MS:1000744\" name=\"selected ion m/z\" value=\"").append(400.0 + i).append("\"/>\n");
+                mzML.append("<cvParam cvRef=\"MS\" accession=\"MS:1000041\" name=\"charge state\" value=\"2\"/>\n");
+                mzML.append("</selectedIon></selectedIonList>\n");
+                mzML.append("<activation><cvParam cvRef=\"MS\" accession=\"MS:1000133\" name=\"collision-induced dissociation\" value=\"\"/></activation>\n");
+                mzML.append("</precursor></precursorList>\n");
+            }
+            mzML.append("<binaryDataArrayList count=\"2\">\n");
+            appendBinaryDataArray(mzML, mzs[i], "MS:1000514", "m/z array", bytesPerValue, zlib);
+            appendBinaryDataArray(mzML, intensities[i], "MS:1000515", "intensity array", bytesPerValue, zlib);
+            mzML.append("</binaryDataArrayList>\n");
+            mzML.append("</spectrum>\n");
+        }
+
+        mzML.append("</spectrumList>\n");
+        mzML.append("</run>\n");
+        mzML.append("</mzML>\n");
+
+        if (indexed) {
+            long indexListOffset = mzML.length();
+            mzML.append("<indexList count=\"1\">\n");
+            mzML.append("<index name=\"spectrum\">\n");
+            for (int i = 0; i < spectrumIds.length; i++) {
+                mzML.append("<offset idRef=\"").append(escape(spectrumIds[i])).append("\">").append(wrongOffsets ? offsets[i] + 1 : offsets[i]).append("</offset>\n");
+            }
+            mzML.append("</index>\n");
+            mzML.append("</indexList>\n");
+            mzML.append("<indexListOffset>").append(indexListOffset).append("</indexListOffset>\n");
+            mzML.append("<fileChecksum>0</fileChecksum>\n");
+            mzML.append("</indexedmzML>\n");
+        }
+
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(mzML.toString().getBytes("US-ASCII"));
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Appends a binary data array element.
+     *
+     * @param mzML the content of the file
+     * @param values the values of the array
+     * @param accession the accession of the type of array
+     * @param name the name of the type of array
+     * @param bytesPerValue the number of bytes of the values, 4 or 8
+     * @param zlib if true the array is compressed
+     */
+    private void appendBinaryDataArray(StringBuilder mzML, double[] values, String accession, String name, int bytesPerValue, boolean zlib) {
+        byte[] bytes = getBytes(values, bytesPerValue);
+        if (zlib) {
+            bytes = compress(bytes);
+        }
+        String encodedData = encodeBase64(bytes);
+        mzML.append("<binaryDataArray encodedLength=\"").append(encodedData.length()).append("\">\n");
+        if (bytesPerValue == 4) {
+            mzML.append("<cvParam cvRef=\"MS\" accession=\"MS:1000521\" name=\"32-bit float\" value=\"\"/>\n");
+        } else {
+            mzML.append("<cvParam cvRef=\"MS\" accession=\"MS:1000523\" name=\"64-bit float\" value=\"\"/>\n");
+        }
+        if (zlib) {
+            mzML.append("<cvParam cvRef=\"MS\" accession=\"MS:1000574\" name=\"zlib compression\" value=\"\"/>\n");
+        } else {
+            mzML.append("<cvParam cvRef=\"MS\" accession=\"MS:1000576\" name=\"no compression\" value=\"\"/>\n");
+        }
+        mzML.append("<cvParam cvRef=\"MS\" accession=\"").append(accession).append("\" name=\"").append(name).append("\" value=\"\"/>\n");
+        mzML.append("<binary>").append(encodedData).append("</binary>\n");
+        mzML.append("</binaryDataArray>\n");
+    }
+
+    /**
+     * Returns random increasing m/z values.
+     *
+     * @param random the random number generator
+     *
+     * @return random m/z values
+     */
+    private double[] getMzs(Random random) {
+        double[] mzs = new double[20 + random.nextInt(50)];
+        double mz = 100.0;
+        for (int i = 0; i < mzs.length; i++) {
+            mz += 0.5 + 20 * random.nextDouble();
+            mzs[i] = mz;
+        }
+        return mzs;
+    }
+
+    /**
+     * Returns random intensities.
+     *
+     * @param random the random number generator
+     * @param nPeaks the number of peaks
+     *
+     * @return random intensities
+     */
+    private double[] getIntensities(Random random, int nPeaks) {
+        double[] intensities = new double[nPeaks];
+        for (int i = 0; i < nPeaks; i++) {
+            intensities[i] = 1e6 * random.nextDouble();
+        }
+        return intensities;
+    }
+
+    /**
+     * Returns the value as stored with the given number of bytes.
+     *
+     * @param value the value
+     * @param bytesPerValue the number of bytes of the values, 4 or 8
+     *
+     * @return the value as stored
+     */
+    private double getStoredValue(double value, int bytesPerValue) {
+        return bytesPerValue == 4 ? (double) (float) value : value;
+    }
+
+    /**
+     * Returns the little endian bytes of the given values.
+     *
+     * @param values the values
+     * @param bytesPerValue the number of bytes of the values, 4 or 8
+     *
+     * @return the bytes of the values
+     */
+    private byte[] getBytes(double[] values, int bytesPerValue) {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(bytesPerValue * values.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (double value : values) {
+            if (bytesPerValue == 4) {
+                byteBuffer.putFloat((float) value);
+            } else {
+                byteBuffer.putDouble(value);
+            }
+        }
+        return byteBuffer.array();
+    }
+
+    /**
+     * Compresses the given bytes with zlib.
+     *
+     * @param bytes the bytes to compress
+     *
+     * @return the compressed bytes
+     */
+    private byte[] compress(byte[] bytes) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] buffer = new byte[bytes.length + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Encodes the given bytes in base64.
+     *
+     * @param bytes the bytes to encode
+     *
+     * @return the base64 encoded bytes
+     */
+    private String encodeBase64(byte[] bytes) {
+        StringBuilder result = new StringBuilder(4 * (bytes.length + 2) / 3);
+        for (int i = 0; i < bytes.length; i += 3) {
+            int nBytes = Math.min(3, bytes.length - i);
+            int buffer = 0;
+            for (int j = 0; j < 3; j++) {
+                buffer = (buffer << 8) | (j < nBytes ? bytes[i + j] & 0xff : 0);
+            }
+            for (int j = 0; j < 4; j++) {
+                result.append(j <= nBytes ? BASE64.charAt((buffer >> (18 - 6 * j)) & 0x3f) : '=');
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Escapes the XML special characters of an attribute value.
+     *
+     * @param value the value
+     *
+     * @return the escaped value
+     */
+    private String escape(String value) {
+        return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;");
+    }
+}
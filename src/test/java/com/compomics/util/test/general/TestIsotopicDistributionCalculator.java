@@ -1,6 +1,9 @@
 package com.compomics.util.test.general;
 
+import com.compomics.util.enumeration.MolecularElement;
 import com.compomics.util.general.IsotopicDistribution;
+import com.compomics.util.general.IsotopicDistributionFactory;
+import com.compomics.util.protein.MolecularFormula;
 import junit.framework.Assert;
 import junit.framework.TestCase;
 import org.apache.log4j.Logger;
@@ -37,4 +40,35 @@ public class TestIsotopicDistributionCalculator extends TestCase {
             fail(e.getMessage());
         }
     }
+
+    /**
+     * This method tests the cached distributions and the averagine
+     * approximation.
+     */
+    public void testFactory() {
+        IsotopicDistributionFactory factory = IsotopicDistributionFactory.getInstance();
+        MolecularFormula lFormula = new MolecularFormula();
+        lFormula.addElement(MolecularElement.C, 60);
+        lFormula.addElement(MolecularElement.N, 13);
+        lFormula.addElement(MolecularElement.H, 86);
+        lFormula.addElement(MolecularElement.O, 13);
+        lFormula.addElement(MolecularElement.S, 2);
+        double[] lPercTot = factory.getPercTot(lFormula);
+        Assert.assertEquals(IsotopicDistributionFactory.N_PEAKS, lPercTot.length);
+        Assert.assertEquals(0.16628993915006032, lPercTot[2], 0);
+        lPercTot[2] = 0;
+        Assert.assertEquals(0.16628993915006032, factory.getPercTot(lFormula)[2], 0);
+        Assert.assertEquals(0.39350045799282984, factory.getPercMax(lFormula)[2], 0);
+
+        // the monoisotopic peak dominates for small peptides, not for large ones
+        double[] lSmall = factory.getAveragineDistribution(500);
+        Assert.assertTrue(lSmall[0] > lSmall[1]);
+        double[] lLarge = factory.getAveragineDistribution(5000);
+        Assert.assertTrue(lLarge[0] < lLarge[1]);
+        double lSum = 0;
+        for (double lPerc : lLarge) {
+            lSum += lPerc;
+        }
+        Assert.assertEquals(1, lSum, 0.01);
+    }
 }
@@ -6,6 +6,7 @@
 
 package com.compomics.util.test.general;
 
+import com.compomics.util.general.CompiledFormula;
 import com.compomics.util.general.MassCalc;
 import com.compomics.util.general.UnknownElementMassException;
 import com.compomics.util.junit.TestCaseLM;
@@ -219,4 +220,67 @@ public class TestMassCalc extends TestCase {
             Assert.assertEquals("M<Ox>", uem.getElement());
         }
     }
+
+    /**
+     * This method tests the compiled formulas and the bulk calculation.
+     */
+    public void testCalculateMasses() {
+        try {
+            MassCalc mc = new MassCalc(MassCalc.MONOAA);
+            String[] sequences = new String[]{"YSFVATAER", "YSFVMTAER", "YSFVATAER"};
+            double[] masses = mc.calculateMasses(sequences);
+            Assert.assertEquals(3, masses.length);
+            Assert.assertEquals(1042.508345, masses[0], 1e-10);
+            Assert.assertEquals(1102.511725, masses[1], 1e-10);
+            Assert.assertEquals(masses[0], masses[2], 0);
+
+            CompiledFormula formula = CompiledFormula.compile("CH3(CH2)2COOH");
+            Assert.assertSame(formula, CompiledFormula.compile("CH3(CH2)2COOH"));
+            Assert.assertEquals(3, formula.getNElements());
+            Assert.assertEquals(2, formula.getNTerminals() - 1);
+            mc = new MassCalc();
+            Assert.assertEquals(mc.calculateMass("C4H8O2"), mc.calculateMass(formula), 1e-10);
+            Assert.assertEquals(mc.calculateMass("C4H8O2"), mc.calculateMasses(new CompiledFormula[]{formula})[0], 1e-10);
+        } catch (UnknownElementMassException uem) {
+            fail("Unknown element '" + uem.getElement() + "'!\n");
+        }
+        try {
+            new MassCalc().calculateMass("CH3(CH2");
+            fail("'calculateMass' method should've failed on the unbalanced bracket but apparently didn't!\n");
+        } catch (IllegalArgumentException iae) {
+            // Expected.
+        } catch (UnknownElementMassException uem) {
+            fail("Unknown element '" + uem.getElement() + "'!\n");
+        }
+    }
+
+    /**
+     * This method tests that the symbols which are not in the built-in
+     * element lists are resolved without being registered.
+     */
+    public void testUnregisteredSymbols() {
+        HashMap selfList = new HashMap();
+        selfList.put("M<Ox>", new Double(147.0354));
+        selfList.put("Xq", new Double(1.5));
+        MassCalc mc = new MassCalc(MassCalc.MONOAA, selfList);
+        try {
+            Assert.assertTrue(CompiledFormula.getOrdinal("M") >= 0);
+            Assert.assertEquals(mc.calculateMass("YSFVMTAER") + 15.994915, mc.calculateMass("YSFVM<Ox>TAER"), 1e-4);
+            Assert.assertEquals(3.0, mc.calculateMass("Xq2") - mc.calculateMass(""), 1e-10);
+            Assert.assertEquals(-1, CompiledFormula.getOrdinal("M<Ox>"));
+            Assert.assertEquals(-1, CompiledFormula.getOrdinal("Xq"));
+        } catch (UnknownElementMassException uem) {
+            fail("Unknown element '" + uem.getElement() + "'!\n");
+        }
+        for (int i = 0; i < 100; i++) {
+            String tag = "M<tag" + i + ">";
+            try {
+                mc.calculateMass("YSFV" + tag + "TAER");
+                fail("'calculateMass' method should've failed on " + tag + " but apparently didn't!\n");
+            } catch (UnknownElementMassException uem) {
+                Assert.assertEquals(tag, uem.getElement());
+            }
+            Assert.assertEquals(-1, CompiledFormula.getOrdinal(tag));
+        }
+    }
 }
@@ -0,0 +1,342 @@
+package com.compomics.util.test.io.export;
+
+import com.compomics.util.gui.waiting.waitinghandlers.WaitingHandlerDummy;
+import com.compomics.util.io.export.ExportEngine;
+import com.compomics.util.io.export.ExportFeature;
+import com.compomics.util.io.export.ExportRowGenerator;
+import com.compomics.util.io.export.ExportScheme;
+import com.compomics.util.io.export.writers.TextWriter;
+import com.compomics.util.waiting.WaitingHandler;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests the writing of reports by the export engine to text files.
+ *
+ * @author Marc Vaudel
+ */
+public class ExportEngineTest extends TestCase {
+
+    /**
+     * The name of the section.
+     */
+    private static final String SECTION = "Test Section";
+    /**
+     * The number of rows of the section.
+     */
+    private static final int N_ROWS = 1000;
+    /**
+     * The number of rows per block.
+     */
+    private static final int BLOCK_SIZE = 50;
+    /**
+     * The maximal number of blocks ahead of the writer.
+     */
+    private static final int MAX_PENDING_BLOCKS = 4;
+
+    /**
+     * Tests that the rows are written in the order of the keys when generated
+     * concurrently, and that every block is prefetched in order before its
+     * rows are generated.
+     */
+    public void testOrder() throws Exception {
+
+        File file = File.createTempFile("exportEngineTest", ".txt");
+        try {
+            TestRowGenerator rowGenerator = new TestRowGenerator(-1, -1);
+            writeSection(file, rowGenerator, null);
+
+            ArrayList<String> lines = readLines(file);
+            Assert.assertEquals(N_ROWS + 1, lines.size());
+            Assert.assertEquals("\t" + TestFeature.key.getTitle() + "\t" + TestFeature.length.getTitle(), lines.get(0));
+            for (int i = 0; i < N_ROWS; i++) {
+                String key = getKey(i);
+                Assert.assertEquals((i + 1) + "\t" + key + "\t" + key.length(), lines.get(i + 1));
+            }
+
+            Assert.assertEquals(N_ROWS / BLOCK_SIZE, rowGenerator.prefetchedBlocks.size());
+            for (int i = 0; i < rowGenerator.prefetchedBlocks.size(); i++) {
+                Assert.assertEquals(getKey(i * BLOCK_SIZE), rowGenerator.prefetchedBlocks.get(i));
+            }
+            Assert.assertEquals(0, rowGenerator.notPrefetched.get());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that the exceptions thrown while generating a row or prefetching
+     * a block are thrown by the engine.
+     */
+    public void testExceptions() throws Exception {
+
+        File file = File.createTempFile("exportEngineTest", ".txt");
+        try {
+            try {
+                writeSection(file, new TestRowGenerator(N_ROWS / 2 + 7, -1), null);
+                Assert.fail("The error of the row generation should be thrown.");
+            } catch (IOException e) {
+                Assert.assertEquals("Error in row " + getKey(N_ROWS / 2 + 7) + ".", e.getMessage());
+            }
+            try {
+                writeSection(file, new TestRowGenerator(-1, 3), null);
+                Assert.fail("The error of the prefetching should be thrown.");
+            } catch (SQLException e) {
+                Assert.assertEquals("Error in block 3.", e.getMessage());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests that canceling the process through the waiting handler stops the
+     * export.
+     */
+    public void testCancel() throws Exception {
+
+        File file = File.createTempFile("exportEngineTest", ".txt");
+        try {
+            final int nRowsBeforeCancel = 4 * BLOCK_SIZE;
+            WaitingHandler waitingHandler = new WaitingHandlerDummy() {
+
+                /**
+                 * The number of rows written.
+                 */
+                private int progress = 0;
+
+                @Override
+                public synchronized void increaseSecondaryProgressCounter(int amount) {
+                    progress += amount;
+                    if (progress >= nRowsBeforeCancel) {
+                        setRunCanceled();
+                    }
+                }
+            };
+            TestRowGenerator rowGenerator = new TestRowGenerator(-1, -1);
+            writeSection(file, rowGenerator, waitingHandler);
+
+            ArrayList<String> lines = readLines(file);
+            Assert.assertEquals(nRowsBeforeCancel + 1, lines.size());
+            Assert.assertTrue(rowGenerator.nRows.get() <= nRowsBeforeCancel + MAX_PENDING_BLOCKS * BLOCK_SIZE);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes a section of N_ROWS rows using four threads.
+     *
+     * @param file the file where to write
+     * @param rowGenerator the row generator
+     * @param waitingHandler the waiting handler
+     *
+     * @throws Exception exception thrown by the export engine
+     */
+    private void writeSection(File file, ExportRowGenerator rowGenerator, WaitingHandler waitingHandler) throws Exception {
+        ArrayList<ExportFeature> features = new ArrayList<ExportFeature>();
+        features.add(TestFeature.key);
+        features.add(TestFeature.length);
+        HashMap<String, ArrayList<ExportFeature>> exportFeatures = new HashMap<String, ArrayList<ExportFeature>>();
+        exportFeatures.put(SECTION, features);
+        ArrayList<String> sections = new ArrayList<String>();
+        sections.add(SECTION);
+        ExportScheme exportScheme = new ExportScheme("Test", false, sections, exportFeatures, "\t", true, true, 0, false, false, false);
+
+        ArrayList<String> keys = new ArrayList<String>(N_ROWS);
+        for (int i = 0; i < N_ROWS; i++) {
+            keys.add(getKey(i));
+        }
+
+        TextWriter textWriter = new TextWriter(file, "\t", 0);
+        try {
+            ExportEngine exportEngine = new ExportEngine(textWriter, exportScheme);
+            exportEngine.setnThreads(4);
+            exportEngine.setBlockSize(BLOCK_SIZE);
+            exportEngine.setMaxPendingBlocks(MAX_PENDING_BLOCKS);
+            exportEngine.writeSection(SECTION, keys, rowGenerator, waitingHandler);
+        } finally {
+            textWriter.close();
+        }
+    }
+
+    /**
+     * Returns the key of the given row.
+     *
+     * @param i the index of the row
+     *
+     * @return the key of the row
+     */
+    private static String getKey(int i) {
+        return "key_" + i + "_" + Integer.toHexString(31 * i);
+    }
+
+    /**
+     * Returns the lines of a file.
+     *
+     * @param file the file
+     *
+     * @return the lines of the file
+     *
+     * @throws IOException exception thrown whenever an error occurred while
+     * reading the file
+     */
+    private ArrayList<String> readLines(File file) throws IOException {
+        ArrayList<String> lines = new ArrayList<String>();
+        BufferedReader br = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            br.close();
+        }
+        return lines;
+    }
+
+    /**
+     * The features of the test section.
+     */
+    private enum TestFeature implements ExportFeature {
+
+        key("Key"), length("Length");
+        /**
+         * The title of the feature.
+         */
+        private final String title;
+
+        /**
+         * Constructor.
+         *
+         * @param title the title of the feature
+         */
+        private TestFeature(String title) {
+            this.title = title;
+        }
+
+        @Override
+        public String getTitle() {
+            return title;
+        }
+
+        @Override
+        public String getDescription() {
+            return title;
+        }
+
+        @Override
+        public String getFeatureFamily() {
+            return "Test";
+        }
+
+        @Override
+        public ArrayList<ExportFeature> getExportFeatures(boolean includeSubFeatures) {
+            ArrayList<ExportFeature> result = new ArrayList<ExportFeature>();
+            Collections.addAll(result, values());
+            return result;
+        }
+
+        @Override
+        public boolean isAdvanced() {
+            return false;
+        }
+    }
+
+    /**
+     * Row generator returning the key and its length after a random delay,
+     * recording the prefetched blocks.
+     */
+    private static class TestRowGenerator implements ExportRowGenerator {
+
+        /**
+         * The index of the row failing, -1 for none.
+         */
+        private final int failingRow;
+        /**
+         * The index of the block failing to prefetch, -1 for none.
+         */
+        private final int failingBlock;
+        /**
+         * The first key of the blocks prefetched, in the order of
+         * prefetching.
+         */
+        private final ArrayList<String> prefetchedBlocks = new ArrayList<String>();
+        /**
+         * The keys prefetched.
+         */
+        private final HashMap<String, Boolean> prefetchedKeys = new HashMap<String, Boolean>();
+        /**
+         * The number of rows generated before the prefetching of their key.
+         */
+        private final AtomicInteger notPrefetched = new AtomicInteger();
+        /**
+         * The number of rows generated.
+         */
+        private final AtomicInteger nRows = new AtomicInteger();
+        /**
+         * The random delays.
+         */
+        private final Random random = new Random(42);
+
+        /**
+         * Constructor.
+         *
+         * @param failingRow the index of the row failing, -1 for none
+         * @param failingBlock the index of the block failing to prefetch, -1
+         * for none
+         */
+        public TestRowGenerator(int failingRow, int failingBlock) {
+            this.failingRow = failingRow;
+            this.failingBlock = failingBlock;
+        }
+
+        @Override
+        public void prefetch(ArrayList<String> keys, WaitingHandler waitingHandler) throws SQLException {
+            synchronized (prefetchedKeys) {
+                if (prefetchedBlocks.size() == failingBlock) {
+                    throw new SQLException("Error in block " + failingBlock + ".");
+                }
+                prefetchedBlocks.add(keys.get(0));
+                for (String key : keys) {
+                    prefetchedKeys.put(key, true);
+                }
+            }
+        }
+
+        @Override
+        public ArrayList<String> getRow(String key, ArrayList<ExportFeature> exportFeatures) throws IOException, InterruptedException {
+            long delay;
+            synchronized (prefetchedKeys) {
+                if (!prefetchedKeys.containsKey(key)) {
+                    notPrefetched.incrementAndGet();
+                }
+                delay = random.nextInt(3);
+            }
+            Thread.sleep(delay);
+            nRows.incrementAndGet();
+            if (failingRow >= 0 && key.equals(getKey(failingRow))) {
+                throw new IOException("Error in row " + key + ".");
+            }
+            ArrayList<String> row = new ArrayList<String>(exportFeatures.size());
+            for (ExportFeature exportFeature : exportFeatures) {
+                if (exportFeature == TestFeature.key) {
+                    row.add(key);
+                } else {
+                    row.add(key.length() + "");
+                }
+            }
+            return row;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.compomics.util.test.io.export;
+
+import com.compomics.util.io.export.styles.DefaultStyle;
+import com.compomics.util.io.export.writers.XlsxWriter;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Tests the export to xlsx files by unzipping the files written and parsing
+ * their parts.
+ *
+ * @author Marc Vaudel
+ */
+public class XlsxWriterTest extends TestCase {
+
+    /**
+     * Writes a file with styles, hierarchical rows and several sheets and
+     * checks the parts of the archive.
+     */
+    public void testRoundTrip() throws Exception {
+
+        File file = File.createTempFile("xlsxWriterTest", ".xlsx");
+        try {
+            XlsxWriter writer = new XlsxWriter(file);
+            writer.setWorkbookStyle(DefaultStyle.getStyle(writer));
+            writer.writeMainTitle("Report");
+            writer.startNewSection("Proteins");
+            writer.writeHeaderText("Accession");
+            writer.addSeparator();
+            writer.writeHeaderText("Score");
+            writer.newLine();
+            writer.write("P1 & <Q>");
+            writer.addSeparator();
+            writer.write("1.5");
+            writer.newLine();
+            writer.increaseDepth();
+            writer.writeHeaderText("Peptide");
+            writer.newLine();
+            writer.write("PEPTIDEK");
+            writer.addSeparator();
+            writer.write("NaN");
+            writer.newLine();
+            writer.decreseDepth();
+            writer.write("P2");
+            writer.newLine();
+            writer.startNewSection("Proteins");
+            writer.write("second");
+            writer.close();
+
+            HashMap<String, Document> parts = getParts(file);
+
+            // the package structure
+            Document contentTypes = parts.get("[Content_Types].xml");
+            Assert.assertNotNull(contentTypes);
+            ArrayList<String> overrides = new ArrayList<String>();
+            for (Element override : getElements(contentTypes.getDocumentElement(), "Override")) {
+                overrides.add(override.getAttribute("PartName"));
+            }
+            Assert.assertNotNull(parts.get("_rels/.rels"));
+            Assert.assertEquals("xl/workbook.xml", getElements(parts.get("_rels/.rels").getDocumentElement(), "Relationship").get(0).getAttribute("Target"));
+            for (Element relationship : getElements(parts.get("xl/_rels/workbook.xml.rels").getDocumentElement(), "Relationship")) {
+                String part = "xl/" + relationship.getAttribute("Target");
+                Assert.assertTrue(part, parts.containsKey(part));
+                Assert.assertTrue(part, overrides.contains("/" + part));
+            }
+
+            // the sheets
+            ArrayList<Element> sheets = getElements(parts.get("xl/workbook.xml").getDocumentElement(), "sheet");
+            Assert.assertEquals(3, sheets.size());
+            Assert.assertEquals("Sheet1", sheets.get(0).getAttribute("name"));
+            Assert.assertEquals("Proteins", sheets.get(1).getAttribute("name"));
+            Assert.assertEquals("Proteins (2)", sheets.get(2).getAttribute("name"));
+            Assert.assertEquals("Report", getCellValue(getElements(parts.get("xl/worksheets/sheet1.xml").getDocumentElement(), "c").get(0)));
+            Assert.assertEquals("second", getCellValue(getElements(parts.get("xl/worksheets/sheet3.xml").getDocumentElement(), "c").get(0)));
+
+            // the rows of the data sheet
+            ArrayList<Element> rows = getElements(parts.get("xl/worksheets/sheet2.xml").getDocumentElement(), "row");
+            Assert.assertEquals(5, rows.size());
+            String[][] values = {{"Accession", "Score"}, {"P1 & <Q>", "1.5"}, {"Peptide"}, {"PEPTIDEK", "NaN"}, {"P2"}};
+            boolean[] hidden = {false, false, true, true, false};
+            for (int i = 0; i < rows.size(); i++) {
+                Element row = rows.get(i);
+                Assert.assertEquals(Integer.toString(i + 1), row.getAttribute("r"));
+                Assert.assertEquals(hidden[i], row.getAttribute("hidden").equals("1"));
+                Assert.assertEquals(hidden[i] ? "1" : "", row.getAttribute("outlineLevel"));
+                ArrayList<Element> cells = getElements(row, "c");
+                Assert.assertEquals(values[i].length, cells.size());
+                for (int j = 0; j < cells.size(); j++) {
+                    Assert.assertEquals(XlsxWriter.getColumnName(j) + (i + 1), cells.get(j).getAttribute("r"));
+                    Assert.assertEquals(values[i][j], getCellValue(cells.get(j)));
+                }
+            }
+            Element numericCell = getElements(rows.get(1), "c").get(1);
+            Assert.assertEquals("", numericCell.getAttribute("t"));
+            Element nanCell = getElements(rows.get(3), "c").get(1);
+            Assert.assertEquals("inlineStr", nanCell.getAttribute("t"));
+
+            // the styles
+            Element styleSheet = parts.get("xl/styles.xml").getDocumentElement();
+            ArrayList<Element> fonts = getElements(styleSheet, "font");
+            ArrayList<Element> fills = getElements(styleSheet, "fill");
+            ArrayList<Element> borders = getElements(styleSheet, "border");
+            Element cellXfsElement = getElements(styleSheet, "cellXfs").get(0);
+            ArrayList<Element> cellXfs = getElements(cellXfsElement, "xf");
+            Assert.assertEquals(Integer.toString(cellXfs.size()), cellXfsElement.getAttribute("count"));
+            Assert.assertEquals(Integer.toString(fonts.size()), getElements(styleSheet, "fonts").get(0).getAttribute("count"));
+            Assert.assertEquals(Integer.toString(fills.size()), getElements(styleSheet, "fills").get(0).getAttribute("count"));
+            Assert.assertEquals(Integer.toString(borders.size()), getElements(styleSheet, "borders").get(0).getAttribute("count"));
+
+            Element header = cellXfs.get(Integer.parseInt(getElements(rows.get(0), "c").get(0).getAttribute("s")));
+            Element headerFill = getElements(fills.get(Integer.parseInt(header.getAttribute("fillId"))), "patternFill").get(0);
+            Assert.assertEquals("solid", headerFill.getAttribute("patternType"));
+            Assert.assertEquals("FFC8C8FA", getElements(headerFill, "fgColor").get(0).getAttribute("rgb"));
+            Element headerBorder = borders.get(Integer.parseInt(header.getAttribute("borderId")));
+            Assert.assertEquals("thin", getElements(headerBorder, "left").get(0).getAttribute("style"));
+            Assert.assertEquals("center", getElements(header, "alignment").get(0).getAttribute("horizontal"));
+            Element headerFont = fonts.get(Integer.parseInt(header.getAttribute("fontId")));
+            Assert.assertEquals("8", getElements(headerFont, "sz").get(0).getAttribute("val"));
+
+            Element subHeader = cellXfs.get(Integer.parseInt(getElements(rows.get(2), "c").get(0).getAttribute("s")));
+            Element subHeaderFill = getElements(fills.get(Integer.parseInt(subHeader.getAttribute("fillId"))), "patternFill").get(0);
+            Assert.assertEquals("FFDCDCFA", getElements(subHeaderFill, "fgColor").get(0).getAttribute("rgb"));
+
+            Element standard = cellXfs.get(Integer.parseInt(getElements(rows.get(1), "c").get(0).getAttribute("s")));
+            Assert.assertEquals("0", standard.getAttribute("fillId"));
+            Assert.assertEquals(standard, cellXfs.get(Integer.parseInt(getElements(rows.get(4), "c").get(0).getAttribute("s"))));
+
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Tests the names of the columns.
+     */
+    public void testColumnNames() {
+        Assert.assertEquals("A", XlsxWriter.getColumnName(0));
+        Assert.assertEquals("Z", XlsxWriter.getColumnName(25));
+        Assert.assertEquals("AA", XlsxWriter.getColumnName(26));
+        Assert.assertEquals("AZ", XlsxWriter.getColumnName(51));
+        Assert.assertEquals("ZZ", XlsxWriter.getColumnName(701));
+        Assert.assertEquals("AAA", XlsxWriter.getColumnName(702));
+        Assert.assertEquals("XFD", XlsxWriter.getColumnName(16383));
+    }
+
+    /**
+     * Unzips the given file and parses its parts.
+     *
+     * @param file the xlsx file
+     *
+     * @return the parsed parts indexed by name
+     *
+     * @throws Exception thrown if an error occurred while reading the file
+     */
+    private HashMap<String, Document> getParts(File file) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        DocumentBuilder documentBuilder = factory.newDocumentBuilder();
+        HashMap<String, Document> parts = new HashMap<String, Document>();
+        ZipFile zipFile = new ZipFile(file);
+        try {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                InputStream inputStream = zipFile.getInputStream(entry);
+                try {
+                    Assert.assertNull(entry.getName(), parts.put(entry.getName(), documentBuilder.parse(inputStream)));
+                } finally {
+                    inputStream.close();
+                }
+            }
+        } finally {
+            zipFile.close();
+        }
+        return parts;
+    }
+
+    /**
+     * Returns the descendant elements of the given element with the given
+     * local name.
+     *
+     * @param element the element
+     * @param name the local name
+     *
+     * @return the descendant elements
+     */
+    private ArrayList<Element> getElements(Element element, String name) {
+        NodeList nodes = element.getElementsByTagNameNS("*", name);
+        ArrayList<Element> result = new ArrayList<Element>(nodes.getLength());
+        for (int i = 0; i < nodes.getLength(); i++) {
+            result.add((Element) nodes.item(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the value of a cell: its inline string or its number.
+     *
+     * @param cell the cell element
+     *
+     * @return the value of the cell
+     */
+    private String getCellValue(Element cell) {
+        ArrayList<Element> texts = getElements(cell, "t");
+        if (!texts.isEmpty()) {
+            return texts.get(0).getTextContent();
+        }
+        return getElements(cell, "v").get(0).getTextContent();
+    }
+}
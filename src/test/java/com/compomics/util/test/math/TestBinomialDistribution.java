@@ -3,6 +3,7 @@ package com.compomics.util.test.math;
 import com.compomics.util.math.statistics.distributions.BinomialDistribution;
 import junit.framework.Assert;
 import junit.framework.TestCase;
+import org.apache.commons.math.distribution.BinomialDistributionImpl;
 import org.apache.commons.math.util.MathUtils;
 
 /**
@@ -34,6 +35,80 @@ public class TestBinomialDistribution extends TestCase {
         }
     }
 
+    /**
+     * Tests that the memoized probabilities equal the computed ones, also
+     * across the chunks of the caches.
+     */
+    public void testCache() throws Exception {
+        double tolerance = Math.pow(10, -12);
+        int n = 5000;
+        double p = 0.01;
+        BinomialDistribution binomialDistribution = new BinomialDistribution(n, p);
+        BinomialDistributionImpl reference = new BinomialDistributionImpl(n, p);
+        Assert.assertTrue(binomialDistribution.isCacheEmpty());
+        int[] ks = {0, 1, 49, 50, 1023, 1024, 1025, 2048, 4096, 4999, 5000};
+        for (int round = 0; round < 2; round++) {
+            for (int k : ks) {
+                Assert.assertEquals(reference.probability(k), binomialDistribution.getProbabilityAt((double) k), tolerance);
+                Assert.assertEquals(reference.cumulativeProbability(k), binomialDistribution.getCumulativeProbabilityAt((double) k), tolerance);
+            }
+            Assert.assertFalse(binomialDistribution.isCacheEmpty());
+        }
+
+        // the probabilities are not memoized for large n
+        binomialDistribution = new BinomialDistribution(BinomialDistribution.MAX_CACHED_N + 1, p);
+        reference = new BinomialDistributionImpl(BinomialDistribution.MAX_CACHED_N + 1, p);
+        for (int k : ks) {
+            Assert.assertEquals(reference.probability(k), binomialDistribution.getProbabilityAt((double) k), tolerance);
+            Assert.assertEquals(reference.cumulativeProbability(k), binomialDistribution.getCumulativeProbabilityAt((double) k), tolerance);
+        }
+        Assert.assertTrue(binomialDistribution.isCacheEmpty());
+    }
+
+    /**
+     * Tests the cumulative probabilities at the bounds of the distribution.
+     */
+    public void testCumulativeBounds() throws Exception {
+        int n = 20;
+        double p = 0.3;
+        BinomialDistribution binomialDistribution = new BinomialDistribution(n, p);
+        for (int k : new int[]{n, n + 3}) {
+            Assert.assertEquals(0.0, binomialDistribution.getDescendingCumulativeProbabilityAt((double) k), 0.0);
+            Assert.assertEquals(1.0, binomialDistribution.getCumulativeProbabilityAt((double) k), 0.0);
+        }
+        Assert.assertEquals(1.0, binomialDistribution.getDescendingCumulativeProbabilityAt(-1.0), 0.0);
+        Assert.assertEquals(0.0, binomialDistribution.getCumulativeProbabilityAt(-1.0), 0.0);
+        Assert.assertEquals(Math.pow(p, n), binomialDistribution.getDescendingCumulativeProbabilityAt((double) (n - 1)), Math.pow(10, -20));
+        Assert.assertEquals(1 - Math.pow(p, n), binomialDistribution.getCumulativeProbabilityAt((double) (n - 1)), Math.pow(10, -12));
+    }
+
+    /**
+     * Tests that the registry shares the distributions and removes the oldest
+     * when full.
+     */
+    public void testRegistry() {
+        try {
+            BinomialDistribution.clearRegistry();
+            BinomialDistribution first = BinomialDistribution.getBinomialDistribution(BinomialDistribution.MAX_CACHED_N, 0.5);
+            Assert.assertSame(first, BinomialDistribution.getBinomialDistribution(BinomialDistribution.MAX_CACHED_N, 0.5));
+            Assert.assertNotSame(first, BinomialDistribution.getBinomialDistribution(BinomialDistribution.MAX_CACHED_N - 1, 0.5));
+
+            // fill the registry with distributions of various p
+            int nDistributions = BinomialDistribution.REGISTRY_CAPACITY / (BinomialDistribution.MAX_CACHED_N + 1) + 1;
+            BinomialDistribution last = null;
+            for (int i = 1; i <= nDistributions; i++) {
+                last = BinomialDistribution.getBinomialDistribution(BinomialDistribution.MAX_CACHED_N, 0.5 / (i + 1));
+            }
+            Assert.assertSame(last, BinomialDistribution.getBinomialDistribution(BinomialDistribution.MAX_CACHED_N, 0.5 / (nDistributions + 1)));
+            Assert.assertNotSame(first, BinomialDistribution.getBinomialDistribution(BinomialDistribution.MAX_CACHED_N, 0.5));
+
+            BinomialDistribution.clearRegistry();
+            Assert.assertNotSame(last, BinomialDistribution.getBinomialDistribution(BinomialDistribution.MAX_CACHED_N, 0.5 / (nDistributions + 1)));
+        } finally {
+            BinomialDistribution.clearRegistry();
+        }
+    }
+
     /**
      * Results obtained using excel
      */
@@ -0,0 +1,178 @@
+package com.compomics.util.test.math;
+
+import com.compomics.util.math.roc.DataRoc;
+import com.compomics.util.math.statistics.distributions.BinnedDensityEstimator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.apache.commons.math.MathException;
+
+/**
+ * Test for the ROC curves drawn from experimental data.
+ *
+ * @author Marc Vaudel
+ */
+public class TestDataRoc extends TestCase {
+
+    /**
+     * Tests the curves of random values with ties and NaN against the
+     * reference counting of the values.
+     */
+    public void testRandomValues() throws MathException {
+        Random random = new Random(42);
+        for (int test = 0; test < 500; test++) {
+            ArrayList<Double> controls = getRandomValues(random);
+            ArrayList<Double> patients = getRandomValues(random);
+            double[][] expected = getReferencePoints(controls, patients);
+            for (DataRoc.RocInterpolation rocInterpolation : DataRoc.RocInterpolation.values()) {
+                DataRoc listRoc = new DataRoc(controls, patients, rocInterpolation);
+                Assert.assertTrue(Arrays.deepEquals(expected, listRoc.getxYValues()));
+                DataRoc arrayRoc = new DataRoc(toArray(controls), toArray(patients), rocInterpolation);
+                Assert.assertTrue(Arrays.deepEquals(expected, arrayRoc.getxYValues()));
+                Assert.assertEquals(listRoc.getAuc(), arrayRoc.getAuc(), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Tests a curve with NaN values.
+     */
+    public void testNaN() throws MathException {
+        double[] controls = {1, Double.NaN, 2, Double.NaN};
+        double[] patients = {Double.NaN, 2, 4};
+        DataRoc dataRoc = new DataRoc(controls, patients, DataRoc.RocInterpolation.linear);
+        double[][] expected = {{0, 0.25}, {1.0 / 3, 0.5}, {2.0 / 3, 0.5}, {1, 1}};
+        Assert.assertTrue(Arrays.deepEquals(expected, dataRoc.getxYValues()));
+    }
+
+    /**
+     * Tests the curves drawn from histograms against the curves of the
+     * values of the bins, for histograms with and without coarsening of the
+     * bins.
+     */
+    public void testHistograms() throws MathException {
+        Random random = new Random(42);
+        for (int test = 0; test < 100; test++) {
+            double[] controls = new double[1 + random.nextInt(500)];
+            for (int i = 0; i < controls.length; i++) {
+                controls[i] = random.nextInt(200);
+            }
+            double[] patients = new double[1 + random.nextInt(500)];
+            for (int i = 0; i < patients.length; i++) {
+                patients[i] = 50 + random.nextInt(200);
+            }
+            BinnedDensityEstimator[][] histograms = {
+                {new BinnedDensityEstimator(1), new BinnedDensityEstimator(1)},
+                {new BinnedDensityEstimator(1, 16), new BinnedDensityEstimator(1, 16)}};
+            for (BinnedDensityEstimator[] pair : histograms) {
+                pair[0].addAll(controls);
+                pair[1].addAll(patients);
+                double[][] expected = getReferencePoints(getBinValues(pair[0]), getBinValues(pair[1]));
+                for (DataRoc.RocInterpolation rocInterpolation : DataRoc.RocInterpolation.values()) {
+                    DataRoc dataRoc = new DataRoc(pair[0], pair[1], rocInterpolation);
+                    Assert.assertTrue(Arrays.deepEquals(expected, dataRoc.getxYValues()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns random values with ties and NaN.
+     *
+     * @param random the random number generator
+     *
+     * @return random values
+     */
+    private ArrayList<Double> getRandomValues(Random random) {
+        int n = 1 + random.nextInt(30);
+        ArrayList<Double> values = new ArrayList<Double>(n);
+        for (int i = 0; i < n; i++) {
+            int value = random.nextInt(12);
+            values.add(value == 11 ? Double.NaN : value);
+        }
+        return values;
+    }
+
+    /**
+     * Returns the values of the bins of a histogram, every center repeated
+     * by the count of its bin.
+     *
+     * @param histogram the histogram
+     *
+     * @return the values of the bins
+     */
+    private ArrayList<Double> getBinValues(BinnedDensityEstimator histogram) {
+        ArrayList<Double> values = new ArrayList<Double>();
+        double[] centers = histogram.getBinCenters();
+        double[] counts = histogram.getBinCounts();
+        for (int i = 0; i < centers.length; i++) {
+            for (int j = 0; j < counts[i]; j++) {
+                values.add(centers[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Converts a list to an array.
+     *
+     * @param values the list
+     *
+     * @return the array
+     */
+    private double[] toArray(ArrayList<Double> values) {
+        double[] result = new double[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the points of the curve by counting the occurrences of the
+     * distinct values in a map, as done in the original implementation.
+     *
+     * @param controlValues the control values
+     * @param patientValues the patient values
+     *
+     * @return the points of the curve
+     */
+    private double[][] getReferencePoints(ArrayList<Double> controlValues, ArrayList<Double> patientValues) {
+        HashMap<Double, int[]> valuesMap = new HashMap<Double, int[]>();
+        for (Double value : controlValues) {
+            int[] n = valuesMap.get(value);
+            if (n == null) {
+                n = new int[2];
+                valuesMap.put(value, n);
+            }
+            n[0]++;
+        }
+        for (Double value : patientValues) {
+            int[] n = valuesMap.get(value);
+            if (n == null) {
+                n = new int[2];
+                valuesMap.put(value, n);
+            }
+            n[1]++;
+        }
+        ArrayList<Double> values = new ArrayList<Double>(valuesMap.keySet());
+        Collections.sort(values);
+        ArrayList<double[]> points = new ArrayList<double[]>();
+        int patientCpt = 0;
+        int controlCpt = 0;
+        for (Double value : values) {
+            int[] counts = valuesMap.get(value);
+            if (counts[1] > 0) {
+                points.add(new double[]{((double) patientCpt) / patientValues.size(), ((double) controlCpt) / controlValues.size()});
+            }
+            patientCpt += counts[1];
+            controlCpt += counts[0];
+        }
+        points.add(new double[]{1.0, 1.0});
+        return points.toArray(new double[points.size()][]);
+    }
+}
@@ -0,0 +1,122 @@
+package com.compomics.util.test.math;
+
+import com.compomics.util.math.matrix.DenseDoubleMatrix;
+import com.compomics.util.math.matrix.DoubleMatrix;
+import com.compomics.util.math.matrix.LuDecomposition;
+import java.util.ArrayList;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Test for the dense matrix operations.
+ *
+ * @author Marc Vaudel
+ */
+public class TestDenseDoubleMatrix extends TestCase {
+
+    /**
+     * Tests the blocked and parallel multiplication against the naive
+     * product.
+     */
+    public void testMultiply() {
+        Random random = new Random(42);
+        int[][] sizes = {{1, 1, 1}, {3, 5, 2}, {70, 130, 65}, {300, 200, 150}};
+        for (int[] size : sizes) {
+            DenseDoubleMatrix a = getRandomMatrix(random, size[0], size[1]);
+            DenseDoubleMatrix b = getRandomMatrix(random, size[1], size[2]);
+            DenseDoubleMatrix serial = a.multiply(b, 1);
+            DenseDoubleMatrix parallel = a.multiply(b, 4);
+            for (int i = 0; i < size[0]; i++) {
+                for (int j = 0; j < size[2]; j++) {
+                    double expected = 0;
+                    for (int k = 0; k < size[1]; k++) {
+                        expected += a.getValueAt(i, k) * b.getValueAt(k, j);
+                    }
+                    Assert.assertEquals(expected, serial.getValueAt(i, j), 1e-9);
+                    Assert.assertEquals(serial.getValueAt(i, j), parallel.getValueAt(i, j), 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests the blocked transposition.
+     */
+    public void testTranspose() {
+        Random random = new Random(42);
+        DenseDoubleMatrix a = getRandomMatrix(random, 130, 67);
+        DenseDoubleMatrix transposed = a.transpose();
+        Assert.assertEquals(67, transposed.getNLines());
+        Assert.assertEquals(130, transposed.getNColumns());
+        for (int i = 0; i < 130; i++) {
+            for (int j = 0; j < 67; j++) {
+                Assert.assertEquals(a.getValueAt(i, j), transposed.getValueAt(j, i), 0);
+            }
+        }
+    }
+
+    /**
+     * Tests the determinant, the resolution of linear systems and the
+     * inversion.
+     */
+    public void testLuDecomposition() {
+
+        DenseDoubleMatrix a = new DenseDoubleMatrix(new double[][]{{0, 2, 1}, {1, 1, 0}, {3, 0, 1}});
+        Assert.assertEquals(-5, a.getDeterminant(), 1e-12);
+        Assert.assertEquals(-5, a.toDoubleMatrix().getDeterminant(), 1e-12);
+
+        DenseDoubleMatrix singular = new DenseDoubleMatrix(new double[][]{{1, 2, 3}, {2, 4, 6}, {1, 0, 1}});
+        Assert.assertEquals(0, singular.getDeterminant(), 0);
+        Assert.assertTrue(singular.getLuDecomposition().isSingular());
+
+        Random random = new Random(42);
+        int n = 50;
+        DenseDoubleMatrix m = getRandomMatrix(random, n, n);
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextGaussian();
+        }
+        double[] solution = m.solve(m.multiply(x));
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(x[i], solution[i], 1e-8);
+        }
+
+        LuDecomposition decomposition = m.getLuDecomposition();
+        DenseDoubleMatrix identity = m.multiply(decomposition.getInverse());
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                Assert.assertEquals(i == j ? 1 : 0, identity.getValueAt(i, j), 1e-8);
+            }
+        }
+
+        DoubleMatrix boxed = a.toDoubleMatrix();
+        ArrayList<Double> b = new ArrayList<Double>();
+        b.add(3.0);
+        b.add(2.0);
+        b.add(4.0);
+        ArrayList<Double> boxedSolution = boxed.solve(b);
+        Assert.assertEquals(1, boxedSolution.get(0), 1e-12);
+        Assert.assertEquals(1, boxedSolution.get(1), 1e-12);
+        Assert.assertEquals(1, boxedSolution.get(2), 1e-12);
+    }
+
+    /**
+     * Returns a matrix filled with random values.
+     *
+     * @param random the random generator
+     * @param nLines the number of lines
+     * @param nColumns the number of columns
+     *
+     * @return a matrix filled with random values
+     */
+    private DenseDoubleMatrix getRandomMatrix(Random random, int nLines, int nColumns) {
+        DenseDoubleMatrix result = new DenseDoubleMatrix(nLines, nColumns);
+        for (int i = 0; i < nLines; i++) {
+            for (int j = 0; j < nColumns; j++) {
+                result.setValueAt(i, j, random.nextGaussian());
+            }
+        }
+        return result;
+    }
+}
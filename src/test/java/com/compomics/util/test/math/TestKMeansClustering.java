@@ -0,0 +1,158 @@
+package com.compomics.util.test.math;
+
+import com.compomics.util.math.clustering.KMeansClustering;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Test for the k-means clustering.
+ *
+ * @author Marc Vaudel
+ */
+public class TestKMeansClustering extends TestCase {
+
+    /**
+     * The centers of the blobs of samples.
+     */
+    private static final double[][] CENTERS = {{0, 0}, {10, 0}, {0, 10}};
+    /**
+     * The number of samples per blob.
+     */
+    private static final int BLOB_SIZE = 200;
+
+    /**
+     * Tests that the clustering of well separated blobs returns the blobs.
+     */
+    public void testBlobs() {
+        KMeansClustering kMeansClustering = getClustering(1, 0);
+        kMeansClustering.kMeanCluster(null);
+        HashSet<Integer> blobs = new HashSet<Integer>();
+        for (int clusterIndex = 0; clusterIndex < CENTERS.length; clusterIndex++) {
+            ArrayList<String> members = kMeansClustering.getClusterMembers(clusterIndex);
+            Assert.assertEquals(BLOB_SIZE, members.size());
+            int blob = getBlob(members.get(0));
+            for (String member : members) {
+                Assert.assertEquals(blob, getBlob(member));
+            }
+            blobs.add(blob);
+            double[] centroid = kMeansClustering.getCentroid(clusterIndex);
+            Assert.assertEquals(CENTERS[blob][0], centroid[0], 0.2);
+            Assert.assertEquals(CENTERS[blob][1], centroid[1], 0.2);
+        }
+        Assert.assertEquals(CENTERS.length, blobs.size());
+    }
+
+    /**
+     * Tests that the serial and parallel clustering give the same result.
+     */
+    public void testSerialParallel() {
+        KMeansClustering serial = getClustering(1, 0);
+        serial.kMeanCluster(null);
+        for (int nThreads : new int[]{2, 4}) {
+            KMeansClustering parallel = getClustering(nThreads, 0);
+            parallel.kMeanCluster(null);
+            for (int clusterIndex = 0; clusterIndex < CENTERS.length; clusterIndex++) {
+                Assert.assertEquals(serial.getClusterMembers(clusterIndex), parallel.getClusterMembers(clusterIndex));
+                double[] serialCentroid = serial.getCentroid(clusterIndex);
+                double[] parallelCentroid = parallel.getCentroid(clusterIndex);
+                for (int i = 0; i < serialCentroid.length; i++) {
+                    Assert.assertEquals(serialCentroid[i], parallelCentroid[i], Math.pow(10, -10));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the centroids are the means of their clusters when the
+     * maximal number of iterations is reached.
+     */
+    public void testMaxIterations() {
+        for (int maxIterations : new int[]{0, 1}) {
+            KMeansClustering kMeansClustering = getClustering(2, 0);
+            kMeansClustering.setMaxIterations(maxIterations);
+            kMeansClustering.setTolerance(0);
+            kMeansClustering.kMeanCluster(null);
+            for (int clusterIndex = 0; clusterIndex < CENTERS.length; clusterIndex++) {
+                HashMap<String, ArrayList<Double>> members = kMeansClustering.getClusterMembersData(clusterIndex);
+                Assert.assertFalse(members.isEmpty());
+                double[] mean = new double[2];
+                for (ArrayList<Double> values : members.values()) {
+                    for (int i = 0; i < mean.length; i++) {
+                        mean[i] += values.get(i) / members.size();
+                    }
+                }
+                double[] centroid = kMeansClustering.getCentroid(clusterIndex);
+                for (int i = 0; i < mean.length; i++) {
+                    Assert.assertEquals(mean[i], centroid[i], Math.pow(10, -10));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that the mini-batch clustering converges near the algorithm of
+     * Lloyd.
+     */
+    public void testMiniBatch() {
+        KMeansClustering lloyd = getClustering(1, 0);
+        lloyd.kMeanCluster(null);
+        KMeansClustering miniBatch = getClustering(1, 50);
+        miniBatch.kMeanCluster(null);
+        for (int clusterIndex = 0; clusterIndex < CENTERS.length; clusterIndex++) {
+            double[] centroid = miniBatch.getCentroid(clusterIndex);
+            int closestIndex = 0;
+            double minDistance = Double.MAX_VALUE;
+            for (int lloydIndex = 0; lloydIndex < CENTERS.length; lloydIndex++) {
+                double[] lloydCentroid = lloyd.getCentroid(lloydIndex);
+                double distance = Math.hypot(centroid[0] - lloydCentroid[0], centroid[1] - lloydCentroid[1]);
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    closestIndex = lloydIndex;
+                }
+            }
+            Assert.assertTrue("Distance to Lloyd centroid: " + minDistance, minDistance < 0.2);
+            Assert.assertEquals(lloyd.getClusterMembers(closestIndex), miniBatch.getClusterMembers(clusterIndex));
+        }
+    }
+
+    /**
+     * Returns a seeded clustering of gaussian blobs around the centers.
+     *
+     * @param nThreads the number of threads to use
+     * @param batchSize the size of the mini-batches, 0 for none
+     *
+     * @return a seeded clustering
+     */
+    private KMeansClustering getClustering(int nThreads, int batchSize) {
+        Random random = new Random(42);
+        double[][] samples = new double[CENTERS.length * BLOB_SIZE][];
+        String[] sampleIds = new String[samples.length];
+        for (int blob = 0; blob < CENTERS.length; blob++) {
+            for (int i = 0; i < BLOB_SIZE; i++) {
+                int sampleIndex = blob * BLOB_SIZE + i;
+                samples[sampleIndex] = new double[]{CENTERS[blob][0] + random.nextGaussian(), CENTERS[blob][1] + random.nextGaussian()};
+                sampleIds[sampleIndex] = blob + "_" + i;
+            }
+        }
+        KMeansClustering kMeansClustering = new KMeansClustering(samples, sampleIds, CENTERS.length);
+        kMeansClustering.setnThreads(nThreads);
+        kMeansClustering.setBatchSize(batchSize);
+        kMeansClustering.setSeed(42);
+        return kMeansClustering;
+    }
+
+    /**
+     * Returns the blob of a sample from its identifier.
+     *
+     * @param sampleId the sample identifier
+     *
+     * @return the index of the blob
+     */
+    private int getBlob(String sampleId) {
+        return Integer.parseInt(sampleId.substring(0, sampleId.indexOf('_')));
+    }
+}
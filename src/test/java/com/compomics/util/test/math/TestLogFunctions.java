@@ -0,0 +1,79 @@
+package com.compomics.util.test.math;
+
+import com.compomics.util.math.BigFunctions;
+import com.compomics.util.math.LogFunctions;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Tests for the log space math functions.
+ *
+ * @author Marc Vaudel
+ */
+public class TestLogFunctions extends TestCase {
+
+    /**
+     * Tests the log factorials against the exact factorials, in and beyond
+     * the precomputed table.
+     */
+    public void testLogFactorial() {
+        MathContext mathContext = new MathContext(30, RoundingMode.HALF_UP);
+        int[] values = {0, 1, 2, 5, 20, 21, 170, 171, 1000, 4095, 4096, 4097};
+        for (int n : values) {
+            BigInteger factorial = BigInteger.ONE;
+            for (int i = 2; i <= n; i++) {
+                factorial = factorial.multiply(BigInteger.valueOf(i));
+            }
+            double expected = BigFunctions.lnBD(new BigDecimal(factorial), mathContext).doubleValue();
+            double result = LogFunctions.logFactorial(n);
+            Assert.assertEquals(expected, result, LogFunctions.LOG_FACTORIAL_RELATIVE_ERROR * Math.max(1, expected));
+        }
+        Assert.assertEquals(Math.log(120), LogFunctions.logGamma(6), 1e-14);
+        Assert.assertEquals(0.5 * Math.log(Math.PI), LogFunctions.logGamma(0.5), 1e-14);
+    }
+
+    /**
+     * Tests the log combinations and binomial probabilities.
+     */
+    public void testLogCombination() {
+        Assert.assertEquals(0, LogFunctions.logCombination(0, 10), 0);
+        Assert.assertEquals(0, LogFunctions.logCombination(10, 10), 0);
+        Assert.assertEquals(Math.log(252), LogFunctions.logCombination(5, 10), 1e-14);
+
+        MathContext mathContext = new MathContext(10, RoundingMode.HALF_UP);
+        int n = 1500;
+        int k = 400;
+        MathContext referenceMathContext = new MathContext(30, RoundingMode.HALF_UP);
+        double expected = BigFunctions.ln(new BigDecimal(BigFunctions.getCombination(BigInteger.valueOf(k), BigInteger.valueOf(n))), referenceMathContext).doubleValue();
+        Assert.assertEquals(expected, LogFunctions.logCombination(k, n), LogFunctions.getLogCombinationError(k, n));
+        Assert.assertEquals(expected, BigFunctions.lnCombination(BigInteger.valueOf(k), BigInteger.valueOf(n), mathContext).doubleValue(), expected * 1e-10);
+
+        // probabilities far below the smallest double
+        double logProbability = LogFunctions.logBinomialProbability(0, 2000, 0.5);
+        Assert.assertEquals(2000 * Math.log(0.5), logProbability, 1e-10);
+        Assert.assertEquals(Math.log(0.375), LogFunctions.logBinomialProbability(1, 3, 0.5), 1e-14);
+        Assert.assertEquals(Double.NEGATIVE_INFINITY, LogFunctions.logBinomialProbability(1, 3, 0), 0);
+    }
+
+    /**
+     * Tests the log sum of exponentials.
+     */
+    public void testLogSumExp() {
+        Assert.assertEquals(Math.log(3), LogFunctions.logSumExp(0, Math.log(2)), 1e-15);
+        Assert.assertEquals(-1000 + Math.log(2), LogFunctions.logSumExp(-1000, -1000), 1e-12);
+        Assert.assertEquals(1000 + Math.log(3), LogFunctions.logSumExp(new double[]{1000, 1000, 1000}), 1e-12);
+        Assert.assertEquals(Double.NEGATIVE_INFINITY, LogFunctions.logSumExp(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY), 0);
+
+        // sum of all binomial probabilities is one
+        int n = 3000;
+        double[] logProbabilities = new double[n + 1];
+        for (int k = 0; k <= n; k++) {
+            logProbabilities[k] = LogFunctions.logBinomialProbability(k, n, 0.3);
+        }
+        Assert.assertEquals(0, LogFunctions.logSumExp(logProbabilities), 1e-10);
+    }
+}
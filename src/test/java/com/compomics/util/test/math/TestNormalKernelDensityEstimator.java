@@ -0,0 +1,82 @@
+package com.compomics.util.test.math;
+
+import com.compomics.util.math.FastFourierTransform;
+import com.compomics.util.math.statistics.distributions.NormalKernelDensityEstimator;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Test for the binned kernel density estimation.
+ *
+ * @author Marc Vaudel
+ */
+public class TestNormalKernelDensityEstimator extends TestCase {
+
+    /**
+     * Tests the convolution using fast Fourier transforms against the direct
+     * convolution.
+     */
+    public void testConvolution() {
+        Random random = new Random(42);
+        double[] signal = new double[100];
+        double[] kernel = new double[17];
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] = random.nextDouble();
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] = random.nextDouble();
+        }
+        double[] result = FastFourierTransform.convolve(signal, kernel);
+        Assert.assertEquals(signal.length + kernel.length - 1, result.length);
+        for (int k = 0; k < result.length; k++) {
+            double expected = 0;
+            for (int i = Math.max(0, k - kernel.length + 1); i <= Math.min(k, signal.length - 1); i++) {
+                expected += signal[i] * kernel[k - i];
+            }
+            Assert.assertEquals(expected, result[k], 1e-10);
+        }
+    }
+
+    /**
+     * Tests the bandwidth of the robust rule of thumb.
+     */
+    public void testBandwidth() {
+        // the standard deviation, 2.449, is below IQR / 1.34
+        double[] data = {1, 2, 3, 4, 5, 6, 7, 8};
+        NormalKernelDensityEstimator estimator = new NormalKernelDensityEstimator();
+        estimator.estimate(data);
+        double std = Math.sqrt(42.0 / 7);
+        Assert.assertEquals(0.99 * std * Math.pow(data.length, -0.2), estimator.getBandwidth(), 1e-10);
+    }
+
+    /**
+     * Tests the binned estimation against the exact kernel density.
+     */
+    public void testDensity() {
+        Random random = new Random(42);
+        double[] data = new double[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextGaussian();
+        }
+        NormalKernelDensityEstimator estimator = new NormalKernelDensityEstimator();
+        estimator.estimate(data);
+        double h = estimator.getBandwidth();
+        double[] x = estimator.getX();
+        double[] density = estimator.getDensity();
+        double integral = 0;
+        for (int i = 1; i < x.length; i++) {
+            integral += (x[i] - x[i - 1]) * (density[i] + density[i - 1]) / 2;
+        }
+        Assert.assertEquals(1, integral, 1e-3);
+        for (double point : new double[]{-2, -0.5, 0, 0.3, 1.7}) {
+            double expected = 0;
+            for (double value : data) {
+                double u = (point - value) / h;
+                expected += Math.exp(-u * u / 2);
+            }
+            expected /= data.length * h * Math.sqrt(2 * Math.PI);
+            Assert.assertEquals(expected, estimator.getDensityAt(point), 1e-3);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.compomics.util.test.math;
+
+import com.compomics.util.math.BasicMathFunctions;
+import com.compomics.util.math.statistics.QuantileDigest;
+import java.util.Arrays;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+
+/**
+ * Test for the estimation of percentiles.
+ *
+ * @author Marc Vaudel
+ */
+public class TestPercentiles extends TestCase {
+
+    /**
+     * Tests the selection based percentiles against the sorted estimation.
+     */
+    public void testPercentiles() {
+        Random random = new Random(42);
+        double[] percentiles = {0, 0.1, 0.159, 0.25, 0.5, 0.75, 0.841, 1};
+        for (int test = 0; test < 1000; test++) {
+            int n = 1 + random.nextInt(50);
+            double[] input = new double[n];
+            for (int i = 0; i < n; i++) {
+                // include ties
+                input[i] = random.nextInt(4) == 0 ? random.nextInt(3) : random.nextGaussian();
+            }
+            double[] sortedInput = Arrays.copyOf(input, n);
+            Arrays.sort(sortedInput);
+            double[] results = BasicMathFunctions.percentiles(input, percentiles);
+            for (int i = 0; i < percentiles.length; i++) {
+                double expected = BasicMathFunctions.percentileSorted(sortedInput, percentiles[i]);
+                Assert.assertEquals(expected, BasicMathFunctions.percentile(input, percentiles[i]), 0);
+                Assert.assertEquals(expected, results[i], 0);
+            }
+        }
+    }
+
+    /**
+     * Tests the quantile digest and the merging of digests.
+     */
+    public void testQuantileDigest() {
+        Random random = new Random(42);
+        int n = 100000;
+        double[] input = new double[n];
+        QuantileDigest digest1 = new QuantileDigest();
+        QuantileDigest digest2 = new QuantileDigest();
+        for (int i = 0; i < n; i++) {
+            input[i] = random.nextGaussian();
+            if (i % 2 == 0) {
+                digest1.add(input[i]);
+            } else {
+                digest2.add(input[i]);
+            }
+        }
+        digest1.merge(digest2);
+        Assert.assertEquals(n, digest1.getCount(), 0);
+        Arrays.sort(input);
+        for (double q : new double[]{0.01, 0.1, 0.5, 0.9, 0.99}) {
+            double estimate = digest1.getQuantile(q);
+            Assert.assertEquals(q, digest1.getCumulativeProbability(estimate), 0.005);
+            Assert.assertEquals(BasicMathFunctions.percentileSorted(input, q), estimate, 0.05);
+        }
+    }
+}
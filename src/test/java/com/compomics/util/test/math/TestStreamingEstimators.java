@@ -0,0 +1,76 @@
+package com.compomics.util.test.math;
+
+import com.compomics.util.math.BasicMathFunctions;
+import com.compomics.util.math.statistics.distributions.BinnedDensityEstimator;
+import com.compomics.util.math.statistics.distributions.KernelDensityDistribution;
+import com.compomics.util.math.statistics.distributions.MomentsEstimator;
+import java.util.ArrayList;
+import java.util.Random;
+import junit.framework.Assert;
+import junit.framework.TestCase;
+import org.apache.commons.math.MathException;
+
+/**
+ * Test for the streaming distribution estimators.
+ *
+ * @author Marc Vaudel
+ */
+public class TestStreamingEstimators extends TestCase {
+
+    /**
+     * Tests that merged moments are those of the whole series.
+     */
+    public void testMoments() {
+        Random random = new Random(42);
+        ArrayList<Double> values = new ArrayList<Double>();
+        MomentsEstimator estimator1 = new MomentsEstimator();
+        MomentsEstimator estimator2 = new MomentsEstimator();
+        for (int i = 0; i < 1000; i++) {
+            double x = 10 + 3 * random.nextGaussian();
+            values.add(x);
+            if (i < 300) {
+                estimator1.add(x);
+            } else {
+                estimator2.add(x);
+            }
+        }
+        estimator1.merge(estimator2);
+        Assert.assertEquals(values.size(), estimator1.getCount());
+        Assert.assertEquals(BasicMathFunctions.mean(values), estimator1.getMean(), 1e-10);
+        Assert.assertEquals(BasicMathFunctions.std(values), estimator1.getStd(), 1e-10);
+    }
+
+    /**
+     * Tests the binned kernel density estimation and the merging of
+     * estimators of different resolutions.
+     *
+     * @throws MathException exception thrown whenever an error occurred while
+     * estimating a probability
+     */
+    public void testBinnedDensity() throws MathException {
+        Random random = new Random(42);
+        BinnedDensityEstimator estimator1 = new BinnedDensityEstimator(0.001, 1024);
+        BinnedDensityEstimator estimator2 = new BinnedDensityEstimator(0.001, 1024);
+        for (int i = 0; i < 100000; i++) {
+            double x = random.nextGaussian();
+            if (i % 2 == 0) {
+                estimator1.add(x);
+            } else {
+                estimator2.add(x / 10);
+                estimator2.add(x);
+            }
+        }
+        estimator1.merge(estimator2);
+        Assert.assertEquals(150000, estimator1.getCount());
+        double sum = 0;
+        for (double count : estimator1.getBinCounts()) {
+            sum += count;
+        }
+        Assert.assertEquals(150000, sum, 1e-6);
+        KernelDensityDistribution distribution = estimator1.getDistribution();
+        Assert.assertEquals(0.5, distribution.getCumulativeProbabilityAt(0), 0.01);
+        Assert.assertEquals(0, distribution.getValueAtCumulativeProbability(0.5), 0.02);
+        double p = distribution.getCumulativeProbabilityAt(1);
+        Assert.assertEquals(1, distribution.getValueAtCumulativeProbability(p), 0.01);
+    }
+}